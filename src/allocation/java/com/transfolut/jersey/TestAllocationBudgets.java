@@ -0,0 +1,123 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response.Status;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Pins the number of bytes every endpoint allocates per request, end to end through routing, JSON mapping,
+ * the resource and the ledger. Requests are applied in process to an application with its own bank service,
+ * on the test thread, so that the bytes allocated by the thread are exactly the bytes allocated by the requests.
+ * Every endpoint is warmed up before it is measured, so that the budgets do not depend on class loading.
+ * When a change allocates more on purpose, record the new figures reported by the failure in the budgets below.
+ * The budgets are checked by the allocationTest task, which the build runs, but they depend on the JVM,
+ * so they are skipped on any JVM other than the one they were recorded on.
+ */
+public class TestAllocationBudgets {
+
+    private static final int OK = Status.OK.getStatusCode();
+    private static final int WARMUP_REQUESTS = 2000;
+    private static final int MEASURED_REQUESTS = 500;
+    // JVM the budgets were recorded on, a HotSpot server VM of this Java version whatever its vendor
+    private static final String RECORDED_VM_NAME = "64-Bit Server VM";
+    private static final String RECORDED_JAVA_VERSION = "17";
+
+    private com.sun.management.ThreadMXBean threads;
+    private InProcessApplication application;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Budgets were not recorded on this JVM",
+                System.getProperty("java.vm.name").endsWith(RECORDED_VM_NAME)
+                        && RECORDED_JAVA_VERSION.equals(System.getProperty("java.specification.version")));
+        Assume.assumeTrue("Allocated bytes are not measured by this JVM",
+                ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocated bytes are not measured by this JVM", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        // Sampled traces would allocate on a few requests at random
+        System.setProperty(TransfolutProperties.TRACING_SAMPLE_RATE, "0");
+        application = new InProcessApplication(TransfolutApp.createResourceConfig(new BankService(acctNumber -> true),
+                ClusterNode.standalone(TransfolutPaths.BASE_URI)));
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(TransfolutProperties.TRACING_SAMPLE_RATE);
+        if(application != null) {
+            application.close();
+        }
+    }
+
+    /**
+     * Tests that no endpoint allocates more than its budget per request.
+     * Endpoints reading a list whose size depends on the other requests are measured before those requests.
+     */
+    @Test
+    public void testAllocationBudgets() {
+        String fromAcct = application.request(HttpMethod.POST, TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}", OK);
+        String toAcct = application.request(HttpMethod.POST, TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}", OK);
+        String historyAcct = application.request(HttpMethod.POST, TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}", OK);
+        for(int i = 0; i < 10; i++) {
+            application.request(HttpMethod.POST, TransfolutPaths.DEPOSIT_URI,
+                    "{\"acct\":\"" + historyAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}", OK);
+        }
+
+        // Budgets leave about a fifth of headroom over the recorded figures, for differences between JVM builds
+        List<String> overBudget = new ArrayList<>();
+        checkBudget(overBudget, 106_000, OK, HttpMethod.GET, TransfolutPaths.ACCOUNTS_URI, null);
+        checkBudget(overBudget, 109_000, OK, HttpMethod.GET, TransfolutPaths.ACCOUNTS_URI + "/" + historyAcct, null);
+        checkBudget(overBudget, 107_000, OK, HttpMethod.GET, TransfolutPaths.ACCOUNTS_URI + "/" + historyAcct + "/available", null);
+        checkBudget(overBudget, 128_000, OK, HttpMethod.GET, TransfolutPaths.ACCOUNTS_URI + "/" + historyAcct + "/history", null);
+        checkBudget(overBudget, 57_000, OK, HttpMethod.GET, TransfolutPaths.METRICS_URI, null);
+        checkBudget(overBudget, 94_000, OK, HttpMethod.POST, TransfolutPaths.DEPOSIT_URI,
+                "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"3\"}");
+        checkBudget(overBudget, 92_000, OK, HttpMethod.POST, TransfolutPaths.WITHDRAW_URI,
+                "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}");
+        checkBudget(overBudget, 93_000, OK, HttpMethod.POST, TransfolutPaths.TRANSFER_URI,
+                "{\"fromAcct\":\"" + fromAcct + "\",\"toAcct\":\"" + toAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}");
+        // Rejected requests
+        checkBudget(overBudget, 92_000, Status.BAD_REQUEST.getStatusCode(), HttpMethod.POST, TransfolutPaths.DEPOSIT_URI,
+                "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"abc\"}");
+        checkBudget(overBudget, 113_000, OK, HttpMethod.POST, TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}");
+        if(!overBudget.isEmpty()) {
+            fail("Endpoints over their allocation budget:\n" + String.join("\n", overBudget));
+        }
+    }
+
+    /**
+     * Helper method to warm an endpoint up and measure the mean number of bytes it allocates per request.
+     * @param overBudget to add the endpoint to if it allocates more than its budget
+     * @param budget maximum number of bytes allocated per request
+     * @param expectedStatus status the endpoint answers the request with
+     */
+    private void checkBudget(List<String> overBudget, long budget, int expectedStatus, String method, String path,
+                             String json) {
+        for(int i = 0; i < WARMUP_REQUESTS; i++) {
+            application.request(method, path, json, expectedStatus);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < MEASURED_REQUESTS; i++) {
+            application.request(method, path, json, expectedStatus);
+        }
+        long allocated = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_REQUESTS;
+        if(allocated > budget) {
+            overBudget.add(String.format("%s %s allocated %,d bytes per request, over its budget of %,d bytes",
+                    method, path, allocated, budget));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.transfolut.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of latencies in microseconds with a relative error below 2%.
+ * Values below 128us are counted exactly, larger values in 64 linear sub-buckets per power of two.
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int EXPONENTS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + EXPONENTS * SUB_BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+
+    /**
+     * Records a latency.
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(indexOf(micros));
+        totalCount.increment();
+        totalMicros.add(micros);
+    }
+
+    long getCount() {
+        return totalCount.sum();
+    }
+
+    double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) totalMicros.sum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency in microseconds below which the given percentage of recorded values lie
+     */
+    long getPercentileMicros(double percentile) {
+        long count = getCount();
+        if(count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for(int index = 0; index < counts.length(); index++) {
+            seen += counts.get(index);
+            if(seen >= rank) {
+                return highestValueOf(index);
+            }
+        }
+        return highestValueOf(counts.length() - 1);
+    }
+
+    /**
+     * @return the highest latency in microseconds which has been recorded
+     */
+    long getMaxMicros() {
+        for(int index = counts.length() - 1; index >= 0; index--) {
+            if(counts.get(index) > 0) {
+                return highestValueOf(index);
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(long micros) {
+        if(micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = Math.min(63 - Long.numberOfLeadingZeros(micros) - 6, EXPONENTS);
+        long subBucket = Math.min(micros >>> shift, 2 * SUB_BUCKETS - 1) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if(index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
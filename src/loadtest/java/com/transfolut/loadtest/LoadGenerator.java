@@ -0,0 +1,163 @@
+package com.transfolut.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: requests are scheduled at a fixed target rate and handed to a pool of connections,
+ * so that a slow server builds up a queue of late requests instead of silently lowering the offered load.
+ */
+final class LoadGenerator {
+
+    private static final String CURRENCY = "GBP";
+    private final LoadTestConfig config;
+    private final String baseUri;
+    private final long[] accountNumbers;
+    private final ZipfianGenerator popularity;
+    private final List<Operation> operationWheel = new ArrayList<>();
+
+    /**
+     * @param config settings of the run
+     * @param baseUri base URI of the Transfolut API
+     * @param accountNumbers existing accounts, ordered from the most to the least popular
+     */
+    LoadGenerator(LoadTestConfig config, String baseUri, long[] accountNumbers) {
+        this.config = config;
+        this.baseUri = baseUri;
+        this.accountNumbers = accountNumbers;
+        this.popularity = new ZipfianGenerator(accountNumbers.length, config.zipfExponent);
+        for(Map.Entry<Operation, Integer> weight : config.mix.entrySet()) {
+            for(int i = 0; i < weight.getValue(); i++) {
+                operationWheel.add(weight.getKey());
+            }
+        }
+    }
+
+    /**
+     * Sends requests at the target rate for the given duration and waits for all of them to complete.
+     * @param seconds duration of the run
+     * @param title printed with every interval report, or null to skip interval reports
+     * @return the statistics of the whole run
+     */
+    LoadStatistics run(int seconds, String title) throws InterruptedException {
+        LoadStatistics statistics = new LoadStatistics();
+        AtomicReference<LoadStatistics> interval = new AtomicReference<>(new LoadStatistics());
+        ExecutorService connections = Executors.newFixedThreadPool(config.connections);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate;
+        long reportNanos = TimeUnit.SECONDS.toNanos(config.reportSeconds);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long nextReport = start + reportNanos;
+
+        for(long request = 0; ; request++) {
+            long intendedStart = start + request * intervalNanos;
+            if(intendedStart >= end) {
+                break;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if(wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if(title != null && intendedStart >= nextReport) {
+                interval.getAndSet(new LoadStatistics()).print(System.out, title + " interval");
+                nextReport += reportNanos;
+            }
+            Operation operation = operationWheel.get(ThreadLocalRandom.current().nextInt(operationWheel.size()));
+            LoadStatistics intervalStatistics = interval.get();
+            connections.execute(() -> {
+                long actualStart = System.nanoTime();
+                int status = send(operation);
+                long completed = System.nanoTime();
+                statistics.record(operation, intendedStart, actualStart, completed, status);
+                intervalStatistics.record(operation, intendedStart, actualStart, completed, status);
+            });
+        }
+        connections.shutdown();
+        connections.awaitTermination(1, TimeUnit.MINUTES);
+        return statistics;
+    }
+
+    /**
+     * Helper method to send a single request over a pooled keep-alive connection.
+     * @return the HTTP status or -1 if the request failed
+     */
+    private int send(Operation operation) {
+        String path = operation.path;
+        String body = null;
+        switch (operation) {
+            case CREATE:
+                body = String.format("{\"currency\":\"%s\"}", CURRENCY);
+                break;
+            case DEPOSIT:
+            case WITHDRAW:
+                body = String.format("{\"acct\":\"%d\",\"currency\":\"%s\",\"amount\":\"%d\"}",
+                        nextAccount(), CURRENCY, 1 + ThreadLocalRandom.current().nextInt(100));
+                break;
+            case TRANSFER:
+                long fromAccount = nextAccount();
+                long toAccount = nextAccount();
+                while(toAccount == fromAccount && accountNumbers.length > 1) {
+                    toAccount = nextAccount();
+                }
+                body = String.format("{\"fromAcct\":\"%d\",\"toAcct\":\"%d\",\"currency\":\"%s\",\"amount\":\"%d\"}",
+                        fromAccount, toAccount, CURRENCY, 1 + ThreadLocalRandom.current().nextInt(100));
+                break;
+            case READ:
+                path = path + "/" + nextAccount();
+                break;
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(baseUri + path).openConnection();
+            connection.setRequestMethod(operation.method);
+            if(body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            return status;
+        } catch (IOException e) {
+            if(connection != null) {
+                connection.disconnect();
+            }
+            return -1;
+        }
+    }
+
+    private long nextAccount() {
+        return accountNumbers[popularity.next()];
+    }
+
+    /**
+     * Helper method to read the full response, which allows the connection to be reused.
+     */
+    private static void drain(InputStream in) throws IOException {
+        if(in == null) {
+            return;
+        }
+        try (InputStream response = in) {
+            byte[] buffer = new byte[4096];
+            while(response.read(buffer) >= 0) {
+                // Discard the response
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.transfolut.loadtest;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests sent during one phase of a load test.
+ * Latencies are recorded twice: from the time the request was scheduled to be sent, which accounts for the
+ * queueing a slow server causes (coordinated omission correction), and from the time it was actually sent.
+ */
+final class LoadStatistics {
+
+    private final Map<Operation, OperationStatistics> operations = new EnumMap<>(Operation.class);
+    private final long startNanos = System.nanoTime();
+
+    LoadStatistics() {
+        for(Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStatistics());
+        }
+    }
+
+    /**
+     * Records the outcome of a request.
+     * @param operation type of the request
+     * @param intendedStartNanos time at which the request should have been sent according to the target rate
+     * @param actualStartNanos time at which the request was sent
+     * @param endNanos time at which the response was fully read
+     * @param status HTTP status of the response or -1 if the request failed
+     */
+    void record(Operation operation, long intendedStartNanos, long actualStartNanos, long endNanos, int status) {
+        OperationStatistics statistics = operations.get(operation);
+        statistics.correctedLatency.record(endNanos - intendedStartNanos);
+        statistics.serviceTime.record(endNanos - actualStartNanos);
+        if(status == 400) {
+            statistics.rejected.increment();
+        } else if(status < 200 || status >= 300) {
+            statistics.errors.increment();
+        }
+    }
+
+    /**
+     * Prints throughput and latency percentiles for every operation which has been sent.
+     */
+    void print(PrintStream out, String title) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        out.println(String.format("== %s (%.1fs)", title, seconds));
+        out.println(String.format("%-9s %9s %9s %8s %8s %9s %9s %9s %9s %9s %10s %12s",
+                "operation", "requests", "req/s", "rejected", "errors",
+                "mean(us)", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)", "p99 svc(us)"));
+        long total = 0;
+        for(Map.Entry<Operation, OperationStatistics> entry : operations.entrySet()) {
+            OperationStatistics statistics = entry.getValue();
+            LatencyHistogram latency = statistics.correctedLatency;
+            if(latency.getCount() == 0) {
+                continue;
+            }
+            total += latency.getCount();
+            out.println(String.format("%-9s %9d %9.1f %8d %8d %9.0f %9d %9d %9d %9d %10d %12d",
+                    entry.getKey().name().toLowerCase(), latency.getCount(), latency.getCount() / seconds,
+                    statistics.rejected.sum(), statistics.errors.sum(), latency.getMeanMicros(),
+                    latency.getPercentileMicros(50), latency.getPercentileMicros(90),
+                    latency.getPercentileMicros(99), latency.getPercentileMicros(99.9), latency.getMaxMicros(),
+                    statistics.serviceTime.getPercentileMicros(99)));
+        }
+        out.println(String.format("total     %9d %9.1f", total, total / seconds));
+    }
+
+    private static final class OperationStatistics {
+        private final LatencyHistogram correctedLatency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+}
@@ -0,0 +1,47 @@
+package com.transfolut.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from system properties such as -Dtransfolut.load.rate=2000
+ */
+final class LoadTestConfig {
+
+    // Requests per second sent regardless of how fast the server responds
+    static final String RATE = "transfolut.load.rate";
+    static final String DURATION_SECONDS = "transfolut.load.durationSeconds";
+    static final String WARMUP_SECONDS = "transfolut.load.warmupSeconds";
+    // Seconds between two interval reports, useful to spot degradation during long soak runs
+    static final String REPORT_SECONDS = "transfolut.load.reportSeconds";
+    static final String ACCOUNTS = "transfolut.load.accounts";
+    static final String ZIPF_EXPONENT = "transfolut.load.zipfExponent";
+    static final String CONNECTIONS = "transfolut.load.connections";
+    // Relative weights of the operations, e.g. create=1,deposit=40,withdraw=20,transfer=20,read=19
+    static final String MIX = "transfolut.load.mix";
+
+    final int rate = Integer.getInteger(RATE, 1000);
+    final int durationSeconds = Integer.getInteger(DURATION_SECONDS, 30);
+    final int warmupSeconds = Integer.getInteger(WARMUP_SECONDS, 10);
+    final int reportSeconds = Integer.getInteger(REPORT_SECONDS, 10);
+    final int accounts = Integer.getInteger(ACCOUNTS, 10000);
+    final double zipfExponent = Double.parseDouble(System.getProperty(ZIPF_EXPONENT, "0.99"));
+    final int connections = Integer.getInteger(CONNECTIONS, 64);
+    final Map<Operation, Integer> mix = parseMix(System.getProperty(MIX, "create=1,deposit=40,withdraw=20,transfer=20,read=19"));
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for(String weight : mix.split(",")) {
+            String[] operationAndWeight = weight.trim().split("=");
+            weights.put(Operation.valueOf(operationAndWeight[0].trim().toUpperCase()),
+                    Integer.parseInt(operationAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rate=%d/s duration=%ds warmup=%ds accounts=%d zipfExponent=%.2f connections=%d mix=%s",
+                rate, durationSeconds, warmupSeconds, accounts, zipfExponent, connections, mix);
+    }
+}
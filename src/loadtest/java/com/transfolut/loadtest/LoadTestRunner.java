@@ -0,0 +1,45 @@
+package com.transfolut.loadtest;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.jersey.TransfolutApp;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+/**
+ * Starts a Transfolut server in-process and drives it with an open-loop workload, printing throughput
+ * and latency percentiles for capacity planning. Run it with ./gradlew loadTest -Dtransfolut.load.rate=2000
+ */
+public class LoadTestRunner {
+
+    private static final Money INITIAL_BALANCE = Money.of(CurrencyUnit.GBP, 1000000);
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadTestConfig config = new LoadTestConfig();
+        System.out.println("Load test " + config);
+        HttpServer server = TransfolutApp.startServer();
+        try {
+            LoadGenerator generator = new LoadGenerator(config, TransfolutPaths.BASE_URI, seedAccounts(config.accounts));
+            if(config.warmupSeconds > 0) {
+                generator.run(config.warmupSeconds, null).print(System.out, "warmup");
+            }
+            generator.run(config.durationSeconds, "measurement").print(System.out, "measurement");
+        } finally {
+            server.shutdownNow();
+            BankService.getInstance().clearAccounts();
+        }
+    }
+
+    /**
+     * Helper method to create the accounts the workload runs against, directly on the {@link BankService}.
+     */
+    private static long[] seedAccounts(int accounts) {
+        long[] accountNumbers = new long[accounts];
+        for(int i = 0; i < accounts; i++) {
+            accountNumbers[i] = BankService.getInstance().createAccount(INITIAL_BALANCE.getCurrencyUnit().getCode());
+            BankService.getInstance().deposit(accountNumbers[i], INITIAL_BALANCE);
+        }
+        return accountNumbers;
+    }
+}
@@ -0,0 +1,22 @@
+package com.transfolut.loadtest;
+
+import com.transfolut.TransfolutPaths;
+
+/**
+ * Operations of the Transfolut API driven by the load generator.
+ */
+enum Operation {
+    CREATE("POST", TransfolutPaths.ACCOUNTS_URI),
+    DEPOSIT("POST", TransfolutPaths.DEPOSIT_URI),
+    WITHDRAW("POST", TransfolutPaths.WITHDRAW_URI),
+    TRANSFER("POST", TransfolutPaths.TRANSFER_URI),
+    READ("GET", TransfolutPaths.ACCOUNTS_URI);
+
+    final String method;
+    final String path;
+
+    Operation(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+}
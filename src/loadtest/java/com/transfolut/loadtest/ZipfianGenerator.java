@@ -0,0 +1,37 @@
+package com.transfolut.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks item ranks following a Zipfian distribution, so that a few hot accounts receive most of the traffic.
+ * The cumulative distribution is computed once and sampled with a binary search.
+ */
+final class ZipfianGenerator {
+
+    private final double[] cumulativeProbabilities;
+
+    /**
+     * @param items number of items to pick from
+     * @param exponent skew of the distribution, 0 is uniform and values around 1 are typical for hot spots
+     */
+    ZipfianGenerator(int items, double exponent) {
+        cumulativeProbabilities = new double[items];
+        double sum = 0;
+        for(int rank = 0; rank < items; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulativeProbabilities[rank] = sum;
+        }
+        for(int rank = 0; rank < items; rank++) {
+            cumulativeProbabilities[rank] /= sum;
+        }
+    }
+
+    /**
+     * @return the rank of the next item, 0 being the most popular
+     */
+    int next() {
+        int index = Arrays.binarySearch(cumulativeProbabilities, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulativeProbabilities.length - 1);
+    }
+}
@@ -8,7 +8,7 @@ public interface TransfolutMessages {
     String ACCOUNT_NOT_FOUND = "Bank account not found for supplied account number %s.";
     String INVALID_CURRENCY = "No currency found for currency code %s.";
     String HISTORY_ACCOUNT_CREATED = "%s : Bank account created.";
-    String HISTORY_TRANSACTION = "%s : Transaction of %s";
+    String HISTORY_TRANSACTION = "%s : Transaction of %s, balance %s";
     String INVALID_AMOUNT = "Amount must be a positive number, but was %s.";
     String TRANSFER_SUCCESS = "Transfer of %s between account %s and account %s was successful.";
     String DEPOSIT_SUCCESS = "Deposit of %s in account %s was successful.";
@@ -16,5 +16,37 @@ public interface TransfolutMessages {
     String TRANSFER_ACCOUNTS_NONEXISTENT = "Accounts to transfer between are non-existent.";
     String TRANSFER_ACCOUNTS_SAME = "The accounts to transfer between cannot be the same.";
     String INSUFFICIENT_BALANCE = "Insufficient balance for withdrawal of %s";
+    String NODE_UNAVAILABLE = "Node %s owning account %s is unavailable.";
+    String TRANSFER_CREDIT_PENDING = "Transfer of %s is pending until it can be credited to account %s, or refunded to account %s if it is rejected or cannot be credited in time.";
+    String INVALID_TRANSFER_ID = "Transfer ids must not be empty.";
+    String CREDIT_EXPIRED = "Credit of transfer %s arrived past its deadline and was not applied.";
+    String FOLLOWER_READ_ONLY = "This node is a read-only follower, changes must be sent to the primary.";
+    String INVALID_EVENT_POLICY = "Event policies must be drop or coalesce, but was %s.";
+    String INVALID_EVENT_TYPE = "Event types must be deposit or withdrawal, but was %s.";
+    String IMPORT_FILE_MISSING = "A file must be uploaded in the file part.";
+    String INVALID_IMPORT_FORMAT = "Import formats must be csv or ndjson, but was %s.";
+    String INVALID_IMPORT_LINE = "Line could not be parsed: %s";
+    String INVALID_IMPORT_OPERATION = "Operations must be deposit, withdraw or transfer, but was %s.";
+    String IMPORT_ACCOUNT_NOT_LOCAL = "Account %s belongs to node %s and must be imported there.";
+    String INVALID_EXPORT_FORMAT = "Export formats must be csv or ndjson, but was %s.";
+    String FX_TRANSFER_SUCCESS = "Transfer of %s, credited as %s, between account %s and account %s was successful.";
+    String FX_RATE_NOT_FOUND = "No exchange rate found from %s to %s.";
+    String INVALID_FX_RATE = "Exchange rates must be positive numbers, but was %s for %s.";
+    String FX_RATES_LOADED = "%s exchange rates against %s were loaded.";
+    String INVALID_INTERVAL = "Intervals must be positive numbers of milliseconds, but was %s.";
+    String SCHEDULED_TRANSFER_NOT_FOUND = "Scheduled transfer not found for supplied id %s.";
+    String SCHEDULED_TRANSFER_CANCELLED = "Scheduled transfer %s was cancelled.";
+    String HOLD_NOT_FOUND = "Hold not found for supplied id %s.";
+    String HOLD_CAPTURED = "%s was captured from hold %s.";
+    String HOLD_RELEASED = "Hold %s was released.";
+    String INVALID_CAPTURE_AMOUNT = "Captured amount %s must be positive and not exceed the held amount %s.";
+    String SCHEDULE_ACCOUNT_NOT_LOCAL = "Scheduled transfers must stay within one node, but account %s belongs to node %s.";
+    String INVALID_TIMESTAMP = "Timestamps must be numeric milliseconds since the epoch, but was %s.";
+    String TOO_MANY_CURRENCIES = "Account %s already holds balances in %s currencies.";
+    String BALANCE_TOO_LARGE = "Balance of account %s cannot hold a further %s.";
+    String TENANT_NOT_FOUND = "Tenant not found for supplied name %s.";
+    String TENANT_BUSY = "Tenant %s has too many requests in flight, retry later.";
+    String INVALID_VELOCITY_LIMIT = "Velocity limits must be of the form currency:maxAmount:maxCount, but was %s.";
+    String VELOCITY_AMOUNT_EXCEEDED = "Debit of %s from account %s would exceed its limit of %s debited per %s milliseconds.";
+    String VELOCITY_COUNT_EXCEEDED = "Debit of %s from account %s would exceed its limit of %s debits per %s milliseconds.";
 }
-
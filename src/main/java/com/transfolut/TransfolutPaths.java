@@ -7,4 +7,22 @@ public interface TransfolutPaths {
     String TRANSFER_URI = "/transfer";
     String DEPOSIT_URI = "/deposit";
     String WITHDRAW_URI = "/withdraw";
+    String METRICS_URI = "/metrics";
+    String CLUSTER_CREDIT_URI = "/cluster/credit";
+    String EVENTS_URI = "/events";
+    String IMPORT_URI = "/import";
+    String EXPORT_URI = "/export";
+    String FX_RATES_URI = "/fx/rates";
+    String SCHEDULED_TRANSFERS_URI = "/scheduled-transfers";
+    String HOLDS_URI = "/holds";
+    // Header naming the node which forwarded a request to the owner of an account
+    String FORWARDED_BY_HEADER = "X-Transfolut-Forwarded-By";
+    // Header reporting the replication lag in milliseconds of a follower
+    String REPLICATION_LAG_HEADER = "X-Transfolut-Replication-Lag";
+    // Header naming the tenant a request is about, which can also be selected with a /tenants/{tenant} path prefix
+    String TENANT_HEADER = "X-Transfolut-Tenant";
+    String TENANTS_URI = "/tenants";
+    // Header carrying the id of the trace of a sampled request, shared by every node the request goes through
+    String TRACE_HEADER = "X-Transfolut-Trace-Id";
+    String TRACES_URI = "/traces";
 }
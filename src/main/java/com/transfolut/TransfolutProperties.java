@@ -0,0 +1,89 @@
+package com.transfolut;
+
+/**
+ * List of system properties that can be used to tune the application, e.g. -Dtransfolut.history.retention=1000
+ */
+public interface TransfolutProperties {
+    // Number of history entries kept on heap per account before older ones are spilled to disk, 0 keeps all on heap
+    String HISTORY_RETENTION = "transfolut.history.retention";
+    // Directory holding the spilled history segment files, defaults to a new temporary directory
+    String HISTORY_DIR = "transfolut.history.dir";
+    // Maximum size in bytes of a single history segment file
+    String HISTORY_SEGMENT_SIZE = "transfolut.history.segmentSize";
+    // Maximum number of accounts held in memory before cold accounts are paged out to disk, 0 holds all accounts in memory
+    String ACCOUNTS_WORKING_SET = "transfolut.accounts.workingSet";
+    // Directory holding the accounts paged out of memory, defaults to a new temporary directory
+    String ACCOUNTS_DIR = "transfolut.accounts.dir";
+    // Comma separated base URIs of all nodes of the cluster, unset runs a standalone node owning every account
+    String CLUSTER_NODES = "transfolut.cluster.nodes";
+    // Base URI of this node, which must be one of the cluster nodes, defaults to the base URI
+    String CLUSTER_SELF = "transfolut.cluster.self";
+    // Number of positions of every node on the consistent hash ring
+    String CLUSTER_VIRTUAL_NODES = "transfolut.cluster.virtualNodes";
+    // Local port the primary streams its replication journal to followers on, unset disables the journal
+    String REPLICATION_PORT = "transfolut.replication.port";
+    // Directory holding the replication journal of the primary, defaults to a new temporary directory
+    String REPLICATION_DIR = "transfolut.replication.dir";
+    // Size in bytes beyond which the replication journal rolls over to a new segment and snapshots the accounts
+    String REPLICATION_SEGMENT_BYTES = "transfolut.replication.segmentBytes";
+    // Maximum number of records waiting to be written to the replication journal, changes wait for room beyond it
+    String REPLICATION_CAPACITY = "transfolut.replication.capacity";
+    // host:port of the primary journal to follow, which turns this node into a read-only follower
+    String REPLICATION_PRIMARY = "transfolut.replication.primary";
+    // Maximum number of balance change events waiting to be sent to a subscriber before the oldest are dropped
+    String EVENTS_BUFFER_SIZE = "transfolut.events.bufferSize";
+    // Number of threads writing balance change events to their subscribers
+    String EVENTS_SENDERS = "transfolut.events.senders";
+    // Interval in seconds of the heartbeats sent to event subscribers, which drop the subscribers that disconnected
+    String EVENTS_HEARTBEAT_SECONDS = "transfolut.events.heartbeatSeconds";
+    // Number of lines of a bulk import file read and applied at a time
+    String IMPORT_BATCH_SIZE = "transfolut.import.batchSize";
+    // Number of threads applying the operations of bulk imports, defaults to the number of processors
+    String IMPORT_THREADS = "transfolut.import.threads";
+    // Number of account number ranges a ledger export is split into
+    String EXPORT_RANGES = "transfolut.export.ranges";
+    // Number of threads reading account ranges of ledger exports, defaults to the number of processors
+    String EXPORT_THREADS = "transfolut.export.threads";
+    // Duration in milliseconds of a tick of the timing wheel running timed tasks, which are due at the end of a tick
+    String TIMER_TICK_MILLIS = "transfolut.timer.tickMillis";
+    // Number of threads executing the scheduled transfers and hold expiries which have become due
+    String TIMER_THREADS = "transfolut.timer.threads";
+    // Time in milliseconds after which a hold placed without an expiry time is released
+    String HOLD_EXPIRY_MILLIS = "transfolut.holds.expiryMillis";
+    // Number of synthetic deposits, withdrawals and transfers applied in process before the server starts listening, 0 disables the warmup
+    String WARMUP_ITERATIONS = "transfolut.warmup.iterations";
+    // Size in bytes above which responses are compressed for the clients accepting it
+    String COMPRESSION_THRESHOLD = "transfolut.compression.threshold";
+    // Comma separated content encodings offered to clients in order of preference, empty disables compression
+    String COMPRESSION_ENCODINGS = "transfolut.compression.encodings";
+    // Level of compression of responses, from 1 for the fastest to 9 for the smallest, defaults to the zlib default
+    String COMPRESSION_LEVEL = "transfolut.compression.level";
+    // Maximum number of idle compressors kept for every encoding, defaults to twice the number of processors
+    String COMPRESSION_POOL_SIZE = "transfolut.compression.poolSize";
+    // Comma separated names of the tenants hosted next to the default one, each with its own accounts and threads
+    String TENANTS = "transfolut.tenants";
+    // Maximum number of requests of a tenant in flight at a time, 0 for no limit
+    String TENANT_MAX_CONCURRENT_REQUESTS = "transfolut.tenants.maxConcurrentRequests";
+    // Format of the property overriding the maximum number of requests in flight of a single tenant
+    String TENANT_MAX_CONCURRENT_REQUESTS_OVERRIDE = "transfolut.tenants.%s.maxConcurrentRequests";
+    // Comma separated per account limits on debits of the form currency:maxAmount:maxCount, 0 for no limit, empty disables the checks
+    String VELOCITY_LIMITS = "transfolut.velocity.limits";
+    // Duration in milliseconds of the sliding window the velocity limits apply to
+    String VELOCITY_WINDOW_MILLIS = "transfolut.velocity.windowMillis";
+    // Directory the audit trail of every account creation and transaction is written to, unset disables the audit trail
+    String AUDIT_DIR = "transfolut.audit.dir";
+    // Maximum number of audit events waiting to be written
+    String AUDIT_CAPACITY = "transfolut.audit.capacity";
+    // What changes do while the audit queue is full: block until there is room, or drop their audit event
+    String AUDIT_POLICY = "transfolut.audit.policy";
+    // Size in bytes beyond which the audit trail rolls over to a new file
+    String AUDIT_MAX_FILE_BYTES = "transfolut.audit.maxFileBytes";
+    // Fraction of the requests traced, from 0 for none to 1 for all, requests carrying a trace id are always traced
+    String TRACING_SAMPLE_RATE = "transfolut.tracing.sampleRate";
+    // Duration in milliseconds from which a traced request is kept as a slow trace
+    String TRACING_SLOW_MILLIS = "transfolut.tracing.slowMillis";
+    // Number of most recent slow traces kept in memory
+    String TRACING_CAPACITY = "transfolut.tracing.capacity";
+    // Serves plain deposits, withdrawals and transfers with a Grizzly handler in front of Jersey when true
+    String FAST_PATH = "transfolut.fastPath";
+}
@@ -0,0 +1,107 @@
+package com.transfolut.bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Local on-disk store of the {@link BankAccount}s paged out of the in-memory working set.
+ * Every account is kept in its own file, which is replaced atomically whenever the account is paged out again.
+ */
+final class AccountStore {
+
+    private static final String ACCOUNT_SUFFIX = ".account";
+    private final Path directory;
+
+    AccountStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the full state of an account to its file.
+     */
+    void write(BankAccount account) {
+        Path file = accountFile(account.getBankAccountNumber());
+        Path partialFile = file.resolveSibling(file.getFileName() + ".partial");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partialFile)))) {
+                account.writeTo(out);
+            }
+            Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param bankAcctNumber account number to read
+     * @param historyFactory supplies the empty history to restore the account history into
+     * @return the stored account or null if no account is stored under that number
+     */
+    BankAccount read(long bankAcctNumber, Supplier<TieredHistory> historyFactory) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(accountFile(bankAcctNumber))))) {
+            return BankAccount.readFrom(in, historyFactory.get());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true if an account is stored under that number
+     */
+    boolean contains(long bankAcctNumber) {
+        return Files.exists(accountFile(bankAcctNumber));
+    }
+
+    /**
+     * @return the numbers of all stored accounts
+     */
+    List<Long> getAccountNumbers() {
+        List<Long> accountNumbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ACCOUNT_SUFFIX)) {
+            for(Path file : files) {
+                String fileName = file.getFileName().toString();
+                accountNumbers.add(Long.parseLong(fileName.substring(0, fileName.length() - ACCOUNT_SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return accountNumbers;
+    }
+
+    /**
+     * Deletes all stored accounts.
+     */
+    void clear() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ACCOUNT_SUFFIX)) {
+            for(Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path accountFile(long bankAcctNumber) {
+        return directory.resolve(bankAcctNumber + ACCOUNT_SUFFIX);
+    }
+}
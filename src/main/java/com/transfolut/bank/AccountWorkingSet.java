@@ -0,0 +1,223 @@
+package com.transfolut.bank;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-memory working set of {@link BankAccount}s, paging cold accounts out to an {@link AccountStore}
+ * and faulting them back in on access.
+ * Least recently used accounts are approximated with the CLOCK policy: every access sets a reference bit,
+ * and the eviction hand only pages out accounts which have not been referenced since its last pass,
+ * so that hits never need to reorder a shared list.
+ * Every move of an account between memory and the store, whether it is faulted in, paged out or created,
+ * holds the lock of the stripe of its number, so that an account number is never in flight both ways at once.
+ * Lookups of resident accounts take no lock, and disk reads never hold a lock of the account map.
+ */
+final class AccountWorkingSet {
+
+    // Number of locks account numbers are striped over, a power of two
+    private static final int STRIPES = 64;
+
+    private final ConcurrentLongMap<BankAccount> residentAccounts;
+    private final AccountStore store;
+    private final int capacity;
+    private final Supplier<TieredHistory> historyFactory;
+    private final LedgerListener ledgerListener;
+    private final Queue<Long> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param residentAccounts map of accounts held in memory, shared with the {@link BankService}
+     * @param store to page accounts out to
+     * @param capacity maximum number of accounts held in memory
+     * @param historyFactory supplies the empty history of accounts faulted back in
+     * @param ledgerListener notified of the transactions applied to accounts faulted back in
+     */
+    AccountWorkingSet(ConcurrentLongMap<BankAccount> residentAccounts, AccountStore store, int capacity,
+                      Supplier<TieredHistory> historyFactory, LedgerListener ledgerListener) {
+        this.residentAccounts = residentAccounts;
+        this.store = store;
+        this.capacity = capacity;
+        this.historyFactory = historyFactory;
+        this.ledgerListener = ledgerListener;
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Records an access to an account found in memory.
+     */
+    BankAccount hit(BankAccount account) {
+        hits.increment();
+        account.markReferenced();
+        return account;
+    }
+
+    /**
+     * Loads an account which is not in memory from the store, or returns it if another thread loaded it first.
+     * @return the account or null if it does not exist
+     */
+    BankAccount faultIn(long bankAcctNumber) {
+        BankAccount account = acquire(bankAcctNumber);
+        if(account != null) {
+            account.unpin();
+        }
+        return account;
+    }
+
+    /**
+     * Looks up an account in order to update it, pinning it so that it stays in memory until it is unpinned.
+     * Pinning an account found in memory may fail if the account is being paged out, in which case it is
+     * looked up again with its stripe locked, where no account can be half paged out, so that at most
+     * two lookups are ever needed.
+     * @return the pinned account or null if it does not exist
+     */
+    BankAccount acquire(long bankAcctNumber) {
+        BankAccount account = residentAccounts.get(bankAcctNumber);
+        if(account != null && account.pin()) {
+            hit(account);
+            return account;
+        }
+        BankAccount faultedIn = null;
+        ReentrantLock stripe = stripe(bankAcctNumber);
+        stripe.lock();
+        try {
+            account = residentAccounts.get(bankAcctNumber);
+            if(account != null) {
+                // Accounts are paged out with their stripe locked, so a resident account is never marked evicted here
+                account.pin();
+                hit(account);
+                return account;
+            }
+            misses.increment();
+            faultedIn = store.read(bankAcctNumber, historyFactory);
+            if(faultedIn == null) {
+                return null;
+            }
+            faultedIn.setLedgerListener(ledgerListener);
+            // Pinned before it is published, so that no eviction can page it out before the caller is done with it
+            faultedIn.pin();
+            residentAccounts.putIfAbsent(bankAcctNumber, faultedIn);
+            clock.add(bankAcctNumber);
+        } finally {
+            stripe.unlock();
+        }
+        evictIfFull();
+        return faultedIn;
+    }
+
+    /**
+     * Adds a newly created account to the working set, unless an account with the same number is already
+     * in memory or paged out. The check and the addition hold the stripe of the number, so that no account
+     * with that number can be paged out in between.
+     * @return false if the account number is already taken
+     */
+    boolean admit(BankAccount account) {
+        long bankAcctNumber = account.getBankAccountNumber();
+        ReentrantLock stripe = stripe(bankAcctNumber);
+        stripe.lock();
+        try {
+            if(residentAccounts.get(bankAcctNumber) != null || store.contains(bankAcctNumber)
+                    || residentAccounts.putIfAbsent(bankAcctNumber, account) != null) {
+                return false;
+            }
+            clock.add(bankAcctNumber);
+        } finally {
+            stripe.unlock();
+        }
+        evictIfFull();
+        return true;
+    }
+
+    /**
+     * @return the store holding the accounts paged out of memory
+     */
+    AccountStore getStore() {
+        return store;
+    }
+
+    /**
+     * Removes all accounts from the working set and the store.
+     */
+    void clear() {
+        clock.clear();
+        store.clear();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Helper method to advance the clock hand until the working set fits its capacity again.
+     * Accounts with an operation in flight and numbers whose stripe is busy moving an account are put back
+     * on the clock for a later turn, and only one thread evicts at a time.
+     */
+    private void evictIfFull() {
+        if(residentAccounts.size() <= capacity || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Two full turns of the clock are enough to find every account which is not pinned
+            int remainingSteps = 2 * residentAccounts.size();
+            while(residentAccounts.size() > capacity && remainingSteps-- > 0) {
+                Long accountNumber = clock.poll();
+                if(accountNumber == null) {
+                    return;
+                }
+                ReentrantLock stripe = stripe(accountNumber);
+                if(!stripe.tryLock()) {
+                    clock.add(accountNumber);
+                    continue;
+                }
+                try {
+                    evict(accountNumber);
+                } finally {
+                    stripe.unlock();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Helper method to page an account out if it has not been referenced since the last turn and is not pinned,
+     * with its stripe locked. Numbers without a resident account are dropped from the clock, as accounts are only
+     * added to the clock once they are resident and only leave memory here or when all accounts are cleared.
+     */
+    private void evict(long accountNumber) {
+        BankAccount account = residentAccounts.get(accountNumber);
+        if(account == null) {
+            return;
+        }
+        if(account.clearReferenced() || !account.markEvicted()) {
+            clock.add(accountNumber);
+            return;
+        }
+        // The account must be stored before it leaves the map, so that it can be faulted back in
+        store.write(account);
+        residentAccounts.remove(accountNumber, account);
+        evictions.increment();
+    }
+
+    private ReentrantLock stripe(long bankAcctNumber) {
+        return stripes[(int) (bankAcctNumber ^ (bankAcctNumber >>> 32)) & (STRIPES - 1)];
+    }
+}
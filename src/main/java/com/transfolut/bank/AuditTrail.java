@@ -0,0 +1,274 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Audit trail of every account creation and transaction of a {@link BankService}, written to rolling CSV files.
+ * The threads applying changes only publish a small event to a bounded queue, and a single writer thread formats
+ * the events in batches and appends them to the current file, which is rolled over once it exceeds its maximum size.
+ * When the writer falls behind and the queue is full, the backpressure policy decides whether the threads applying
+ * changes wait for room or drop their events, in which case the number of dropped events is written to the trail.
+ * Every line holds the time the change was applied, the event, the account, the currency, the amount, the balance
+ * left behind and the sequence of the change: dropped lines only hold the time and the number of dropped events.
+ */
+public final class AuditTrail implements LedgerListener {
+
+    private static final String HEADER = "timestamp,event,acct,currency,amount,balance,sequence\n";
+    private static final String AUDIT_FILE = "audit-%06d.csv";
+    private static final Pattern AUDIT_FILE_PATTERN = Pattern.compile("audit-(\\d+)\\.csv");
+    private static final int BATCH_SIZE = 1024;
+    // Time the writer and waiting producers park for when there is nothing to do
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    enum Policy {
+        BLOCK, DROP;
+
+        /**
+         * @param policy name of the policy in any case, or null for the default block policy
+         */
+        static Policy of(String policy) {
+            return policy == null ? BLOCK : valueOf(policy.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final BankService bankService;
+    private final Path directory;
+    private final MpscArrayQueue<AuditEvent> events;
+    private final Policy policy;
+    private final long maxFileBytes;
+    private final StringBuilder batch = new StringBuilder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder totalLag = new LongAdder();
+    private final LongAccumulator maximumLag = new LongAccumulator(Long::max, 0);
+    private final Thread writer = new Thread(this::writeEvents, "transfolut-audit-writer");
+    private volatile boolean running = true;
+    // Only written by the writer thread
+    private volatile long written;
+    private volatile int fileIndex;
+    private long reportedDropped;
+    // Oldest and summed times of the changes in the batch, to measure how long they take to be written
+    private long batchOldestTimestamp = Long.MAX_VALUE;
+    private long batchTimestamps;
+    private long fileBytes;
+    private Writer file;
+
+    /**
+     * Registers the audit trail with a bank service. Files already in the directory are kept, the trail
+     * starts a new file following the last one.
+     * @param bankService whose changes are audited
+     * @param directory to write the audit files to
+     * @param capacity maximum number of events waiting to be written
+     * @param policy applied to events published while the queue is full, block or drop
+     * @param maxFileBytes size in bytes beyond which the trail rolls over to a new file
+     */
+    public AuditTrail(BankService bankService, Path directory, int capacity, String policy, long maxFileBytes) {
+        this.bankService = bankService;
+        this.directory = directory;
+        this.events = new MpscArrayQueue<>(capacity);
+        this.policy = Policy.of(policy);
+        this.maxFileBytes = maxFileBytes;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                this.fileIndex = files.map(path -> AUDIT_FILE_PATTERN.matcher(path.getFileName().toString()))
+                        .filter(Matcher::matches)
+                        .mapToInt(matcher -> Integer.parseInt(matcher.group(1)))
+                        .max()
+                        .orElse(-1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.setDaemon(true);
+        bankService.addLedgerListener(this);
+        bankService.addMetrics(this::getMetrics);
+    }
+
+    /**
+     * Starts writing the audit trail.
+     */
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Stops auditing changes, and waits for the events published so far to be written.
+     */
+    public void close() {
+        bankService.removeLedgerListener(this);
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+        publish(new AuditEvent(bankAcctNumber, primaryCurrency, null, null, timestamp, 0));
+    }
+
+    @Override
+    public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp,
+                                   long sequence) {
+        publish(new AuditEvent(bankAcctNumber, transaction.getCurrencyUnit(), transaction.getAmount(), balanceAfter,
+                timestamp, sequence));
+    }
+
+    /**
+     * @return the metrics of the audit trail
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("audit.pending", (long) events.size());
+        metrics.put("audit.written", written);
+        metrics.put("audit.dropped", dropped.sum());
+        metrics.put("audit.blocked", blocked.sum());
+        metrics.put("audit.file", (long) fileIndex);
+        metrics.put("audit.lagMillis.total", totalLag.sum());
+        metrics.put("audit.lagMillis.max", maximumLag.get());
+        return metrics;
+    }
+
+    /**
+     * Helper method to queue an event, applying the backpressure policy if the queue is full.
+     * Producers waiting for room drop their event once the trail is closed, as the writer no longer makes room.
+     */
+    private void publish(AuditEvent event) {
+        if(events.offer(event)) {
+            return;
+        }
+        if(policy == Policy.DROP) {
+            dropped.increment();
+            return;
+        }
+        blocked.increment();
+        while(!events.offer(event)) {
+            if(!running) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    /**
+     * Helper method run by the writer thread to append the queued events in batches until the trail is closed
+     * and every queued event has been written.
+     */
+    private void writeEvents() {
+        try {
+            rollOver();
+            while(true) {
+                boolean stopping = !running;
+                int drained = events.drain(this::format, BATCH_SIZE);
+                long droppedSoFar = dropped.sum();
+                if(droppedSoFar > reportedDropped) {
+                    batch.append(System.currentTimeMillis()).append(",dropped,,,")
+                            .append(droppedSoFar - reportedDropped).append(",,\n");
+                    reportedDropped = droppedSoFar;
+                }
+                if(batch.length() > 0) {
+                    writeBatch(drained);
+                } else if(stopping) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            }
+            file.close();
+        } catch (IOException e) {
+            // Producers waiting for room drop their events rather than wait for a writer which has stopped
+            running = false;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void format(AuditEvent event) {
+        batchOldestTimestamp = Math.min(batchOldestTimestamp, event.timestamp);
+        batchTimestamps += event.timestamp;
+        batch.append(event.timestamp).append(',');
+        if(event.amount == null) {
+            batch.append("created,").append(event.acctNumber).append(',').append(event.currency.getCode()).append(",,,\n");
+        } else {
+            batch.append("transaction,").append(event.acctNumber).append(',').append(event.currency.getCode()).append(',')
+                    .append(event.amount.toPlainString()).append(',').append(event.balanceAfter.toPlainString()).append(',')
+                    .append(event.sequence).append('\n');
+        }
+    }
+
+    /**
+     * Helper method to append the formatted batch to the current file and record how long its changes took
+     * from being applied to being written.
+     */
+    private void writeBatch(int drained) throws IOException {
+        file.write(batch.toString());
+        file.flush();
+        fileBytes += batch.length();
+        if(drained > 0) {
+            long now = System.currentTimeMillis();
+            totalLag.add(Math.max(0, now * drained - batchTimestamps));
+            maximumLag.accumulate(now - batchOldestTimestamp);
+            written += drained;
+            batchOldestTimestamp = Long.MAX_VALUE;
+            batchTimestamps = 0;
+        }
+        batch.setLength(0);
+        if(fileBytes >= maxFileBytes) {
+            file.close();
+            rollOver();
+        }
+    }
+
+    private void rollOver() throws IOException {
+        fileIndex++;
+        file = Files.newBufferedWriter(directory.resolve(String.format(AUDIT_FILE, fileIndex)), StandardCharsets.UTF_8);
+        file.write(HEADER);
+        fileBytes = HEADER.length();
+    }
+
+    /**
+     * Change published by the thread applying it, only formatted by the writer.
+     */
+    private static final class AuditEvent {
+        private final long acctNumber;
+        private final CurrencyUnit currency;
+        // Null for account creations
+        private final BigDecimal amount;
+        private final BigDecimal balanceAfter;
+        private final long timestamp;
+        private final long sequence;
+
+        private AuditEvent(long acctNumber, CurrencyUnit currency, BigDecimal amount, BigDecimal balanceAfter,
+                           long timestamp, long sequence) {
+            this.acctNumber = acctNumber;
+            this.currency = currency;
+            this.amount = amount;
+            this.balanceAfter = balanceAfter;
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.transfolut.bank;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free balance of a single currency held by a {@link BankAccount}.
+ * Every update is a compare-and-set on the current {@link BalanceSnapshot}, so the sufficiency check of a debit
+ * and the debit itself happen atomically. The timestamp and sequence of a snapshot are taken inside the
+ * compare-and-set loop, which keeps snapshots of the same currency ordered the way they were applied.
+ * A cell that is retired holds no balance anymore and must be replaced in the account before it can be credited again.
+ * Debits and holds are checked against the available amount, so that money held for a later capture cannot be spent.
+ */
+final class BalanceCell {
+
+    private final AtomicReference<BalanceSnapshot> snapshot;
+    private final AtomicLong sequencer;
+
+    BalanceCell(BalanceSnapshot initialSnapshot, AtomicLong sequencer) {
+        this.snapshot = new AtomicReference<>(initialSnapshot);
+        this.sequencer = sequencer;
+    }
+
+    /**
+     * @return the current amount or null if the cell has been retired
+     */
+    BigDecimal get() {
+        BalanceSnapshot current = snapshot.get();
+        return current.isRetired() ? null : current.getAmount();
+    }
+
+    /**
+     * @return the current snapshot, which is flagged as retired if the cell has been retired
+     */
+    BalanceSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Adds the given amount to the balance.
+     * @param delta amount to add
+     * @return the new snapshot or null if the cell was retired before the credit could be applied
+     */
+    BalanceSnapshot credit(BigDecimal delta) {
+        while (true) {
+            BalanceSnapshot current = snapshot.get();
+            if (current.isRetired()) {
+                return null;
+            }
+            BalanceSnapshot updated = next(current, current.getAmount().add(delta));
+            if (snapshot.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Removes the given amount from the balance if enough funds are available.
+     * @param delta amount to remove
+     * @return the new snapshot or null if the funds were insufficient or the cell was retired
+     */
+    BalanceSnapshot debit(BigDecimal delta) {
+        while (true) {
+            BalanceSnapshot current = snapshot.get();
+            if (current.isRetired() || current.getAvailable().compareTo(delta) < 0) {
+                return null;
+            }
+            BalanceSnapshot updated = next(current, current.getAmount().subtract(delta));
+            if (snapshot.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Reserves the given amount of the balance if enough funds are available, without debiting it.
+     * @param delta amount to hold
+     * @return false if the funds were insufficient or the cell was retired
+     */
+    boolean hold(BigDecimal delta) {
+        while (true) {
+            BalanceSnapshot current = snapshot.get();
+            if (current.isRetired() || current.getAvailable().compareTo(delta) < 0) {
+                return false;
+            }
+            if (snapshot.compareAndSet(current, current.withHeld(current.getHeld().add(delta)))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a held amount to the available balance.
+     * @param delta amount held by {@link #hold(BigDecimal)}
+     */
+    void release(BigDecimal delta) {
+        while (true) {
+            BalanceSnapshot current = snapshot.get();
+            if (snapshot.compareAndSet(current, current.withHeld(current.getHeld().subtract(delta)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Debits part or all of a held amount and gives back the rest, in a single update of the balance.
+     * @param delta amount held by {@link #hold(BigDecimal)}
+     * @param captured amount to debit, not more than the held amount
+     * @return the new snapshot
+     */
+    BalanceSnapshot capture(BigDecimal delta, BigDecimal captured) {
+        while (true) {
+            BalanceSnapshot current = snapshot.get();
+            BalanceSnapshot updated = next(current, current.getAmount().subtract(captured))
+                    .withHeld(current.getHeld().subtract(delta));
+            if (snapshot.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Retires the cell if its balance is zero, so that no further credit can land on it.
+     * A zero balance never has any amount held.
+     * @return true if the cell was retired by this call
+     */
+    boolean retireIfZero() {
+        BalanceSnapshot current = snapshot.get();
+        return !current.isRetired() && current.getAmount().signum() == 0
+                && snapshot.compareAndSet(current, current.retire());
+    }
+
+    /**
+     * Helper method to build the snapshot following the current one, never going back in time and keeping its holds.
+     */
+    private BalanceSnapshot next(BalanceSnapshot current, BigDecimal amount) {
+        long sequence = sequencer.incrementAndGet();
+        long timestamp = Math.max(current.getTimestamp(), System.currentTimeMillis());
+        return new BalanceSnapshot(amount, current.getHeld(), timestamp, sequence);
+    }
+}
@@ -0,0 +1,84 @@
+package com.transfolut.bank;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable balance of a single currency as left behind by a ledger operation.
+ * Snapshots of a currency are ordered by timestamp and then by the account wide sequence of the operation,
+ * which is the order in which they were applied.
+ * Part of the balance may be held by authorization holds, which leaves it in the balance but out of the available amount.
+ */
+final class BalanceSnapshot implements Comparable<BalanceSnapshot> {
+
+    private final BigDecimal amount;
+    private final BigDecimal held;
+    private final long timestamp;
+    private final long sequence;
+    private final boolean retired;
+
+    BalanceSnapshot(BigDecimal amount, long timestamp, long sequence) {
+        this(amount, BigDecimal.ZERO, timestamp, sequence, false);
+    }
+
+    /**
+     * @param held part of the amount reserved by holds, never more than the amount itself
+     */
+    BalanceSnapshot(BigDecimal amount, BigDecimal held, long timestamp, long sequence) {
+        this(amount, held, timestamp, sequence, false);
+    }
+
+    private BalanceSnapshot(BigDecimal amount, BigDecimal held, long timestamp, long sequence, boolean retired) {
+        this.amount = amount;
+        this.held = held;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        this.retired = retired;
+    }
+
+    BigDecimal getAmount() {
+        return amount;
+    }
+
+    BigDecimal getHeld() {
+        return held;
+    }
+
+    /**
+     * @return the part of the amount which is not held, and can be withdrawn or held
+     */
+    BigDecimal getAvailable() {
+        return amount.subtract(held);
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * @return a copy of this snapshot that no longer accepts any update
+     */
+    BalanceSnapshot retire() {
+        return new BalanceSnapshot(amount, held, timestamp, sequence, true);
+    }
+
+    /**
+     * @return a copy of this snapshot with another held amount, which is not a new ledger operation
+     */
+    BalanceSnapshot withHeld(BigDecimal held) {
+        return new BalanceSnapshot(amount, held, timestamp, sequence, retired);
+    }
+
+    @Override
+    public int compareTo(BalanceSnapshot other) {
+        int byTimestamp = Long.compare(timestamp, other.timestamp);
+        return byTimestamp != 0 ? byTimestamp : Long.compare(sequence, other.sequence);
+    }
+}
@@ -3,15 +3,17 @@ package com.transfolut.bank;
 import com.transfolut.TransfolutMessages;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
-import org.joda.time.LocalDateTime;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -23,15 +25,51 @@ public class BankAccount {
 
     private final long bankAccountNumber;
     private final CurrencyUnit primaryCurrency;
-    private final Map<CurrencyUnit, BigDecimal> balances = new ConcurrentHashMap<>();
-    private final Queue<String> history = new ConcurrentLinkedQueue<>();
-    private final ReentrantLock balanceReadLock = new ReentrantLock();
+    private final long creationTime;
+    private static final BalanceSnapshot EMPTY_BALANCE = new BalanceSnapshot(BigDecimal.ZERO, 0L, 0L);
+    private static final int EVICTED = -1;
+    private final Map<CurrencyUnit, BalanceCell> balances = new ConcurrentHashMap<>();
+    private final TieredHistory history;
+    private final AtomicLong sequencer = new AtomicLong();
+    // Bumped once every change to the account is complete, so that a reader never sees a version newer than its state
+    private final AtomicLong version = new AtomicLong(1);
+    // Number of operations in flight when accounts are paged, or EVICTED once the account has been paged out
+    private final AtomicInteger pins = new AtomicInteger();
+    private volatile boolean referenced = true;
+    // Set before the account is published to other threads, so it needs no synchronization
+    private LedgerListener ledgerListener = new LedgerListeners();
 
     BankAccount(long bankAcctNumber, CurrencyUnit primaryCurrency) {
+        this(bankAcctNumber, primaryCurrency, TieredHistory.inHeap());
+    }
+
+    BankAccount(long bankAcctNumber, CurrencyUnit primaryCurrency, TieredHistory history) {
+        this(bankAcctNumber, primaryCurrency, history, System.currentTimeMillis());
+    }
+
+    /**
+     * @param creationTime time the account was created at in milliseconds since the epoch
+     */
+    BankAccount(long bankAcctNumber, CurrencyUnit primaryCurrency, TieredHistory history, long creationTime) {
         this.bankAccountNumber = bankAcctNumber;
         this.primaryCurrency = primaryCurrency;
-        balances.putIfAbsent(primaryCurrency, BigDecimal.ZERO);
-        history.add(String.format(TransfolutMessages.HISTORY_ACCOUNT_CREATED, new LocalDateTime(System.currentTimeMillis())));
+        this.creationTime = creationTime;
+        this.history = history;
+        BalanceSnapshot initialBalance = new BalanceSnapshot(BigDecimal.ZERO, creationTime, sequencer.incrementAndGet());
+        balances.putIfAbsent(primaryCurrency, new BalanceCell(initialBalance, sequencer));
+        history.add(HistoryEntry.accountCreated(creationTime));
+    }
+
+    /**
+     * Creates an account from the header written by {@link #writeTo(DataOutput)}, without recording its creation.
+     */
+    private BankAccount(DataInput in, TieredHistory history) throws IOException {
+        this.bankAccountNumber = in.readLong();
+        this.primaryCurrency = CurrencyUnit.of(in.readUTF());
+        this.creationTime = in.readLong();
+        this.history = history;
+        this.sequencer.set(in.readLong());
+        this.version.set(in.readLong());
     }
 
     /**
@@ -41,20 +79,106 @@ public class BankAccount {
         return bankAccountNumber;
     }
 
+    /**
+     * Returns the version of the account, which grows with every change to its balances, holds or history.
+     * The version must be read before the state it describes, as a change is only counted once it is complete:
+     * the state read afterwards is then at least as recent as the version, and any change still in flight
+     * bumps the version again.
+     * @return the version of the account
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     /**
      * @return the balances of the {@link BankAccount}
      */
     public List<String> getBalances() {
-        return balances.entrySet().stream()
-                .map(balance -> Money.of(balance.getKey(), balance.getValue()).toString())
-                .collect(Collectors.toList());
+        List<String> currentBalances = new ArrayList<>(balances.size());
+        balances.forEach((currency, cell) -> {
+            BigDecimal amount = cell.get();
+            if(amount != null) {
+                currentBalances.add(Money.of(currency, amount).toString());
+            }
+        });
+        return currentBalances;
+    }
+
+    /**
+     * @return the balances of the {@link BankAccount} less the amounts held by authorization holds
+     */
+    public List<String> getAvailableBalances() {
+        List<String> availableBalances = new ArrayList<>(balances.size());
+        balances.forEach((currency, cell) -> {
+            BalanceSnapshot snapshot = cell.getSnapshot();
+            if(!snapshot.isRetired()) {
+                availableBalances.add(Money.of(currency, snapshot.getAvailable()).toString());
+            }
+        });
+        return availableBalances;
     }
 
     /**
      * @return the full bank statement of the {@link BankAccount}
      */
     public List<String> getHistory() {
-        return history.stream().collect(Collectors.toList());
+        return history.getEntries().stream().map(HistoryEntry::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Replays the history of the account to a listener, as if its creation and its transactions were applied again.
+     * Transactions are numbered by their position in the history.
+     */
+    void replayTo(LedgerListener listener) {
+        long[] position = {0};
+        history.forEachEntry(entry -> {
+            position[0]++;
+            if(entry.getTransaction() == null) {
+                listener.accountCreated(bankAccountNumber, primaryCurrency, entry.getTimestamp());
+            } else {
+                listener.transactionApplied(bankAccountNumber, entry.getTransaction(), entry.getBalanceAfter().getAmount(),
+                        entry.getTimestamp(), position[0]);
+            }
+        });
+    }
+
+    /**
+     * Replays the history to a listener with the sequences the transactions were applied with,
+     * the same way they were passed to the ledger listener of the account.
+     * @param listener to replay the account creation and transactions to
+     */
+    void replicateTo(LedgerListener listener) {
+        history.forEachEntry(entry -> {
+            if(entry.getTransaction() == null) {
+                listener.accountCreated(bankAccountNumber, primaryCurrency, entry.getTimestamp());
+            } else {
+                listener.transactionApplied(bankAccountNumber, entry.getTransaction(), entry.getBalanceAfter().getAmount(),
+                        entry.getTimestamp(), entry.getSequence());
+            }
+        });
+    }
+
+    /**
+     * Looks up the balances as they were at the given point in time, from the balance left behind by the latest
+     * transaction of each currency in the history, which only reads the spilled history around that point.
+     * @param timestamp point in time in milliseconds since the epoch
+     * @return the balances of the {@link BankAccount} at that time, empty if the account did not exist yet
+     */
+    public List<String> getBalancesAt(long timestamp) {
+        if(timestamp < creationTime) {
+            return new ArrayList<>();
+        }
+        Map<CurrencyUnit, HistoryEntry> latestTransactions = history.getLatestTransactionsAt(timestamp);
+        List<String> pastBalances = new ArrayList<>(latestTransactions.size() + 1);
+        if(!latestTransactions.containsKey(primaryCurrency)) {
+            pastBalances.add(Money.zero(primaryCurrency).toString());
+        }
+        latestTransactions.forEach((currency, entry) -> {
+            if(entry.getBalanceAfter().isPositive() || currency.equals(primaryCurrency)) {
+                pastBalances.add(entry.getBalanceAfter().toString());
+            }
+        });
+        return pastBalances;
     }
 
 
@@ -65,44 +189,246 @@ public class BankAccount {
      * @param deposit to add
      */
     public void deposit(Money deposit) {
-        balances.compute(deposit.getCurrencyUnit(), (currency, money) ->
-                (money == null) ? deposit.getAmount() : money.add(deposit.getAmount()));
-        String hist = String.format(TransfolutMessages.HISTORY_TRANSACTION, new LocalDateTime(System.currentTimeMillis()), deposit);
-        history.add(hist);
-        cleanUpZeroBalances();
+        CurrencyUnit currency = deposit.getCurrencyUnit();
+        BalanceCell cell;
+        BalanceSnapshot newBalance;
+        Trace.Span span = Trace.span("account.balance");
+        try {
+            do {
+                cell = getOrCreateBalanceCell(currency);
+                newBalance = cell.credit(deposit.getAmount());
+                if(newBalance == null) {
+                    // The cell was retired by a concurrent zero balance clean up, so replace it and retry
+                    balances.remove(currency, cell);
+                }
+            } while(newBalance == null);
+        } finally {
+            span.close();
+        }
+        recordTransaction(deposit, newBalance);
+        cleanUpZeroBalance(currency, cell);
+        version.incrementAndGet();
     }
 
+    /**
+     * Withdraw an amount from the account if enough funds are available.
+     * The sufficiency check and the debit are applied in a single compare-and-set on the currency balance.
+     * @param withdrawal to remove
+     */
+    public void withdraw(Money withdrawal) {
+        CurrencyUnit currency = withdrawal.getCurrencyUnit();
+        BalanceCell cell = balances.get(currency);
+        BalanceSnapshot newBalance;
+        Trace.Span span = Trace.span("account.balance");
+        try {
+            newBalance = cell == null ? null : cell.debit(withdrawal.getAmount());
+        } finally {
+            span.close();
+        }
+        if(newBalance == null) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INSUFFICIENT_BALANCE, withdrawal.toString()));
+        }
+        recordTransaction(withdrawal.negated(), newBalance);
+        cleanUpZeroBalance(currency, cell);
+        version.incrementAndGet();
+    }
 
     /**
-     * Helper method to clean up any zero balances from the account list.
-     * Only the primary account currency is allowed to stay with a zero balance.
+     * Reserves an amount of the available balance for a later capture, without moving any money.
+     * The sufficiency check and the reservation are applied in a single compare-and-set on the currency balance.
+     * @param amount to hold
      */
-    private void cleanUpZeroBalances() {
-        balances.entrySet()
-                .removeIf(balance -> balance.getValue().compareTo(BigDecimal.ZERO) == 0
-                        && !balance.getKey().equals(primaryCurrency));
+    void hold(Money amount) {
+        BalanceCell cell = balances.get(amount.getCurrencyUnit());
+        if(cell == null || !cell.hold(amount.getAmount())) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INSUFFICIENT_BALANCE, amount.toString()));
+        }
+        version.incrementAndGet();
     }
 
+    /**
+     * Gives back an amount reserved by {@link #hold(Money)} to the available balance.
+     */
+    void release(Money held) {
+        balances.get(held.getCurrencyUnit()).release(held.getAmount());
+        version.incrementAndGet();
+    }
 
     /**
-     * Withdraw an amount from the account if enough funds are available.
-     * @param withdrawal to remove
-     * @return new balance
+     * Withdraws part or all of an amount reserved by {@link #hold(Money)}, and gives back the rest.
+     * @param held amount reserved by the hold
+     * @param captured amount to withdraw, not more than the held amount
      */
-    public void withdraw(Money withdrawal) {
-        // In this case, a read lock is required such that only one withdrawal at a time is validated
-        balanceReadLock.lock();
+    void capture(Money held, Money captured) {
+        CurrencyUnit currency = held.getCurrencyUnit();
+        BalanceCell cell = balances.get(currency);
+        BalanceSnapshot newBalance = cell.capture(held.getAmount(), captured.getAmount());
+        recordTransaction(captured.negated(), newBalance);
+        cleanUpZeroBalance(currency, cell);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Applies a transaction replicated from another {@link BankService} with the balance it left behind there.
+     * Replicated transactions may arrive out of order, so a balance only replaces the current one if it comes later
+     * in the sequence of the account, while the history records every transaction.
+     * @param transaction amount added to the balance, negative for withdrawals
+     * @param newBalance balance left behind by the transaction
+     */
+    void replicate(Money transaction, BalanceSnapshot newBalance) {
+        CurrencyUnit currency = transaction.getCurrencyUnit();
+        // Zero balances other than the primary currency are hidden the same way as a cleaned up balance
+        BalanceSnapshot replicatedBalance = newBalance.getAmount().signum() == 0 && !currency.equals(primaryCurrency)
+                ? newBalance.retire() : newBalance;
+        balances.merge(currency, new BalanceCell(replicatedBalance, sequencer), (current, replicated) ->
+                current.getSnapshot().getSequence() < replicatedBalance.getSequence() ? replicated : current);
+        recordTransaction(transaction, newBalance);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Helper method to fetch the balance of a currency, creating an empty one if the currency is new.
+     * The plain lookup keeps the common path free of any map bin locking.
+     */
+    private BalanceCell getOrCreateBalanceCell(CurrencyUnit currency) {
+        BalanceCell cell = balances.get(currency);
+        return cell != null ? cell : balances.computeIfAbsent(currency, newCurrency -> new BalanceCell(EMPTY_BALANCE, sequencer));
+    }
+
+    /**
+     * Helper method to record a transaction and the balance it left behind in the account history.
+     */
+    private void recordTransaction(Money transaction, BalanceSnapshot newBalance) {
+        Trace.Span span = Trace.span("account.record");
         try {
-            if(!balances.containsKey(withdrawal.getCurrencyUnit()) ||
-                    balances.get(withdrawal.getCurrencyUnit()).compareTo(withdrawal.getAmount()) < 0) {
-                throw new IllegalArgumentException(String.format(TransfolutMessages.INSUFFICIENT_BALANCE, withdrawal.toString()));
-            }
-            deposit(withdrawal.negated());
+            history.add(HistoryEntry.transaction(transaction, newBalance));
+            ledgerListener.transactionApplied(bankAccountNumber, transaction, newBalance.getAmount(),
+                    newBalance.getTimestamp(), newBalance.getSequence());
         } finally {
-            balanceReadLock.unlock();
+            span.close();
+        }
+    }
+
+    /**
+     * Helper method to clean up a zero balance of the touched currency from the account list.
+     * Only the primary account currency is allowed to stay with a zero balance.
+     */
+    private void cleanUpZeroBalance(CurrencyUnit currency, BalanceCell cell) {
+        if(!currency.equals(primaryCurrency) && cell.retireIfZero()) {
+            balances.remove(currency, cell);
+        }
+    }
+
+    /**
+     * Sets the listener notified of the transactions applied to the account, before the account is published.
+     */
+    void setLedgerListener(LedgerListener ledgerListener) {
+        this.ledgerListener = ledgerListener;
+    }
+
+    /**
+     * Pins the account so that it cannot be paged out while an operation is applied to it.
+     * @return false if the account has already been paged out and must be looked up again
+     */
+    boolean pin() {
+        while(true) {
+            int current = pins.get();
+            if(current == EVICTED) {
+                return false;
+            }
+            if(pins.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a pin taken by {@link #pin()}.
+     */
+    void unpin() {
+        pins.decrementAndGet();
+    }
+
+    /**
+     * Marks the account as paged out if no operation is in flight, after which it must not be modified.
+     * @return true if the account was marked as paged out by this call
+     */
+    boolean markEvicted() {
+        return pins.compareAndSet(0, EVICTED);
+    }
+
+    /**
+     * Records an access to the account for the working set replacement policy.
+     */
+    void markReferenced() {
+        if(!referenced) {
+            referenced = true;
         }
     }
 
+    /**
+     * Clears the access bit of the account for the working set replacement policy.
+     * @return true if the account had been accessed since the last call
+     */
+    boolean clearReferenced() {
+        boolean wasReferenced = referenced;
+        referenced = false;
+        return wasReferenced;
+    }
+
+    /**
+     * Writes the full state of the account, read back by {@link #readFrom(DataInput, TieredHistory)}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(bankAccountNumber);
+        out.writeUTF(primaryCurrency.getCode());
+        out.writeLong(creationTime);
+        out.writeLong(sequencer.get());
+        out.writeLong(version.get());
+
+        List<Map.Entry<CurrencyUnit, BalanceCell>> activeBalances = balances.entrySet().stream()
+                .filter(balance -> !balance.getValue().getSnapshot().isRetired())
+                .collect(Collectors.toList());
+        out.writeInt(activeBalances.size());
+        for(Map.Entry<CurrencyUnit, BalanceCell> balance : activeBalances) {
+            BalanceSnapshot snapshot = balance.getValue().getSnapshot();
+            out.writeUTF(balance.getKey().getCode());
+            writeSnapshot(out, snapshot);
+            out.writeUTF(snapshot.getHeld().toPlainString());
+        }
+
+        history.writeTo(out);
+    }
+
+    /**
+     * @param in to read the account state written by {@link #writeTo(DataOutput)} from
+     * @param history empty history to restore the account history into
+     * @return the restored account
+     */
+    static BankAccount readFrom(DataInput in, TieredHistory history) throws IOException {
+        BankAccount account = new BankAccount(in, history);
+
+        int balanceCount = in.readInt();
+        for(int i = 0; i < balanceCount; i++) {
+            CurrencyUnit currency = CurrencyUnit.of(in.readUTF());
+            BalanceSnapshot snapshot = readSnapshot(in).withHeld(new BigDecimal(in.readUTF()));
+            account.balances.put(currency, new BalanceCell(snapshot, account.sequencer));
+        }
+
+        history.readFrom(in);
+        return account;
+    }
+
+    private static void writeSnapshot(DataOutput out, BalanceSnapshot snapshot) throws IOException {
+        out.writeUTF(snapshot.getAmount().toPlainString());
+        out.writeLong(snapshot.getTimestamp());
+        out.writeLong(snapshot.getSequence());
+    }
+
+    private static BalanceSnapshot readSnapshot(DataInput in) throws IOException {
+        return new BalanceSnapshot(new BigDecimal(in.readUTF()), in.readLong(), in.readLong());
+    }
+
     @Override
     public String toString() {
         return String.format("%s", bankAccountNumber);
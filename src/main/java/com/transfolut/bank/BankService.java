@@ -1,55 +1,214 @@
 package com.transfolut.bank;
 
 import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutProperties;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * Service to create bank account, keep track of them and perform operations on them.
- * This is the public endpoint of the bank service and it must exist as a singleton as it holds bank accounts.
+ * This is the public endpoint of the bank service. Every instance holds its own bank accounts: the default tenant
+ * uses the singleton instance, while every other tenant and every cluster node in a shared JVM has its own.
  *
  * @author addetz
  */
 public class BankService {
 
-    private static final long MAXIMUM_ACCT_NUMBER = 99999999L;
-    private static final long MINIMUM_ACCOUNT_NUMBER = 10000000L;
+    public static final long MAXIMUM_ACCT_NUMBER = 99999999L;
+    public static final long MINIMUM_ACCOUNT_NUMBER = 10000000L;
+    private static final long DEFAULT_HISTORY_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_TIMER_TICK_MILLIS = 10;
+    private static final int DEFAULT_TIMER_THREADS = 2;
+    private static final long DEFAULT_HOLD_EXPIRY_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    private static final long DEFAULT_VELOCITY_WINDOW_MILLIS = 24L * 60 * 60 * 1000;
     private final BankTransferService transferService= new BankTransferService();
 
 //  Need to protect against bombarding create account calls, while staying fast on read calls
-    private final Map<Long, BankAccount> bankAccounts= new ConcurrentHashMap<>();
-    private static BankService instance = null;
+    private final ConcurrentLongMap<BankAccount> bankAccounts = new ConcurrentLongMap<>();
+    private final int historyRetention = Integer.getInteger(TransfolutProperties.HISTORY_RETENTION, 0);
+    private volatile HistorySegmentStore historyStore;
+    // Only set when accounts are paged out of memory, otherwise all accounts stay in bankAccounts
+    private final AccountWorkingSet workingSet;
+    // Decides which account numbers may be generated, so that new accounts land in this node's partition
+    private final LongPredicate localAccounts;
+    private final LedgerListeners ledgerListeners = new LedgerListeners();
+    // Metrics of the components attached to the bank service, such as replication
+    private final List<Supplier<Map<String, Long>>> metricSources = new CopyOnWriteArrayList<>();
+    // Replaced as a whole on every load, so that transfers read a consistent table without ever waiting for a load
+    private volatile FxRates fxRates = FxRates.EMPTY;
+    // Created along with the first scheduled transfer or hold, so that a bank service without any holds no timer thread
+    private volatile TransferScheduler transferScheduler;
+    private volatile HoldRegistry holdRegistry;
+    private volatile LedgerTimer timer;
+    // Null unless velocity limits are configured, so that unlimited debits only pay for reading the field
+    private volatile VelocityLimits velocityLimits;
 
     private BankService() {
-        // Exists only to defeat instantiation.
+        this(bankAcctNumber -> true);
     }
 
+    /**
+     * Creates the bank service of one node of a cluster, which only holds part of the accounts.
+     * @param localAccounts tests whether an account number belongs to this node
+     */
+    public BankService(LongPredicate localAccounts) {
+        this(Integer.getInteger(TransfolutProperties.ACCOUNTS_WORKING_SET, 0),
+                directory(TransfolutProperties.ACCOUNTS_DIR, "transfolut-accounts"), localAccounts);
+    }
+
+    /**
+     * @param workingSetSize maximum number of accounts held in memory, 0 holds all accounts in memory
+     * @param accountsDirectory supplies the directory cold accounts are paged out to
+     */
+    BankService(int workingSetSize, Supplier<Path> accountsDirectory) {
+        this(workingSetSize, accountsDirectory, bankAcctNumber -> true);
+    }
+
+    private BankService(int workingSetSize, Supplier<Path> accountsDirectory, LongPredicate localAccounts) {
+        this.localAccounts = localAccounts;
+        this.workingSet = workingSetSize <= 0 ? null : new AccountWorkingSet(bankAccounts,
+                new AccountStore(accountsDirectory.get()), workingSetSize, this::newHistory, ledgerListeners);
+        String limits = System.getProperty(TransfolutProperties.VELOCITY_LIMITS, "");
+        this.velocityLimits = limits.isEmpty() ? null : new VelocityLimits(
+                Long.getLong(TransfolutProperties.VELOCITY_WINDOW_MILLIS, DEFAULT_VELOCITY_WINDOW_MILLIS), limits);
+    }
+
+    /**
+     * @return the bank service of the default tenant, created once by the first thread asking for it
+     */
     public static BankService getInstance() {
-        if(instance == null) {
-            instance = new BankService();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
      * @return the full list of bank accounts
      */
     public List<Long> getBankAccounts() {
-        return bankAccounts.keySet().stream().collect(Collectors.toList());
+        if(workingSet != null) {
+            return Stream.concat(LongStream.of(bankAccounts.keys()).boxed(),
+                    workingSet.getStore().getAccountNumbers().stream())
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+        return LongStream.of(bankAccounts.keys()).boxed().collect(Collectors.toList());
     }
 
     /**
-     *
+     * Looks up an account with a single probe of the account map, without boxing the account number.
      * @param bankAcctNumber account number to fetch on
      * @return corresponding optional {@link BankAccount}
      */
     public Optional<BankAccount> getAccount(long bankAcctNumber) {
-        return bankAccounts.containsKey(bankAcctNumber) ? Optional.of(bankAccounts.get(bankAcctNumber)) : Optional.empty();
+        BankAccount bankAccount = bankAccounts.get(bankAcctNumber);
+        if(workingSet != null) {
+            return Optional.ofNullable(bankAccount != null
+                    ? workingSet.hit(bankAccount) : workingSet.faultIn(bankAcctNumber));
+        }
+        return Optional.ofNullable(bankAccount);
+    }
+
+    /**
+     * Looks up an account in order to update it. When accounts are paged out of memory,
+     * the account is pinned in the working set until it is released with {@link #releaseAccount(Optional)}.
+     */
+    private Optional<BankAccount> acquireAccount(long bankAcctNumber) {
+        Trace.Span span = Trace.span("bank.lookup");
+        try {
+            if(workingSet != null) {
+                return Optional.ofNullable(workingSet.acquire(bankAcctNumber));
+            }
+            return Optional.ofNullable(bankAccounts.get(bankAcctNumber));
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Helper method to count a debit against the velocity limits, if any.
+     * @return the bucket the debit was counted in, or null if it was not counted
+     */
+    private static VelocityLimits.Bucket countDebit(VelocityLimits limits, long acctNumber, Money amount) {
+        if(limits == null) {
+            return null;
+        }
+        Trace.Span span = Trace.span("bank.velocity");
+        try {
+            return limits.count(acctNumber, amount);
+        } finally {
+            span.close();
+        }
+    }
+
+    private void releaseAccount(Optional<BankAccount> bankAccount) {
+        if(workingSet != null && bankAccount.isPresent()) {
+            bankAccount.get().unpin();
+        }
+    }
+
+    /**
+     * @return the metrics of the account registry
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("accounts.resident", (long) bankAccounts.size());
+        if(workingSet != null) {
+            metrics.put("accounts.hits", workingSet.getHits());
+            metrics.put("accounts.misses", workingSet.getMisses());
+            metrics.put("accounts.evictions", workingSet.getEvictions());
+        }
+        if(transferScheduler != null) {
+            metrics.putAll(transferScheduler.getMetrics());
+        }
+        if(holdRegistry != null) {
+            metrics.putAll(holdRegistry.getMetrics());
+        }
+        if(timer != null) {
+            metrics.putAll(timer.getMetrics());
+        }
+        VelocityLimits limits = velocityLimits;
+        if(limits != null) {
+            metrics.putAll(limits.getMetrics());
+        }
+        metricSources.forEach(metricSource -> metrics.putAll(metricSource.get()));
+        return metrics;
+    }
+
+    /**
+     * Adds metrics to the ones returned by {@link #getMetrics()}.
+     * @param metricSource supplies the current value of the metrics
+     */
+    void addMetrics(Supplier<Map<String, Long>> metricSource) {
+        metricSources.add(metricSource);
+    }
+
+    /**
+     * Registers a listener notified of every account creation and transaction.
+     * Listeners should be added before any account is created, as they are not notified of past changes.
+     */
+    public void addLedgerListener(LedgerListener ledgerListener) {
+        ledgerListeners.add(ledgerListener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addLedgerListener(LedgerListener)}.
+     */
+    public void removeLedgerListener(LedgerListener ledgerListener) {
+        ledgerListeners.remove(ledgerListener);
     }
 
     /**
@@ -58,16 +217,103 @@ public class BankService {
      * @throws org.joda.money.IllegalCurrencyException if no corresponding currency is found
      */
     public long createAccount(String currencyCode) {
-        BankAccount newBankAccount = new BankAccount(generateBankAcct(), CurrencyUnit.of(currencyCode));
-        bankAccounts.putIfAbsent(newBankAccount.getBankAccountNumber(), newBankAccount);
+        CurrencyUnit primaryCurrency = CurrencyUnit.of(currencyCode);
+        BankAccount newBankAccount;
+        long creationTime;
+        // Generated numbers may collide with an existing account, in memory or paged out
+        do {
+            creationTime = System.currentTimeMillis();
+            newBankAccount = new BankAccount(generateBankAcct(), primaryCurrency, newHistory(), creationTime);
+            newBankAccount.setLedgerListener(ledgerListeners);
+        } while(!admit(newBankAccount));
+        ledgerListeners.accountCreated(newBankAccount.getBankAccountNumber(), primaryCurrency, creationTime);
         return newBankAccount.getBankAccountNumber();
     }
 
     /**
-     * @return a randomly generated 8 digit bank account
+     * Creates an account replicated from another {@link BankService}, keeping its number and creation time.
+     */
+    void replicateAccountCreation(long bankAcctNumber, CurrencyUnit primaryCurrency, long creationTime) {
+        BankAccount replicatedAccount = new BankAccount(bankAcctNumber, primaryCurrency, newHistory(), creationTime);
+        replicatedAccount.setLedgerListener(ledgerListeners);
+        if(!admit(replicatedAccount)) {
+            return;
+        }
+        ledgerListeners.accountCreated(bankAcctNumber, primaryCurrency, creationTime);
+    }
+
+    /**
+     * Helper method to add a new account unless its number is already taken, in memory or paged out.
+     * @return false if the account number is already taken
+     */
+    private boolean admit(BankAccount bankAccount) {
+        if(workingSet != null) {
+            return workingSet.admit(bankAccount);
+        }
+        return bankAccounts.putIfAbsent(bankAccount.getBankAccountNumber(), bankAccount) == null;
+    }
+
+    /**
+     * Applies a transaction replicated from another {@link BankService}.
+     * @param transaction amount added to the balance, negative for withdrawals
+     * @param newBalance balance left behind by the transaction
+     * @return false if the account does not exist
+     */
+    boolean replicateTransaction(long bankAcctNumber, Money transaction, BalanceSnapshot newBalance) {
+        Optional<BankAccount> bankAccount = acquireAccount(bankAcctNumber);
+        try {
+            if(!bankAccount.isPresent()) {
+                return false;
+            }
+            bankAccount.get().replicate(transaction, newBalance);
+            return true;
+        } finally {
+            releaseAccount(bankAccount);
+        }
+    }
+
+    /**
+     * @return the history of a new account, spilling to disk if a history retention is configured
+     */
+    private TieredHistory newHistory() {
+        if(historyRetention <= 0) {
+            return TieredHistory.inHeap();
+        }
+        if(historyStore == null) {
+            synchronized (this) {
+                if(historyStore == null) {
+                    historyStore = new HistorySegmentStore(directory(TransfolutProperties.HISTORY_DIR, "transfolut-history").get(),
+                            Long.getLong(TransfolutProperties.HISTORY_SEGMENT_SIZE, DEFAULT_HISTORY_SEGMENT_SIZE),
+                            System.getProperty(TransfolutProperties.HISTORY_DIR) == null);
+                }
+            }
+        }
+        return new TieredHistory(historyStore, historyRetention);
+    }
+
+    /**
+     * @return supplier of the directory configured by the given property or of a new temporary one
+     */
+    private static Supplier<Path> directory(String property, String temporaryPrefix) {
+        return () -> {
+            String configured = System.getProperty(property);
+            try {
+                return configured != null ? Paths.get(configured) : Files.createTempDirectory(temporaryPrefix);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * @return a randomly generated 8 digit bank account belonging to this node
      */
     private long generateBankAcct() {
-        return ThreadLocalRandom.current().nextLong(MINIMUM_ACCOUNT_NUMBER, MAXIMUM_ACCT_NUMBER);
+        long bankAcctNumber;
+        do {
+            bankAcctNumber = ThreadLocalRandom.current().nextLong(MINIMUM_ACCOUNT_NUMBER, MAXIMUM_ACCT_NUMBER);
+        } while(!localAccounts.test(bankAcctNumber));
+        return bankAcctNumber;
     }
 
     /**
@@ -78,14 +324,75 @@ public class BankService {
      * @param amount - amount to transfer
      */
     public void transfer(long fromAcctNumber, long toAcctNumber, Money amount) {
-        Optional<BankAccount> fromAccount = getAccount(fromAcctNumber);
-        Optional<BankAccount> toAccount = getAccount(toAcctNumber);
+        transfer(fromAcctNumber, toAcctNumber, amount, amount.getCurrencyUnit());
+    }
 
-        if(!fromAccount.isPresent() || !toAccount.isPresent()) {
-            throw new IllegalArgumentException(TransfolutMessages.TRANSFER_ACCOUNTS_NONEXISTENT);
+    /**
+     * Moves money from one account to another, crediting it in another currency than it is debited in.
+     * The amount is converted with the exchange rates loaded when the transfer starts.
+     * @param fromAcctNumber - account to transfer from
+     * @param toAcctNumber - account to transfer to
+     * @param amount - amount to debit
+     * @param creditCurrency - currency to credit the amount in
+     * @return the amount credited
+     * @throws VelocityLimitException if the debit would exceed the velocity limits of the sending account
+     */
+    public Money transfer(long fromAcctNumber, long toAcctNumber, Money amount, CurrencyUnit creditCurrency) {
+        Money credit;
+        Trace.Span span = Trace.span("bank.fx");
+        try {
+            credit = fxRates.convert(amount, creditCurrency);
+        } finally {
+            span.close();
+        }
+        Optional<BankAccount> fromAccount = acquireAccount(fromAcctNumber);
+        try {
+            Optional<BankAccount> toAccount = acquireAccount(toAcctNumber);
+            try {
+                if(!fromAccount.isPresent() || !toAccount.isPresent()) {
+                    throw new IllegalArgumentException(TransfolutMessages.TRANSFER_ACCOUNTS_NONEXISTENT);
+                }
+
+                VelocityLimits limits = velocityLimits;
+                VelocityLimits.Bucket debit = countDebit(limits, fromAcctNumber, amount);
+                boolean debited = false;
+                try {
+                    transferService.transfer(fromAccount.get(), toAccount.get(), amount, credit);
+                    debited = true;
+                } finally {
+                    if(!debited && debit != null) {
+                        limits.uncount(debit, amount);
+                    }
+                }
+                return credit;
+            } finally {
+                releaseAccount(toAccount);
+            }
+        } finally {
+            releaseAccount(fromAccount);
         }
+    }
+
+    /**
+     * @return the exchange rates currently used by transfers
+     */
+    public FxRates getFxRates() {
+        return fxRates;
+    }
+
+    /**
+     * Replaces the exchange rates used by transfers. Transfers already converted keep the rates they started with.
+     */
+    public void loadFxRates(FxRates rates) {
+        fxRates = rates;
+    }
 
-        transferService.transfer(fromAccount.get(), toAccount.get(), amount);
+    /**
+     * Replaces the velocity limits checked on every withdrawal and transfer, forgetting the debits counted so far.
+     * @param limits to check, null to stop checking velocity
+     */
+    public void setVelocityLimits(VelocityLimits limits) {
+        velocityLimits = limits;
     }
 
     /**
@@ -95,14 +402,17 @@ public class BankService {
      * @return new balance
      */
     public void deposit(long acctNumber, Money amount) {
-        Optional<BankAccount> bankAccount = getAccount(acctNumber);
+        Optional<BankAccount> bankAccount = acquireAccount(acctNumber);
+        try {
+            if(!bankAccount.isPresent()) {
+                throw new IllegalArgumentException(
+                        String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, String.valueOf(acctNumber)));
+            }
 
-        if(!bankAccount.isPresent()) {
-            throw new IllegalArgumentException(
-                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, String.valueOf(acctNumber)));
+            bankAccount.get().deposit(amount);
+        } finally {
+            releaseAccount(bankAccount);
         }
-
-        bankAccount.get().deposit(amount);
     }
 
     /**
@@ -110,22 +420,323 @@ public class BankService {
      * @param acctNumber - account to withdraw money from
      * @param amount - amount to withdraw
      * @return new balance
+     * @throws VelocityLimitException if the withdrawal would exceed the velocity limits of the account
      */
     public void withdraw(long acctNumber, Money amount) {
-        Optional<BankAccount> bankAccount = getAccount(acctNumber);
+        Optional<BankAccount> bankAccount = acquireAccount(acctNumber);
+        try {
+            if(!bankAccount.isPresent()) {
+                throw new IllegalArgumentException(
+                        String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, String.valueOf(acctNumber)));
+            }
+
+            VelocityLimits limits = velocityLimits;
+            VelocityLimits.Bucket debit = countDebit(limits, acctNumber, amount);
+            boolean debited = false;
+            try {
+                bankAccount.get().withdraw(amount);
+                debited = true;
+            } finally {
+                if(!debited && debit != null) {
+                    limits.uncount(debit, amount);
+                }
+            }
+        } finally {
+            releaseAccount(bankAccount);
+        }
+    }
 
-        if(!bankAccount.isPresent()) {
-            throw new IllegalArgumentException(
-                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, String.valueOf(acctNumber)));
+    /**
+     * Replays the histories of the accounts within a range of account numbers to a listener, in account number order.
+     * The pass is weakly consistent: every account is read as it is when its turn comes, and accounts created
+     * meanwhile may or may not be replayed. Accounts paged out of memory are read without faulting them in.
+     * @param fromAcctNumber first account number of the range
+     * @param toAcctNumber account number following the range
+     * @param listener to replay the account creations and transactions to
+     */
+    public void replayAccounts(long fromAcctNumber, long toAcctNumber, LedgerListener listener) {
+        long[] accountNumbers = getSortedAccountNumbers();
+        int fromIndex = Arrays.binarySearch(accountNumbers, fromAcctNumber);
+        int toIndex = Arrays.binarySearch(accountNumbers, toAcctNumber);
+        replayAccounts(accountNumbers, fromIndex < 0 ? -fromIndex - 1 : fromIndex, toIndex < 0 ? -toIndex - 1 : toIndex,
+                listener);
+    }
+
+    /**
+     * Replays the histories of a slice of the accounts listed by {@link #getSortedAccountNumbers()} to a listener,
+     * so that several slices of a single listing can be replayed in parallel. The pass is weakly consistent
+     * the same way as {@link #replayAccounts(long, long, LedgerListener)}.
+     * @param accountNumbers listed by {@link #getSortedAccountNumbers()}
+     * @param fromIndex index of the first account number of the slice
+     * @param toIndex index following the last account number of the slice
+     * @param listener to replay the account creations and transactions to
+     */
+    public void replayAccounts(long[] accountNumbers, int fromIndex, int toIndex, LedgerListener listener) {
+        for(int i = fromIndex; i < toIndex; i++) {
+            BankAccount bankAccount = readAccount(accountNumbers[i]);
+            if(bankAccount != null) {
+                bankAccount.replayTo(listener);
+            }
+        }
+    }
+
+    /**
+     * Replays the histories of all accounts to a listener with the sequences their transactions were applied with,
+     * so that a {@link ReplicationJournal} can snapshot the accounts for its followers. The pass is weakly consistent
+     * the same way as {@link #replayAccounts(long, long, LedgerListener)}.
+     * @param listener to replay the account creations and transactions to
+     */
+    void replicateAccounts(LedgerListener listener) {
+        for(long accountNumber : getSortedAccountNumbers()) {
+            BankAccount bankAccount = readAccount(accountNumber);
+            if(bankAccount != null) {
+                bankAccount.replicateTo(listener);
+            }
+        }
+    }
+
+    /**
+     * Helper method to read an account in memory or paged out, without faulting it in.
+     * @return the account or null if it does not exist
+     */
+    private BankAccount readAccount(long accountNumber) {
+        BankAccount bankAccount = bankAccounts.get(accountNumber);
+        if(bankAccount == null && workingSet != null) {
+            bankAccount = workingSet.getStore().read(accountNumber, this::newHistory);
+        }
+        return bankAccount;
+    }
+
+    /**
+     * Lists the numbers of all accounts, in memory or paged out, in a single pass over the accounts.
+     * @return the account numbers in ascending order, without duplicates
+     */
+    public long[] getSortedAccountNumbers() {
+        long[] accountNumbers = bankAccounts.keys();
+        if(workingSet != null) {
+            List<Long> storedAccountNumbers = workingSet.getStore().getAccountNumbers();
+            int resident = accountNumbers.length;
+            accountNumbers = Arrays.copyOf(accountNumbers, resident + storedAccountNumbers.size());
+            for(int i = 0; i < storedAccountNumbers.size(); i++) {
+                accountNumbers[resident + i] = storedAccountNumbers.get(i);
+            }
+        }
+        Arrays.sort(accountNumbers);
+        // Accounts paged out or faulted in during the listing may have been seen twice
+        int distinct = 0;
+        for(int i = 0; i < accountNumbers.length; i++) {
+            if(i == 0 || accountNumbers[i] != accountNumbers[i - 1]) {
+                accountNumbers[distinct++] = accountNumbers[i];
+            }
+        }
+        return Arrays.copyOf(accountNumbers, distinct);
+    }
+
+    /**
+     * Schedules a transfer to be executed at a future time, once or as a standing transfer repeated at a fixed interval.
+     * Executions which are rejected, e.g. for an insufficient balance, do not stop a standing transfer.
+     * @param fromAcctNumber - account to transfer from
+     * @param toAcctNumber - account to transfer to
+     * @param amount - amount to transfer at every execution
+     * @param executionTime - time of the first execution in milliseconds since the epoch
+     * @param intervalMillis - time between two executions, 0 to execute the transfer once
+     * @return the scheduled transfer
+     */
+    public ScheduledTransfer scheduleTransfer(long fromAcctNumber, long toAcctNumber, Money amount, long executionTime,
+                                              long intervalMillis) {
+        if(!getAccount(fromAcctNumber).isPresent() || !getAccount(toAcctNumber).isPresent()) {
+            throw new IllegalArgumentException(TransfolutMessages.TRANSFER_ACCOUNTS_NONEXISTENT);
+        }
+        if(fromAcctNumber == toAcctNumber) {
+            throw new IllegalArgumentException(TransfolutMessages.TRANSFER_ACCOUNTS_SAME);
+        }
+        if(!amount.isPositive()) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_AMOUNT, amount.getAmount()));
+        }
+        if(intervalMillis < 0) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_INTERVAL, intervalMillis));
+        }
+        return getTransferScheduler().schedule(fromAcctNumber, toAcctNumber, amount, executionTime, intervalMillis);
+    }
+
+    /**
+     * @param id of the scheduled transfer
+     * @return the scheduled transfer, empty once it has been cancelled or executed for the last time
+     */
+    public Optional<ScheduledTransfer> getScheduledTransfer(long id) {
+        return transferScheduler != null ? transferScheduler.get(id) : Optional.empty();
+    }
+
+    /**
+     * Cancels the executions of a scheduled transfer which have not started yet.
+     * @param id of the scheduled transfer
+     * @return true if the transfer was cancelled, false if no such transfer is scheduled
+     */
+    public boolean cancelScheduledTransfer(long id) {
+        return transferScheduler != null && transferScheduler.cancel(id);
+    }
+
+    /**
+     * Attaches a store persisting the scheduled transfers, and schedules again all transfers it holds.
+     */
+    public void setScheduledTransferStore(ScheduledTransferStore store) {
+        getTransferScheduler().setStore(store);
+    }
+
+    private synchronized TransferScheduler getTransferScheduler() {
+        if(transferScheduler == null) {
+            transferScheduler = new TransferScheduler(this, getTimer());
+        }
+        return transferScheduler;
+    }
+
+    /**
+     * Reserves an amount of the available balance of an account, until the hold is captured or released
+     * or the default hold expiry has passed.
+     * @param acctNumber - account to hold the amount on
+     * @param amount - amount to hold
+     * @return the hold
+     */
+    public Hold placeHold(long acctNumber, Money amount) {
+        return placeHold(acctNumber, amount, System.currentTimeMillis()
+                + Long.getLong(TransfolutProperties.HOLD_EXPIRY_MILLIS, DEFAULT_HOLD_EXPIRY_MILLIS));
+    }
+
+    /**
+     * Reserves an amount of the available balance of an account, until the hold is captured or released
+     * or its expiry time has passed. No money is moved, but the amount can no longer be withdrawn, transferred or held.
+     * @param acctNumber - account to hold the amount on
+     * @param amount - amount to hold
+     * @param expiryTime - time the hold is released at in milliseconds since the epoch
+     * @return the hold
+     */
+    public Hold placeHold(long acctNumber, Money amount, long expiryTime) {
+        if(!amount.isPositive()) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_AMOUNT, amount.getAmount()));
+        }
+        Optional<BankAccount> bankAccount = acquireAccount(acctNumber);
+        try {
+            if(!bankAccount.isPresent()) {
+                throw new IllegalArgumentException(
+                        String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, String.valueOf(acctNumber)));
+            }
+
+            bankAccount.get().hold(amount);
+        } finally {
+            releaseAccount(bankAccount);
         }
+        return getHoldRegistry().add(acctNumber, amount, expiryTime);
+    }
 
-        bankAccount.get().withdraw(amount);
+    /**
+     * @param id of the hold
+     * @return the hold, empty once it has been captured, released or has expired
+     */
+    public Optional<Hold> getHold(long id) {
+        return holdRegistry != null ? holdRegistry.get(id) : Optional.empty();
+    }
+
+    /**
+     * Withdraws part or all of the amount of a hold and gives back the rest, which ends the hold.
+     * @param id of the hold
+     * @param amount - amount to withdraw, not more than the held amount, or null to withdraw the whole held amount
+     * @return the amount withdrawn
+     */
+    public Money captureHold(long id, Money amount) {
+        Hold hold = getHold(id).orElseThrow(() ->
+                new IllegalArgumentException(String.format(TransfolutMessages.HOLD_NOT_FOUND, id)));
+        Money captured = amount != null ? amount : hold.getAmount();
+        if(!captured.isSameCurrency(hold.getAmount()) || !captured.isPositive() || captured.isGreaterThan(hold.getAmount())) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_CAPTURE_AMOUNT,
+                    captured.toString(), hold.getAmount().toString()));
+        }
+        // The hold may have expired or been released since it was looked up
+        if(!holdRegistry.capture(hold)) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.HOLD_NOT_FOUND, id));
+        }
+        applyToHeldAccount(hold, bankAccount -> bankAccount.capture(hold.getAmount(), captured));
+        return captured;
+    }
+
+    /**
+     * Gives back the amount of a hold to the available balance of its account, which ends the hold.
+     * @param id of the hold
+     * @return true if the hold was released, false if no such hold is outstanding
+     */
+    public boolean releaseHold(long id) {
+        Optional<Hold> hold = getHold(id);
+        if(!hold.isPresent() || !holdRegistry.release(hold.get())) {
+            return false;
+        }
+        applyToHeldAccount(hold.get(), bankAccount -> bankAccount.release(hold.get().getAmount()));
+        return true;
+    }
+
+    private synchronized HoldRegistry getHoldRegistry() {
+        if(holdRegistry == null) {
+            holdRegistry = new HoldRegistry(getTimer(), hold ->
+                    applyToHeldAccount(hold, bankAccount -> bankAccount.release(hold.getAmount())));
+        }
+        return holdRegistry;
+    }
+
+    /**
+     * Helper method to update the account of a hold which has just ended, unless the account has been cleared meanwhile.
+     */
+    private void applyToHeldAccount(Hold hold, Consumer<BankAccount> update) {
+        Optional<BankAccount> bankAccount = acquireAccount(hold.getAcctNumber());
+        try {
+            bankAccount.ifPresent(update);
+        } finally {
+            releaseAccount(bankAccount);
+        }
+    }
+
+    private synchronized LedgerTimer getTimer() {
+        if(timer == null) {
+            timer = new LedgerTimer(Long.getLong(TransfolutProperties.TIMER_TICK_MILLIS, DEFAULT_TIMER_TICK_MILLIS),
+                    Integer.getInteger(TransfolutProperties.TIMER_THREADS, DEFAULT_TIMER_THREADS));
+        }
+        return timer;
     }
 
     /**
      * Clear all bank accounts from the list.
      */
     public void clearAccounts() {
+        if(transferScheduler != null) {
+            transferScheduler.clear();
+        }
+        if(holdRegistry != null) {
+            holdRegistry.clear();
+        }
         bankAccounts.clear();
+        if(workingSet != null) {
+            workingSet.clear();
+        }
+        VelocityLimits limits = velocityLimits;
+        if(limits != null) {
+            limits.clear();
+        }
+    }
+
+    /**
+     * Stops the timer of the bank and closes its history store, deleting the spilled history if it was kept in
+     * a temporary directory. The bank must no longer be used once it is closed.
+     */
+    public synchronized void close() {
+        if(timer != null) {
+            timer.close();
+        }
+        if(historyStore != null) {
+            historyStore.close();
+        }
+    }
+
+    /**
+     * Holds the default instance, which the class loader creates exactly once on first use.
+     */
+    private static final class InstanceHolder {
+        private static final BankService INSTANCE = new BankService();
     }
 }
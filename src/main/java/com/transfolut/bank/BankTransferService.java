@@ -16,7 +16,28 @@ public class BankTransferService {
      * @param amount amount to transfer
      */
     public void transfer(BankAccount fromAccount, BankAccount toAccount, Money amount) {
-        fromAccount.withdraw(amount);
-        toAccount.deposit(amount);
+        transfer(fromAccount, toAccount, amount, amount);
+    }
+
+    /**
+     *
+     * @param fromAccount account to transfer from
+     * @param toAccount account to transfer to
+     * @param debit amount to withdraw from the sending account
+     * @param credit amount to deposit into the receiving account, in the same or another currency
+     */
+    public void transfer(BankAccount fromAccount, BankAccount toAccount, Money debit, Money credit) {
+        Trace.Span debitSpan = Trace.span("transfer.debit");
+        try {
+            fromAccount.withdraw(debit);
+        } finally {
+            debitSpan.close();
+        }
+        Trace.Span creditSpan = Trace.span("transfer.credit");
+        try {
+            toAccount.deposit(credit);
+        } finally {
+            creditSpan.close();
+        }
     }
 }
@@ -0,0 +1,360 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact store of account balances for very large numbers of accounts, keeping every account in a fixed size
+ * record of a memory-mapped file rather than in a {@link BankAccount} object graph on the heap.
+ * A record holds the account number, the primary currency and up to {@link #MAX_CURRENCIES} balances, each
+ * as a currency id and an amount in minor units, so a million accounts take 64MB off the heap, while the heap
+ * only holds a {@link LongSlotIndex} from account numbers to record slots, made of two primitive arrays.
+ * The store only keeps balances, accounts needing histories, holds or listeners must live in a {@link BankService}.
+ * Balances follow the same rules as a {@link BankAccount}: the primary currency balance always exists,
+ * and the balances of other currencies disappear once they reach zero.
+ * Records are guarded by striped locks, and lookups of the index never lock.
+ * Clearing and closing the store are the exception: they lock nothing, so they must only be called while no other
+ * operation is in flight, e.g. between tests or on shutdown. They never shrink the records file, so that a
+ * straggling operation can at worst see a record reused by a new account, and never a mapping past the end of the file.
+ */
+public final class CompactAccountStore {
+
+    // Number of balances a record has room for, the primary currency included
+    public static final int MAX_CURRENCIES = 4;
+    static final int RECORD_SIZE = 64;
+    private static final int DEFAULT_RECORDS_PER_CHUNK = 1 << 20;
+    private static final int LOCK_STRIPES = 1024;
+    private static final String RECORDS_FILE = "accounts.records";
+
+    // Record layout, currency ids are 1-based so that 0 marks a free balance
+    private static final int ACCT_NUMBER_OFFSET = 0;
+    private static final int PRIMARY_CURRENCY_OFFSET = 8;
+    private static final int BALANCES_OFFSET = 16;
+    private static final int BALANCE_SIZE = 12;
+    private static final int NO_CURRENCY = 0;
+
+    private final FileChannel channel;
+    private final int recordsPerChunk;
+    private final LongSlotIndex index;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // Currencies known to the store, indexed by their id less one
+    private final CurrencyUnit[] currencies;
+    private final Map<CurrencyUnit, Integer> currencyIds = new HashMap<>();
+    // Replaced as a whole when a chunk is mapped, so that readers never see a partially grown array
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private int nextSlot;
+
+    /**
+     * @param directory holding the records file, which is overwritten
+     * @param expectedAccounts number of accounts the index is sized for before it has to grow
+     */
+    public CompactAccountStore(Path directory, int expectedAccounts) {
+        this(directory, expectedAccounts, DEFAULT_RECORDS_PER_CHUNK);
+    }
+
+    /**
+     * @param recordsPerChunk number of records mapped at a time
+     */
+    CompactAccountStore(Path directory, int expectedAccounts, int recordsPerChunk) {
+        this.recordsPerChunk = recordsPerChunk;
+        this.index = new LongSlotIndex(expectedAccounts);
+        for(int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.currencies = CurrencyUnit.registeredCurrencies().toArray(new CurrencyUnit[0]);
+        for(int i = 0; i < currencies.length; i++) {
+            currencyIds.put(currencies[i], i + 1);
+        }
+        try {
+            Files.createDirectories(directory);
+            RandomAccessFile file = new RandomAccessFile(directory.resolve(RECORDS_FILE).toFile(), "rw");
+            file.setLength(0);
+            this.channel = file.getChannel();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates an account with a zero balance in its primary currency.
+     * @return false if an account already exists under that number
+     * @throws IllegalArgumentException if the account number is not positive
+     */
+    public synchronized boolean createAccount(long bankAcctNumber, CurrencyUnit primaryCurrency) {
+        if(bankAcctNumber <= 0) {
+            throw new IllegalArgumentException(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+        int currencyId = currencyId(primaryCurrency);
+        if(index.get(bankAcctNumber) >= 0) {
+            return false;
+        }
+        int slot = nextSlot;
+        MappedByteBuffer chunk = chunkOf(slot);
+        int offset = offsetOf(slot);
+        synchronized (lockOf(slot)) {
+            // The slot may hold the record of an account removed by a clear
+            for(int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+                chunk.putLong(offset + i, 0);
+            }
+            chunk.putLong(offset + ACCT_NUMBER_OFFSET, bankAcctNumber);
+            chunk.putInt(offset + PRIMARY_CURRENCY_OFFSET, currencyId);
+            chunk.putInt(offset + BALANCES_OFFSET, currencyId);
+            chunk.putLong(offset + BALANCES_OFFSET + Integer.BYTES, 0);
+        }
+        nextSlot++;
+        index.putIfAbsent(bankAcctNumber, slot);
+        return true;
+    }
+
+    /**
+     * @return true if an account exists under that number
+     */
+    public boolean contains(long bankAcctNumber) {
+        return index.get(bankAcctNumber) >= 0;
+    }
+
+    /**
+     * @return the number of accounts in the store
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the balances of an account, its primary currency first
+     * @throws IllegalArgumentException if the account does not exist
+     */
+    public List<String> getBalances(long bankAcctNumber) {
+        int slot = slotOf(bankAcctNumber);
+        MappedByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int offset = offsetOf(slot);
+        List<String> balances = new ArrayList<>(MAX_CURRENCIES);
+        synchronized (lockOf(slot)) {
+            for(int i = 0; i < MAX_CURRENCIES; i++) {
+                int balanceOffset = offset + BALANCES_OFFSET + i * BALANCE_SIZE;
+                int currencyId = chunk.getInt(balanceOffset);
+                if(currencyId != NO_CURRENCY) {
+                    balances.add(Money.ofMinor(currencies[currencyId - 1],
+                            chunk.getLong(balanceOffset + Integer.BYTES)).toString());
+                }
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Adds an amount to the balance of its currency, which is created if the account has none.
+     * @throws IllegalArgumentException if the amount is not positive, the account does not exist, already has
+     * balances in {@link #MAX_CURRENCIES} other currencies or its balance would overflow
+     */
+    public void deposit(long bankAcctNumber, Money deposit) {
+        checkPositive(deposit);
+        int slot = slotOf(bankAcctNumber);
+        int currencyId = currencyId(deposit.getCurrencyUnit());
+        synchronized (lockOf(slot)) {
+            credit(slot, currencyId, deposit);
+        }
+    }
+
+    /**
+     * Removes an amount from the balance of its currency if enough funds are available.
+     * @throws IllegalArgumentException if the amount is not positive, the account does not exist or its balance
+     * is insufficient
+     */
+    public void withdraw(long bankAcctNumber, Money withdrawal) {
+        checkPositive(withdrawal);
+        int slot = slotOf(bankAcctNumber);
+        int currencyId = currencyId(withdrawal.getCurrencyUnit());
+        synchronized (lockOf(slot)) {
+            debit(slot, currencyId, withdrawal);
+        }
+    }
+
+    /**
+     * Moves an amount between two accounts, locking the stripes of both records in stripe order
+     * so that concurrent transfers in opposite directions cannot deadlock.
+     * @throws IllegalArgumentException if the amount is not positive, either account does not exist, the accounts
+     * are the same, the balance of the sending account is insufficient or the receiving account has no room for
+     * the currency or the amount
+     */
+    public void transfer(long fromAcctNumber, long toAcctNumber, Money amount) {
+        checkPositive(amount);
+        if(fromAcctNumber == toAcctNumber) {
+            throw new IllegalArgumentException(TransfolutMessages.TRANSFER_ACCOUNTS_SAME);
+        }
+        int fromSlot = slotOf(fromAcctNumber);
+        int toSlot = slotOf(toAcctNumber);
+        int currencyId = currencyId(amount.getCurrencyUnit());
+        boolean fromFirst = fromSlot % LOCK_STRIPES <= toSlot % LOCK_STRIPES;
+        synchronized (lockOf(fromFirst ? fromSlot : toSlot)) {
+            synchronized (lockOf(fromFirst ? toSlot : fromSlot)) {
+                // The receiving balance is checked first, so that a failed credit never needs a refund
+                checkCredit(toSlot, currencyId, amount);
+                debit(fromSlot, currencyId, amount);
+                credit(toSlot, currencyId, amount);
+            }
+        }
+    }
+
+    /**
+     * Removes every account, keeping the records file and its mapped chunks for the accounts created next.
+     * Must not be called while any other operation of the store is in flight.
+     */
+    public synchronized void clear() {
+        index.clear();
+        nextSlot = 0;
+    }
+
+    /**
+     * Closes the records file, after which the store must not be used. The mapped chunks are released once
+     * they are no longer referenced. Must not be called while any other operation of the store is in flight.
+     */
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of bytes of the records file mapped into memory
+     */
+    public long getMappedBytes() {
+        return (long) chunks.length * recordsPerChunk * RECORD_SIZE;
+    }
+
+    /**
+     * @return the number of heap bytes held by the index from account numbers to records
+     */
+    public long getIndexBytes() {
+        return index.getSizeInBytes();
+    }
+
+    /**
+     * Helper method to check that an amount can be added to a balance, with the lock of the record held.
+     * @throws IllegalArgumentException if the record has no room for the currency, or the balance would overflow
+     */
+    private void checkCredit(int slot, int currencyId, Money amount) {
+        MappedByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int balance = findBalance(slot, currencyId);
+        if(balance < 0 && findBalance(slot, NO_CURRENCY) < 0) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.TOO_MANY_CURRENCIES,
+                    chunk.getLong(offsetOf(slot) + ACCT_NUMBER_OFFSET), MAX_CURRENCIES));
+        }
+        long current = balance < 0 ? 0 : chunk.getLong(balance + Integer.BYTES);
+        if(current > Long.MAX_VALUE - amount.getAmountMinorLong()) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.BALANCE_TOO_LARGE,
+                    chunk.getLong(offsetOf(slot) + ACCT_NUMBER_OFFSET), amount.toString()));
+        }
+    }
+
+    /**
+     * Helper method to add an amount to a balance, with the lock of the record held.
+     */
+    private void credit(int slot, int currencyId, Money amount) {
+        checkCredit(slot, currencyId, amount);
+        MappedByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int balance = findBalance(slot, currencyId);
+        if(balance < 0) {
+            balance = findBalance(slot, NO_CURRENCY);
+            chunk.putLong(balance + Integer.BYTES, 0);
+            chunk.putInt(balance, currencyId);
+        }
+        chunk.putLong(balance + Integer.BYTES, chunk.getLong(balance + Integer.BYTES) + amount.getAmountMinorLong());
+    }
+
+    /**
+     * Helper method to remove an amount from a balance, with the lock of the record held.
+     * Balances of other currencies than the primary one are freed once they reach zero.
+     */
+    private void debit(int slot, int currencyId, Money amount) {
+        MappedByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int balance = findBalance(slot, currencyId);
+        long remaining = balance < 0 ? -1 : chunk.getLong(balance + Integer.BYTES) - amount.getAmountMinorLong();
+        if(remaining < 0) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INSUFFICIENT_BALANCE, amount.toString()));
+        }
+        chunk.putLong(balance + Integer.BYTES, remaining);
+        if(remaining == 0 && currencyId != chunk.getInt(offsetOf(slot) + PRIMARY_CURRENCY_OFFSET)) {
+            chunk.putInt(balance, NO_CURRENCY);
+        }
+    }
+
+    /**
+     * @return the offset of the balance of a currency within the chunk of a record, or -1 if the record has none
+     */
+    private int findBalance(int slot, int currencyId) {
+        MappedByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int offset = offsetOf(slot) + BALANCES_OFFSET;
+        for(int i = 0; i < MAX_CURRENCIES; i++, offset += BALANCE_SIZE) {
+            if(chunk.getInt(offset) == currencyId) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkPositive(Money amount) {
+        if(!amount.isPositive()) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_AMOUNT, amount.getAmount()));
+        }
+    }
+
+    private int slotOf(long bankAcctNumber) {
+        int slot = index.get(bankAcctNumber);
+        if(slot < 0) {
+            throw new IllegalArgumentException(
+                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, String.valueOf(bankAcctNumber)));
+        }
+        return slot;
+    }
+
+    private int currencyId(CurrencyUnit currency) {
+        Integer currencyId = currencyIds.get(currency);
+        if(currencyId == null) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_CURRENCY, currency.getCode()));
+        }
+        return currencyId;
+    }
+
+    private int offsetOf(int slot) {
+        return (slot % recordsPerChunk) * RECORD_SIZE;
+    }
+
+    private Object lockOf(int slot) {
+        return locks[slot % LOCK_STRIPES];
+    }
+
+    /**
+     * Helper method to fetch the chunk of a new record, mapping a further chunk of the file if needed.
+     */
+    private MappedByteBuffer chunkOf(int slot) {
+        int chunk = slot / recordsPerChunk;
+        if(chunk == chunks.length) {
+            try {
+                MappedByteBuffer[] grown = Arrays.copyOf(chunks, chunk + 1);
+                grown[chunk] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) chunk * recordsPerChunk * RECORD_SIZE, (long) recordsPerChunk * RECORD_SIZE);
+                chunks = grown;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return chunks[chunk];
+    }
+}
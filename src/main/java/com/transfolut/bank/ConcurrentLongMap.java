@@ -0,0 +1,268 @@
+package com.transfolut.bank;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent map from long keys to values, specialised for primitive keys so that lookups never box their key
+ * and find an entry in a single probe sequence.
+ * Entries are split into segments by the high bits of the hash of their key, and every segment is an
+ * open-addressing table probed linearly. Lookups never lock, while changes lock the segment of their key only.
+ * A key keeps its position in a table until the table is rebuilt, and a removed entry only loses its value,
+ * so that a lookup finding a key always reads the value of that key. Tables are rebuilt as a whole,
+ * growing or dropping removed entries, and published at once.
+ */
+final class ConcurrentLongMap<V> {
+
+    // Marks a free position, so 0 cannot be used as a key
+    private static final long FREE = 0;
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int MINIMUM_CAPACITY = 16;
+    // Load factor, removed entries included, above which a table is rebuilt
+    private static final double MAX_LOAD = 0.6;
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    ConcurrentLongMap() {
+        this.segments = (Segment<V>[]) new Segment<?>[SEGMENTS];
+        for(int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    /**
+     * @return the value of a key, or null if the key has none
+     */
+    V get(long key) {
+        int hash = hash(key);
+        Table<V> table = segments[hash >>> (Integer.SIZE - SEGMENT_BITS)].table;
+        int mask = table.mask;
+        for(int i = hash & mask; ; i = (i + 1) & mask) {
+            long probed = table.keys.get(i);
+            if(probed == key) {
+                return table.values.get(i);
+            }
+            if(probed == FREE) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value of the key, or null if the value was added
+     * @throws IllegalArgumentException if the key is 0
+     */
+    V putIfAbsent(long key, V value) {
+        checkKey(key);
+        int hash = hash(key);
+        Segment<V> segment = segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+        synchronized (segment) {
+            V existing = get(key);
+            if(existing == null) {
+                segment.put(key, hash, value);
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Computes the value of a key which has none, with the segment of the key locked so that the value
+     * is computed at most once. Lookups of other segments are never held up by the computation, but changes to
+     * every key of the segment are, so the computation must be short and must not block, e.g. on a disk read.
+     * The value is only visible once the computation has returned, so the computation must not publish it elsewhere.
+     * @param compute computes the value of the key, or null to leave the key without value
+     * @return the value of the key
+     * @throws IllegalArgumentException if the key is 0
+     */
+    V computeIfAbsent(long key, LongFunction<V> compute) {
+        V value = get(key);
+        if(value != null) {
+            return value;
+        }
+        checkKey(key);
+        int hash = hash(key);
+        Segment<V> segment = segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+        synchronized (segment) {
+            value = get(key);
+            if(value == null) {
+                value = compute.apply(key);
+                if(value != null) {
+                    segment.put(key, hash, value);
+                }
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Removes the value of a key if it is still the given one.
+     * @return true if the value was removed
+     */
+    boolean remove(long key, V value) {
+        int hash = hash(key);
+        Segment<V> segment = segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+        synchronized (segment) {
+            Table<V> table = segment.table;
+            int i = table.indexOf(key, hash);
+            if(i < 0 || table.values.get(i) != value) {
+                return false;
+            }
+            table.values.set(i, null);
+            segment.size--;
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of keys with a value, which is only an estimate while the map changes
+     */
+    int size() {
+        int size = 0;
+        for(Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return the keys with a value, weakly consistent with concurrent changes
+     */
+    long[] keys() {
+        long[] keys = new long[size()];
+        int count = 0;
+        for(Segment<V> segment : segments) {
+            Table<V> table = segment.table;
+            for(int i = 0; i < table.keys.length(); i++) {
+                long key = table.keys.get(i);
+                if(key != FREE && table.values.get(i) != null) {
+                    if(count == keys.length) {
+                        keys = Arrays.copyOf(keys, keys.length * 2 + 1);
+                    }
+                    keys[count++] = key;
+                }
+            }
+        }
+        return count == keys.length ? keys : Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * Removes every entry, shrinking all segments back to small tables.
+     */
+    void clear() {
+        for(Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.table = new Table<>(MINIMUM_CAPACITY);
+                segment.size = 0;
+            }
+        }
+    }
+
+    private static void checkKey(long key) {
+        if(key == FREE) {
+            throw new IllegalArgumentException("0 cannot be used as a key");
+        }
+    }
+
+    /**
+     * Spreads the bits of a key, as account numbers are dense and would otherwise cluster in the tables.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Segment of the map, whose table is only changed with the segment locked.
+     */
+    private static final class Segment<V> {
+        private volatile Table<V> table = new Table<>(MINIMUM_CAPACITY);
+        // Number of keys with a value
+        private volatile int size;
+
+        /**
+         * Gives a value to a key which has none, reusing the position of the key if it had a value before.
+         * The table is rebuilt first if a new position would take it over its load factor.
+         */
+        private void put(long key, int hash, V value) {
+            Table<V> current = table;
+            int i = current.indexOf(key, hash);
+            if(i >= 0) {
+                current.values.set(i, value);
+            } else {
+                if(current.used + 1 > current.keys.length() * MAX_LOAD) {
+                    // Tables mostly made of removed entries are rebuilt at the same capacity
+                    int capacity = size + 1 > current.keys.length() * MAX_LOAD / 2
+                            ? current.keys.length() * 2 : current.keys.length();
+                    current = current.rebuild(capacity);
+                    table = current;
+                }
+                current.insert(key, hash, value);
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Arrays of keys and values, with a capacity which is a power of two.
+     */
+    private static final class Table<V> {
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<V> values;
+        private final int mask;
+        // Number of positions holding a key, with or without value
+        private int used;
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * @return the position of a key, or -1 if the key has none
+         */
+        private int indexOf(long key, int hash) {
+            for(int i = hash & mask; ; i = (i + 1) & mask) {
+                long probed = keys.get(i);
+                if(probed == key) {
+                    return i;
+                }
+                if(probed == FREE) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Writes the value before publishing the key, so that a lookup finding the key always finds its value.
+         */
+        private void insert(long key, int hash, V value) {
+            int i = hash & mask;
+            while(keys.get(i) != FREE) {
+                i = (i + 1) & mask;
+            }
+            values.set(i, value);
+            keys.set(i, key);
+            used++;
+        }
+
+        /**
+         * @return a new table holding the keys which have a value
+         */
+        private Table<V> rebuild(int capacity) {
+            Table<V> rebuilt = new Table<>(capacity);
+            for(int i = 0; i < keys.length(); i++) {
+                V value = values.get(i);
+                if(value != null) {
+                    long key = keys.get(i);
+                    rebuilt.insert(key, hash(key), value);
+                }
+            }
+            return rebuilt;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable table of exchange rates, each quoted as the amount of a currency bought by one unit of a base currency.
+ * Conversions between two quoted currencies go through their cross rate, so a single table of rates against
+ * one base currency covers every pair of currencies.
+ * Tables are never updated in place, a new table replaces the previous one as a whole.
+ */
+public final class FxRates {
+
+    // Rates without any currency, converting nothing but same currency amounts
+    static final FxRates EMPTY = new FxRates(CurrencyUnit.USD, Collections.emptyMap());
+
+    private final CurrencyUnit base;
+    private final Map<CurrencyUnit, BigDecimal> rates;
+
+    /**
+     * @param base currency the rates are quoted against
+     * @param rates amount of every currency bought by one unit of the base currency
+     * @throws IllegalArgumentException if a rate is not positive
+     */
+    public FxRates(CurrencyUnit base, Map<CurrencyUnit, BigDecimal> rates) {
+        Map<CurrencyUnit, BigDecimal> quotedRates = new HashMap<>(rates);
+        quotedRates.forEach((currency, rate) -> {
+            if(rate.signum() <= 0) {
+                throw new IllegalArgumentException(
+                        String.format(TransfolutMessages.INVALID_FX_RATE, rate.toPlainString(), currency.getCode()));
+            }
+        });
+        quotedRates.put(base, BigDecimal.ONE);
+        this.base = base;
+        this.rates = Collections.unmodifiableMap(quotedRates);
+    }
+
+    /**
+     * @return the currency the rates are quoted against
+     */
+    public CurrencyUnit getBase() {
+        return base;
+    }
+
+    /**
+     * @return the amount of every currency bought by one unit of the base currency, including the base currency itself
+     */
+    public Map<CurrencyUnit, BigDecimal> getRates() {
+        return rates;
+    }
+
+    /**
+     * Converts an amount into another currency, rounding half even to the scale of the target currency.
+     * @param amount to convert
+     * @param currency to convert the amount into
+     * @return the converted amount, or the amount itself if it already is in that currency
+     * @throws IllegalArgumentException if either currency has no rate
+     */
+    public Money convert(Money amount, CurrencyUnit currency) {
+        if(amount.getCurrencyUnit().equals(currency)) {
+            return amount;
+        }
+        BigDecimal fromRate = rates.get(amount.getCurrencyUnit());
+        BigDecimal toRate = rates.get(currency);
+        if(fromRate == null || toRate == null) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.FX_RATE_NOT_FOUND,
+                    amount.getCurrencyUnit().getCode(), currency.getCode()));
+        }
+        BigDecimal converted = amount.getAmount().multiply(toRate).divide(fromRate, MathContext.DECIMAL64);
+        return Money.of(currency, converted, RoundingMode.HALF_EVEN);
+    }
+}
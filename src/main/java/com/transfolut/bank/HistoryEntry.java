@@ -0,0 +1,113 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.joda.time.LocalDateTime;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Entry of the transaction history of a {@link BankAccount}, together with the balance it left behind.
+ * Entries are only formatted into statement lines when the history is read.
+ */
+final class HistoryEntry {
+
+    private final long timestamp;
+    // Account wide sequence of the transaction, ordering transactions applied within the same millisecond
+    private final long sequence;
+    private final Money transaction;
+    private final Money balanceAfter;
+
+    private HistoryEntry(long timestamp, long sequence, Money transaction, Money balanceAfter) {
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        this.transaction = transaction;
+        this.balanceAfter = balanceAfter;
+    }
+
+    /**
+     * @return the entry recording the creation of an account
+     */
+    static HistoryEntry accountCreated(long timestamp) {
+        return new HistoryEntry(timestamp, 0L, null, null);
+    }
+
+    /**
+     * @param transaction amount credited or, if negative, debited
+     * @param after balance of the transaction currency once the transaction was applied
+     * @return the entry recording a transaction
+     */
+    static HistoryEntry transaction(Money transaction, BalanceSnapshot after) {
+        return new HistoryEntry(after.getTimestamp(), after.getSequence(), transaction,
+                Money.of(transaction.getCurrencyUnit(), after.getAmount()));
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return true if this entry was applied after the other one, by timestamp and then by sequence
+     */
+    boolean isLaterThan(HistoryEntry other) {
+        return timestamp != other.timestamp ? timestamp > other.timestamp : sequence > other.sequence;
+    }
+
+    /**
+     * @return the transaction or null if this entry records the account creation
+     */
+    Money getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * @return the balance after the transaction or null if this entry records the account creation
+     */
+    Money getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    /**
+     * Writes the entry in the compact binary form read back by {@link #readFrom(DataInput)}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(timestamp);
+        out.writeBoolean(transaction != null);
+        if(transaction != null) {
+            out.writeUTF(transaction.getCurrencyUnit().getCode());
+            out.writeUTF(transaction.getAmount().toPlainString());
+            out.writeUTF(balanceAfter.getAmount().toPlainString());
+            out.writeLong(sequence);
+        }
+    }
+
+    /**
+     * @return the entry previously written by {@link #writeTo(DataOutput)}
+     */
+    static HistoryEntry readFrom(DataInput in) throws IOException {
+        long timestamp = in.readLong();
+        if(!in.readBoolean()) {
+            return accountCreated(timestamp);
+        }
+        CurrencyUnit currency = CurrencyUnit.of(in.readUTF());
+        Money transaction = Money.of(currency, new BigDecimal(in.readUTF()));
+        Money balanceAfter = Money.of(currency, new BigDecimal(in.readUTF()));
+        return new HistoryEntry(timestamp, in.readLong(), transaction, balanceAfter);
+    }
+
+    @Override
+    public String toString() {
+        LocalDateTime time = new LocalDateTime(timestamp);
+        return transaction == null
+                ? String.format(TransfolutMessages.HISTORY_ACCOUNT_CREATED, time)
+                : String.format(TransfolutMessages.HISTORY_TRANSACTION, time, transaction, balanceAfter);
+    }
+}
@@ -0,0 +1,259 @@
+package com.transfolut.bank;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only store of spilled {@link HistoryEntry} blocks shared by all accounts of a {@link BankService}.
+ * Blocks are appended to segment files which are rolled once they reach their maximum size,
+ * and read back through memory-mapped buffers so that spilled history does not live on the heap.
+ * Segments are mapped in fixed windows, each mapped once it has been written in full and never mapped again,
+ * while blocks in the window still being written, or straddling two windows, are read from the file.
+ * A block is addressed by a single long holding its segment number and offset.
+ */
+final class HistorySegmentStore {
+
+    private static final int OFFSET_BITS = 32;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    // Size of the windows segments are mapped in
+    private static final long WINDOW_SIZE = 8L * 1024 * 1024;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long windowSize;
+    private final boolean temporary;
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    // Mapped windows keyed by segment number and window index
+    private final Map<Long, MappedByteBuffer> windows = new ConcurrentHashMap<>();
+    // Size of every segment which is no longer written to
+    private final Map<Integer, Long> sealedSizes = new ConcurrentHashMap<>();
+    private volatile int activeSegment;
+    private volatile long activePosition;
+    private boolean closed;
+
+    HistorySegmentStore(Path directory, long segmentSize) {
+        this(directory, segmentSize, false);
+    }
+
+    /**
+     * @param directory holding the segment files
+     * @param segmentSize maximum size of a segment in bytes
+     * @param temporary true if the segment files and the directory are deleted when the store is closed
+     */
+    HistorySegmentStore(Path directory, long segmentSize, boolean temporary) {
+        this(directory, segmentSize, temporary, WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize size of the windows segments are mapped in, capped at the segment size
+     */
+    HistorySegmentStore(Path directory, long segmentSize, boolean temporary, long windowSize) {
+        this.directory = directory;
+        // A single mapping cannot exceed 2GB
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+        this.windowSize = Math.min(windowSize, this.segmentSize);
+        this.temporary = temporary;
+        try {
+            Files.createDirectories(directory);
+            openSegment(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a block of entries to the active segment.
+     * @param entries to spill
+     * @return the address of the block
+     */
+    long append(List<HistoryEntry> entries) {
+        byte[] block = encode(entries);
+        try {
+            synchronized (this) {
+                if(closed) {
+                    throw new IllegalStateException("The history store has been closed.");
+                }
+                if(activePosition > 0 && activePosition + block.length > segmentSize) {
+                    sealedSizes.put(activeSegment, activePosition);
+                    openSegment(activeSegment + 1);
+                }
+                long offset = activePosition;
+                FileChannel channel = segments.get(activeSegment);
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+                activePosition += block.length;
+                return ((long) activeSegment << OFFSET_BITS) | offset;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a block of entries back, through the mapping of its window if it has been written in full.
+     * @param address of the block as returned by {@link #append(List)}
+     * @return the entries of the block in the order they were appended
+     */
+    List<HistoryEntry> read(long address) {
+        int segment = (int) (address >>> OFFSET_BITS);
+        long offset = address & OFFSET_MASK;
+        int length = read(segment, offset, Integer.BYTES).getInt();
+        byte[] block = new byte[length];
+        read(segment, offset + Integer.BYTES, length).get(block);
+        return decode(block);
+    }
+
+    /**
+     * Closes the segment files and drops their mappings, deleting them if the store is temporary.
+     * Blocks can no longer be appended or read once the store is closed.
+     */
+    synchronized void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        windows.clear();
+        for(FileChannel channel : segments.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing is written once closed, so a failing close loses nothing
+            }
+        }
+        segments.clear();
+        if(temporary) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "history-*.segment")) {
+                for(Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Helper method to read a range of a segment, from the mapping of its window if it is covered by a single window
+     * which has been written in full, or from the file otherwise.
+     * @return a buffer positioned at the start of the range
+     */
+    private ByteBuffer read(int segment, long offset, int length) {
+        long window = offset / windowSize;
+        long windowStart = window * windowSize;
+        long windowEnd = windowStart + windowSize;
+        try {
+            if(offset + length <= windowEnd && isWrittenInFull(segment, windowEnd)) {
+                ByteBuffer mapping = windows.get(((long) segment << OFFSET_BITS) | window);
+                if(mapping == null) {
+                    // A window written in full never changes again, so it is mapped whole, or up to the end
+                    // of its segment if the segment was sealed before the end of the window
+                    Long sealedSize = sealedSizes.get(segment);
+                    long mappedEnd = sealedSize != null ? Math.min(windowEnd, sealedSize) : windowEnd;
+                    mapping = windows.computeIfAbsent(((long) segment << OFFSET_BITS) | window, key -> map(segment,
+                            windowStart, mappedEnd - windowStart));
+                }
+                ByteBuffer view = mapping.duplicate();
+                view.position((int) (offset - windowStart));
+                return view;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            FileChannel channel = channel(segment);
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException(String.format("History segment %d ends before offset %d.", segment, offset + length));
+                }
+            }
+            buffer.flip();
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to map a window of a segment read-only.
+     */
+    private MappedByteBuffer map(int segment, long position, long size) {
+        try {
+            return channel(segment).map(FileChannel.MapMode.READ_ONLY, position, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to tell whether a segment has been written up to a given position, or has been sealed before it.
+     */
+    private boolean isWrittenInFull(int segment, long end) {
+        return sealedSizes.containsKey(segment) || (segment == activeSegment && activePosition >= end);
+    }
+
+    private FileChannel channel(int segment) {
+        FileChannel channel = segments.get(segment);
+        if(channel == null) {
+            throw new IllegalStateException("The history store has been closed.");
+        }
+        return channel;
+    }
+
+    /**
+     * Helper method to create a new segment file and make it the active one.
+     */
+    private void openSegment(int segment) throws IOException {
+        Path file = directory.resolve(String.format("history-%08d.segment", segment));
+        segments.put(segment, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+        activePosition = 0;
+        activeSegment = segment;
+    }
+
+    private static byte[] encode(List<HistoryEntry> entries) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(entries.size());
+            for(HistoryEntry entry : entries) {
+                entry.writeTo(out);
+            }
+            out.flush();
+            byte[] block = bytes.toByteArray();
+            ByteBuffer.wrap(block).putInt(0, block.length - Integer.BYTES);
+            return block;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<HistoryEntry> decode(byte[] block) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+            int count = in.readInt();
+            List<HistoryEntry> entries = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) {
+                entries.add(HistoryEntry.readFrom(in));
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.transfolut.bank;
+
+import org.joda.money.Money;
+
+/**
+ * Authorization hold reserving an amount of the available balance of an account until it is captured,
+ * released or expires. The held amount stays in the balance but cannot be withdrawn, transferred or held again.
+ */
+public final class Hold {
+
+    private final long id;
+    private final long acctNumber;
+    private final Money amount;
+    private final long expiryTime;
+    private volatile TimingWheel.Timeout<Runnable> timeout;
+
+    /**
+     * @param id of the hold, unique within a {@link BankService}
+     * @param acctNumber account the amount is held on
+     * @param amount held
+     * @param expiryTime time the hold is released at unless captured before, in milliseconds since the epoch
+     */
+    Hold(long id, long acctNumber, Money amount, long expiryTime) {
+        this.id = id;
+        this.acctNumber = acctNumber;
+        this.amount = amount;
+        this.expiryTime = expiryTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getAcctNumber() {
+        return acctNumber;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return time the hold is released at unless captured before, in milliseconds since the epoch
+     */
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    TimingWheel.Timeout<Runnable> getTimeout() {
+        return timeout;
+    }
+
+    void setTimeout(TimingWheel.Timeout<Runnable> timeout) {
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,110 @@
+package com.transfolut.bank;
+
+import org.joda.money.Money;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the outstanding authorization holds of a {@link BankService}.
+ * Every hold waits in the {@link LedgerTimer} until its expiry, so expiring holds costs nothing while they are
+ * outstanding, however many there are. A hold ends exactly once, by whichever of its capture, its release
+ * or its expiry removes it from the registry first.
+ */
+final class HoldRegistry {
+
+    private final LedgerTimer timer;
+    // Gives back the amount of an expired hold to its account
+    private final Consumer<Hold> expiry;
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    HoldRegistry(LedgerTimer timer, Consumer<Hold> expiry) {
+        this.timer = timer;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Registers a hold whose amount has already been reserved on its account, which is assigned the next id.
+     */
+    Hold add(long acctNumber, Money amount, long expiryTime) {
+        Hold hold = new Hold(ids.incrementAndGet(), acctNumber, amount, expiryTime);
+        holds.put(hold.getId(), hold);
+        hold.setTimeout(timer.schedule(() -> expire(hold), expiryTime));
+        return hold;
+    }
+
+    /**
+     * @return the hold, empty once it has been captured, released or has expired
+     */
+    Optional<Hold> get(long id) {
+        return Optional.ofNullable(holds.get(id));
+    }
+
+    /**
+     * Ends a hold in order to capture it.
+     * @return false if the hold had already ended
+     */
+    boolean capture(Hold hold) {
+        return end(hold, captured);
+    }
+
+    /**
+     * Ends a hold in order to release it.
+     * @return false if the hold had already ended
+     */
+    boolean release(Hold hold) {
+        return end(hold, released);
+    }
+
+    /**
+     * Forgets all holds without releasing them.
+     */
+    void clear() {
+        new ArrayList<>(holds.values()).forEach(hold -> {
+            if(holds.remove(hold.getId(), hold)) {
+                timer.cancel(hold.getTimeout());
+            }
+        });
+    }
+
+    /**
+     * @return the metrics of the holds
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("holds.pending", (long) holds.size());
+        metrics.put("holds.captured", captured.sum());
+        metrics.put("holds.released", released.sum());
+        metrics.put("holds.expired", expired.sum());
+        return metrics;
+    }
+
+    private boolean end(Hold hold, LongAdder outcome) {
+        if(!holds.remove(hold.getId(), hold)) {
+            return false;
+        }
+        timer.cancel(hold.getTimeout());
+        outcome.increment();
+        return true;
+    }
+
+    /**
+     * Helper method run by a dispatcher once a hold is due, releasing it unless it has ended meanwhile.
+     */
+    private void expire(Hold hold) {
+        if(holds.remove(hold.getId(), hold)) {
+            expired.increment();
+            expiry.accept(hold);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.transfolut.bank;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follower tailing the {@link ReplicationJournal} of a primary and applying it to its own {@link BankService},
+ * so that reads can be served by as many followers as needed without going through the primary.
+ * The follower reconnects whenever the connection is lost, resuming from the last record it applied.
+ * If the primary has started a new journal in the meantime, or no longer holds the records following the last one
+ * applied, the follower drops its accounts and starts again from the latest snapshot of the primary.
+ */
+public final class JournalFollower {
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final BankService bankService;
+    private final String host;
+    private final int port;
+    private final LongAdder skippedRecords = new LongAdder();
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    // Journal being followed and length of the records applied from it, only used by the follower thread
+    private long journalId;
+    private long offset;
+    private volatile long appliedRecords;
+    private volatile long primaryRecords;
+    private volatile long lastAppliedTimestamp = System.currentTimeMillis();
+    private volatile long lastContact = System.currentTimeMillis();
+
+    /**
+     * @param bankService follower to apply the journal to, which should not be written to otherwise
+     * @param host of the primary
+     * @param port the journal of the primary listens on
+     */
+    public JournalFollower(BankService bankService, String host, int port) {
+        this.bankService = bankService;
+        this.host = host;
+        this.port = port;
+        bankService.addMetrics(this::getMetrics);
+    }
+
+    /**
+     * Starts following the primary.
+     */
+    public void start() {
+        Thread thread = new Thread(this::follow, "transfolut-journal-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops following the primary.
+     */
+    public void close() {
+        running = false;
+        Socket current = socket;
+        if(current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * @return true while connected to the primary
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return the number of journal records applied so far
+     */
+    public long getAppliedRecords() {
+        return appliedRecords;
+    }
+
+    /**
+     * @return the number of journal records known to exist on the primary but not applied yet
+     */
+    public long getLagRecords() {
+        return Math.max(0, primaryRecords - appliedRecords);
+    }
+
+    /**
+     * Reports how far behind the primary the follower may be.
+     * While records are pending, it is the age of the last record applied. Once caught up, it is the time since
+     * the primary last confirmed that nothing else is pending, which keeps growing if the primary becomes unreachable.
+     * @return the replication lag in milliseconds
+     */
+    public long getLagMillis() {
+        long now = System.currentTimeMillis();
+        return Math.max(0, getLagRecords() > 0 ? now - lastAppliedTimestamp : now - lastContact);
+    }
+
+    /**
+     * @return the metrics of the replication
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("replication.connected", connected ? 1L : 0L);
+        metrics.put("replication.applied", appliedRecords);
+        metrics.put("replication.skipped", skippedRecords.sum());
+        metrics.put("replication.lag.records", getLagRecords());
+        metrics.put("replication.lag.millis", getLagMillis());
+        return metrics;
+    }
+
+    /**
+     * Helper method run by the follower thread to stay connected to the primary.
+     */
+    private void follow() {
+        while(running) {
+            try (Socket primary = new Socket(host, port)) {
+                socket = primary;
+                tail(primary);
+            } catch (IOException e) {
+                connected = false;
+                sleepBeforeReconnecting();
+            }
+        }
+    }
+
+    /**
+     * Helper method to apply the journal records sent by the primary until the connection is lost.
+     */
+    private void tail(Socket primary) throws IOException {
+        DataOutputStream out = new DataOutputStream(primary.getOutputStream());
+        out.writeLong(journalId);
+        out.writeLong(offset);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(primary.getInputStream()));
+        long primaryJournalId = in.readLong();
+        long startOffset = in.readLong();
+        long startRecords = in.readLong();
+        if(primaryJournalId != journalId || startOffset != offset) {
+            // The accounts replicated so far cannot be brought up to date, so they are replaced by the snapshot
+            bankService.clearAccounts();
+            journalId = primaryJournalId;
+            offset = startOffset;
+            appliedRecords = startRecords;
+        }
+        applySnapshot(in);
+        connected = true;
+
+        while(running) {
+            int length = in.readInt();
+            JournalRecord journalRecord = JournalRecord.readFrom(in);
+            lastContact = System.currentTimeMillis();
+            if(journalRecord.getType() == JournalRecord.Type.HEARTBEAT) {
+                primaryRecords = journalRecord.getJournalSize();
+                continue;
+            }
+            if(!journalRecord.applyTo(bankService)) {
+                skippedRecords.increment();
+            }
+            offset += Integer.BYTES + length;
+            lastAppliedTimestamp = journalRecord.getTimestamp();
+            appliedRecords++;
+        }
+    }
+
+    /**
+     * Helper method to apply the snapshot sent ahead of the journal, if any. Transactions of the snapshot that
+     * are also in the journal following it are skipped, so that they are only applied once.
+     */
+    private void applySnapshot(DataInputStream in) throws IOException {
+        int journaledTransactions = in.readInt();
+        Map<Long, Set<Long>> journaled = new HashMap<>();
+        for(int i = 0; i < journaledTransactions; i++) {
+            journaled.computeIfAbsent(in.readLong(), bankAcctNumber -> new HashSet<>()).add(in.readLong());
+        }
+        long snapshotRecords = in.readLong();
+        for(long i = 0; i < snapshotRecords; i++) {
+            in.readInt();
+            JournalRecord journalRecord = JournalRecord.readFrom(in);
+            if(journalRecord.getType() == JournalRecord.Type.TRANSACTION && journaled
+                    .getOrDefault(journalRecord.getBankAcctNumber(), Collections.emptySet()).contains(journalRecord.getSequence())) {
+                continue;
+            }
+            if(!journalRecord.applyTo(bankService)) {
+                skippedRecords.increment();
+            }
+        }
+    }
+
+    private void sleepBeforeReconnecting() {
+        try {
+            Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
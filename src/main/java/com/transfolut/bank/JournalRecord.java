@@ -0,0 +1,126 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Record of the replication journal: either a change applied by the primary {@link BankService},
+ * or a heartbeat telling followers how far the journal goes.
+ */
+final class JournalRecord {
+
+    enum Type { ACCOUNT_CREATED, TRANSACTION, HEARTBEAT }
+
+    private final Type type;
+    private final long bankAcctNumber;
+    private final String currency;
+    private final BigDecimal amount;
+    private final BigDecimal balanceAfter;
+    private final long timestamp;
+    // Sequence of a transaction within its account, or number of records in the journal for a heartbeat
+    private final long sequence;
+
+    private JournalRecord(Type type, long bankAcctNumber, String currency, BigDecimal amount, BigDecimal balanceAfter,
+                          long timestamp, long sequence) {
+        this.type = type;
+        this.bankAcctNumber = bankAcctNumber;
+        this.currency = currency;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+    }
+
+    static JournalRecord accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+        return new JournalRecord(Type.ACCOUNT_CREATED, bankAcctNumber, primaryCurrency.getCode(), null, null, timestamp, 0L);
+    }
+
+    static JournalRecord transaction(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp,
+                                     long sequence) {
+        return new JournalRecord(Type.TRANSACTION, bankAcctNumber, transaction.getCurrencyUnit().getCode(),
+                transaction.getAmount(), balanceAfter, timestamp, sequence);
+    }
+
+    /**
+     * @param journalSize number of records in the journal when the heartbeat was sent
+     */
+    static JournalRecord heartbeat(long journalSize, long timestamp) {
+        return new JournalRecord(Type.HEARTBEAT, 0L, null, null, null, timestamp, journalSize);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getBankAcctNumber() {
+        return bankAcctNumber;
+    }
+
+    /**
+     * @return the sequence of a transaction within its account
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of records in the journal when a heartbeat was sent
+     */
+    long getJournalSize() {
+        return sequence;
+    }
+
+    /**
+     * Applies the change recorded by this record to a follower.
+     * @return false if the record is about an account the follower does not hold
+     */
+    boolean applyTo(BankService bankService) {
+        CurrencyUnit currencyUnit = CurrencyUnit.of(currency);
+        if(type == Type.ACCOUNT_CREATED) {
+            bankService.replicateAccountCreation(bankAcctNumber, currencyUnit, timestamp);
+            return true;
+        }
+        return bankService.replicateTransaction(bankAcctNumber, Money.of(currencyUnit, amount),
+                new BalanceSnapshot(balanceAfter, timestamp, sequence));
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(timestamp);
+        out.writeLong(sequence);
+        if(type == Type.HEARTBEAT) {
+            return;
+        }
+        out.writeLong(bankAcctNumber);
+        out.writeUTF(currency);
+        if(type == Type.TRANSACTION) {
+            out.writeUTF(amount.toPlainString());
+            out.writeUTF(balanceAfter.toPlainString());
+        }
+    }
+
+    static JournalRecord readFrom(DataInput in) throws IOException {
+        Type type = Type.values()[in.readByte()];
+        long timestamp = in.readLong();
+        long sequence = in.readLong();
+        if(type == Type.HEARTBEAT) {
+            return heartbeat(sequence, timestamp);
+        }
+        long bankAcctNumber = in.readLong();
+        String currency = in.readUTF();
+        if(type == Type.ACCOUNT_CREATED) {
+            return new JournalRecord(type, bankAcctNumber, currency, null, null, timestamp, sequence);
+        }
+        return new JournalRecord(type, bankAcctNumber, currency, new BigDecimal(in.readUTF()),
+                new BigDecimal(in.readUTF()), timestamp, sequence);
+    }
+}
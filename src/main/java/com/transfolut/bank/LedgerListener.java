@@ -0,0 +1,33 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Listener notified of every change applied to the accounts of a {@link BankService}, in the thread applying it.
+ * Listeners sit on the write path, so they must hand any slow work over to another thread.
+ * Changes to the same currency of an account may be notified out of order by concurrent threads,
+ * their sequence gives the order in which they were applied.
+ */
+public interface LedgerListener {
+
+    /**
+     * Called once an account has been created.
+     * @param bankAcctNumber number of the new account
+     * @param primaryCurrency primary currency of the new account
+     * @param timestamp creation time in milliseconds since the epoch
+     */
+    void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp);
+
+    /**
+     * Called once a deposit or a withdrawal has been applied to an account.
+     * @param bankAcctNumber number of the account
+     * @param transaction amount added to the balance, negative for withdrawals
+     * @param balanceAfter balance of the transaction currency left behind by the transaction
+     * @param timestamp time the transaction was applied at in milliseconds since the epoch
+     * @param sequence position of the transaction among all changes applied to the account
+     */
+    void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp, long sequence);
+}
@@ -0,0 +1,40 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link LedgerListener} notifying all the listeners registered with a {@link BankService}.
+ * Listeners are rarely added, so they are kept in a copy-on-write list which the write path iterates without locking.
+ */
+final class LedgerListeners implements LedgerListener {
+
+    private final List<LedgerListener> listeners = new CopyOnWriteArrayList<>();
+
+    void add(LedgerListener listener) {
+        listeners.add(listener);
+    }
+
+    void remove(LedgerListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+        for(LedgerListener listener : listeners) {
+            listener.accountCreated(bankAcctNumber, primaryCurrency, timestamp);
+        }
+    }
+
+    @Override
+    public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp,
+                                   long sequence) {
+        for(LedgerListener listener : listeners) {
+            listener.transactionApplied(bankAcctNumber, transaction, balanceAfter, timestamp, sequence);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.transfolut.bank;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timer running the timed tasks of a {@link BankService}, such as scheduled transfers and hold expiries.
+ * Tasks wait in a {@link TimingWheel} advanced by a single ticking thread, which hands the tasks due at every tick
+ * over to a pool of dispatchers in batches, so that a tick with many due tasks does not delay the next ticks.
+ * The delay between the deadline of a task and the time it actually runs is reported as the scheduling lag.
+ */
+final class LedgerTimer {
+
+    // Number of due tasks run by a dispatcher in one go
+    private static final int DISPATCH_BATCH_SIZE = 1000;
+
+    private final TimingWheel<Runnable> wheel;
+    private final ExecutorService dispatchers;
+    private final Thread ticker;
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder totalLag = new LongAdder();
+    private final LongAccumulator maximumLag = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param tickMillis duration of a tick of the wheel in milliseconds
+     * @param dispatcherThreads number of threads running the due tasks
+     */
+    LedgerTimer(long tickMillis, int dispatcherThreads) {
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        this.dispatchers = Executors.newFixedThreadPool(dispatcherThreads, dispatcher -> {
+            Thread thread = new Thread(dispatcher, "transfolut-timer-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker = new Thread(this::tick, "transfolut-timer");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * @param task to run once its deadline has passed
+     * @param deadlineMillis time the task is due at in milliseconds since the epoch, tasks already due run at the next tick
+     * @return the timeout of the task, which can be cancelled
+     */
+    TimingWheel.Timeout<Runnable> schedule(Runnable task, long deadlineMillis) {
+        return wheel.schedule(task, deadlineMillis);
+    }
+
+    /**
+     * @return true if the task was cancelled, false if it has already been handed over to a dispatcher
+     */
+    boolean cancel(TimingWheel.Timeout<Runnable> timeout) {
+        return timeout != null && wheel.cancel(timeout);
+    }
+
+    /**
+     * @return the metrics of the timer
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("timer.pending", (long) wheel.size());
+        metrics.put("timer.dispatched", dispatched.sum());
+        metrics.put("timer.lagMillis.total", totalLag.sum());
+        metrics.put("timer.lagMillis.max", maximumLag.get());
+        return metrics;
+    }
+
+    /**
+     * Stops the ticking thread and the dispatchers, pending tasks never run.
+     */
+    void close() {
+        ticker.interrupt();
+        dispatchers.shutdownNow();
+    }
+
+    /**
+     * Helper method run by the ticking thread, advancing the wheel at the end of every tick.
+     * A ticking thread which fell behind catches up with all ticks it missed at once.
+     */
+    private void tick() {
+        try {
+            while(true) {
+                long wait = wheel.getNextTickMillis() - System.currentTimeMillis();
+                if(wait > 0) {
+                    Thread.sleep(wait);
+                    continue;
+                }
+                List<TimingWheel.Timeout<Runnable>> due = wheel.advanceTo(System.currentTimeMillis());
+                for(int from = 0; from < due.size(); from += DISPATCH_BATCH_SIZE) {
+                    List<TimingWheel.Timeout<Runnable>> batch = due.subList(from, Math.min(from + DISPATCH_BATCH_SIZE, due.size()));
+                    dispatchers.execute(() -> batch.forEach(this::run));
+                }
+            }
+        } catch (InterruptedException e) {
+            // The timer has been closed
+        }
+    }
+
+    private void run(TimingWheel.Timeout<Runnable> timeout) {
+        long lag = Math.max(0, System.currentTimeMillis() - timeout.getDeadlineMillis());
+        dispatched.increment();
+        totalLag.add(lag);
+        maximumLag.accumulate(lag);
+        timeout.getPayload().run();
+    }
+}
@@ -0,0 +1,136 @@
+package com.transfolut.bank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Open-addressing hash index from long keys to int slots, kept in two primitive arrays so that
+ * millions of entries cost no object headers, no boxing and nothing for the garbage collector to trace.
+ * Keys are probed linearly from their hash, and lookups never lock: a slot is written before the key
+ * claiming it is published, and the table is replaced as a whole when it grows.
+ * Insertions are serialised, and entries are never removed one by one.
+ */
+final class LongSlotIndex {
+
+    // Marks a free position, so 0 cannot be used as a key
+    private static final long FREE = 0;
+    private static final int MINIMUM_CAPACITY = 16;
+    // Load factor above which the table doubles, kept low so that probe sequences stay short
+    private static final double MAX_LOAD = 0.6;
+
+    private volatile Table table;
+    private int size;
+
+    /**
+     * @param expectedSize number of entries the index is sized for before it has to grow
+     */
+    LongSlotIndex(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return the slot of a key, or -1 if the key has no slot
+     */
+    int get(long key) {
+        Table current = table;
+        int mask = current.mask;
+        for(int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long probed = current.keys.get(i);
+            if(probed == key) {
+                return current.slots[i];
+            }
+            if(probed == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Gives a slot to a key which has none yet.
+     * @return true if the key was added, false if it already had a slot
+     * @throws IllegalArgumentException if the key is 0
+     */
+    synchronized boolean putIfAbsent(long key, int slot) {
+        if(key == FREE) {
+            throw new IllegalArgumentException("0 cannot be indexed");
+        }
+        if(get(key) >= 0) {
+            return false;
+        }
+        if(size + 1 > table.keys.length() * MAX_LOAD) {
+            Table grown = new Table(table.keys.length() * 2);
+            Table current = table;
+            for(int i = 0; i < current.keys.length(); i++) {
+                long existing = current.keys.get(i);
+                if(existing != FREE) {
+                    grown.insert(existing, current.slots[i]);
+                }
+            }
+            table = grown;
+        }
+        table.insert(key, slot);
+        size++;
+        return true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry, shrinking the index back to a small table.
+     */
+    synchronized void clear() {
+        table = new Table(MINIMUM_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * @return the number of bytes held by the arrays of the index
+     */
+    long getSizeInBytes() {
+        return (long) table.keys.length() * (Long.BYTES + Integer.BYTES);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while(capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of a key, as account numbers are dense and would otherwise cluster in the table.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Arrays of keys and slots, with a capacity which is a power of two.
+     */
+    private static final class Table {
+        private final AtomicLongArray keys;
+        private final int[] slots;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.slots = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Writes the slot before publishing the key, so that a reader finding the key always finds its slot.
+         */
+        private void insert(long key, int slot) {
+            int i = hash(key) & mask;
+            while(keys.get(i) != FREE) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = slot;
+            keys.set(i, key);
+        }
+    }
+}
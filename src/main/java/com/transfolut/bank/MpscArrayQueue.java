@@ -0,0 +1,78 @@
+package com.transfolut.bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue with any number of producers and a single consumer, backed by a ring array.
+ * Producers claim a position with a single compare-and-set and never lock or allocate, and a full queue refuses
+ * elements rather than making producers wait. A producer publishes its element after claiming its position,
+ * so the consumer stops at a claimed position until its element has been published.
+ */
+final class MpscArrayQueue<E> {
+
+    private final AtomicReferenceArray<E> elements;
+    private final int mask;
+    // Next position claimed by a producer
+    private final AtomicLong producerIndex = new AtomicLong();
+    // Next position read by the consumer, only written by the consumer
+    private volatile long consumerIndex;
+
+    /**
+     * @param capacity minimum number of elements held, rounded up to a power of two
+     */
+    MpscArrayQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element, from any thread.
+     * @return false if the queue is full
+     */
+    boolean offer(E element) {
+        while(true) {
+            long position = producerIndex.get();
+            if(position - consumerIndex > mask) {
+                return false;
+            }
+            if(producerIndex.compareAndSet(position, position + 1)) {
+                elements.lazySet((int) position & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the published elements in order, from the consumer thread only.
+     * @param consumer of the elements
+     * @param limit maximum number of elements removed
+     * @return the number of elements removed
+     */
+    int drain(Consumer<E> consumer, int limit) {
+        long position = consumerIndex;
+        int drained = 0;
+        while(drained < limit) {
+            int index = (int) position & mask;
+            E element = elements.get(index);
+            if(element == null) {
+                break;
+            }
+            // The position is freed before it is handed back to the producers
+            elements.lazySet(index, null);
+            consumerIndex = ++position;
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * @return the number of claimed positions not read yet, including the ones whose element is not published yet
+     */
+    int size() {
+        return (int) Math.max(0, producerIndex.get() - consumerIndex);
+    }
+}
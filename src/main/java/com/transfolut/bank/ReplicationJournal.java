@@ -0,0 +1,542 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Journal of every change applied by a primary {@link BankService}, streamed to {@link JournalFollower}s over a socket.
+ * Changes are queued by the threads applying them and appended to a journal file by a single writer thread,
+ * so the write path never waits for the disk or the followers. Every follower is served by its own thread,
+ * which tails the journal file from the position the follower asks for and sends it the committed records,
+ * with a heartbeat whenever the journal has grown or has been idle for a while.
+ * A new journal is started every time the primary starts, as the primary does not keep its accounts either,
+ * and the journal files left behind by previous runs are deleted.
+ * <p>
+ * The queue is bounded, and as followers cannot skip a record, the threads applying changes wait for room
+ * while it is full rather than drop their records. The writer never gives up on a batch: if writing it fails,
+ * the segment is reopened without the part of the batch already written and the batch is written again,
+ * while the queue fills up and holds back the changes. Failures and waiting threads are reported by the metrics.
+ * <p>
+ * The journal is written to segment files which roll over at a maximum size. Every roll over snapshots the accounts
+ * of the primary from their histories, and once the snapshot is written the segments preceding it are deleted,
+ * so the journal never holds more than the snapshot and the segments written since. Followers asking for a position
+ * that is no longer held, or for another journal, are sent the snapshot and the segments following it.
+ * The snapshot is read while changes keep being applied, so it also lists the transactions it holds that were
+ * journaled after it started, which followers skip as they are sent again by the segments.
+ */
+public final class ReplicationJournal implements LedgerListener {
+
+    static final long HEARTBEAT_MILLIS = 100;
+    // Time the writer waits for before writing a failed batch again
+    private static final long RETRY_MILLIS = 1000;
+    private static final String SEGMENT_FILE = "journal-%016x-%016x.log";
+    private static final String SNAPSHOT_FILE = "snapshot-%016x-%016x.log";
+    private static final Pattern JOURNAL_FILE_PATTERN = Pattern.compile("(journal|snapshot)-\\p{XDigit}{16}(-\\p{XDigit}{16})?\\.log");
+
+    private final long journalId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final BlockingQueue<JournalRecord> pendingRecords;
+    private final BankService bankService;
+    private final Path directory;
+    private final long maxSegmentBytes;
+    // Segment files of the journal by the offset they start at, only added to by the writer thread
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final LongAdder snapshots = new LongAdder();
+    private final ServerSocketChannel server;
+    private final Object commitMonitor = new Object();
+    private final AtomicInteger followers = new AtomicInteger();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder writerFailures = new LongAdder();
+    private final Thread writer = new Thread(this::writeRecords, "transfolut-journal-writer");
+    // Length and number of records of the journal written and flushed so far
+    private volatile long committedOffset;
+    private volatile long committedRecords;
+    // Number of times the writer thread went through the queue, only incremented by the writer thread
+    private volatile long writerCycles;
+    private volatile Snapshot snapshot;
+    private volatile boolean running = true;
+    // Whether the last attempt of the writer thread to write a batch failed
+    private volatile boolean writerFailing;
+
+    /**
+     * Registers the journal with the primary and opens the socket followers connect to.
+     * @param bankService primary whose changes are journaled
+     * @param directory to write the journal files to
+     * @param port to listen for followers on, or 0 for any free port
+     * @param capacity maximum number of records waiting to be written
+     * @param maxSegmentBytes size in bytes beyond which the journal rolls over to a new segment and is snapshotted
+     */
+    public ReplicationJournal(BankService bankService, Path directory, int port, int capacity, long maxSegmentBytes) {
+        this.bankService = bankService;
+        this.directory = directory;
+        this.pendingRecords = new LinkedBlockingQueue<>(capacity);
+        this.maxSegmentBytes = maxSegmentBytes;
+        try {
+            Files.createDirectories(directory);
+            deleteJournalFiles();
+            this.server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.setDaemon(true);
+        bankService.addLedgerListener(this);
+        bankService.addMetrics(this::getMetrics);
+    }
+
+    /**
+     * Starts writing the journal and accepting followers.
+     */
+    public void start() {
+        writer.start();
+        startThread("transfolut-journal-acceptor", this::acceptFollowers);
+    }
+
+    /**
+     * @return the port followers connect to
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the journal, disconnects all followers and deletes the journal files.
+     */
+    public void close() {
+        bankService.removeLedgerListener(this);
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (commitMonitor) {
+            commitMonitor.notifyAll();
+        }
+        try {
+            deleteJournalFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+        publish(JournalRecord.accountCreated(bankAcctNumber, primaryCurrency, timestamp));
+    }
+
+    @Override
+    public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp,
+                                   long sequence) {
+        publish(JournalRecord.transaction(bankAcctNumber, transaction, balanceAfter, timestamp, sequence));
+    }
+
+    /**
+     * @return the metrics of the journal
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("journal.records", committedRecords);
+        metrics.put("journal.bytes", committedOffset);
+        metrics.put("journal.pending", (long) pendingRecords.size());
+        metrics.put("journal.blocked", blocked.sum());
+        metrics.put("journal.writer.running", writer.isAlive() ? 1L : 0L);
+        metrics.put("journal.writer.failing", writerFailing ? 1L : 0L);
+        metrics.put("journal.writer.failures", writerFailures.sum());
+        metrics.put("journal.followers", (long) followers.get());
+        metrics.put("journal.segments", (long) segments.size());
+        metrics.put("journal.snapshots", snapshots.sum());
+        return metrics;
+    }
+
+    /**
+     * Helper method to queue a record, waiting for room while the queue is full.
+     * Producers waiting for room give up once the journal is closed, as the writer no longer makes room.
+     */
+    private void publish(JournalRecord journalRecord) {
+        if(pendingRecords.offer(journalRecord)) {
+            return;
+        }
+        blocked.increment();
+        try {
+            while(!pendingRecords.offer(journalRecord, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if(!running) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper method run by the writer thread to append the queued records to the journal segments in batches.
+     * Every record is framed by its length, so that followers can keep track of their position in the journal.
+     * A batch is only taken off the queue once written, so a batch that fails is written again after a while.
+     */
+    private void writeRecords() {
+        List<JournalRecord> batch = new ArrayList<>();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        long segmentStart = 0;
+        DataOutputStream out = null;
+        try {
+            while(running) {
+                if(batch.isEmpty()) {
+                    JournalRecord first = pendingRecords.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if(first != null) {
+                        batch.add(first);
+                        pendingRecords.drainTo(batch);
+                    }
+                }
+                try {
+                    if(out == null) {
+                        out = openSegment(segmentStart, committedOffset - segmentStart);
+                    }
+                    if(!batch.isEmpty()) {
+                        long offset = committedOffset;
+                        for(JournalRecord journalRecord : batch) {
+                            recordBytes.reset();
+                            journalRecord.writeTo(record);
+                            out.writeInt(recordBytes.size());
+                            recordBytes.writeTo(out);
+                            offset += Integer.BYTES + recordBytes.size();
+                        }
+                        out.flush();
+                        long records = committedRecords + batch.size();
+                        synchronized (commitMonitor) {
+                            committedOffset = offset;
+                            committedRecords = records;
+                            commitMonitor.notifyAll();
+                        }
+                        batch.clear();
+                        writerFailing = false;
+                        if(offset - segmentStart >= maxSegmentBytes) {
+                            // The next segment is known before any record is committed past its start
+                            out.close();
+                            out = null;
+                            segmentStart = offset;
+                            out = openSegment(segmentStart, 0);
+                            if(snapshotting.compareAndSet(false, true)) {
+                                long snapshotOffset = offset;
+                                startThread("transfolut-journal-snapshot", () -> takeSnapshot(snapshotOffset, records));
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    // The segment is reopened without what was written of the batch before trying again
+                    writerFailures.increment();
+                    writerFailing = true;
+                    closeQuietly(out);
+                    out = null;
+                    Thread.sleep(RETRY_MILLIS);
+                }
+                writerCycles++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Helper method to open a segment for writing, truncated to the length committed in it so far.
+     */
+    private DataOutputStream openSegment(long offset, long length) throws IOException {
+        Path segment = directory.resolve(String.format(SEGMENT_FILE, journalId, offset));
+        FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(length).position(length);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        segments.put(offset, segment);
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Helper method run by a snapshot thread to write the accounts of the primary to a snapshot file followed by
+     * the segment starting at the given offset, and then delete the segments and the snapshot preceding it.
+     * Every record committed before that offset was recorded in the history of its account before being queued,
+     * so it is part of the snapshot. Records read by the snapshot may also be queued after it has started, so once
+     * the writer has gone through everything queued while the snapshot was read, the transactions journaled since
+     * the offset are listed with the snapshot for followers to skip.
+     */
+    private void takeSnapshot(long offset, long records) {
+        Path file = directory.resolve(String.format(SNAPSHOT_FILE, journalId, offset));
+        try {
+            long[] snapshotRecords = {0};
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                bankService.replicateAccounts(new LedgerListener() {
+                    @Override
+                    public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+                        write(JournalRecord.accountCreated(bankAcctNumber, primaryCurrency, timestamp));
+                    }
+
+                    @Override
+                    public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter,
+                                                   long timestamp, long sequence) {
+                        write(JournalRecord.transaction(bankAcctNumber, transaction, balanceAfter, timestamp, sequence));
+                    }
+
+                    private void write(JournalRecord journalRecord) {
+                        try {
+                            ByteBuffer framed = frame(journalRecord);
+                            out.write(framed.array(), 0, framed.limit());
+                            snapshotRecords[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+            // The queue may be drained by the current cycle before the snapshot ended, but not by the next one
+            long cycles = writerCycles + 2;
+            while(writerCycles < cycles) {
+                if(!running) {
+                    Files.deleteIfExists(file);
+                    return;
+                }
+                Thread.sleep(HEARTBEAT_MILLIS / 10);
+            }
+            Snapshot previous = snapshot;
+            snapshot = new Snapshot(file, offset, records, snapshotRecords[0], readTransactions(offset, committedOffset));
+            snapshots.increment();
+            if(previous != null) {
+                Files.deleteIfExists(previous.file);
+            }
+            for(Long segmentStart : segments.headMap(offset).keySet()) {
+                Files.deleteIfExists(segments.remove(segmentStart));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    /**
+     * Helper method to list the transactions journaled between two offsets.
+     * @return the account number and the sequence of every transaction in turn
+     */
+    private long[] readTransactions(long fromOffset, long toOffset) throws IOException {
+        LongStream.Builder transactions = LongStream.builder();
+        long position = fromOffset;
+        while(position < toOffset) {
+            Long nextSegmentStart = segments.higherKey(position);
+            long end = nextSegmentStart != null ? Math.min(nextSegmentStart, toOffset) : toOffset;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(segments.floorEntry(position).getValue())))) {
+                while(position < end) {
+                    int length = in.readInt();
+                    JournalRecord journalRecord = JournalRecord.readFrom(in);
+                    if(journalRecord.getType() == JournalRecord.Type.TRANSACTION) {
+                        transactions.add(journalRecord.getBankAcctNumber()).add(journalRecord.getSequence());
+                    }
+                    position += Integer.BYTES + length;
+                }
+            }
+        }
+        return transactions.build().toArray();
+    }
+
+    /**
+     * Helper method to delete the segments and snapshots of this journal and of the journals of previous runs.
+     */
+    private void deleteJournalFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                if(JOURNAL_FILE_PATTERN.matcher(file.getFileName().toString()).matches()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method run by the acceptor thread to serve every connecting follower from its own thread.
+     */
+    private void acceptFollowers() {
+        while(running) {
+            try {
+                SocketChannel follower = server.accept();
+                startThread("transfolut-journal-follower-" + follower.getRemoteAddress(), () -> serveFollower(follower));
+            } catch (IOException e) {
+                // The socket has been closed by close()
+                return;
+            }
+        }
+    }
+
+    /**
+     * Helper method to stream the journal to a follower until it disconnects.
+     * The follower first sends the id of the journal it has been following and its position in it. It is sent
+     * this journal id and the position it is streamed from, with the number of records preceding that position.
+     * If the follower cannot resume from its own position, the position is the one of the latest snapshot, which
+     * is sent first with the transactions to skip, or the start of the journal if there is no snapshot yet.
+     */
+    private void serveFollower(SocketChannel follower) {
+        followers.incrementAndGet();
+        FileChannel segment = null;
+        try (SocketChannel socket = follower) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(socket));
+            long followedJournalId = in.readLong();
+            long followedOffset = in.readLong();
+            Snapshot current = snapshot;
+            boolean resumed = followedJournalId == journalId && followedOffset <= committedOffset
+                    && (current == null || followedOffset >= current.offset);
+            Snapshot bootstrap = resumed ? null : current;
+            long position = resumed ? followedOffset : bootstrap != null ? bootstrap.offset : 0;
+            long[] journaled = bootstrap != null ? bootstrap.journaled : new long[0];
+            ByteBuffer header = ByteBuffer.allocate(4 * Long.BYTES + Integer.BYTES + journaled.length * Long.BYTES);
+            header.putLong(journalId).putLong(position).putLong(bootstrap != null ? bootstrap.records : 0L)
+                    .putInt(journaled.length / 2);
+            for(long value : journaled) {
+                header.putLong(value);
+            }
+            header.putLong(bootstrap != null ? bootstrap.size : 0L).flip();
+            writeFully(socket, header);
+            if(bootstrap != null) {
+                try (FileChannel snapshotFile = FileChannel.open(bootstrap.file, StandardOpenOption.READ)) {
+                    long sent = 0;
+                    while(sent < snapshotFile.size()) {
+                        sent += snapshotFile.transferTo(sent, snapshotFile.size() - sent, socket);
+                    }
+                }
+            }
+
+            long segmentStart = -1;
+            long lastHeartbeat = 0;
+            while(running) {
+                long committed;
+                long records;
+                synchronized (commitMonitor) {
+                    if(committedOffset == position && running) {
+                        commitMonitor.wait(HEARTBEAT_MILLIS);
+                    }
+                    committed = committedOffset;
+                    records = committedRecords;
+                }
+                long now = System.currentTimeMillis();
+                if(position < committed || now - lastHeartbeat >= HEARTBEAT_MILLIS) {
+                    // Sent ahead of the records, so the follower knows how far the journal goes while catching up
+                    writeFully(socket, frame(JournalRecord.heartbeat(records, now)));
+                    lastHeartbeat = now;
+                }
+                while(position < committed) {
+                    Map.Entry<Long, Path> currentSegment = segments.floorEntry(position);
+                    if(currentSegment == null) {
+                        // The segment has been deleted by a snapshot, the follower is sent the snapshot when it reconnects
+                        return;
+                    }
+                    if(currentSegment.getKey() != segmentStart) {
+                        closeQuietly(segment);
+                        segment = FileChannel.open(currentSegment.getValue(), StandardOpenOption.READ);
+                        segmentStart = currentSegment.getKey();
+                    }
+                    Long nextSegmentStart = segments.higherKey(position);
+                    long end = nextSegmentStart != null ? Math.min(nextSegmentStart, committed) : committed;
+                    position += segment.transferTo(position - segmentStart, end - position, socket);
+                }
+            }
+        } catch (IOException e) {
+            // The follower has disconnected, it resumes from its last position when it reconnects
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(segment);
+            followers.decrementAndGet();
+        }
+    }
+
+    private static ByteBuffer frame(JournalRecord journalRecord) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        journalRecord.writeTo(new DataOutputStream(recordBytes));
+        ByteBuffer framed = ByteBuffer.allocate(Integer.BYTES + recordBytes.size());
+        framed.putInt(recordBytes.size()).put(recordBytes.toByteArray()).flip();
+        return framed;
+    }
+
+    private static void writeFully(SocketChannel socket, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            socket.write(buffer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Snapshot of the accounts of the primary, followed by the journal from its offset.
+     */
+    private static final class Snapshot {
+
+        private final Path file;
+        // Offset of the segment following the snapshot and number of journal records preceding it
+        private final long offset;
+        private final long records;
+        // Number of records in the snapshot file
+        private final long size;
+        // Account number and sequence of every transaction journaled after the offset while the snapshot was written
+        private final long[] journaled;
+
+        private Snapshot(Path file, long offset, long records, long size, long[] journaled) {
+            this.file = file;
+            this.offset = offset;
+            this.records = records;
+            this.size = size;
+            this.journaled = journaled;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.transfolut.bank;
+
+import org.joda.money.Money;
+
+/**
+ * Transfer scheduled to be executed at a future time, either once or as a standing transfer repeated at a fixed interval.
+ */
+public final class ScheduledTransfer {
+
+    private final long id;
+    private final long fromAcctNumber;
+    private final long toAcctNumber;
+    private final Money amount;
+    private final long intervalMillis;
+    private volatile long nextExecution;
+    private volatile long executions;
+    private volatile long failures;
+    private volatile String lastError;
+    // Guarded by the scheduled transfer itself, so that a cancelled transfer is never scheduled again
+    private boolean cancelled;
+    private TimingWheel.Timeout<Runnable> timeout;
+
+    /**
+     * @param id of the scheduled transfer, unique within a {@link BankService}
+     * @param fromAcctNumber account to transfer from
+     * @param toAcctNumber account to transfer to
+     * @param amount to transfer
+     * @param nextExecution time of the next execution in milliseconds since the epoch
+     * @param intervalMillis time between two executions of a standing transfer, 0 for a transfer executed once
+     */
+    public ScheduledTransfer(long id, long fromAcctNumber, long toAcctNumber, Money amount, long nextExecution,
+                             long intervalMillis) {
+        this.id = id;
+        this.fromAcctNumber = fromAcctNumber;
+        this.toAcctNumber = toAcctNumber;
+        this.amount = amount;
+        this.nextExecution = nextExecution;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getFromAcctNumber() {
+        return fromAcctNumber;
+    }
+
+    public long getToAcctNumber() {
+        return toAcctNumber;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return time between two executions, 0 for a transfer executed once
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @return time of the next execution in milliseconds since the epoch
+     */
+    public long getNextExecution() {
+        return nextExecution;
+    }
+
+    /**
+     * @return number of executions which moved the money
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return number of executions which were rejected, e.g. for an insufficient balance
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the reason the last rejected execution was rejected for, or null if none was rejected
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Records the outcome of an execution, only ever called by the thread executing the transfer.
+     * @param error reason the execution was rejected for, or null if it succeeded
+     */
+    void recordExecution(String error) {
+        if(error == null) {
+            executions++;
+        } else {
+            failures++;
+            lastError = error;
+        }
+    }
+
+    /**
+     * Moves the next execution one interval further.
+     */
+    void advance() {
+        nextExecution += intervalMillis;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setCancelled() {
+        cancelled = true;
+    }
+
+    TimingWheel.Timeout<Runnable> getTimeout() {
+        return timeout;
+    }
+
+    void setTimeout(TimingWheel.Timeout<Runnable> timeout) {
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,25 @@
+package com.transfolut.bank;
+
+import java.util.List;
+
+/**
+ * Hook persisting the scheduled transfers of a {@link BankService}, so that they survive a restart.
+ * The store is kept up to date from the threads scheduling and executing transfers, so it must be thread safe.
+ */
+public interface ScheduledTransferStore {
+
+    /**
+     * Called whenever a transfer is scheduled, and again whenever its next execution has moved.
+     */
+    void save(ScheduledTransfer scheduledTransfer);
+
+    /**
+     * Called once a transfer has been cancelled or executed for the last time.
+     */
+    void delete(long id);
+
+    /**
+     * @return the transfers saved and not deleted yet, scheduled again when the store is attached
+     */
+    List<ScheduledTransfer> loadAll();
+}
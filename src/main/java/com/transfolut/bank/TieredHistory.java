@@ -0,0 +1,473 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Transaction history of a {@link BankAccount} split into two tiers.
+ * The most recent entries are kept on the heap, while older entries are spilled in blocks
+ * to a shared {@link HistorySegmentStore} once more than twice the retention is held in memory.
+ * Reads go through both tiers transparently and return the full history.
+ * The transactions held on the heap are indexed by time in a compact array per currency, and every spilled block
+ * is indexed by the range of its timestamps and the latest balance of each currency up to it, so that the balances
+ * at a point in time are found by binary search in both tiers and only the blocks straddling that point are read.
+ */
+final class TieredHistory {
+
+    private final Queue<HistoryEntry> recent = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recentSize = new AtomicInteger();
+    private final Map<CurrencyUnit, BalanceIndex> recentBalances = new ConcurrentHashMap<>();
+    // Only guards spilling against reads, appending entries never takes it
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private final HistorySegmentStore store;
+    private final int retention;
+    private SpilledBlock[] spilledBlocks = new SpilledBlock[0];
+
+    /**
+     * @param store to spill old entries to, or null to keep the whole history on the heap
+     * @param retention number of entries kept on the heap once older entries are spilled
+     */
+    TieredHistory(HistorySegmentStore store, int retention) {
+        this.store = retention > 0 ? store : null;
+        this.retention = retention;
+    }
+
+    /**
+     * @return a history which is kept on the heap in full
+     */
+    static TieredHistory inHeap() {
+        return new TieredHistory(null, 0);
+    }
+
+    /**
+     * Appends an entry, spilling the oldest entries if the retention has been exceeded.
+     */
+    void add(HistoryEntry entry) {
+        // Indexed first, so that a concurrent spill never misses the entry in the index
+        indexBalance(entry);
+        recent.add(entry);
+        if(recentSize.incrementAndGet() >= 2 * retention && store != null && spillLock.tryLock()) {
+            try {
+                spill();
+            } finally {
+                spillLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the full history, spilled entries first
+     */
+    List<HistoryEntry> getEntries() {
+        SpilledBlock[] blocks;
+        List<HistoryEntry> inHeap;
+        spillLock.lock();
+        try {
+            blocks = spilledBlocks;
+            inHeap = new ArrayList<>(recent);
+        } finally {
+            spillLock.unlock();
+        }
+
+        List<HistoryEntry> entries = new ArrayList<>(blocks.length * retention + inHeap.size());
+        for(SpilledBlock block : blocks) {
+            entries.addAll(store.read(block.address));
+        }
+        entries.addAll(inHeap);
+        return entries;
+    }
+
+    /**
+     * Passes the full history to a consumer, spilled entries first, reading a single spilled block at a time.
+     * Entries appended while the history is being read are not passed.
+     */
+    void forEachEntry(Consumer<HistoryEntry> consumer) {
+        SpilledBlock[] blocks;
+        List<HistoryEntry> inHeap;
+        spillLock.lock();
+        try {
+            blocks = spilledBlocks;
+            inHeap = new ArrayList<>(recent);
+        } finally {
+            spillLock.unlock();
+        }
+
+        for(SpilledBlock block : blocks) {
+            store.read(block.address).forEach(consumer);
+        }
+        inHeap.forEach(consumer);
+    }
+
+    /**
+     * Finds the balance of every currency at a point in time, left behind by the latest transaction in that currency
+     * applied at or before it, in O(log n) of the history. The transactions on the heap are found by binary search
+     * in the index of their currency. The spilled blocks entirely before that point are found by binary search
+     * and answered by the index of the last of them, those entirely after it are skipped, and only the blocks
+     * in between are read, which is a single block unless transactions were replicated out of order around that point.
+     * @param timestamp point in time in milliseconds since the epoch
+     * @return the entry of the latest transaction of every currency at that time
+     */
+    Map<CurrencyUnit, HistoryEntry> getLatestTransactionsAt(long timestamp) {
+        SpilledBlock[] blocks;
+        Map<CurrencyUnit, HistoryEntry> latest = new HashMap<>();
+        spillLock.lock();
+        try {
+            blocks = spilledBlocks;
+            recentBalances.values().forEach(index -> {
+                HistoryEntry entry = index.latestAt(timestamp);
+                if(entry != null) {
+                    keepLatest(latest, entry);
+                }
+            });
+        } finally {
+            spillLock.unlock();
+        }
+
+        int entirelyBefore = countUpTo(blocks, timestamp, block -> block.lastTimestampUpTo);
+        int notEntirelyAfter = countUpTo(blocks, timestamp, block -> block.firstTimestampFrom);
+        if(entirelyBefore > 0) {
+            blocks[entirelyBefore - 1].latestTransactionsUpTo.values().forEach(entry -> keepLatest(latest, entry));
+        }
+        for(int i = entirelyBefore; i < notEntirelyAfter; i++) {
+            SpilledBlock block = blocks[i];
+            if(block.lastTimestamp <= timestamp) {
+                block.latestTransactions.values().forEach(entry -> keepLatest(latest, entry));
+            } else if(block.firstTimestamp <= timestamp) {
+                store.read(block.address).forEach(entry -> keepLatestAt(latest, entry, timestamp));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return the number of entries currently held on the heap
+     */
+    int getInHeapSize() {
+        return recentSize.get();
+    }
+
+    /**
+     * Writes the index of the spilled blocks and the entries held on the heap, read back by {@link #readFrom(DataInput)}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        SpilledBlock[] blocks;
+        List<HistoryEntry> inHeap;
+        spillLock.lock();
+        try {
+            blocks = spilledBlocks;
+            inHeap = new ArrayList<>(recent);
+        } finally {
+            spillLock.unlock();
+        }
+
+        out.writeInt(blocks.length);
+        for(SpilledBlock block : blocks) {
+            block.writeTo(out);
+        }
+        out.writeInt(inHeap.size());
+        for(HistoryEntry entry : inHeap) {
+            entry.writeTo(out);
+        }
+    }
+
+    /**
+     * Restores the history written by {@link #writeTo(DataOutput)} into this empty history.
+     * Spilled blocks are only referenced again, so they must live in the same {@link HistorySegmentStore}.
+     */
+    void readFrom(DataInput in) throws IOException {
+        spillLock.lock();
+        try {
+            int blockCount = in.readInt();
+            for(int i = 0; i < blockCount; i++) {
+                spilledBlocks = append(spilledBlocks, SpilledBlock.readFrom(in));
+            }
+            int inHeapSize = in.readInt();
+            for(int i = 0; i < inHeapSize; i++) {
+                HistoryEntry entry = HistoryEntry.readFrom(in);
+                indexBalance(entry);
+                recent.add(entry);
+            }
+            recentSize.addAndGet(inHeapSize);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * Helper method to move all but the most recent entries to the segment store.
+     * The block is written before the entries leave the heap, so that readers never miss them.
+     */
+    private void spill() {
+        int spillCount = recentSize.get() - retention;
+        if(spillCount <= 0) {
+            return;
+        }
+        List<HistoryEntry> block = new ArrayList<>(spillCount);
+        Iterator<HistoryEntry> oldest = recent.iterator();
+        while(block.size() < spillCount && oldest.hasNext()) {
+            block.add(oldest.next());
+        }
+
+        SpilledBlock spilled = new SpilledBlock(store.append(block), block);
+        spilledBlocks = append(spilledBlocks, spilled);
+        Set<HistoryEntry> spilledEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+        spilledEntries.addAll(block);
+        spilled.latestTransactions.keySet().forEach(currency -> recentBalances.get(currency).removeAll(spilledEntries));
+        for(int i = 0; i < block.size(); i++) {
+            recent.poll();
+        }
+        recentSize.addAndGet(-block.size());
+    }
+
+    /**
+     * Helper method to index the balance left behind by a transaction held on the heap.
+     */
+    private void indexBalance(HistoryEntry entry) {
+        if(entry.getTransaction() != null) {
+            recentBalances.computeIfAbsent(entry.getTransaction().getCurrencyUnit(), currency -> new BalanceIndex())
+                    .add(entry);
+        }
+    }
+
+    /**
+     * Helper method to append a spilled block to the index, lowering the earliest timestamp from the blocks before it
+     * down to the earliest timestamp of the new block.
+     */
+    private static SpilledBlock[] append(SpilledBlock[] blocks, SpilledBlock block) {
+        SpilledBlock previous = blocks.length > 0 ? blocks[blocks.length - 1] : null;
+        SpilledBlock[] appended = Arrays.copyOf(blocks, blocks.length + 1);
+        appended[blocks.length] = new SpilledBlock(block, previous);
+        for(int i = blocks.length - 1; i >= 0 && appended[i].firstTimestampFrom > block.firstTimestamp; i--) {
+            appended[i] = appended[i].withFirstTimestampFrom(block.firstTimestamp);
+        }
+        return appended;
+    }
+
+    /**
+     * Helper method to binary search the number of spilled blocks whose bound, which never decreases
+     * from one block to the next, is at or before a point in time.
+     */
+    private static int countUpTo(SpilledBlock[] blocks, long timestamp, ToLongFunction<SpilledBlock> bound) {
+        int low = 0;
+        int high = blocks.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(bound.applyAsLong(blocks[middle]) <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Helper method to keep the latest transaction entry of every currency applied at or before a point in time.
+     */
+    private static void keepLatestAt(Map<CurrencyUnit, HistoryEntry> latest, HistoryEntry entry, long timestamp) {
+        if(entry.getTimestamp() <= timestamp) {
+            keepLatest(latest, entry);
+        }
+    }
+
+    /**
+     * Helper method to keep the latest transaction entry of every currency.
+     */
+    private static void keepLatest(Map<CurrencyUnit, HistoryEntry> latest, HistoryEntry entry) {
+        if(entry.getTransaction() != null) {
+            latest.merge(entry.getTransaction().getCurrencyUnit(), entry,
+                    (current, candidate) -> candidate.isLaterThan(current) ? candidate : current);
+        }
+    }
+
+    /**
+     * Index entry of a block spilled to the segment store. Transactions replicated out of order may leave a block
+     * with entries older than those of the previous block, so blocks are indexed by the range of their timestamps,
+     * along with the latest timestamp up to them and the earliest timestamp from them on, which never decrease
+     * from one block to the next and can be binary searched.
+     */
+    private static final class SpilledBlock {
+        private final long address;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private final Map<CurrencyUnit, HistoryEntry> latestTransactions;
+        // Latest timestamp and latest transaction of every currency in this block and all the blocks before it
+        private final long lastTimestampUpTo;
+        private final Map<CurrencyUnit, HistoryEntry> latestTransactionsUpTo;
+        // Earliest timestamp in this block and all the blocks after it
+        private final long firstTimestampFrom;
+
+        SpilledBlock(long address, List<HistoryEntry> entries) {
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            Map<CurrencyUnit, HistoryEntry> latest = new HashMap<>();
+            for(HistoryEntry entry : entries) {
+                first = Math.min(first, entry.getTimestamp());
+                last = Math.max(last, entry.getTimestamp());
+                keepLatest(latest, entry);
+            }
+            this.address = address;
+            this.firstTimestamp = first;
+            this.lastTimestamp = last;
+            this.latestTransactions = latest;
+            this.lastTimestampUpTo = last;
+            this.latestTransactionsUpTo = latest;
+            this.firstTimestampFrom = first;
+        }
+
+        private SpilledBlock(long address, long firstTimestamp, long lastTimestamp,
+                             Map<CurrencyUnit, HistoryEntry> latestTransactions) {
+            this.address = address;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.latestTransactions = latestTransactions;
+            this.lastTimestampUpTo = lastTimestamp;
+            this.latestTransactionsUpTo = latestTransactions;
+            this.firstTimestampFrom = firstTimestamp;
+        }
+
+        /**
+         * Appends a block after the previous one, or as the first block if there is none.
+         */
+        SpilledBlock(SpilledBlock block, SpilledBlock previous) {
+            this.address = block.address;
+            this.firstTimestamp = block.firstTimestamp;
+            this.lastTimestamp = block.lastTimestamp;
+            this.latestTransactions = block.latestTransactions;
+            this.firstTimestampFrom = block.firstTimestamp;
+            if(previous == null) {
+                this.lastTimestampUpTo = block.lastTimestamp;
+                this.latestTransactionsUpTo = block.latestTransactions;
+            } else {
+                this.lastTimestampUpTo = Math.max(previous.lastTimestampUpTo, block.lastTimestamp);
+                Map<CurrencyUnit, HistoryEntry> latestUpTo = new HashMap<>(previous.latestTransactionsUpTo);
+                block.latestTransactions.values().forEach(entry -> keepLatest(latestUpTo, entry));
+                this.latestTransactionsUpTo = latestUpTo;
+            }
+        }
+
+        private SpilledBlock(SpilledBlock block, long firstTimestampFrom) {
+            this.address = block.address;
+            this.firstTimestamp = block.firstTimestamp;
+            this.lastTimestamp = block.lastTimestamp;
+            this.latestTransactions = block.latestTransactions;
+            this.lastTimestampUpTo = block.lastTimestampUpTo;
+            this.latestTransactionsUpTo = block.latestTransactionsUpTo;
+            this.firstTimestampFrom = firstTimestampFrom;
+        }
+
+        /**
+         * @return this block once a block after it with an earlier first timestamp has been appended
+         */
+        SpilledBlock withFirstTimestampFrom(long timestamp) {
+            return new SpilledBlock(this, timestamp);
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeLong(address);
+            out.writeLong(firstTimestamp);
+            out.writeLong(lastTimestamp);
+            out.writeInt(latestTransactions.size());
+            for(HistoryEntry entry : latestTransactions.values()) {
+                entry.writeTo(out);
+            }
+        }
+
+        static SpilledBlock readFrom(DataInput in) throws IOException {
+            long address = in.readLong();
+            long firstTimestamp = in.readLong();
+            long lastTimestamp = in.readLong();
+            int currencyCount = in.readInt();
+            Map<CurrencyUnit, HistoryEntry> latest = new HashMap<>();
+            for(int i = 0; i < currencyCount; i++) {
+                keepLatest(latest, HistoryEntry.readFrom(in));
+            }
+            return new SpilledBlock(address, firstTimestamp, lastTimestamp, latest);
+        }
+    }
+
+    /**
+     * Balances left behind by the transactions of a currency held on the heap, kept in compact arrays ordered
+     * by timestamp and sequence. Transactions replicated out of order are moved back into place when added.
+     */
+    private static final class BalanceIndex {
+        private long[] timestamps = new long[8];
+        private long[] sequences = new long[8];
+        private HistoryEntry[] entries = new HistoryEntry[8];
+        private int size;
+
+        synchronized void add(HistoryEntry entry) {
+            if(size == entries.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int position = size;
+            while(position > 0 && (timestamps[position - 1] != entry.getTimestamp()
+                    ? timestamps[position - 1] > entry.getTimestamp()
+                    : sequences[position - 1] > entry.getSequence())) {
+                position--;
+            }
+            System.arraycopy(timestamps, position, timestamps, position + 1, size - position);
+            System.arraycopy(sequences, position, sequences, position + 1, size - position);
+            System.arraycopy(entries, position, entries, position + 1, size - position);
+            timestamps[position] = entry.getTimestamp();
+            sequences[position] = entry.getSequence();
+            entries[position] = entry;
+            size++;
+        }
+
+        /**
+         * @return the latest entry applied at or before a point in time, or null if there is none
+         */
+        synchronized HistoryEntry latestAt(long timestamp) {
+            int low = 0;
+            int high = size;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if(timestamps[middle] <= timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low > 0 ? entries[low - 1] : null;
+        }
+
+        /**
+         * Removes the entries which have been spilled, keeping the others in order.
+         */
+        synchronized void removeAll(Set<HistoryEntry> spilled) {
+            int kept = 0;
+            for(int i = 0; i < size; i++) {
+                if(!spilled.contains(entries[i])) {
+                    timestamps[kept] = timestamps[i];
+                    sequences[kept] = sequences[i];
+                    entries[kept] = entries[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(entries, kept, size, null);
+            size = kept;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.transfolut.bank;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding timeouts until their deadline, with constant time insertion and cancellation.
+ * Time is cut into ticks, and every level of the wheel has 256 slots, each level spanning 256 times the range
+ * of the level below it. Timeouts are put in the lowest level covering their deadline, and the slots of higher
+ * levels are cascaded down one level whenever the levels below them complete a turn, so that every timeout
+ * is only moved a few times however far its deadline is.
+ * The wheel is advanced by its owner, and is thread safe so that timeouts can be added from any thread.
+ */
+final class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Timeout<T>[][] slots;
+    // Number of ticks elapsed since the start of the wheel, every timeout due by then has expired
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis duration of a tick in milliseconds, timeouts expire at the end of the tick they are due in
+     * @param startMillis time of the first tick in milliseconds since the epoch
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.slots = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    }
+
+    /**
+     * Adds a timeout, which expires at the next tick if its deadline has already passed.
+     * @param payload carried by the timeout
+     * @param deadlineMillis time the timeout is due at in milliseconds since the epoch
+     * @return the timeout, which can be cancelled
+     */
+    synchronized Timeout<T> schedule(T payload, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMillis);
+        // Rounding up never lets a timeout expire before its deadline
+        long deadlineTick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+        link(timeout, Math.max(deadlineTick, currentTick + 1));
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Removes a timeout which has not expired yet.
+     * @return true if the timeout was removed, false if it had already expired or been cancelled
+     */
+    synchronized boolean cancel(Timeout<T> timeout) {
+        if(timeout.level < 0) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel tick by tick up to a point in time, expiring all timeouts due by then.
+     * @param nowMillis time to advance the wheel to in milliseconds since the epoch
+     * @return the expired timeouts, in the order of the ticks they were due in
+     */
+    synchronized List<Timeout<T>> advanceTo(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<Timeout<T>> expired = new ArrayList<>();
+        while(currentTick < targetTick) {
+            currentTick++;
+            // Higher levels are cascaded first, so that their timeouts can land in the slot expiring now
+            for(int level = LEVELS - 1; level > 0; level--) {
+                if((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, slotOf(currentTick, level), expired);
+                }
+            }
+            Timeout<T> timeout = detach(0, slotOf(currentTick, 0));
+            while(timeout != null) {
+                Timeout<T> next = timeout.next;
+                expire(timeout, expired);
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the time the next tick ends at in milliseconds since the epoch
+     */
+    synchronized long getNextTickMillis() {
+        return startMillis + (currentTick + 1) * tickMillis;
+    }
+
+    /**
+     * @return the number of timeouts which have neither expired nor been cancelled
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Helper method to move the timeouts of a slot down to the levels now covering their deadline.
+     */
+    private void cascade(int level, int slot, List<Timeout<T>> expired) {
+        Timeout<T> timeout = detach(level, slot);
+        while(timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.next = null;
+            if(timeout.deadlineTick <= currentTick) {
+                expire(timeout, expired);
+            } else {
+                link(timeout, timeout.deadlineTick);
+            }
+            timeout = next;
+        }
+    }
+
+    private void expire(Timeout<T> timeout, List<Timeout<T>> expired) {
+        timeout.level = -1;
+        timeout.prev = null;
+        timeout.next = null;
+        size--;
+        expired.add(timeout);
+    }
+
+    /**
+     * Helper method to put a timeout in the lowest level whose range covers its deadline.
+     * Deadlines beyond the range of the highest level wait in it for as many turns as needed.
+     */
+    private void link(Timeout<T> timeout, long deadlineTick) {
+        long ticksLeft = deadlineTick - currentTick;
+        int level = 0;
+        while(level < LEVELS - 1 && ticksLeft >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = slotOf(deadlineTick, level);
+        timeout.deadlineTick = deadlineTick;
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[level][slot];
+        if(timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if(timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if(timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.level = -1;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    private Timeout<T> detach(int level, int slot) {
+        Timeout<T> head = slots[level][slot];
+        slots[level][slot] = null;
+        return head;
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    /**
+     * Timeout held by a {@link TimingWheel}, linked into the slot it waits in.
+     */
+    static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineMillis;
+        private long deadlineTick;
+        // Level of the slot holding the timeout, or -1 once it has expired or been cancelled
+        private int level = -1;
+        private int slot;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineMillis) {
+            this.payload = payload;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        T getPayload() {
+            return payload;
+        }
+
+        long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+    }
+}
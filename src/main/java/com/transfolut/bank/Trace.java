@@ -0,0 +1,161 @@
+package com.transfolut.bank;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trace of a sampled request, timing every stage it goes through as a span.
+ * The trace of a request is bound to the thread handling it, so that every layer opens its spans on the current
+ * trace without it being passed around. Requests which are not sampled have no trace, and opening a span then
+ * only costs a thread local lookup returning a shared span which records nothing.
+ * Spans are nested in the order they are opened, and must be closed by the thread which opened them,
+ * in a finally block rather than a try-with-resources statement which never references the span.
+ */
+public final class Trace {
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    // Span handed out when the current request is not traced
+    private static final Span UNTRACED = new Span(null, null, 0, 0);
+
+    private final String id;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final List<Span> spans = new ArrayList<>();
+    private int depth;
+    private long durationNanos;
+
+    private Trace(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Starts tracing the request handled by the current thread.
+     * @param id of the trace, shared by all nodes taking part in the request
+     * @return the trace, to be ended by {@link #end()}
+     */
+    public static Trace begin(String id) {
+        Trace trace = new Trace(id);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Opens a span of the current trace, to be closed once the stage is over.
+     * @param stage name of the stage
+     * @return the span, which records nothing if the current request is not traced
+     */
+    public static Span span(String stage) {
+        Trace trace = CURRENT.get();
+        return trace == null ? UNTRACED : trace.open(stage);
+    }
+
+    /**
+     * @return the id of the trace of the current thread, or null if the current request is not traced
+     */
+    public static String currentId() {
+        Trace trace = CURRENT.get();
+        return trace == null ? null : trace.id;
+    }
+
+    /**
+     * Opens a span of this trace from any thread, once the trace may no longer be bound to the current thread.
+     * @param stage name of the stage
+     * @return the span, to be closed once the stage is over
+     */
+    public Span open(String stage) {
+        Span span = new Span(this, stage, depth++, System.nanoTime() - startNanos);
+        spans.add(span);
+        return span;
+    }
+
+    /**
+     * Unbinds the trace from the current thread if it is bound to it, so that the thread can go on with other requests.
+     */
+    public void unbind() {
+        if(CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Ends the trace, which is unbound from the current thread if it is bound to it.
+     */
+    public void end() {
+        durationNanos = System.nanoTime() - startNanos;
+        unbind();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the time the trace started at in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the duration of the trace in nanoseconds, once it has ended
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the spans of the trace, in the order they were opened
+     */
+    public List<Span> getSpans() {
+        return Collections.unmodifiableList(spans);
+    }
+
+    /**
+     * Stage of a trace, timed from its opening to its closing.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Trace trace;
+        private final String stage;
+        private final int depth;
+        private final long startNanos;
+        private long durationNanos;
+
+        private Span(Trace trace, String stage, int depth, long startNanos) {
+            this.trace = trace;
+            this.stage = stage;
+            this.depth = depth;
+            this.startNanos = startNanos;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        /**
+         * @return the number of spans enclosing this one
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return the time the span started at in nanoseconds since the start of its trace
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public void close() {
+            if(trace != null) {
+                durationNanos = System.nanoTime() - trace.startNanos - startNanos;
+                trace.depth--;
+            }
+        }
+    }
+}
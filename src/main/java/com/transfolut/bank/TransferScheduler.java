@@ -0,0 +1,162 @@
+package com.transfolut.bank;
+
+import org.joda.money.Money;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scheduler of the transfers of a {@link BankService} which are executed at a future time, once or at a fixed interval.
+ * Every scheduled transfer waits in the {@link LedgerTimer} until its next execution, and is then executed like
+ * any other transfer. A transfer which is rejected, e.g. for an insufficient balance, is recorded as failed and
+ * a standing transfer is still executed again at its next interval.
+ * Executions are persisted through a {@link ScheduledTransferStore} after they happened, so a transfer
+ * executed just before a crash is executed again once its store is attached after the restart.
+ */
+final class TransferScheduler {
+
+    private static final ScheduledTransferStore NO_STORE = new ScheduledTransferStore() {
+        @Override
+        public void save(ScheduledTransfer scheduledTransfer) {
+        }
+
+        @Override
+        public void delete(long id) {
+        }
+
+        @Override
+        public List<ScheduledTransfer> loadAll() {
+            return Collections.emptyList();
+        }
+    };
+
+    private final BankService bankService;
+    private final LedgerTimer timer;
+    private final Map<Long, ScheduledTransfer> scheduledTransfers = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile ScheduledTransferStore store = NO_STORE;
+
+    TransferScheduler(BankService bankService, LedgerTimer timer) {
+        this.bankService = bankService;
+        this.timer = timer;
+    }
+
+    /**
+     * Schedules a new transfer, which is assigned the next id.
+     */
+    ScheduledTransfer schedule(long fromAcctNumber, long toAcctNumber, Money amount, long executionTime,
+                               long intervalMillis) {
+        ScheduledTransfer scheduledTransfer = new ScheduledTransfer(ids.incrementAndGet(), fromAcctNumber, toAcctNumber,
+                amount, executionTime, intervalMillis);
+        add(scheduledTransfer);
+        return scheduledTransfer;
+    }
+
+    /**
+     * Attaches a store, scheduling again all transfers it holds. Transfers due meanwhile are executed at once.
+     */
+    void setStore(ScheduledTransferStore store) {
+        this.store = store;
+        for(ScheduledTransfer scheduledTransfer : store.loadAll()) {
+            ids.accumulateAndGet(scheduledTransfer.getId(), Math::max);
+            add(scheduledTransfer);
+        }
+    }
+
+    Optional<ScheduledTransfer> get(long id) {
+        return Optional.ofNullable(scheduledTransfers.get(id));
+    }
+
+    /**
+     * @return true if the transfer was cancelled, false if no such transfer is scheduled
+     */
+    boolean cancel(long id) {
+        ScheduledTransfer scheduledTransfer = scheduledTransfers.remove(id);
+        if(scheduledTransfer == null) {
+            return false;
+        }
+        synchronized (scheduledTransfer) {
+            scheduledTransfer.setCancelled();
+            timer.cancel(scheduledTransfer.getTimeout());
+        }
+        store.delete(id);
+        return true;
+    }
+
+    /**
+     * Cancels all scheduled transfers.
+     */
+    void clear() {
+        new ArrayList<>(scheduledTransfers.keySet()).forEach(this::cancel);
+    }
+
+    /**
+     * @return the metrics of the scheduled transfers
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("scheduledTransfers.pending", (long) scheduledTransfers.size());
+        metrics.put("scheduledTransfers.executed", executed.sum());
+        metrics.put("scheduledTransfers.failed", failed.sum());
+        return metrics;
+    }
+
+    private void add(ScheduledTransfer scheduledTransfer) {
+        scheduledTransfers.put(scheduledTransfer.getId(), scheduledTransfer);
+        store.save(scheduledTransfer);
+        synchronized (scheduledTransfer) {
+            scheduledTransfer.setTimeout(timer.schedule(() -> execute(scheduledTransfer),
+                    scheduledTransfer.getNextExecution()));
+        }
+    }
+
+    /**
+     * Helper method run by a dispatcher to execute a transfer, and schedule its next execution if it is a standing one.
+     */
+    private void execute(ScheduledTransfer scheduledTransfer) {
+        synchronized (scheduledTransfer) {
+            if(scheduledTransfer.isCancelled()) {
+                return;
+            }
+        }
+
+        String error = null;
+        try {
+            bankService.transfer(scheduledTransfer.getFromAcctNumber(), scheduledTransfer.getToAcctNumber(),
+                    scheduledTransfer.getAmount());
+            executed.increment();
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+            failed.increment();
+        }
+        scheduledTransfer.recordExecution(error);
+
+        synchronized (scheduledTransfer) {
+            if(scheduledTransfer.isCancelled()) {
+                return;
+            }
+            if(scheduledTransfer.getIntervalMillis() > 0) {
+                scheduledTransfer.advance();
+                scheduledTransfer.setTimeout(timer.schedule(() -> execute(scheduledTransfer),
+                        scheduledTransfer.getNextExecution()));
+            } else {
+                scheduledTransfer.setCancelled();
+            }
+        }
+        if(scheduledTransfer.getIntervalMillis() > 0) {
+            store.save(scheduledTransfer);
+        } else {
+            scheduledTransfers.remove(scheduledTransfer.getId(), scheduledTransfer);
+            store.delete(scheduledTransfer.getId());
+        }
+    }
+}
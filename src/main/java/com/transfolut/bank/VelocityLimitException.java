@@ -0,0 +1,14 @@
+package com.transfolut.bank;
+
+/**
+ * Thrown when a debit is rejected because it would exceed the {@link VelocityLimits} of its account.
+ * Unlike other rejected operations, the same debit may succeed once earlier debits have left the window.
+ */
+public class VelocityLimitException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public VelocityLimitException(String message) {
+        super(message);
+    }
+}
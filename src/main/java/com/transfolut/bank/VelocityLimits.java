@@ -0,0 +1,204 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per account velocity limits on the debits of a {@link BankService}, capping the amount debited and the number
+ * of debits in a currency over a sliding window.
+ * Every account keeps a ring of buckets per limited currency, each counting the debits of a slice of the window.
+ * A debit is added to the bucket of the current slice first and the ring is summed afterwards, so that concurrent
+ * debits of an account never exceed its limits together, without any lock: a debit finding the limits exceeded
+ * takes itself back out of its bucket and is rejected. Buckets whose slice has left the window are replaced
+ * by the first debit landing on them again.
+ */
+public final class VelocityLimits {
+
+    // Number of slices the window is cut into, a debit leaves the window at most one slice late
+    private static final int BUCKETS = 32;
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final Map<CurrencyUnit, Limit> limits = new HashMap<>();
+    private final LongSupplier clock;
+    // Rings of every account which has been debited in a limited currency, one after the other in currency order
+    private final ConcurrentLongMap<AtomicReferenceArray<Bucket>> rings = new ConcurrentLongMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param windowMillis duration of the sliding window in milliseconds
+     * @param limits comma separated limits of the form currency:maxAmount:maxCount, either maximum being 0 for no limit
+     * @throws IllegalArgumentException if a limit cannot be parsed
+     */
+    public VelocityLimits(long windowMillis, String limits) {
+        this(windowMillis, limits, System::currentTimeMillis);
+    }
+
+    VelocityLimits(long windowMillis, String limits, LongSupplier clock) {
+        if(windowMillis < BUCKETS) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_INTERVAL, windowMillis));
+        }
+        this.windowMillis = windowMillis;
+        this.bucketMillis = windowMillis / BUCKETS;
+        this.clock = clock;
+        for(String limit : limits.split(",")) {
+            String[] fields = limit.trim().split(":");
+            try {
+                if(fields.length != 3) {
+                    throw new IllegalArgumentException(limit);
+                }
+                CurrencyUnit currency = CurrencyUnit.of(fields[0]);
+                Money maxAmount = Money.of(currency, new BigDecimal(fields[1]));
+                long maxCount = Long.parseLong(fields[2]);
+                if(maxAmount.isNegative() || maxCount < 0) {
+                    throw new IllegalArgumentException(limit);
+                }
+                this.limits.put(currency, new Limit(this.limits.size() * BUCKETS, maxAmount, maxCount));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_VELOCITY_LIMIT, limit), e);
+            }
+        }
+    }
+
+    /**
+     * Counts a debit against the limits of its account and currency.
+     * @param acctNumber - account debited
+     * @param amount - amount debited
+     * @return the bucket the debit was counted in, to take it back out if the debit fails,
+     * or null if the currency is not limited
+     * @throws VelocityLimitException if the debit would exceed the limits of the account
+     */
+    Bucket count(long acctNumber, Money amount) {
+        Limit limit = limits.get(amount.getCurrencyUnit());
+        if(limit == null) {
+            return null;
+        }
+        long minorAmount = amount.getAmountMinorLong();
+        long slice = clock.getAsLong() / bucketMillis;
+        AtomicReferenceArray<Bucket> ring = rings.computeIfAbsent(acctNumber,
+                bankAcctNumber -> new AtomicReferenceArray<>(limits.size() * BUCKETS));
+        Bucket bucket = currentBucket(ring, limit.offset + (int) (slice % BUCKETS), slice);
+        bucket.add(minorAmount, 1);
+
+        long windowAmount = 0;
+        long windowCount = 0;
+        for(int i = limit.offset; i < limit.offset + BUCKETS; i++) {
+            Bucket windowBucket = ring.get(i);
+            if(windowBucket != null && windowBucket.slice > slice - BUCKETS) {
+                windowAmount += windowBucket.amount;
+                windowCount += windowBucket.count;
+            }
+        }
+        if(limit.maxMinorAmount > 0 && windowAmount > limit.maxMinorAmount) {
+            reject(bucket, minorAmount);
+            throw new VelocityLimitException(String.format(TransfolutMessages.VELOCITY_AMOUNT_EXCEEDED,
+                    amount.toString(), acctNumber, limit.maxAmount.toString(), windowMillis));
+        }
+        if(limit.maxCount > 0 && windowCount > limit.maxCount) {
+            reject(bucket, minorAmount);
+            throw new VelocityLimitException(String.format(TransfolutMessages.VELOCITY_COUNT_EXCEEDED,
+                    amount.toString(), acctNumber, limit.maxCount, windowMillis));
+        }
+        return bucket;
+    }
+
+    /**
+     * Takes a debit which failed back out of the bucket it was counted in.
+     * @param bucket returned when the debit was counted, null if the currency is not limited
+     * @param amount - amount of the debit
+     */
+    void uncount(Bucket bucket, Money amount) {
+        if(bucket != null) {
+            bucket.add(-amount.getAmountMinorLong(), -1);
+        }
+    }
+
+    /**
+     * Forgets the debits of all accounts.
+     */
+    void clear() {
+        rings.clear();
+    }
+
+    /**
+     * @return the metrics of the velocity checks
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("velocity.accounts", (long) rings.size());
+        metrics.put("velocity.rejected", rejected.sum());
+        return metrics;
+    }
+
+    private void reject(Bucket bucket, long minorAmount) {
+        bucket.add(-minorAmount, -1);
+        rejected.increment();
+    }
+
+    /**
+     * Helper method to find the bucket of a slice, replacing the bucket of an older slice found at its place in the ring.
+     */
+    private static Bucket currentBucket(AtomicReferenceArray<Bucket> ring, int index, long slice) {
+        while(true) {
+            Bucket bucket = ring.get(index);
+            // A bucket of a later slice was put there by a thread reading the clock a little later, it counts for both
+            if(bucket != null && bucket.slice >= slice) {
+                return bucket;
+            }
+            Bucket sliceBucket = new Bucket(slice);
+            if(ring.compareAndSet(index, bucket, sliceBucket)) {
+                return sliceBucket;
+            }
+        }
+    }
+
+    /**
+     * Limits of a currency, whose buckets start at an offset of every ring.
+     */
+    private static final class Limit {
+        private final int offset;
+        private final Money maxAmount;
+        private final long maxMinorAmount;
+        private final long maxCount;
+
+        private Limit(int offset, Money maxAmount, long maxCount) {
+            this.offset = offset;
+            this.maxAmount = maxAmount;
+            this.maxMinorAmount = maxAmount.getAmountMinorLong();
+            this.maxCount = maxCount;
+        }
+    }
+
+    /**
+     * Amount and number of the debits of a slice of the window, in minor units of the currency.
+     */
+    static final class Bucket {
+        private static final AtomicLongFieldUpdater<Bucket> AMOUNT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "amount");
+        private static final AtomicLongFieldUpdater<Bucket> COUNT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "count");
+
+        private final long slice;
+        private volatile long amount;
+        private volatile long count;
+
+        private Bucket(long slice) {
+            this.slice = slice;
+        }
+
+        private void add(long minorAmount, long debits) {
+            AMOUNT.addAndGet(this, minorAmount);
+            COUNT.addAndGet(this, debits);
+        }
+    }
+}
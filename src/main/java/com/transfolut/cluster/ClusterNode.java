@@ -0,0 +1,418 @@
+package com.transfolut.cluster;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.Trace;
+import org.glassfish.jersey.client.ClientProperties;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A Transfolut node, owning the partition of accounts assigned to it by a {@link ConsistentHashRing}
+ * and forwarding requests for all other accounts to the node owning them.
+ * Forwarded requests share one HTTP client, whose connections are kept alive and reused between requests.
+ * Requests whose outcome is unknown can be redelivered in the background until the owner answers them
+ * or their deadline passes, and credits are only applied by their owner before their deadline.
+ * A standalone node owns every account and never forwards anything.
+ */
+public final class ClusterNode {
+
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final int FORWARD_TIMEOUT_MILLIS = 5000;
+    // Delay before the first redelivery of a request, doubled after every attempt the owner could not answer
+    private static final long REDELIVERY_INITIAL_DELAY_MILLIS = 500;
+    // Longest delay between two redeliveries of a request
+    private static final long REDELIVERY_MAXIMUM_DELAY_MILLIS = 30_000;
+    // Time after it was first sent past which a request is no longer redelivered, and a credit no longer applied
+    private static final long REDELIVERY_DEADLINE_MILLIS = 10 * 60_000;
+    // Time credited transfer ids are remembered past their deadline, covering credits still in flight at their
+    // deadline and the difference between the clocks of two nodes
+    private static final long CREDITED_TRANSFERS_MARGIN_MILLIS = 60_000;
+
+    private final String self;
+    private final ConsistentHashRing ring;
+    private final Client client;
+    // Shared with the views of the tenants, its single thread is only started along with the first redelivery
+    private final ScheduledExecutorService redeliveries;
+    private final Set<Redelivery> pendingRedeliveries;
+    private final LongAdder abandonedRedeliveries;
+    // Tenant whose requests are forwarded, or null for the default tenant
+    private final String tenant;
+    // Every transfer credited until its deadline has passed by the margin, in the order they were first credited
+    private final LinkedHashMap<String, CreditedTransfer> creditedTransfers = new LinkedHashMap<>();
+
+    /**
+     * @param self base URI of this node, as it appears on the ring
+     * @param ring assigning accounts to nodes, or null for a standalone node
+     */
+    public ClusterNode(String self, ConsistentHashRing ring) {
+        if(ring != null && !ring.getNodes().contains(self)) {
+            throw new IllegalArgumentException(String.format("Node %s is not part of the cluster %s.", self, ring.getNodes()));
+        }
+        this.self = self;
+        this.ring = ring;
+        this.client = ring == null ? null : ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT, FORWARD_TIMEOUT_MILLIS)
+                .property(ClientProperties.READ_TIMEOUT, FORWARD_TIMEOUT_MILLIS);
+        this.redeliveries = ring == null ? null : new ScheduledThreadPoolExecutor(1, redelivery -> {
+            Thread thread = new Thread(redelivery, "transfolut-cluster-redelivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingRedeliveries = ConcurrentHashMap.newKeySet();
+        this.abandonedRedeliveries = new LongAdder();
+        this.tenant = null;
+    }
+
+    private ClusterNode(ClusterNode node, String tenant) {
+        this.self = node.self;
+        this.ring = node.ring;
+        this.client = node.client;
+        this.redeliveries = node.redeliveries;
+        this.pendingRedeliveries = node.pendingRedeliveries;
+        this.abandonedRedeliveries = node.abandonedRedeliveries;
+        this.tenant = tenant;
+    }
+
+    /**
+     * Creates the view of this node for a tenant, which forwards requests to the same tenant of the owning node.
+     * The view shares the connections of this node, and is closed along with it.
+     * @param tenant whose requests are forwarded
+     * @return the node of the tenant
+     */
+    public ClusterNode forTenant(String tenant) {
+        return new ClusterNode(this, tenant);
+    }
+
+    /**
+     * @return a node owning every account
+     */
+    public static ClusterNode standalone(String self) {
+        return new ClusterNode(self, null);
+    }
+
+    /**
+     * Builds the node configured by the cluster system properties, or a standalone node if no cluster is configured.
+     * @param defaultSelf base URI of this node if none is configured
+     */
+    public static ClusterNode fromProperties(String defaultSelf) {
+        String self = System.getProperty(TransfolutProperties.CLUSTER_SELF, defaultSelf);
+        String nodes = System.getProperty(TransfolutProperties.CLUSTER_NODES);
+        if(nodes == null || nodes.trim().isEmpty()) {
+            return standalone(self);
+        }
+        List<String> nodeList = Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .collect(Collectors.toList());
+        return new ClusterNode(self, new ConsistentHashRing(nodeList,
+                Integer.getInteger(TransfolutProperties.CLUSTER_VIRTUAL_NODES, DEFAULT_VIRTUAL_NODES)));
+    }
+
+    /**
+     * @return the base URI of this node
+     */
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * @return true if this node is part of a cluster
+     */
+    public boolean isClustered() {
+        return ring != null;
+    }
+
+    /**
+     * @return true if the given account belongs to this node's partition
+     */
+    public boolean isLocal(long bankAcctNumber) {
+        return ring == null || ring.getOwner(bankAcctNumber).equals(self);
+    }
+
+    /**
+     * @return the base URI of the node owning the given account
+     */
+    public String getOwner(long bankAcctNumber) {
+        return ring == null ? self : ring.getOwner(bankAcctNumber);
+    }
+
+    /**
+     * Decides whether a request must be forwarded to another node.
+     * A request which has been forwarded already is always served locally, so that nodes with
+     * inconsistent rings cannot forward a request back and forth.
+     * @param bankAcctNumber account the request is about
+     * @param forwardedBy node which forwarded the request, or null if it comes from a client
+     * @return true if the request must be forwarded to the owner of the account
+     */
+    public boolean isRemote(long bankAcctNumber, String forwardedBy) {
+        return forwardedBy == null && !isLocal(bankAcctNumber);
+    }
+
+    /**
+     * Forwards a GET request to the owner of an account.
+     * @return the response of the owner
+     */
+    public Response forward(long bankAcctNumber, UriInfo uriInfo) {
+        return send(bankAcctNumber, uriInfo.getPath(), uriInfo.getQueryParameters(), null, null);
+    }
+
+    /**
+     * Forwards a conditional GET request to the owner of an account, which answers 304 with no entity
+     * if the entity tag still matches.
+     * @param ifNoneMatch entity tags of the If-None-Match header of the request, or null if it has none
+     * @return the response of the owner, with its entity tag
+     */
+    public Response forward(long bankAcctNumber, UriInfo uriInfo, String ifNoneMatch) {
+        return send(bankAcctNumber, uriInfo.getPath(), uriInfo.getQueryParameters(), null, ifNoneMatch);
+    }
+
+    /**
+     * Forwards a POST request to the owner of an account.
+     * @return the response of the owner
+     */
+    public Response forward(long bankAcctNumber, UriInfo uriInfo, Entity<?> entity) {
+        return send(bankAcctNumber, uriInfo.getPath(), uriInfo.getQueryParameters(), entity, null);
+    }
+
+    /**
+     * Sends a POST request to the owner of an account.
+     * @param path of the resource, relative to the base URI of the owner
+     * @return the response of the owner
+     */
+    public Response post(long bankAcctNumber, String path, Entity<?> entity) {
+        return send(bankAcctNumber, path, new MultivaluedHashMap<>(), entity, null);
+    }
+
+    /**
+     * @return the deadline of a request first sent now, in milliseconds since the epoch
+     */
+    public long redeliveryDeadline() {
+        return System.currentTimeMillis() + REDELIVERY_DEADLINE_MILLIS;
+    }
+
+    /**
+     * Sends a POST request to the owner of an account in the background until the owner answers it without
+     * a server error, waiting longer after every attempt. Earlier attempts may have been applied by the owner
+     * without their answer getting back, so the request must be safe to apply twice.
+     * The last attempt is made at the deadline of the request, and if the owner cannot answer it either, or
+     * the node is closed and a last attempt gets no answer, the request is abandoned.
+     * @param path of the resource, relative to the base URI of the owner
+     * @param deadline of the request from {@link #redeliveryDeadline()}
+     * @param onAnswer called with the answer of the owner
+     * @param onAbandoned called instead if the request is abandoned
+     */
+    public void redeliver(long bankAcctNumber, String path, Entity<?> entity, long deadline, Consumer<Response> onAnswer,
+                          Runnable onAbandoned) {
+        Redelivery redelivery = new Redelivery(bankAcctNumber, path, entity, deadline, onAnswer, onAbandoned);
+        pendingRedeliveries.add(redelivery);
+        scheduleRedelivery(redelivery, REDELIVERY_INITIAL_DELAY_MILLIS);
+    }
+
+    /**
+     * Records a transfer being credited to one of this node's accounts. The transfer is remembered until
+     * its deadline has passed by a margin, and credits must not be applied past their deadline, so that
+     * a retried credit is never applied twice.
+     * @param deadline of the credit, capped to the deadline of a credit sent now
+     * @param credited completed by the caller once the credit has been applied
+     * @return null if the caller must apply the credit, or the outcome of the credit of the first caller,
+     * which must not be applied again
+     */
+    public CompletableFuture<Void> markCredited(String transferId, long deadline, CompletableFuture<Void> credited) {
+        long now = System.currentTimeMillis();
+        long forgetAt = Math.min(deadline, now + REDELIVERY_DEADLINE_MILLIS) + CREDITED_TRANSFERS_MARGIN_MILLIS;
+        synchronized (creditedTransfers) {
+            // Transfers are credited roughly in the order of their deadlines, later ones are forgotten on a later call
+            Iterator<CreditedTransfer> eldest = creditedTransfers.values().iterator();
+            while(eldest.hasNext() && eldest.next().forgetAt < now) {
+                eldest.remove();
+            }
+            CreditedTransfer first = creditedTransfers.putIfAbsent(transferId, new CreditedTransfer(forgetAt, credited));
+            return first != null ? first.outcome : null;
+        }
+    }
+
+    /**
+     * Forgets a transfer whose credit could not be applied, so that it can be retried.
+     * @param credited recorded by {@link #markCredited(String, long, CompletableFuture)}
+     */
+    public void unmarkCredited(String transferId, CompletableFuture<Void> credited) {
+        synchronized (creditedTransfers) {
+            CreditedTransfer creditedTransfer = creditedTransfers.get(transferId);
+            if(creditedTransfer != null && creditedTransfer.outcome == credited) {
+                creditedTransfers.remove(transferId);
+            }
+        }
+    }
+
+    /**
+     * @return the metrics of the node
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("cluster.redeliveries.pending", (long) pendingRedeliveries.size());
+        metrics.put("cluster.redeliveries.abandoned", abandonedRedeliveries.sum());
+        return metrics;
+    }
+
+    /**
+     * Closes the connections to the other nodes, unless this node is the view of a tenant sharing them.
+     * Every redelivery still pending is attempted one last time, and abandoned if the owner cannot answer it.
+     */
+    public void close() {
+        if(client != null && tenant == null) {
+            redeliveries.shutdownNow();
+            try {
+                redeliveries.awaitTermination(FORWARD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for(Redelivery redelivery : new ArrayList<>(pendingRedeliveries)) {
+                attemptRedelivery(redelivery, true);
+            }
+            client.close();
+        }
+    }
+
+    /**
+     * Helper method to schedule the next attempt of a redelivery, at its deadline at the latest.
+     */
+    private void scheduleRedelivery(Redelivery redelivery, long delayMillis) {
+        long untilDeadline = Math.max(0, redelivery.deadline - System.currentTimeMillis());
+        try {
+            redeliveries.schedule(() -> {
+                if(!attemptRedelivery(redelivery, System.currentTimeMillis() >= redelivery.deadline)) {
+                    scheduleRedelivery(redelivery, Math.min(2 * delayMillis, REDELIVERY_MAXIMUM_DELAY_MILLIS));
+                }
+            }, Math.min(delayMillis, untilDeadline), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The node is being closed, which attempts the redelivery one last time
+        }
+    }
+
+    /**
+     * Helper method to attempt a redelivery, and settle it if the owner answers it or if it is the last attempt.
+     * @return true if the redelivery has been settled
+     */
+    private boolean attemptRedelivery(Redelivery redelivery, boolean last) {
+        if(!pendingRedeliveries.contains(redelivery)) {
+            return true;
+        }
+        Response response = post(redelivery.bankAcctNumber, redelivery.path, redelivery.entity);
+        boolean answered = response.getStatusInfo().getFamily() != Response.Status.Family.SERVER_ERROR;
+        if((answered || last) && redelivery.settled.compareAndSet(false, true)) {
+            pendingRedeliveries.remove(redelivery);
+            if(answered) {
+                redelivery.onAnswer.accept(response);
+            } else {
+                abandonedRedeliveries.increment();
+                redelivery.onAbandoned.run();
+            }
+        }
+        return answered || last;
+    }
+
+    /**
+     * Helper method to send a request to the owner of an account and buffer its response.
+     * An owner which cannot be reached is reported as unavailable.
+     */
+    private Response send(long bankAcctNumber, String path, MultivaluedMap<String, String> queryParameters,
+                          Entity<?> entity, String ifNoneMatch) {
+        String owner = getOwner(bankAcctNumber);
+        WebTarget target = client.target(owner).path(path);
+        for(Map.Entry<String, List<String>> queryParameter : queryParameters.entrySet()) {
+            target = target.queryParam(queryParameter.getKey(), queryParameter.getValue().toArray());
+        }
+        Invocation.Builder request = target.request(MediaType.APPLICATION_JSON)
+                .header(TransfolutPaths.FORWARDED_BY_HEADER, self)
+                .header(TransfolutPaths.TENANT_HEADER, tenant)
+                .header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch)
+                .header(TransfolutPaths.TRACE_HEADER, Trace.currentId());
+        Trace.Span span = Trace.span("cluster.send");
+        try {
+            Response response = entity == null ? request.get() : request.post(entity);
+            try {
+                return Response.status(response.getStatus())
+                        .type(response.getMediaType())
+                        .tag(response.getEntityTag())
+                        .entity(response.hasEntity() ? response.readEntity(String.class) : null)
+                        .build();
+            } finally {
+                response.close();
+            }
+        } catch (ProcessingException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(String.format(TransfolutMessages.NODE_UNAVAILABLE, owner, bankAcctNumber))
+                    .build();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Request redelivered in the background, settled once by its answer or by being abandoned.
+     */
+    private static final class Redelivery {
+        private final long bankAcctNumber;
+        private final String path;
+        private final Entity<?> entity;
+        private final long deadline;
+        private final Consumer<Response> onAnswer;
+        private final Runnable onAbandoned;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Redelivery(long bankAcctNumber, String path, Entity<?> entity, long deadline,
+                           Consumer<Response> onAnswer, Runnable onAbandoned) {
+            this.bankAcctNumber = bankAcctNumber;
+            this.path = path;
+            this.entity = entity;
+            this.deadline = deadline;
+            this.onAnswer = onAnswer;
+            this.onAbandoned = onAbandoned;
+        }
+    }
+
+    /**
+     * Transfer credited to one of this node's accounts.
+     */
+    private static final class CreditedTransfer {
+        // Time in milliseconds since the epoch past which the transfer is forgotten
+        private final long forgetAt;
+        // Completed once the credit has been applied
+        private final CompletableFuture<Void> outcome;
+
+        private CreditedTransfer(long forgetAt, CompletableFuture<Void> outcome) {
+            this.forgetAt = forgetAt;
+            this.outcome = outcome;
+        }
+    }
+}
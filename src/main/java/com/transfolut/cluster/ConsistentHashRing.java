@@ -0,0 +1,80 @@
+package com.transfolut.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring assigning account numbers to the nodes of a cluster.
+ * Every node is placed on the ring at several virtual positions, and an account belongs to the first node found
+ * clockwise from the hash of its number. Adding or removing a node therefore only moves the accounts between that
+ * node and its neighbours, and the positions only depend on the node names, so every node computes the same ring.
+ */
+public final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes;
+
+    /**
+     * @param nodes names of the nodes, usually their base URIs
+     * @param virtualNodes number of positions of every node on the ring, more positions spread accounts more evenly
+     */
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if(nodes.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("A hash ring needs at least one node and one virtual node per node.");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for(String node : nodes) {
+            for(int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * @return the node owning the given account number
+     */
+    public String getOwner(long bankAcctNumber) {
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(bankAcctNumber));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @return the names of all nodes on the ring
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Helper method to spread account numbers, which are mostly sequential digits, over the whole ring.
+     */
+    private static long hash(long bankAcctNumber) {
+        long hash = bankAcctNumber;
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Helper method to place a virtual node on the ring, independently of the JVM it runs in.
+     */
+    private static long hash(String virtualNode) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(virtualNode.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for(int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
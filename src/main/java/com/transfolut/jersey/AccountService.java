@@ -4,24 +4,52 @@ import com.transfolut.TransfolutMessages;
 import com.transfolut.TransfolutPaths;
 import com.transfolut.bank.BankAccount;
 import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.joda.money.IllegalCurrencyException;
 
+import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static org.apache.commons.lang3.StringUtils.isNumeric;
 
 /**
  * Service to fetch accounts.
+ * Accounts owned by another node of the cluster are fetched from that node.
  */
 @Path(TransfolutPaths.ACCOUNTS_URI)
 public class AccountService {
 
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+    @Inject
+    private BalanceEventHub eventHub;
+    @Context
+    private UriInfo uriInfo;
+    @Context
+    private Request request;
+    @HeaderParam(TransfolutPaths.FORWARDED_BY_HEADER)
+    private String forwardedBy;
+    @HeaderParam(HttpHeaders.IF_NONE_MATCH)
+    private String ifNoneMatch;
+
     /**
      * Fetches an account given an account number.
+     * The response is tagged with the version of the account, and a client sending the tag back in If-None-Match
+     * is answered 304 until the account changes.
      */
     @GET
     @Path("{acctNumber}")
@@ -31,17 +59,21 @@ public class AccountService {
             return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
         }
 
-        Optional<BankAccount> bankAccount = BankService.getInstance().getAccount(Integer.parseInt(acctNumber));
+        if(clusterNode.isRemote(Integer.parseInt(acctNumber), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(acctNumber), uriInfo, ifNoneMatch);
+        }
+
+        Optional<BankAccount> bankAccount = bankService.getAccount(Integer.parseInt(acctNumber));
         if(!bankAccount.isPresent()) {
             return BankServiceValidator.getInstance().getBadRequestResponse(
                     String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acctNumber));
         }
 
-        return Response.ok(bankAccount.get().getBalances(), MediaType.APPLICATION_JSON).build();
+        return getIfModified(bankAccount.get(), BankAccount::getBalances);
     }
 
     /**
-     * Fetches an account's history given an account number.
+     * Fetches an account's history given an account number, tagged with the version of the account.
      */
     @GET
     @Path("{acctNumber}/history")
@@ -51,23 +83,119 @@ public class AccountService {
             return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
         }
 
-        Optional<BankAccount> bankAccount = BankService.getInstance().getAccount(Integer.parseInt(acctNumber));
+        if(clusterNode.isRemote(Integer.parseInt(acctNumber), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(acctNumber), uriInfo, ifNoneMatch);
+        }
+
+        Optional<BankAccount> bankAccount = bankService.getAccount(Integer.parseInt(acctNumber));
+        if(!bankAccount.isPresent()) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acctNumber));
+        }
+
+        return getIfModified(bankAccount.get(), BankAccount::getHistory);
+    }
+
+    /**
+     * Fetches an account's balances less the amounts held by authorization holds, tagged with the version of the account.
+     *
+     * curl http://localhost:8080/transfolut/accounts/12345678/available
+     */
+    @GET
+    @Path("{acctNumber}/available")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAccountAvailableBalances(@PathParam("acctNumber") String acctNumber) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(acctNumber)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+
+        if(clusterNode.isRemote(Integer.parseInt(acctNumber), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(acctNumber), uriInfo, ifNoneMatch);
+        }
+
+        Optional<BankAccount> bankAccount = bankService.getAccount(Integer.parseInt(acctNumber));
+        if(!bankAccount.isPresent()) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acctNumber));
+        }
+
+        return getIfModified(bankAccount.get(), BankAccount::getAvailableBalances);
+    }
+
+    /**
+     * Fetches an account's balances as they were at a given point in time.
+     *
+     * curl http://localhost:8080/transfolut/accounts/12345678/balances?at=1514764800000
+     */
+    @GET
+    @Path("{acctNumber}/balances")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAccountBalancesAt(@PathParam("acctNumber") String acctNumber, @QueryParam("at") String at) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(acctNumber)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+
+        if(!BankServiceValidator.getInstance().isTimestampValid(at)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_TIMESTAMP, at));
+        }
+
+        if(clusterNode.isRemote(Integer.parseInt(acctNumber), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(acctNumber), uriInfo);
+        }
+
+        Optional<BankAccount> bankAccount = bankService.getAccount(Integer.parseInt(acctNumber));
         if(!bankAccount.isPresent()) {
             return BankServiceValidator.getInstance().getBadRequestResponse(
                     String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acctNumber));
         }
 
-        return Response.ok(bankAccount.get().getHistory(), MediaType.APPLICATION_JSON).build();
+        return Response.ok(bankAccount.get().getBalancesAt(Long.parseLong(at)), MediaType.APPLICATION_JSON).build();
     }
 
+    /**
+     * Streams the transactions applied to an account as server-sent events.
+     * Slow subscribers miss the oldest events once their buffer is full, or with the coalesce policy
+     * only get the latest balance of each currency.
+     * Subscribers to an account owned by another node of the cluster are redirected to that node.
+     *
+     * curl http://localhost:8080/transfolut/accounts/12345678/events?policy=coalesce
+     */
+    @GET
+    @Path("{acctNumber}/events")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public Response getAccountEvents(@PathParam("acctNumber") String acctNumber, @QueryParam("policy") String policy) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(acctNumber)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+
+        if(!BankServiceValidator.getInstance().isEventPolicyValid(policy)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_EVENT_POLICY, policy));
+        }
+
+        if(clusterNode.isRemote(Integer.parseInt(acctNumber), forwardedBy)) {
+            return Response.temporaryRedirect(UriBuilder.fromUri(clusterNode.getOwner(Integer.parseInt(acctNumber)))
+                    .path(uriInfo.getPath())
+                    .replaceQuery(uriInfo.getRequestUri().getRawQuery())
+                    .build()).build();
+        }
+
+        if(!bankService.getAccount(Integer.parseInt(acctNumber)).isPresent()) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acctNumber));
+        }
+
+        return Response.ok(eventHub.subscribe(Integer.parseInt(acctNumber), EventBuffer.Policy.of(policy))).build();
+    }
 
     /**
-     * Fetches all existing accounts
+     * Fetches all existing accounts of this node
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getAllAccounts() {
-        return Response.ok(BankService.getInstance().getBankAccounts(), MediaType.APPLICATION_JSON).build();
+        return Response.ok(bankService.getBankAccounts(), MediaType.APPLICATION_JSON).build();
     }
 
     /**
@@ -85,8 +213,21 @@ public class AccountService {
         }
 
 
-        long accountNumber = BankService.getInstance().createAccount(currency.currency);
+        long accountNumber = bankService.createAccount(currency.currency);
         return Response.ok(accountNumber, MediaType.APPLICATION_JSON).build();
     }
 
+    /**
+     * Helper method to answer 304 if the client already has the current version of the account,
+     * without reading anything else from the account, and the state read by the getter otherwise.
+     * The version is read first, so that the state sent is never older than its tag.
+     */
+    private Response getIfModified(BankAccount bankAccount, Function<BankAccount, Object> getter) {
+        EntityTag tag = new EntityTag(Long.toString(bankAccount.getVersion()));
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if(notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(getter.apply(bankAccount), MediaType.APPLICATION_JSON).tag(tag).build();
+    }
 }
@@ -0,0 +1,29 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+
+/**
+ * JSON bean for a transaction pushed to the subscribers of balance change events
+ */
+class BalanceEvent {
+    static final String DEPOSIT = "deposit";
+    static final String WITHDRAWAL = "withdrawal";
+
+    @JsonProperty
+    long acct;
+    @JsonProperty
+    String type;
+    @JsonProperty
+    String amount;
+    @JsonProperty
+    String balance;
+    @JsonProperty
+    long timestamp;
+    @JsonProperty
+    long sequence;
+    // Kept out of the JSON, used to filter and coalesce events
+    String currency;
+    BigDecimal absoluteAmount;
+}
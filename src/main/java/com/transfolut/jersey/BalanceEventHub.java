@@ -0,0 +1,192 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.LedgerListener;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Hub pushing the transactions applied by a {@link BankService} to the subscribers of server-sent events,
+ * either subscribed to a single account or to the filtered stream of all accounts.
+ * Transactions of accounts nobody subscribed to are skipped before any event is even built.
+ * A subscriber which disconnected is only noticed when something is written to its stream, so every subscriber
+ * is sent a heartbeat periodically, and the subscribers found closed are dropped even if their account stays idle.
+ */
+class BalanceEventHub implements LedgerListener {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1000;
+    private static final int DEFAULT_SENDERS = 2;
+    private static final long DEFAULT_HEARTBEAT_SECONDS = 15;
+
+    private final BankService bankService;
+    private final Map<Long, List<EventSubscriber>> accountSubscribers = new ConcurrentHashMap<>();
+    private final List<EventSubscriber> firehoseSubscribers = new CopyOnWriteArrayList<>();
+    private final int bufferSize = Integer.getInteger(TransfolutProperties.EVENTS_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+    private final ExecutorService senders = Executors.newFixedThreadPool(
+            Integer.getInteger(TransfolutProperties.EVENTS_SENDERS, DEFAULT_SENDERS), sender -> {
+                Thread thread = new Thread(sender, "transfolut-event-sender");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(sweeper -> {
+        Thread thread = new Thread(sweeper, "transfolut-event-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    BalanceEventHub(BankService bankService) {
+        this.bankService = bankService;
+        bankService.addLedgerListener(this);
+        long heartbeatSeconds = Long.getLong(TransfolutProperties.EVENTS_HEARTBEAT_SECONDS, DEFAULT_HEARTBEAT_SECONDS);
+        heartbeats.scheduleWithFixedDelay(this::sweep, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Subscribes to the transactions of one account.
+     * @return the stream the events are sent to
+     */
+    EventOutput subscribe(long bankAcctNumber, EventBuffer.Policy policy) {
+        EventSubscriber subscriber = newSubscriber(event -> true, policy);
+        accountSubscribers.compute(bankAcctNumber, (accountNumber, accountList) -> {
+            List<EventSubscriber> subscriberList = accountList != null ? accountList : new CopyOnWriteArrayList<>();
+            subscriberList.add(subscriber);
+            return subscriberList;
+        });
+        return subscriber.getOutput();
+    }
+
+    /**
+     * Subscribes to the transactions of all accounts.
+     * @param filter selecting the events sent to the subscriber
+     * @return the stream the events are sent to
+     */
+    EventOutput subscribe(Predicate<BalanceEvent> filter, EventBuffer.Policy policy) {
+        EventSubscriber subscriber = newSubscriber(filter, policy);
+        firehoseSubscribers.add(subscriber);
+        return subscriber.getOutput();
+    }
+
+    @Override
+    public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+        // Only transactions are pushed
+    }
+
+    @Override
+    public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp,
+                                   long sequence) {
+        List<EventSubscriber> subscriberList = accountSubscribers.get(bankAcctNumber);
+        if(subscriberList == null && firehoseSubscribers.isEmpty()) {
+            return;
+        }
+
+        BalanceEvent event = new BalanceEvent();
+        event.acct = bankAcctNumber;
+        event.type = transaction.isNegative() ? BalanceEvent.WITHDRAWAL : BalanceEvent.DEPOSIT;
+        event.amount = transaction.abs().toString();
+        event.balance = Money.of(transaction.getCurrencyUnit(), balanceAfter).toString();
+        event.currency = transaction.getCurrencyUnit().getCode();
+        event.absoluteAmount = transaction.getAmount().abs();
+        event.timestamp = timestamp;
+        event.sequence = sequence;
+        if(subscriberList != null) {
+            for(EventSubscriber subscriber : subscriberList) {
+                if(subscriber.isClosed()) {
+                    unsubscribe(bankAcctNumber, subscriber);
+                } else {
+                    subscriber.offer(event);
+                }
+            }
+        }
+        for(EventSubscriber subscriber : firehoseSubscribers) {
+            if(subscriber.isClosed()) {
+                unsubscribe(subscriber);
+            } else {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * @return the metrics of the event streams
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("events.subscribers", (long) subscribers.get());
+        metrics.put("events.dropped", dropped.sum());
+        metrics.put("events.coalesced", coalesced.sum());
+        return metrics;
+    }
+
+    /**
+     * Stops listening to the bank service and closes all streams.
+     */
+    void close() {
+        bankService.removeLedgerListener(this);
+        accountSubscribers.values().forEach(subscriberList -> subscriberList.forEach(EventSubscriber::close));
+        firehoseSubscribers.forEach(EventSubscriber::close);
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Helper method run periodically to drop the subscribers whose stream is closed and send a heartbeat to the others,
+     * which closes the streams of the subscribers that disconnected in the meantime.
+     */
+    private void sweep() {
+        accountSubscribers.forEach((bankAcctNumber, subscriberList) -> {
+            for(EventSubscriber subscriber : subscriberList) {
+                if(subscriber.isClosed()) {
+                    unsubscribe(bankAcctNumber, subscriber);
+                } else {
+                    subscriber.heartbeat();
+                }
+            }
+        });
+        for(EventSubscriber subscriber : firehoseSubscribers) {
+            if(subscriber.isClosed()) {
+                unsubscribe(subscriber);
+            } else {
+                subscriber.heartbeat();
+            }
+        }
+    }
+
+    private EventSubscriber newSubscriber(Predicate<BalanceEvent> filter, EventBuffer.Policy policy) {
+        subscribers.incrementAndGet();
+        return new EventSubscriber(filter, new EventBuffer(policy, bufferSize), senders, dropped, coalesced);
+    }
+
+    private void unsubscribe(long bankAcctNumber, EventSubscriber subscriber) {
+        accountSubscribers.computeIfPresent(bankAcctNumber, (accountNumber, subscriberList) -> {
+            if(subscriberList.remove(subscriber)) {
+                subscribers.decrementAndGet();
+            }
+            return subscriberList.isEmpty() ? null : subscriberList;
+        });
+    }
+
+    private void unsubscribe(EventSubscriber subscriber) {
+        if(firehoseSubscribers.remove(subscriber)) {
+            subscribers.decrementAndGet();
+        }
+    }
+}
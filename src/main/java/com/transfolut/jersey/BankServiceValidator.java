@@ -14,6 +14,9 @@ import static org.apache.commons.lang3.StringUtils.isNumeric;
  */
 public class BankServiceValidator {
 
+    // Too Many Requests, which has no constant in this version of JAX-RS
+    private static final int TOO_MANY_REQUESTS = 429;
+
     private static BankServiceValidator instance;
 
     private BankServiceValidator() {
@@ -48,12 +51,52 @@ public class BankServiceValidator {
         return true;
     }
 
+    /**
+     * Validates that a given exchange rate is a strictly positive number.
+     * @param rate to validate
+     * @return true if valid
+     */
+    boolean isFxRateValid(String rate) {
+        return NumberUtils.isCreatable(rate) && new BigDecimal(rate).signum() > 0;
+    }
+
+    /**
+     * Validates that a given timestamp is a numeric number of milliseconds since the epoch.
+     * @param timestamp to validate
+     * @return true if valid
+     */
+    boolean isTimestampValid(String timestamp) {
+        return isNumeric(timestamp) && timestamp.length() <= 18;
+    }
+
+    /**
+     * Validates that a given event buffer policy is either absent or one of the known policies.
+     * @param policy to validate
+     * @return true if valid
+     */
+    boolean isEventPolicyValid(String policy) {
+        return policy == null || EventBuffer.Policy.DROP.name().equalsIgnoreCase(policy)
+                || EventBuffer.Policy.COALESCE.name().equalsIgnoreCase(policy);
+    }
+
+    /**
+     * Validates that a given event type is either absent or one of the known types.
+     * @param type to validate
+     * @return true if valid
+     */
+    boolean isEventTypeValid(String type) {
+        return type == null || BalanceEvent.DEPOSIT.equals(type) || BalanceEvent.WITHDRAWAL.equals(type);
+    }
+
     /**
      * Validates that a given currency is a valid {@link org.joda.money.CurrencyUnit}
      * @param currency to validate
      * @return true if valid
      */
     boolean isCurrencyValid(String currency) {
+        if(currency == null) {
+            return false;
+        }
         try {
             CurrencyUnit.of(currency);
             return  true;
@@ -73,4 +116,16 @@ public class BankServiceValidator {
                 .entity(message)
                 .build();
     }
+
+    /**
+     * Helper method to construct the response to a debit exceeding the velocity limits of its account,
+     * which may be retried once earlier debits have left the window
+     * @param message message to display
+     * @return
+     */
+    Response getVelocityLimitResponse(String message) {
+        return Response.status(TOO_MANY_REQUESTS)
+                .entity(message)
+                .build();
+    }
 }
@@ -3,26 +3,49 @@ package com.transfolut.jersey;
 import com.transfolut.TransfolutMessages;
 import com.transfolut.TransfolutPaths;
 import com.transfolut.bank.BankService;
+import com.transfolut.bank.Trace;
+import com.transfolut.bank.VelocityLimitException;
+import com.transfolut.cluster.ClusterNode;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.IllegalCurrencyException;
 import org.joda.money.Money;
 
+import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
 import java.math.BigDecimal;
+import java.util.UUID;
 
 import static org.apache.commons.lang3.StringUtils.isNumeric;
 
 /**
  * Service to transfer money between accounts.
+ * Transfers are handled by the node owning the sending account, which credits accounts owned by other nodes remotely.
  */
 @Path(TransfolutPaths.TRANSFER_URI)
 public class BankTransferService {
+    // Number of times a credit is sent to a node which cannot answer before it is left to be redelivered in the background
+    private static final int CREDIT_ATTEMPTS = 3;
+
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+    @Context
+    private UriInfo uriInfo;
+    @HeaderParam(TransfolutPaths.FORWARDED_BY_HEADER)
+    private String forwardedBy;
+
     /**
      * Creates a new account given a primary currency
      * curl -d '{"fromAccount": "125", "toAccount": "124", "currency":"USD", "amount": "500"}' -H "Content-Type: application/json" -X POST http://localhost:8080/transfolut/transfer
@@ -31,6 +54,51 @@ public class BankTransferService {
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
     public Response transfer(TransferBean transferParams) {
+        Response invalid;
+        Trace.Span validateSpan = Trace.span("validate");
+        try {
+            invalid = validate(transferParams);
+        } finally {
+            validateSpan.close();
+        }
+        if(invalid != null) {
+            return invalid;
+        }
+
+        if(clusterNode.isRemote(Integer.parseInt(transferParams.fromAcct), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(transferParams.fromAcct), uriInfo, Entity.json(transferParams));
+        }
+
+        try {
+            CurrencyUnit currency = CurrencyUnit.of(transferParams.currency);
+            Money transferAmount = Money.of(currency, new BigDecimal(transferParams.amount));
+            CurrencyUnit creditCurrency = transferParams.toCurrency != null ? CurrencyUnit.of(transferParams.toCurrency) : currency;
+            if(!clusterNode.isLocal(Integer.parseInt(transferParams.toAcct))) {
+                return transferAcrossPartitions(transferParams, transferAmount,
+                        bankService.getFxRates().convert(transferAmount, creditCurrency));
+            }
+
+            Money creditAmount;
+            Trace.Span transferSpan = Trace.span("bank.transfer");
+            try {
+                creditAmount = bankService.transfer(Integer.parseInt(transferParams.fromAcct),
+                        Integer.parseInt(transferParams.toAcct), transferAmount, creditCurrency);
+            } finally {
+                transferSpan.close();
+            }
+            return getSuccessResponse(transferParams, transferAmount, creditAmount);
+        } catch (VelocityLimitException e) {
+            return BankServiceValidator.getInstance().getVelocityLimitResponse(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method to validate the parameters of a transfer.
+     * @return the bad request response if a parameter is invalid, or null if all are valid
+     */
+    private static Response validate(TransferBean transferParams) {
         if(!BankServiceValidator.getInstance().isAccountNumberValid(transferParams.fromAcct) ||
                 !BankServiceValidator.getInstance().isAccountNumberValid(transferParams.toAcct)) {
             return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
@@ -46,22 +114,78 @@ public class BankTransferService {
                     (String.format(TransfolutMessages.INVALID_CURRENCY, transferParams.currency));
         }
 
+        if(transferParams.toCurrency != null && !BankServiceValidator.getInstance().isCurrencyValid(transferParams.toCurrency)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse
+                    (String.format(TransfolutMessages.INVALID_CURRENCY, transferParams.toCurrency));
+        }
+
         //Validate that the two account numbers are not the same
         if(transferParams.fromAcct.equals(transferParams.toAcct)) {
             return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.TRANSFER_ACCOUNTS_SAME);
         }
+        return null;
+    }
 
-        try {
-            CurrencyUnit currency = CurrencyUnit.of(transferParams.currency);
-            Money transferAmount = Money.of(currency, new BigDecimal(transferParams.amount));
-            BankService.getInstance().transfer(Integer.parseInt(transferParams.fromAcct),
-                    Integer.parseInt(transferParams.toAcct), transferAmount);
-            return Response.ok(
-                    String.format(TransfolutMessages.TRANSFER_SUCCESS, transferAmount.toString(), transferParams.fromAcct,
-                            transferParams.toAcct), MediaType.APPLICATION_JSON).build();
-        } catch (IllegalArgumentException e) {
-            return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
+    /**
+     * Helper method to transfer money to an account owned by another node.
+     * The amount is debited locally first and then credited by the owner of the receiving account, under a transfer id
+     * which lets the owner ignore credits retried after a lost answer. Only a credit rejected by the owner is refunded
+     * to the sending account. A credit which still gets no answer after a few attempts may have been applied all the
+     * same, so it is left pending and redelivered in the background under the same transfer id, until the owner
+     * either credits it or rejects it and it is refunded. The owner rejects credits arriving past their deadline,
+     * so one last attempt at the deadline settles the credit. If the owner cannot answer that attempt either,
+     * or this node is stopped before the deadline and a last attempt gets no answer, the credit is refunded.
+     * Amounts credited in another currency are converted by this node, so the other node only sees a plain credit.
+     */
+    private Response transferAcrossPartitions(TransferBean transferParams, Money transferAmount, Money creditAmount) {
+        long fromAcctNumber = Integer.parseInt(transferParams.fromAcct);
+        if(!bankService.getAccount(fromAcctNumber).isPresent()) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.TRANSFER_ACCOUNTS_NONEXISTENT);
         }
+        bankService.withdraw(fromAcctNumber, transferAmount);
+
+        CreditBean credit = new CreditBean();
+        credit.transferId = UUID.randomUUID().toString();
+        credit.acct = transferParams.toAcct;
+        credit.currency = creditAmount.getCurrencyUnit().getCode();
+        credit.amount = creditAmount.getAmount().toPlainString();
+        credit.deadline = clusterNode.redeliveryDeadline();
+        Response creditResponse;
+        int attempts = 0;
+        do {
+            creditResponse = clusterNode.post(Integer.parseInt(transferParams.toAcct),
+                    TransfolutPaths.CLUSTER_CREDIT_URI, Entity.json(credit));
+        } while(creditResponse.getStatusInfo().getFamily() == Status.Family.SERVER_ERROR && ++attempts < CREDIT_ATTEMPTS);
+
+        if(creditResponse.getStatus() == Status.OK.getStatusCode()) {
+            return getSuccessResponse(transferParams, transferAmount, creditAmount);
+        }
+        if(creditResponse.getStatus() == Status.BAD_REQUEST.getStatusCode()) {
+            bankService.deposit(fromAcctNumber, transferAmount);
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.TRANSFER_ACCOUNTS_NONEXISTENT);
+        }
+
+        clusterNode.redeliver(Integer.parseInt(transferParams.toAcct), TransfolutPaths.CLUSTER_CREDIT_URI,
+                Entity.json(credit), credit.deadline, answer -> {
+                    if(answer.getStatus() == Status.BAD_REQUEST.getStatusCode()) {
+                        bankService.deposit(fromAcctNumber, transferAmount);
+                    }
+                }, () -> bankService.deposit(fromAcctNumber, transferAmount));
+        return Response.status(Status.ACCEPTED)
+                .entity(String.format(TransfolutMessages.TRANSFER_CREDIT_PENDING, transferAmount.toString(),
+                        transferParams.toAcct, transferParams.fromAcct))
+                .build();
     }
-}
 
+    /**
+     * Helper method to construct the success response, naming the credited amount if it was converted.
+     */
+    private static Response getSuccessResponse(TransferBean transferParams, Money transferAmount, Money creditAmount) {
+        String message = transferAmount.equals(creditAmount)
+                ? String.format(TransfolutMessages.TRANSFER_SUCCESS, transferAmount.toString(), transferParams.fromAcct,
+                        transferParams.toAcct)
+                : String.format(TransfolutMessages.FX_TRANSFER_SUCCESS, transferAmount.toString(), creditAmount.toString(),
+                        transferParams.fromAcct, transferParams.toAcct);
+        return Response.ok(message, MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -0,0 +1,270 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the operations of bulk import files to a {@link BankService}.
+ * Files are read line by line in batches, so only one batch is ever held in memory whatever the size of the file.
+ * The operations of a batch are grouped by the accounts they touch: operations sharing an account, directly or
+ * through transfers, are applied in file order by one thread, while unrelated groups are applied in parallel.
+ * The outcome is thus the same as applying the file line by line, as long as no other request touches its accounts.
+ * One result per line is written once its batch has been applied, in file order.
+ */
+class BulkImporter {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BankService bankService;
+    private final ClusterNode clusterNode;
+    private final int batchSize = Integer.getInteger(TransfolutProperties.IMPORT_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+    private final ExecutorService workers = Executors.newFixedThreadPool(
+            Integer.getInteger(TransfolutProperties.IMPORT_THREADS, Runtime.getRuntime().availableProcessors()),
+            worker -> {
+                Thread thread = new Thread(worker, "transfolut-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    BulkImporter(BankService bankService, ClusterNode clusterNode) {
+        this.bankService = bankService;
+        this.clusterNode = clusterNode;
+    }
+
+    /**
+     * Applies all operations of a file and writes the result of every line as a line of JSON.
+     * Blank lines and header lines are skipped without a result.
+     * @param lines of the file
+     * @param format of the file
+     * @param report to write the results to, flushed after every batch
+     */
+    void importLines(BufferedReader lines, ImportFormat format, Writer report) throws IOException {
+        long lineNumber = 0;
+        List<ImportLine> batch = new ArrayList<>(batchSize);
+        String line;
+        while((line = lines.readLine()) != null) {
+            lineNumber++;
+            if(line.trim().isEmpty() || (lineNumber == 1 && format.isHeader(line))) {
+                continue;
+            }
+            batch.add(new ImportLine(lineNumber, line));
+            if(batch.size() == batchSize) {
+                applyBatch(batch, format, report);
+                batch.clear();
+            }
+        }
+        applyBatch(batch, format, report);
+    }
+
+    /**
+     * @return the metrics of the bulk imports
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("import.applied", applied.sum());
+        metrics.put("import.rejected", rejected.sum());
+        return metrics;
+    }
+
+    /**
+     * Stops the workers, imports still running are interrupted.
+     */
+    void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Helper method to parse, group and apply the lines of a batch, then write their results.
+     */
+    private void applyBatch(List<ImportLine> batch, ImportFormat format, Writer report) throws IOException {
+        Map<Long, Long> groups = new HashMap<>();
+        for(ImportLine line : batch) {
+            try {
+                line.operation = format.parse(line.text);
+                line.accounts = getAccounts(line.operation);
+                // Transfers join the groups of both accounts
+                for(long acctNumber : line.accounts) {
+                    union(groups, line.accounts[0], acctNumber);
+                }
+            } catch (IllegalArgumentException e) {
+                line.result = new ImportResult(line.number, ImportResult.REJECTED, e.getMessage());
+            }
+        }
+
+        Map<Long, List<ImportLine>> linesByGroup = new LinkedHashMap<>();
+        for(ImportLine line : batch) {
+            if(line.result == null) {
+                linesByGroup.computeIfAbsent(find(groups, line.accounts[0]), group -> new ArrayList<>()).add(line);
+            }
+        }
+        List<Future<?>> appliedGroups = new ArrayList<>(linesByGroup.size());
+        for(List<ImportLine> groupLines : linesByGroup.values()) {
+            appliedGroups.add(workers.submit((Callable<Void>) () -> {
+                groupLines.forEach(this::apply);
+                return null;
+            }));
+        }
+        try {
+            for(Future<?> group : appliedGroups) {
+                group.get();
+            }
+        } catch (InterruptedException e) {
+            appliedGroups.forEach(group -> group.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        for(ImportLine line : batch) {
+            report.write(MAPPER.writeValueAsString(line.result));
+            report.write('\n');
+        }
+        report.flush();
+    }
+
+    /**
+     * Helper method to apply the operation of a line, recording its result.
+     * Operations are validated like the requests of the single operation endpoints and rejected with the same messages.
+     */
+    private void apply(ImportLine line) {
+        ImportOperation operation = line.operation;
+        try {
+            for(long acctNumber : line.accounts) {
+                if(!clusterNode.isLocal(acctNumber)) {
+                    throw new IllegalArgumentException(String.format(TransfolutMessages.IMPORT_ACCOUNT_NOT_LOCAL,
+                            acctNumber, clusterNode.getOwner(acctNumber)));
+                }
+            }
+            if(!BankServiceValidator.getInstance().isAmountValid(operation.amount)) {
+                throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_AMOUNT, operation.amount));
+            }
+            if(operation.currency == null || !BankServiceValidator.getInstance().isCurrencyValid(operation.currency)) {
+                throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_CURRENCY, operation.currency));
+            }
+
+            Money amount = Money.of(CurrencyUnit.of(operation.currency), new BigDecimal(operation.amount));
+            String message;
+            switch(operation.operation) {
+                case ImportOperation.DEPOSIT:
+                    bankService.deposit(line.accounts[0], amount);
+                    message = String.format(TransfolutMessages.DEPOSIT_SUCCESS, amount.toString(), operation.acct);
+                    break;
+                case ImportOperation.WITHDRAW:
+                    bankService.withdraw(line.accounts[0], amount);
+                    message = String.format(TransfolutMessages.WITHDRAW_SUCCESS, amount.toString(), operation.acct);
+                    break;
+                default:
+                    bankService.transfer(line.accounts[0], line.accounts[1], amount);
+                    message = String.format(TransfolutMessages.TRANSFER_SUCCESS, amount.toString(), operation.fromAcct,
+                            operation.toAcct);
+                    break;
+            }
+            line.result = new ImportResult(line.number, ImportResult.APPLIED, message);
+            applied.increment();
+        } catch (IllegalArgumentException e) {
+            line.result = new ImportResult(line.number, ImportResult.REJECTED, e.getMessage());
+            rejected.increment();
+        }
+    }
+
+    /**
+     * Helper method to validate the operation and account numbers of an operation.
+     * @return the accounts touched by the operation, the sending account first for transfers
+     */
+    private static long[] getAccounts(ImportOperation operation) {
+        if(operation.operation == null) {
+            throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_IMPORT_OPERATION, operation.operation));
+        }
+        switch(operation.operation) {
+            case ImportOperation.DEPOSIT:
+            case ImportOperation.WITHDRAW:
+                return new long[] {parseAccountNumber(operation.acct)};
+            case ImportOperation.TRANSFER:
+                long[] accounts = {parseAccountNumber(operation.fromAcct), parseAccountNumber(operation.toAcct)};
+                if(accounts[0] == accounts[1]) {
+                    throw new IllegalArgumentException(TransfolutMessages.TRANSFER_ACCOUNTS_SAME);
+                }
+                return accounts;
+            default:
+                throw new IllegalArgumentException(
+                        String.format(TransfolutMessages.INVALID_IMPORT_OPERATION, operation.operation));
+        }
+    }
+
+    private static long parseAccountNumber(String acctNumber) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(acctNumber)) {
+            throw new IllegalArgumentException(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+        return Integer.parseInt(acctNumber);
+    }
+
+    /**
+     * Helper method to merge the groups of two accounts.
+     */
+    private static void union(Map<Long, Long> groups, long acctNumber, long otherAcctNumber) {
+        long group = find(groups, acctNumber);
+        long otherGroup = find(groups, otherAcctNumber);
+        if(group != otherGroup) {
+            groups.put(otherGroup, group);
+        }
+    }
+
+    /**
+     * Helper method to find the group of an account, compressing the path to it on the way.
+     */
+    private static long find(Map<Long, Long> groups, long acctNumber) {
+        Long parent = groups.get(acctNumber);
+        if(parent == null) {
+            groups.put(acctNumber, acctNumber);
+            return acctNumber;
+        }
+        if(parent == acctNumber) {
+            return acctNumber;
+        }
+        long group = find(groups, parent);
+        groups.put(acctNumber, group);
+        return group;
+    }
+
+    /**
+     * One line of a file along with its parsed operation and its result.
+     */
+    private static final class ImportLine {
+        private final long number;
+        private final String text;
+        private ImportOperation operation;
+        private long[] accounts;
+        private ImportResult result;
+
+        private ImportLine(long number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Service crediting transfers between accounts owned by different nodes of the cluster.
+ * It is called by the node owning the sending account, once the amount has been debited there.
+ */
+@Path(TransfolutPaths.CLUSTER_CREDIT_URI)
+public class ClusterCreditService {
+
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+
+    /**
+     * Credits the receiving account of a transfer.
+     * A transfer which has been credited already is acknowledged again without being applied twice,
+     * so that the sending node can safely retry credits it did not get an answer for. A retry arriving while the
+     * first attempt is still being applied waits for it, and is only acknowledged if the first attempt succeeded.
+     * A credit arriving past its deadline is rejected unless it has been credited already, as the sending node
+     * may have refunded it by then and its transfer id is only remembered for a while past the deadline.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response credit(CreditBean credit) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(credit.acct)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+
+        if(!BankServiceValidator.getInstance().isAmountValid(credit.amount)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_AMOUNT, credit.amount));
+        }
+
+        if(!BankServiceValidator.getInstance().isCurrencyValid(credit.currency)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_CURRENCY, credit.currency));
+        }
+
+        if(isBlank(credit.transferId)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_TRANSFER_ID);
+        }
+
+        // Credits are never forwarded again, the sending node must have picked the owner of the account
+        if(!clusterNode.isLocal(Integer.parseInt(credit.acct))) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, credit.acct));
+        }
+
+        Money creditAmount = Money.of(CurrencyUnit.of(credit.currency), new BigDecimal(credit.amount));
+        String success = String.format(TransfolutMessages.DEPOSIT_SUCCESS, creditAmount.toString(), credit.acct);
+        long deadline = credit.deadline != null ? credit.deadline : clusterNode.redeliveryDeadline();
+        CompletableFuture<Void> credited = new CompletableFuture<>();
+        CompletableFuture<Void> firstAttempt = clusterNode.markCredited(credit.transferId, deadline, credited);
+        if(firstAttempt != null) {
+            try {
+                firstAttempt.join();
+                return Response.ok(success, MediaType.APPLICATION_JSON).build();
+            } catch (CompletionException e) {
+                if(!(e.getCause() instanceof IllegalArgumentException)) {
+                    throw e;
+                }
+                return BankServiceValidator.getInstance().getBadRequestResponse(e.getCause().getMessage());
+            }
+        }
+
+        try {
+            if(System.currentTimeMillis() > deadline) {
+                throw new IllegalArgumentException(String.format(TransfolutMessages.CREDIT_EXPIRED, credit.transferId));
+            }
+            bankService.deposit(Integer.parseInt(credit.acct), creditAmount);
+            credited.complete(null);
+            return Response.ok(success, MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            clusterNode.unmarkCredited(credit.transferId, credited);
+            credited.completeExceptionally(e);
+            return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
+        } catch (RuntimeException e) {
+            // Waiting retries fail with a server error as well, so that the sending node tries the credit again
+            clusterNode.unmarkCredited(credit.transferId, credited);
+            credited.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
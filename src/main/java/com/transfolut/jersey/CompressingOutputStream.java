@@ -0,0 +1,150 @@
+package com.transfolut.jersey;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Entity stream which only compresses responses larger than a threshold.
+ * The start of the entity is held back until the threshold is crossed, at which point the content encoding
+ * header is added before anything is sent, or until the entity ends or is flushed below the threshold,
+ * in which case it is sent as it is.
+ */
+final class CompressingOutputStream extends FilterOutputStream {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    private final int threshold;
+    private final CompressionFilter.Encoding encoding;
+    private final DeflaterPool deflaters;
+    private final MultivaluedMap<String, Object> headers;
+    // Start of the entity held back until it is known whether to compress it, null once that is decided
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int count;
+    private Deflater deflater;
+    private DeflaterOutputStream compressed;
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    /**
+     * @param out entity stream of the response
+     * @param threshold size in bytes above which the entity is compressed
+     * @param encoding to compress the entity with
+     * @param deflaters to borrow the deflater of the encoding from
+     * @param headers of the response, which must not have been sent yet
+     */
+    CompressingOutputStream(OutputStream out, int threshold, CompressionFilter.Encoding encoding, DeflaterPool deflaters,
+                            MultivaluedMap<String, Object> headers) {
+        super(out);
+        this.threshold = threshold;
+        this.encoding = encoding;
+        this.deflaters = deflaters;
+        this.headers = headers;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(buffer != null) {
+            if(count + len <= threshold) {
+                if(count + len > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(threshold, Math.max(count + len, buffer.length * 2)));
+                }
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            startCompressing();
+        }
+        if(compressed != null) {
+            compressed.write(b, off, len);
+            crc.update(b, off, len);
+            size += len;
+        } else {
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Sends what has been written so far. An entity flushed below the threshold is sent uncompressed,
+     * so that streamed responses are not held back.
+     */
+    @Override
+    public void flush() throws IOException {
+        if(buffer != null) {
+            sendUncompressed();
+        }
+        if(compressed != null) {
+            compressed.flush();
+        } else {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(buffer != null) {
+                sendUncompressed();
+            }
+            if(compressed != null) {
+                compressed.finish();
+                if(encoding == CompressionFilter.Encoding.GZIP) {
+                    writeIntLE((int) crc.getValue());
+                    writeIntLE((int) size);
+                }
+            }
+            out.close();
+        } finally {
+            if(deflater != null) {
+                deflaters.release(deflater);
+                deflater = null;
+            }
+        }
+    }
+
+    private void sendUncompressed() throws IOException {
+        byte[] held = buffer;
+        buffer = null;
+        out.write(held, 0, count);
+    }
+
+    /**
+     * Helper method to switch to compression, announcing the encoding before the first byte is sent.
+     */
+    private void startCompressing() throws IOException {
+        byte[] held = buffer;
+        buffer = null;
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        Object tag = headers.getFirst(HttpHeaders.ETAG);
+        if(tag != null) {
+            headers.putSingle(HttpHeaders.ETAG, CompressionFilter.encodedTag(tag, encoding));
+        }
+        deflater = deflaters.borrow();
+        if(encoding == CompressionFilter.Encoding.GZIP) {
+            // Magic number, deflate method, no flags, no modification time, no extra flags, unknown operating system
+            out.write(new byte[] {(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+        }
+        // Flushing the deflater sends all data written so far, so that streamed responses keep flowing
+        compressed = new DeflaterOutputStream(out, deflater, INITIAL_BUFFER_SIZE * 16, true);
+        compressed.write(held, 0, count);
+        crc.update(held, 0, count);
+        size += count;
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(new byte[] {(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+    }
+}
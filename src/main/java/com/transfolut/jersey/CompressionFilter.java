@@ -0,0 +1,201 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutProperties;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compresses the responses larger than a threshold for the clients accepting gzip or deflate encoding.
+ * The encoding is negotiated once the response is known, and the entity stream only starts compressing
+ * once the threshold is crossed, so small responses are sent as they are without allocating a compressor.
+ * Compressors are pooled for every encoding, so that large responses reuse them rather than allocating native memory.
+ * The entity tag of a compressed response is suffixed with its encoding, as a strong tag must differ between
+ * encodings, and the suffix is stripped from the tags sent back by clients before resources compare them.
+ */
+class CompressionFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final int DEFAULT_THRESHOLD = 2048;
+    private static final String DEFAULT_ENCODINGS = "gzip,deflate";
+    private static final String ENCODING_PROPERTY = CompressionFilter.class.getName() + ".encoding";
+    // Number of bytes a character of a text entity is encoded into at most
+    private static final int MAX_BYTES_PER_CHAR = 3;
+    private static final String EVENT_STREAM = "text/event-stream";
+    private static final String TAG_SUFFIX = "--";
+
+    private final int threshold = Integer.getInteger(TransfolutProperties.COMPRESSION_THRESHOLD, DEFAULT_THRESHOLD);
+    // Encodings offered to clients, in order of preference
+    private final List<Encoding> encodings = new ArrayList<>();
+    private final Map<Encoding, DeflaterPool> deflaters = new EnumMap<>(Encoding.class);
+
+    /**
+     * @throws IllegalArgumentException if an unknown encoding is configured
+     */
+    CompressionFilter() {
+        int level = Integer.getInteger(TransfolutProperties.COMPRESSION_LEVEL, -1);
+        int poolSize = Integer.getInteger(TransfolutProperties.COMPRESSION_POOL_SIZE,
+                Runtime.getRuntime().availableProcessors() * 2);
+        for(String name : System.getProperty(TransfolutProperties.COMPRESSION_ENCODINGS, DEFAULT_ENCODINGS).split(",")) {
+            if(!name.trim().isEmpty()) {
+                Encoding encoding = Encoding.of(name.trim());
+                if(encoding == null) {
+                    throw new IllegalArgumentException("Unknown compression encoding " + name.trim());
+                }
+                encodings.add(encoding);
+                deflaters.put(encoding, new DeflaterPool(level, encoding == Encoding.GZIP, poolSize));
+            }
+        }
+    }
+
+    /**
+     * Strips the encoding suffixes from the entity tags sent back by the client.
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String ifNoneMatch = requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+        if(ifNoneMatch != null && ifNoneMatch.contains(TAG_SUFFIX)) {
+            for(Encoding encoding : encodings) {
+                ifNoneMatch = ifNoneMatch.replace(TAG_SUFFIX + encoding.getName() + "\"", "\"");
+            }
+            requestContext.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+    }
+
+    /**
+     * Picks the encoding of the response among those the client accepts.
+     * Texts known to be under the threshold, such as the messages of deposits and transfers, are left alone
+     * before anything is parsed, and so are responses already encoded by their resource and event streams,
+     * which must never be held back.
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object entity = responseContext.getEntity();
+        if(encodings.isEmpty() || entity == null
+                || entity instanceof String && ((String) entity).length() * MAX_BYTES_PER_CHAR <= threshold
+                || responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)
+                || isEventStream(responseContext.getMediaType())) {
+            return;
+        }
+        // Caches must not serve the response to clients accepting other encodings, even when it ends up uncompressed
+        responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        Encoding encoding = negotiate(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        if(encoding != null) {
+            requestContext.setProperty(ENCODING_PROPERTY, encoding);
+        }
+    }
+
+    /**
+     * Wraps the entity stream of the responses an encoding was picked for.
+     */
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Encoding encoding = (Encoding) context.getProperty(ENCODING_PROPERTY);
+        if(encoding != null) {
+            context.setOutputStream(new CompressingOutputStream(context.getOutputStream(), threshold, encoding,
+                    deflaters.get(encoding), context.getHeaders()));
+        }
+        context.proceed();
+    }
+
+    /**
+     * Helper method to pick the encoding with the highest quality in an Accept-Encoding header,
+     * ties going to the preferred encoding.
+     * @return the encoding, or null if the client accepts none of the offered encodings
+     */
+    Encoding negotiate(String acceptEncoding) {
+        if(acceptEncoding == null) {
+            return null;
+        }
+        Map<Encoding, Double> qualities = new EnumMap<>(Encoding.class);
+        Double wildcardQuality = null;
+        for(String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for(int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if(parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if("*".equals(name)) {
+                wildcardQuality = quality;
+            } else if(Encoding.of(name) != null) {
+                qualities.put(Encoding.of(name), quality);
+            }
+        }
+        Encoding best = null;
+        double bestQuality = 0;
+        for(Encoding encoding : encodings) {
+            Double quality = qualities.containsKey(encoding) ? qualities.get(encoding) : wildcardQuality;
+            if(quality != null && quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param tag entity tag of a response, either as an {@link EntityTag} or as its header value
+     * @return the entity tag of the response compressed with an encoding
+     */
+    static EntityTag encodedTag(Object tag, Encoding encoding) {
+        EntityTag entityTag = tag instanceof EntityTag ? (EntityTag) tag : EntityTag.valueOf(tag.toString());
+        return new EntityTag(entityTag.getValue() + TAG_SUFFIX + encoding.getName(), entityTag.isWeak());
+    }
+
+    private static boolean isEventStream(MediaType mediaType) {
+        return mediaType != null && EVENT_STREAM.equals(mediaType.getType() + "/" + mediaType.getSubtype());
+    }
+
+    /**
+     * Content encodings the responses can be compressed with.
+     */
+    enum Encoding {
+        GZIP("gzip", "x-gzip"),
+        DEFLATE("deflate", "deflate");
+
+        private final String name;
+        // Alias of the encoding clients may still send
+        private final String alias;
+
+        Encoding(String name, String alias) {
+            this.name = name;
+            this.alias = alias;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return the encoding of a name or alias, or null if unknown
+         */
+        static Encoding of(String name) {
+            for(Encoding encoding : values()) {
+                if(encoding.name.equalsIgnoreCase(name) || encoding.alias.equalsIgnoreCase(name)) {
+                    return encoding;
+                }
+            }
+            return null;
+        }
+    }
+}
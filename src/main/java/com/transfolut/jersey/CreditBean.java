@@ -0,0 +1,15 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON bean for crediting the receiving account of a transfer between two nodes
+ */
+class CreditBean extends DepositBean {
+    @JsonProperty
+    String transferId;
+    // Time in milliseconds since the epoch past which the credit must not be applied, credits without one
+    // are handled as if they had just been sent
+    @JsonProperty
+    Long deadline;
+}
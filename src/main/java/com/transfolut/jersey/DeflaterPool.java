@@ -0,0 +1,47 @@
+package com.transfolut.jersey;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of deflaters, so that compressed responses reuse the native state of a deflater
+ * rather than allocating and freeing it for every response.
+ * Deflaters returned while the pool is full are freed at once.
+ */
+final class DeflaterPool {
+
+    private final int level;
+    // Whether the deflaters write raw deflate data, which is wrapped in a gzip header and trailer
+    private final boolean nowrap;
+    private final BlockingQueue<Deflater> idle;
+
+    /**
+     * @param level of compression of the deflaters, from 0 to 9 or -1 for the default level
+     * @param nowrap whether the deflaters write raw deflate data rather than zlib data
+     * @param size maximum number of idle deflaters kept
+     */
+    DeflaterPool(int level, boolean nowrap, int size) {
+        this.level = level;
+        this.nowrap = nowrap;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * @return an idle deflater, or a new one if none is idle
+     */
+    Deflater borrow() {
+        Deflater deflater = idle.poll();
+        return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    /**
+     * Gives back a deflater borrowed from the pool, whatever state it was left in.
+     */
+    void release(Deflater deflater) {
+        deflater.reset();
+        if(!idle.offer(deflater)) {
+            deflater.end();
+        }
+    }
+}
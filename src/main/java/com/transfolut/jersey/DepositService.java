@@ -3,15 +3,21 @@ package com.transfolut.jersey;
 import com.transfolut.TransfolutMessages;
 import com.transfolut.TransfolutPaths;
 import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
 
+import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.math.BigDecimal;
 
 /**
@@ -19,6 +25,14 @@ import java.math.BigDecimal;
  */
 @Path(TransfolutPaths.DEPOSIT_URI)
 public class DepositService {
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+    @Context
+    private UriInfo uriInfo;
+    @HeaderParam(TransfolutPaths.FORWARDED_BY_HEADER)
+    private String forwardedBy;
 
     /**
      * Creates a new account given a primary currency
@@ -42,10 +56,14 @@ public class DepositService {
                     String.format(TransfolutMessages.INVALID_CURRENCY, deposit.currency));
         }
 
+        if(clusterNode.isRemote(Integer.parseInt(deposit.acct), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(deposit.acct), uriInfo, Entity.json(deposit));
+        }
+
         try {
             CurrencyUnit currency = CurrencyUnit.of(deposit.currency);
             Money depositAmount = Money.of(currency, new BigDecimal(deposit.amount));
-            BankService.getInstance().deposit(Integer.parseInt(deposit.acct), depositAmount);
+            bankService.deposit(Integer.parseInt(deposit.acct), depositAmount);
             return Response.ok(
                     String.format(TransfolutMessages.DEPOSIT_SUCCESS, depositAmount.toString(), deposit.acct),
                     MediaType.APPLICATION_JSON).build();
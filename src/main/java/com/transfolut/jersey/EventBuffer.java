@@ -0,0 +1,95 @@
+package com.transfolut.jersey;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded buffer of the {@link BalanceEvent}s waiting to be sent to one subscriber.
+ * When a subscriber cannot keep up, the buffer fills up and the oldest events are dropped, so that the threads
+ * applying transactions never wait for a subscriber. With the coalesce policy, an event also replaces any older
+ * event of the same account and currency still waiting to be sent, as it carries the latest balance anyway.
+ * Buffers are not thread safe, callers synchronize on them.
+ */
+final class EventBuffer {
+
+    enum Policy {
+        DROP, COALESCE;
+
+        /**
+         * @param policy name of the policy in any case, or null for the default drop policy
+         */
+        static Policy of(String policy) {
+            return policy == null ? DROP : valueOf(policy.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Policy policy;
+    private final int capacity;
+    private final Map<Object, BalanceEvent> events = new LinkedHashMap<>();
+    private long dropped;
+    private long coalesced;
+
+    /**
+     * @param policy applied to events of the same balance waiting to be sent
+     * @param capacity maximum number of events waiting to be sent
+     */
+    EventBuffer(Policy policy, int capacity) {
+        this.policy = policy;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds an event, dropping the oldest one if the buffer is full.
+     */
+    void add(BalanceEvent event) {
+        Object key = event;
+        if(policy == Policy.COALESCE) {
+            key = event.acct + ":" + event.currency;
+            if(events.remove(key) != null) {
+                coalesced++;
+            }
+        }
+        if(events.size() >= capacity) {
+            Iterator<BalanceEvent> oldest = events.values().iterator();
+            oldest.next();
+            oldest.remove();
+            dropped++;
+        }
+        events.put(key, event);
+    }
+
+    /**
+     * @return the events waiting to be sent, oldest first, which are removed from the buffer
+     */
+    List<BalanceEvent> drain() {
+        List<BalanceEvent> drained = new ArrayList<>(events.values());
+        events.clear();
+        return drained;
+    }
+
+    boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    /**
+     * @return the number of events dropped since the last call, which is reset
+     */
+    long takeDropped() {
+        long droppedSinceLastCall = dropped;
+        dropped = 0;
+        return droppedSinceLastCall;
+    }
+
+    /**
+     * @return the number of events replaced by a later event of the same balance since the last call, which is reset
+     */
+    long takeCoalesced() {
+        long coalescedSinceLastCall = coalesced;
+        coalesced = 0;
+        return coalescedSinceLastCall;
+    }
+}
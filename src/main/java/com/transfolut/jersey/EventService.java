@@ -0,0 +1,67 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import org.glassfish.jersey.media.sse.SseFeature;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.util.function.Predicate;
+
+/**
+ * Service to stream the transactions of all accounts of this node as server-sent events.
+ */
+@Path(TransfolutPaths.EVENTS_URI)
+public class EventService {
+
+    @Inject
+    private BalanceEventHub eventHub;
+
+    /**
+     * Streams the transactions of all accounts, optionally filtered by currency, type and minimum amount.
+     *
+     * curl http://localhost:8080/transfolut/events?currency=GBP&type=withdrawal&minAmount=1000&policy=drop
+     */
+    @GET
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public Response getEvents(@QueryParam("currency") String currency, @QueryParam("type") String type,
+                              @QueryParam("minAmount") String minAmount, @QueryParam("policy") String policy) {
+        if(currency != null && !BankServiceValidator.getInstance().isCurrencyValid(currency)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_CURRENCY, currency));
+        }
+
+        if(!BankServiceValidator.getInstance().isEventTypeValid(type)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_EVENT_TYPE, type));
+        }
+
+        if(minAmount != null && !BankServiceValidator.getInstance().isAmountValid(minAmount)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_AMOUNT, minAmount));
+        }
+
+        if(!BankServiceValidator.getInstance().isEventPolicyValid(policy)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_EVENT_POLICY, policy));
+        }
+
+        Predicate<BalanceEvent> filter = event -> true;
+        if(currency != null) {
+            filter = filter.and(event -> event.currency.equals(currency));
+        }
+        if(type != null) {
+            filter = filter.and(event -> event.type.equals(type));
+        }
+        if(minAmount != null) {
+            BigDecimal minimum = new BigDecimal(minAmount);
+            filter = filter.and(event -> event.absoluteAmount.compareTo(minimum) >= 0);
+        }
+        return Response.ok(eventHub.subscribe(filter, EventBuffer.Policy.of(policy))).build();
+    }
+}
@@ -0,0 +1,148 @@
+package com.transfolut.jersey;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Subscriber to balance change events, connected through a server-sent events stream.
+ * Events are buffered by the threads applying transactions and written to the stream by a sender thread,
+ * which is only scheduled while the buffer holds events, so idle subscribers cost no thread at all.
+ */
+final class EventSubscriber {
+
+    private static final String TRANSACTION_EVENT = "transaction";
+    private static final String DROPPED_EVENT = "dropped";
+    private static final String HEARTBEAT_COMMENT = "heartbeat";
+
+    private final EventOutput output = new EventOutput();
+    private final Predicate<BalanceEvent> filter;
+    private final EventBuffer buffer;
+    private final Executor sender;
+    private final LongAdder dropped;
+    private final LongAdder coalesced;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param filter selecting the events sent to the subscriber
+     * @param buffer holding the events waiting to be sent
+     * @param sender executor writing the events to the stream
+     * @param dropped counter of the events dropped across all subscribers
+     * @param coalesced counter of the events coalesced across all subscribers
+     */
+    EventSubscriber(Predicate<BalanceEvent> filter, EventBuffer buffer, Executor sender, LongAdder dropped,
+                    LongAdder coalesced) {
+        this.filter = filter;
+        this.buffer = buffer;
+        this.sender = sender;
+        this.dropped = dropped;
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * @return the stream of the subscriber
+     */
+    EventOutput getOutput() {
+        return output;
+    }
+
+    boolean isClosed() {
+        return output.isClosed();
+    }
+
+    /**
+     * Buffers an event selected by the filter of the subscriber and makes sure a sender will write it.
+     */
+    void offer(BalanceEvent event) {
+        if(!filter.test(event)) {
+            return;
+        }
+        synchronized (buffer) {
+            buffer.add(event);
+        }
+        if(scheduled.compareAndSet(false, true)) {
+            sender.execute(this::send);
+        }
+    }
+
+    /**
+     * Makes sure a sender writes to the stream even if no event is buffered, so that a subscriber which disconnected
+     * is noticed. Nothing more is written if a sender is already writing events.
+     */
+    void heartbeat() {
+        if(scheduled.compareAndSet(false, true)) {
+            sender.execute(this::sendHeartbeat);
+        }
+    }
+
+    void close() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            // The subscriber has disconnected already
+        }
+    }
+
+    /**
+     * Helper method run by a sender to write a comment line ignored by the subscriber, and then any buffered event.
+     */
+    private void sendHeartbeat() {
+        try {
+            output.write(new OutboundEvent.Builder().comment(HEARTBEAT_COMMENT).build());
+        } catch (IOException e) {
+            // The subscriber has disconnected, it stays scheduled so that no sender picks it up again
+            close();
+            return;
+        }
+        send();
+    }
+
+    /**
+     * Helper method run by a sender to write the buffered events until the buffer is empty.
+     * Subscribers are told how many events they missed before the events following the gap.
+     */
+    private void send() {
+        while(true) {
+            List<BalanceEvent> events;
+            long droppedEvents;
+            synchronized (buffer) {
+                if(buffer.isEmpty()) {
+                    scheduled.set(false);
+                    return;
+                }
+                events = buffer.drain();
+                droppedEvents = buffer.takeDropped();
+                coalesced.add(buffer.takeCoalesced());
+            }
+            dropped.add(droppedEvents);
+
+            try {
+                if(droppedEvents > 0) {
+                    output.write(new OutboundEvent.Builder()
+                            .name(DROPPED_EVENT)
+                            .data(String.class, String.valueOf(droppedEvents))
+                            .build());
+                }
+                for(BalanceEvent event : events) {
+                    output.write(new OutboundEvent.Builder()
+                            .name(TRANSACTION_EVENT)
+                            .id(String.valueOf(event.sequence))
+                            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                            .data(BalanceEvent.class, event)
+                            .build());
+                }
+            } catch (IOException e) {
+                // The subscriber has disconnected, it stays scheduled so that no sender picks it up again
+                close();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+/**
+ * Formats of a ledger export, one record per line.
+ */
+enum ExportFormat {
+    /**
+     * Comma separated lines of record,acct,currency,amount,balance,timestamp, preceded by a header line.
+     */
+    CSV("text/csv") {
+        @Override
+        String header() {
+            return "record,acct,currency,amount,balance,timestamp\n";
+        }
+
+        @Override
+        String format(ExportRecord record) {
+            return record.record + ',' + record.acct + ',' + record.currency + ','
+                    + (record.amount != null ? record.amount : "") + ','
+                    + (record.balance != null ? record.balance : "") + ',' + record.timestamp + '\n';
+        }
+    },
+    /**
+     * Lines of JSON objects with the fields of {@link ExportRecord}.
+     */
+    NDJSON(ImportService.NDJSON) {
+        @Override
+        String header() {
+            return "";
+        }
+
+        @Override
+        String format(ExportRecord record) {
+            try {
+                return MAPPER.writeValueAsString(record) + '\n';
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private final String mediaType;
+
+    ExportFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the media type of the export
+     */
+    String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return the lines preceding the records
+     */
+    abstract String header();
+
+    /**
+     * @return the line of a record
+     */
+    abstract String format(ExportRecord record);
+
+    /**
+     * @param format name of the format in any case, or null for the default NDJSON format
+     * @return the format, or null if it is unknown
+     */
+    static ExportFormat of(String format) {
+        if(format == null) {
+            return NDJSON;
+        }
+        switch(format.toLowerCase(Locale.ROOT)) {
+            case "csv":
+                return CSV;
+            case "ndjson":
+            case "jsonl":
+                return NDJSON;
+            default:
+                return null;
+        }
+    }
+}
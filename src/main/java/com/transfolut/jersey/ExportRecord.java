@@ -0,0 +1,32 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON bean for one record of a ledger export.
+ * Every account is exported as an account record, followed by one transaction record per transaction of its history
+ * and one balance record per balance it holds.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+class ExportRecord {
+    static final String ACCOUNT = "account";
+    static final String TRANSACTION = "transaction";
+    static final String BALANCE = "balance";
+
+    @JsonProperty
+    String record;
+    @JsonProperty
+    long acct;
+    // Primary currency of account records
+    @JsonProperty
+    String currency;
+    // Signed amount of transaction records
+    @JsonProperty
+    String amount;
+    // Balance left behind by transaction records, or current balance of balance records
+    @JsonProperty
+    String balance;
+    @JsonProperty
+    long timestamp;
+}
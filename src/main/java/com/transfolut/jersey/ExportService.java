@@ -0,0 +1,55 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service to export all accounts of this node along with their histories and balances.
+ */
+@Path(TransfolutPaths.EXPORT_URI)
+public class ExportService {
+    private static final String GZIP = "gzip";
+
+    @Inject
+    private LedgerExporter ledgerExporter;
+
+    /**
+     * Streams all accounts as NDJSON or CSV records, gzip compressed if the client accepts it.
+     *
+     * curl --compressed http://localhost:8080/transfolut/export?format=csv
+     */
+    @GET
+    @Produces({ImportService.NDJSON, "text/csv"})
+    public Response export(@QueryParam("format") String format,
+                           @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        if(exportFormat == null) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_EXPORT_FORMAT, format));
+        }
+
+        if(acceptEncoding != null && acceptEncoding.contains(GZIP)) {
+            StreamingOutput export = output -> {
+                GZIPOutputStream compressedOutput = new GZIPOutputStream(output, true);
+                ledgerExporter.export(exportFormat, compressedOutput);
+                compressedOutput.finish();
+            };
+            return Response.ok(export, exportFormat.getMediaType())
+                    .header(HttpHeaders.CONTENT_ENCODING, GZIP)
+                    .build();
+        }
+        StreamingOutput export = output -> ledgerExporter.export(exportFormat, output);
+        return Response.ok(export, exportFormat.getMediaType()).build();
+    }
+}
@@ -0,0 +1,561 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.VelocityLimitException;
+import com.transfolut.cluster.ClusterNode;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.ContentType;
+import org.glassfish.grizzly.http.util.Header;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.IllegalCurrencyException;
+import org.joda.money.Money;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Grizzly handler in front of the Jersey container, serving plain deposits, withdrawals and transfers itself
+ * with a hand-rolled parser of their flat JSON entities and responses assembled from pre-encoded messages,
+ * so that the hottest writes skip resource matching, entity providers and response building.
+ * It only serves the requests it answers exactly as the resources would: requests of the default tenant which carry
+ * no trace id, whose entity is a flat object of plain ASCII strings holding valid values, and whose accounts belong
+ * to this node. Every other request, including every request failing validation, is handed to the Jersey container,
+ * which reads the entity again as the fast path leaves it in the input buffer.
+ * Requests served by the fast path are not sampled for tracing.
+ */
+final class FastPathHandler extends HttpHandler {
+
+    // Largest entity served, larger ones are handed to Jersey
+    private static final int MAX_ENTITY_BYTES = 512;
+    // Longest account number served, so that it fits the int the resources parse account numbers into
+    private static final int MAX_ACCT_DIGITS = 9;
+    // Longest amount served, so that its unscaled value fits a long
+    private static final int MAX_AMOUNT_DIGITS = 18;
+    private static final ContentType JSON = ContentType.newContentType(MediaType.APPLICATION_JSON).prepare();
+    // Too Many Requests, with the empty reason phrase Jersey sends for it
+    private static final HttpStatus TOO_MANY_REQUESTS = HttpStatus.newHttpStatus(429, "");
+
+    private static final String[] OPERATIONS = {TransfolutPaths.DEPOSIT_URI, TransfolutPaths.WITHDRAW_URI,
+            TransfolutPaths.TRANSFER_URI};
+    // Fields of deposit and withdrawal entities, in the order of their indexes below
+    private static final byte[][] DEPOSIT_FIELDS = names("acct", "currency", "amount");
+    private static final int ACCT = 0;
+    private static final int CURRENCY = 1;
+    private static final int AMOUNT = 2;
+    // Fields of transfer entities, in the order of their indexes below
+    private static final byte[][] TRANSFER_FIELDS = names("fromAcct", "toAcct", "currency", "amount", "toCurrency");
+    private static final int FROM_ACCT = 0;
+    private static final int TO_ACCT = 1;
+    private static final int TRANSFER_CURRENCY = 2;
+    private static final int TRANSFER_AMOUNT = 3;
+    private static final int TO_CURRENCY = 4;
+
+    private static final MessageTemplate DEPOSIT_SUCCESS = new MessageTemplate(TransfolutMessages.DEPOSIT_SUCCESS);
+    private static final MessageTemplate WITHDRAW_SUCCESS = new MessageTemplate(TransfolutMessages.WITHDRAW_SUCCESS);
+    private static final MessageTemplate TRANSFER_SUCCESS = new MessageTemplate(TransfolutMessages.TRANSFER_SUCCESS);
+    private static final MessageTemplate FX_TRANSFER_SUCCESS = new MessageTemplate(TransfolutMessages.FX_TRANSFER_SUCCESS);
+
+    // Buffers of the worker threads, which serve one request at a time
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final HttpHandler jersey;
+    private final Tenant tenant;
+    private final LongAdder served = new LongAdder();
+    private final LongAdder handedOver = new LongAdder();
+
+    /**
+     * @param jersey container serving every request the fast path does not
+     * @param tenant default tenant, whose bank service and cluster node the fast path serves requests with
+     */
+    FastPathHandler(HttpHandler jersey, Tenant tenant) {
+        this.jersey = jersey;
+        this.tenant = tenant;
+    }
+
+    @Override
+    public void start() {
+        jersey.start();
+    }
+
+    @Override
+    public void destroy() {
+        jersey.destroy();
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+        if(serve(request, response)) {
+            served.increment();
+        } else {
+            handedOver.increment();
+            jersey.service(request, response);
+        }
+    }
+
+    /**
+     * @return the number of requests served by the fast path
+     */
+    long getServed() {
+        return served.sum();
+    }
+
+    /**
+     * @return the number of requests handed to the Jersey container
+     */
+    long getHandedOver() {
+        return handedOver.sum();
+    }
+
+    /**
+     * Helper method to serve a request if it is a plain deposit, withdrawal or transfer.
+     * @return false if nothing was written and the request must be handed to Jersey
+     */
+    private boolean serve(Request request, Response response) throws IOException {
+        if(request.getMethod() != Method.POST || request.getHeader(TransfolutPaths.TENANT_HEADER) != null
+                || request.getHeader(TransfolutPaths.TRACE_HEADER) != null
+                || !isJson(request.getContentType()) || !acceptsJson(request.getHeader(Header.Accept))) {
+            return false;
+        }
+        String uri = request.getRequestURI();
+        int contextLength = request.getContextPath().length();
+        String operation = null;
+        for(String operationUri : OPERATIONS) {
+            if(uri.length() == contextLength + operationUri.length() && uri.startsWith(operationUri, contextLength)) {
+                operation = operationUri;
+            }
+        }
+        int length = request.getContentLength();
+        if(operation == null || length <= 0 || length > MAX_ENTITY_BYTES) {
+            return false;
+        }
+        // The buffer is a view of the input buffer, so reading it leaves the entity in place for Jersey
+        Buffer entity = request.getPostBody(length);
+        if(entity.remaining() != length) {
+            return false;
+        }
+        Scratch scratch = SCRATCH.get();
+        entity.get(scratch.entity, 0, length);
+        boolean transfer = TransfolutPaths.TRANSFER_URI.equals(operation);
+        if(!scratch.parse(length, transfer ? TRANSFER_FIELDS : DEPOSIT_FIELDS) || !tenant.tryEnter()) {
+            return false;
+        }
+        try {
+            String forwardedBy = request.getHeader(TransfolutPaths.FORWARDED_BY_HEADER);
+            return transfer ? transfer(scratch, forwardedBy, response)
+                    : depositOrWithdraw(scratch, TransfolutPaths.DEPOSIT_URI.equals(operation), forwardedBy, response);
+        } finally {
+            tenant.exit();
+        }
+    }
+
+    private boolean depositOrWithdraw(Scratch scratch, boolean deposit, String forwardedBy, Response response)
+            throws IOException {
+        long acctNumber = scratch.digits(ACCT, MAX_ACCT_DIGITS);
+        CurrencyUnit currency = scratch.currency(CURRENCY);
+        BigDecimal amount = scratch.amount(AMOUNT);
+        ClusterNode clusterNode = tenant.getClusterNode();
+        if(acctNumber < 0 || currency == null || amount == null || clusterNode.isRemote(acctNumber, forwardedBy)) {
+            return false;
+        }
+        Money money;
+        try {
+            money = Money.of(currency, amount);
+        } catch (ArithmeticException e) {
+            // Amounts with more decimals than their currency fail in the resources too, which answer them
+            return false;
+        }
+
+        BankService bankService = tenant.getBankService();
+        try {
+            if(deposit) {
+                bankService.deposit(acctNumber, money);
+            } else {
+                bankService.withdraw(acctNumber, money);
+            }
+        } catch (VelocityLimitException e) {
+            write(response, TOO_MANY_REQUESTS, e.getMessage());
+            return true;
+        } catch (IllegalArgumentException e) {
+            write(response, HttpStatus.BAD_REQUEST_400, e.getMessage());
+            return true;
+        }
+        MessageTemplate success = deposit ? DEPOSIT_SUCCESS : WITHDRAW_SUCCESS;
+        write(response, HttpStatus.OK_200, scratch, success.encode(scratch, money.toString(), scratch.text(ACCT)));
+        return true;
+    }
+
+    private boolean transfer(Scratch scratch, String forwardedBy, Response response) throws IOException {
+        long fromAcctNumber = scratch.digits(FROM_ACCT, MAX_ACCT_DIGITS);
+        long toAcctNumber = scratch.digits(TO_ACCT, MAX_ACCT_DIGITS);
+        CurrencyUnit currency = scratch.currency(TRANSFER_CURRENCY);
+        CurrencyUnit creditCurrency = scratch.isPresent(TO_CURRENCY) ? scratch.currency(TO_CURRENCY) : currency;
+        BigDecimal amount = scratch.amount(TRANSFER_AMOUNT);
+        ClusterNode clusterNode = tenant.getClusterNode();
+        // Transfers between the same accounts are rejected by the resource, and credits to other nodes sent by it
+        if(fromAcctNumber < 0 || toAcctNumber < 0 || currency == null || creditCurrency == null || amount == null
+                || scratch.isSameValue(FROM_ACCT, TO_ACCT) || clusterNode.isRemote(fromAcctNumber, forwardedBy)
+                || !clusterNode.isLocal(toAcctNumber)) {
+            return false;
+        }
+        Money money;
+        try {
+            money = Money.of(currency, amount);
+        } catch (ArithmeticException e) {
+            return false;
+        }
+
+        Money creditAmount;
+        try {
+            creditAmount = tenant.getBankService().transfer(fromAcctNumber, toAcctNumber, money, creditCurrency);
+        } catch (VelocityLimitException e) {
+            write(response, TOO_MANY_REQUESTS, e.getMessage());
+            return true;
+        } catch (IllegalArgumentException e) {
+            write(response, HttpStatus.BAD_REQUEST_400, e.getMessage());
+            return true;
+        }
+        int length = money.equals(creditAmount)
+                ? TRANSFER_SUCCESS.encode(scratch, money.toString(), scratch.text(FROM_ACCT), scratch.text(TO_ACCT))
+                : FX_TRANSFER_SUCCESS.encode(scratch, money.toString(), creditAmount.toString(),
+                        scratch.text(FROM_ACCT), scratch.text(TO_ACCT));
+        write(response, HttpStatus.OK_200, scratch, length);
+        return true;
+    }
+
+    private static void write(Response response, HttpStatus status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status);
+        response.setContentType(JSON);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static void write(Response response, HttpStatus status, Scratch scratch, int length) throws IOException {
+        response.setStatus(status);
+        response.setContentType(JSON);
+        response.setContentLength(length);
+        response.getOutputStream().write(scratch.message, 0, length);
+    }
+
+    /**
+     * Helper method to check that an entity is JSON encoded in UTF-8, as the resources consume.
+     */
+    static boolean isJson(String contentType) {
+        if(contentType == null) {
+            return false;
+        }
+        String[] parameters = contentType.split(";");
+        if(!MediaType.APPLICATION_JSON.equalsIgnoreCase(parameters[0].trim())) {
+            return false;
+        }
+        for(int i = 1; i < parameters.length; i++) {
+            if(!"charset=utf-8".equalsIgnoreCase(parameters[i].trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to check that a client accepts JSON responses, as the resources produce.
+     * Headers which cannot be read are left to Jersey.
+     */
+    static boolean acceptsJson(String accept) {
+        if(accept == null || accept.trim().isEmpty()) {
+            return true;
+        }
+        for(String range : accept.split(",")) {
+            String[] parameters = range.split(";");
+            String mediaRange = parameters[0].trim();
+            if(!"*/*".equals(mediaRange) && !"application/*".equalsIgnoreCase(mediaRange)
+                    && !MediaType.APPLICATION_JSON.equalsIgnoreCase(mediaRange)) {
+                continue;
+            }
+            double quality = 1;
+            for(int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if(parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            if(quality > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[][] names(String... names) {
+        byte[][] encoded = new byte[names.length][];
+        for(int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return encoded;
+    }
+
+    /**
+     * Entity and message buffers of a worker thread, holding the position of every field of the parsed entity.
+     */
+    static final class Scratch {
+        private static final int ABSENT = -1;
+        private static final int NULL = -2;
+        private static final byte[] NULL_LITERAL = "null".getBytes(StandardCharsets.US_ASCII);
+
+        private final byte[] entity = new byte[MAX_ENTITY_BYTES];
+        // Start and end of the value of every field in the entity, starts are negative for absent and null fields
+        private final int[] starts = new int[TRANSFER_FIELDS.length];
+        private final int[] ends = new int[TRANSFER_FIELDS.length];
+        private byte[] message = new byte[256];
+
+        /**
+         * Parses an entity which must be a flat JSON object of known fields, each holding null or a string of printable
+         * ASCII characters without escapes, as anything else is either rare or rejected by the resources.
+         * @param length of the entity
+         * @param fields known fields
+         * @return false if the entity is not such an object, or names a field twice
+         */
+        boolean parse(int length, byte[][] fields) {
+            Arrays.fill(starts, ABSENT);
+            int i = skipWhitespace(0, length);
+            if(i >= length || entity[i] != '{') {
+                return false;
+            }
+            i = skipWhitespace(i + 1, length);
+            if(i < length && entity[i] == '}') {
+                return skipWhitespace(i + 1, length) == length;
+            }
+            while(true) {
+                int nameStart = i + 1;
+                int nameEnd = endOfString(i, length);
+                if(nameEnd < 0) {
+                    return false;
+                }
+                int field = find(fields, nameStart, nameEnd);
+                if(field < 0 || starts[field] != ABSENT) {
+                    return false;
+                }
+                i = skipWhitespace(nameEnd + 1, length);
+                if(i >= length || entity[i] != ':') {
+                    return false;
+                }
+                i = skipWhitespace(i + 1, length);
+                int valueEnd;
+                if(isNull(i, length)) {
+                    starts[field] = NULL;
+                    valueEnd = i + NULL_LITERAL.length - 1;
+                } else {
+                    valueEnd = endOfString(i, length);
+                    if(valueEnd < 0) {
+                        return false;
+                    }
+                    starts[field] = i + 1;
+                    ends[field] = valueEnd;
+                }
+                i = skipWhitespace(valueEnd + 1, length);
+                if(i >= length) {
+                    return false;
+                }
+                if(entity[i] == '}') {
+                    return skipWhitespace(i + 1, length) == length;
+                }
+                if(entity[i] != ',') {
+                    return false;
+                }
+                i = skipWhitespace(i + 1, length);
+            }
+        }
+
+        boolean isPresent(int field) {
+            return starts[field] >= 0;
+        }
+
+        /**
+         * @return the value of a field made of up to maxDigits decimal digits, or -1 if it is not one
+         */
+        long digits(int field, int maxDigits) {
+            int start = starts[field];
+            if(start < 0 || ends[field] == start || ends[field] - start > maxDigits) {
+                return -1;
+            }
+            long value = 0;
+            for(int i = start; i < ends[field]; i++) {
+                if(entity[i] < '0' || entity[i] > '9') {
+                    return -1;
+                }
+                value = value * 10 + entity[i] - '0';
+            }
+            return value;
+        }
+
+        /**
+         * @return the value of a field holding a plain decimal number, with the scale of its digits after the
+         * decimal point as parsed by {@link BigDecimal#BigDecimal(String)}, or null if it is not one
+         */
+        BigDecimal amount(int field) {
+            int start = starts[field];
+            if(start < 0) {
+                return null;
+            }
+            long unscaled = 0;
+            int digits = 0;
+            int point = -1;
+            for(int i = start; i < ends[field]; i++) {
+                if(entity[i] == '.' && point < 0 && digits > 0) {
+                    point = i;
+                } else if(entity[i] >= '0' && entity[i] <= '9' && ++digits <= MAX_AMOUNT_DIGITS) {
+                    unscaled = unscaled * 10 + entity[i] - '0';
+                } else {
+                    return null;
+                }
+            }
+            if(digits == 0 || point == ends[field] - 1) {
+                return null;
+            }
+            return BigDecimal.valueOf(unscaled, point < 0 ? 0 : ends[field] - point - 1);
+        }
+
+        /**
+         * @return the currency named by a field, or null if it names none
+         */
+        CurrencyUnit currency(int field) {
+            if(starts[field] < 0) {
+                return null;
+            }
+            try {
+                return CurrencyUnit.of(text(field));
+            } catch (IllegalCurrencyException e) {
+                return null;
+            }
+        }
+
+        String text(int field) {
+            return new String(entity, starts[field], ends[field] - starts[field], StandardCharsets.US_ASCII);
+        }
+
+        boolean isSameValue(int field, int otherField) {
+            int length = ends[field] - starts[field];
+            if(length != ends[otherField] - starts[otherField]) {
+                return false;
+            }
+            for(int i = 0; i < length; i++) {
+                if(entity[starts[field] + i] != entity[starts[otherField] + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isNull(int i, int length) {
+            if(length - i < NULL_LITERAL.length) {
+                return false;
+            }
+            for(int c = 0; c < NULL_LITERAL.length; c++) {
+                if(entity[i + c] != NULL_LITERAL[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int skipWhitespace(int i, int length) {
+            while(i < length && (entity[i] == ' ' || entity[i] == '\t' || entity[i] == '\n' || entity[i] == '\r')) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * @return the position of the closing quote of the string opening at a position,
+         * or -1 if there is no plain string there
+         */
+        private int endOfString(int i, int length) {
+            if(i >= length || entity[i] != '"') {
+                return -1;
+            }
+            for(i++; i < length; i++) {
+                if(entity[i] == '"') {
+                    return i;
+                }
+                // Bytes of other characters than printable ASCII are negative
+                if(entity[i] < ' ' || entity[i] == '\\' || entity[i] == 127) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private int find(byte[][] fields, int start, int end) {
+            for(int field = 0; field < fields.length; field++) {
+                if(fields[field].length == end - start) {
+                    int i = 0;
+                    while(i < end - start && fields[field][i] == entity[start + i]) {
+                        i++;
+                    }
+                    if(i == end - start) {
+                        return field;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Message whose text is encoded once, so that only its ASCII arguments are encoded for every response.
+     */
+    static final class MessageTemplate {
+        private final byte[][] parts;
+
+        /**
+         * @param format of the message, whose only conversions are %s
+         */
+        MessageTemplate(String format) {
+            String[] texts = format.split("%s", -1);
+            parts = new byte[texts.length][];
+            for(int i = 0; i < texts.length; i++) {
+                parts[i] = texts[i].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Encodes the message with its arguments into the message buffer of a worker thread.
+         * @return the length of the message
+         */
+        int encode(Scratch scratch, String... args) {
+            int length = parts[0].length;
+            for(int i = 0; i < args.length; i++) {
+                length += args[i].length() + parts[i + 1].length;
+            }
+            if(scratch.message.length < length) {
+                scratch.message = new byte[length];
+            }
+            byte[] message = scratch.message;
+            int position = 0;
+            for(int i = 0; i < parts.length; i++) {
+                System.arraycopy(parts[i], 0, message, position, parts[i].length);
+                position += parts[i].length;
+                if(i < args.length) {
+                    for(int c = 0; c < args[i].length(); c++) {
+                        message[position++] = (byte) args[i].charAt(c);
+                    }
+                }
+            }
+            return length;
+        }
+    }
+}
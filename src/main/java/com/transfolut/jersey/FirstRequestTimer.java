@@ -0,0 +1,41 @@
+package com.transfolut.jersey;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Response filter recording how long after the start of the JVM the first response of the server was sent,
+ * which is the startup time clients actually see. The time is reported with the metrics of the server.
+ */
+class FirstRequestTimer implements ContainerResponseFilter {
+
+    // Uptime of the JVM in milliseconds when the first response was sent, or -1 until then
+    private volatile long firstResponseMillis = -1;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if(firstResponseMillis < 0) {
+            synchronized (this) {
+                if(firstResponseMillis < 0) {
+                    firstResponseMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the metrics of the startup, empty until the first response has been sent
+     */
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        long millis = firstResponseMillis;
+        if(millis >= 0) {
+            metrics.put("server.firstResponse.millis", millis);
+        }
+        return metrics;
+    }
+}
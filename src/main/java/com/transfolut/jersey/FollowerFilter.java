@@ -0,0 +1,46 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.JournalFollower;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Response;
+
+/**
+ * Filter of a follower node, which only serves reads and reports its replication lag with every response.
+ * It is only registered on followers, so it is not annotated as a provider to keep it out of package scanning.
+ */
+public class FollowerFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private final JournalFollower follower;
+
+    public FollowerFilter(JournalFollower follower) {
+        this.follower = follower;
+    }
+
+    /**
+     * Rejects every request which could change the accounts.
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String method = requestContext.getMethod();
+        if(!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            requestContext.abortWith(Response.status(Response.Status.METHOD_NOT_ALLOWED)
+                    .entity(TransfolutMessages.FOLLOWER_READ_ONLY)
+                    .build());
+        }
+    }
+
+    /**
+     * Adds the replication lag to the response.
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        responseContext.getHeaders().putSingle(TransfolutPaths.REPLICATION_LAG_HEADER, follower.getLagMillis());
+    }
+}
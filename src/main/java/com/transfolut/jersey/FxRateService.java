@@ -0,0 +1,80 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.FxRates;
+import org.joda.money.CurrencyUnit;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Service to load the exchange rates used by cross-currency transfers.
+ */
+@Path(TransfolutPaths.FX_RATES_URI)
+public class FxRateService {
+
+    @Inject
+    private BankService bankService;
+
+    /**
+     * Replaces all exchange rates of this node at once
+     * curl -d '{"base": "USD", "rates": {"GBP": "0.79", "EUR": "0.92"}}' -H "Content-Type: application/json" -X PUT http://localhost:8080/transfolut/fx/rates
+     */
+    @PUT
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response loadRates(FxRatesBean ratesParams) {
+        if(!BankServiceValidator.getInstance().isCurrencyValid(ratesParams.base)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_CURRENCY, ratesParams.base));
+        }
+
+        Map<CurrencyUnit, BigDecimal> rates = new HashMap<>();
+        if(ratesParams.rates != null) {
+            for(Map.Entry<String, String> rate : ratesParams.rates.entrySet()) {
+                if(!BankServiceValidator.getInstance().isCurrencyValid(rate.getKey())) {
+                    return BankServiceValidator.getInstance().getBadRequestResponse(
+                            String.format(TransfolutMessages.INVALID_CURRENCY, rate.getKey()));
+                }
+                if(!BankServiceValidator.getInstance().isFxRateValid(rate.getValue())) {
+                    return BankServiceValidator.getInstance().getBadRequestResponse(
+                            String.format(TransfolutMessages.INVALID_FX_RATE, rate.getValue(), rate.getKey()));
+                }
+                rates.put(CurrencyUnit.of(rate.getKey()), new BigDecimal(rate.getValue()));
+            }
+        }
+
+        FxRates fxRates = new FxRates(CurrencyUnit.of(ratesParams.base), rates);
+        bankService.loadFxRates(fxRates);
+        return Response.ok(String.format(TransfolutMessages.FX_RATES_LOADED, fxRates.getRates().size(), ratesParams.base),
+                MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Fetches the exchange rates of this node
+     *
+     * curl http://localhost:8080/transfolut/fx/rates
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRates() {
+        FxRates fxRates = bankService.getFxRates();
+        FxRatesBean ratesBean = new FxRatesBean();
+        ratesBean.base = fxRates.getBase().getCode();
+        ratesBean.rates = new TreeMap<>();
+        fxRates.getRates().forEach((currency, rate) -> ratesBean.rates.put(currency.getCode(), rate.toPlainString()));
+        return Response.ok(ratesBean, MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -0,0 +1,15 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * JSON bean for passing a table of exchange rates, quoted as the amount of each currency bought by one unit of the base
+ */
+class FxRatesBean {
+    @JsonProperty
+    String base;
+    @JsonProperty
+    Map<String, String> rates;
+}
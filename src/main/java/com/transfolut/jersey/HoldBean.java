@@ -0,0 +1,23 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON bean for placing or capturing a hold, and for returning an outstanding hold
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+class HoldBean {
+    @JsonProperty
+    String acct;
+    @JsonProperty
+    String currency;
+    @JsonProperty
+    String amount;
+    // Time the hold is released at in milliseconds since the epoch, absent for the default expiry
+    @JsonProperty
+    String expiresAt;
+    // Id of the hold, only returned
+    @JsonProperty
+    Long id;
+}
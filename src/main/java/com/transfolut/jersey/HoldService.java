@@ -0,0 +1,166 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.Hold;
+import com.transfolut.cluster.ClusterNode;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.apache.commons.lang3.StringUtils.isNumeric;
+
+/**
+ * Service to place authorization holds, which reserve part of a balance until they are captured or released.
+ * Holds are held by the node owning their account, and their ids are only unique within a node.
+ */
+@Path(TransfolutPaths.HOLDS_URI)
+public class HoldService {
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+    @Context
+    private UriInfo uriInfo;
+    @HeaderParam(TransfolutPaths.FORWARDED_BY_HEADER)
+    private String forwardedBy;
+
+    /**
+     * Places a hold
+     * curl -d '{"acct": "125", "currency":"USD", "amount": "500", "expiresAt": "1767225600000"}' -H "Content-Type: application/json" -X POST http://localhost:8080/transfolut/holds
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response placeHold(HoldBean holdParams) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(holdParams.acct)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+
+        if(!BankServiceValidator.getInstance().isAmountValid(holdParams.amount)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_AMOUNT, holdParams.amount));
+        }
+
+        if(!BankServiceValidator.getInstance().isCurrencyValid(holdParams.currency)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_CURRENCY, holdParams.currency));
+        }
+
+        if(holdParams.expiresAt != null && !BankServiceValidator.getInstance().isTimestampValid(holdParams.expiresAt)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_TIMESTAMP, holdParams.expiresAt));
+        }
+
+        if(clusterNode.isRemote(Integer.parseInt(holdParams.acct), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(holdParams.acct), uriInfo, Entity.json(holdParams));
+        }
+
+        try {
+            Money amount = Money.of(CurrencyUnit.of(holdParams.currency), new BigDecimal(holdParams.amount));
+            Hold hold = holdParams.expiresAt != null
+                    ? bankService.placeHold(Integer.parseInt(holdParams.acct), amount, Long.parseLong(holdParams.expiresAt))
+                    : bankService.placeHold(Integer.parseInt(holdParams.acct), amount);
+            return Response.ok(toBean(hold), MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches an outstanding hold
+     *
+     * curl http://localhost:8080/transfolut/holds/1
+     */
+    @GET
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getHold(@PathParam("id") String id) {
+        Optional<Hold> hold = isNumeric(id) ? bankService.getHold(Long.parseLong(id)) : Optional.empty();
+        if(!hold.isPresent()) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.HOLD_NOT_FOUND, id));
+        }
+        return Response.ok(toBean(hold.get()), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Captures part or all of a hold, the whole held amount if no amount is given
+     *
+     * curl -d '{"currency":"USD", "amount": "450"}' -H "Content-Type: application/json" -X POST http://localhost:8080/transfolut/holds/1/capture
+     */
+    @POST
+    @Path("{id}/capture")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response captureHold(@PathParam("id") String id, HoldBean captureParams) {
+        if(!isNumeric(id)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.HOLD_NOT_FOUND, id));
+        }
+
+        boolean partial = captureParams != null && captureParams.amount != null;
+        if(partial && !BankServiceValidator.getInstance().isAmountValid(captureParams.amount)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_AMOUNT, captureParams.amount));
+        }
+
+        if(partial && !BankServiceValidator.getInstance().isCurrencyValid(captureParams.currency)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_CURRENCY, captureParams.currency));
+        }
+
+        try {
+            Money amount = partial
+                    ? Money.of(CurrencyUnit.of(captureParams.currency), new BigDecimal(captureParams.amount)) : null;
+            Money captured = bankService.captureHold(Long.parseLong(id), amount);
+            return Response.ok(String.format(TransfolutMessages.HOLD_CAPTURED, captured.toString(), id),
+                    MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Releases a hold
+     *
+     * curl -X DELETE http://localhost:8080/transfolut/holds/1
+     */
+    @DELETE
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response releaseHold(@PathParam("id") String id) {
+        if(!isNumeric(id) || !bankService.releaseHold(Long.parseLong(id))) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.HOLD_NOT_FOUND, id));
+        }
+        return Response.ok(String.format(TransfolutMessages.HOLD_RELEASED, id), MediaType.APPLICATION_JSON).build();
+    }
+
+    private static HoldBean toBean(Hold hold) {
+        HoldBean bean = new HoldBean();
+        bean.id = hold.getId();
+        bean.acct = String.valueOf(hold.getAcctNumber());
+        bean.currency = hold.getAmount().getCurrencyUnit().getCode();
+        bean.amount = hold.getAmount().getAmount().toPlainString();
+        bean.expiresAt = String.valueOf(hold.getExpiryTime());
+        return bean;
+    }
+}
@@ -0,0 +1,98 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutMessages;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Formats of the files accepted by a bulk import, one operation per line.
+ */
+enum ImportFormat {
+    /**
+     * Comma separated lines of deposit,acct,currency,amount, withdraw,acct,currency,amount
+     * or transfer,fromAcct,toAcct,currency,amount, optionally preceded by a header line starting with operation.
+     */
+    CSV {
+        @Override
+        ImportOperation parse(String line) {
+            String[] columns = line.split(",", -1);
+            ImportOperation operation = new ImportOperation();
+            operation.operation = columns[0].trim();
+            if(ImportOperation.TRANSFER.equals(operation.operation) && columns.length == 5) {
+                operation.fromAcct = columns[1].trim();
+                operation.toAcct = columns[2].trim();
+                operation.currency = columns[3].trim();
+                operation.amount = columns[4].trim();
+            } else if(!ImportOperation.TRANSFER.equals(operation.operation) && columns.length == 4) {
+                operation.acct = columns[1].trim();
+                operation.currency = columns[2].trim();
+                operation.amount = columns[3].trim();
+            } else {
+                throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_IMPORT_LINE, line));
+            }
+            return operation;
+        }
+
+        @Override
+        boolean isHeader(String line) {
+            return line.startsWith("operation,");
+        }
+    },
+    /**
+     * Lines of JSON objects with the fields of {@link ImportOperation}.
+     */
+    NDJSON {
+        @Override
+        ImportOperation parse(String line) {
+            try {
+                return MAPPER.readValue(line, ImportOperation.class);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(String.format(TransfolutMessages.INVALID_IMPORT_LINE, line));
+            }
+        }
+
+        @Override
+        boolean isHeader(String line) {
+            return false;
+        }
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Parses one line of a file.
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    abstract ImportOperation parse(String line);
+
+    /**
+     * @return true if the line only names the columns of the file
+     */
+    abstract boolean isHeader(String line);
+
+    /**
+     * @param format name of the format in any case, or null to derive it from the file name
+     * @param fileName name of the uploaded file, may be null
+     * @return the format, or null if it is unknown
+     */
+    static ImportFormat of(String format, String fileName) {
+        String name = format;
+        if(name == null && fileName != null && fileName.lastIndexOf('.') >= 0) {
+            name = fileName.substring(fileName.lastIndexOf('.') + 1);
+        }
+        if(name == null) {
+            return null;
+        }
+        switch(name.toLowerCase(Locale.ROOT)) {
+            case "csv":
+                return CSV;
+            case "ndjson":
+            case "jsonl":
+                return NDJSON;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON bean for one operation of a bulk import, either a deposit, a withdrawal or a transfer.
+ * Deposits and withdrawals name their account in acct, transfers in fromAcct and toAcct.
+ */
+class ImportOperation {
+    static final String DEPOSIT = "deposit";
+    static final String WITHDRAW = "withdraw";
+    static final String TRANSFER = "transfer";
+
+    @JsonProperty
+    String operation;
+    @JsonProperty
+    String acct;
+    @JsonProperty
+    String fromAcct;
+    @JsonProperty
+    String toAcct;
+    @JsonProperty
+    String currency;
+    @JsonProperty
+    String amount;
+}
@@ -0,0 +1,27 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON bean for the result of one line of a bulk import
+ */
+class ImportResult {
+    static final String APPLIED = "applied";
+    static final String REJECTED = "rejected";
+
+    @JsonProperty
+    long line;
+    @JsonProperty
+    String status;
+    @JsonProperty
+    String message;
+
+    ImportResult() {
+    }
+
+    ImportResult(long line, String status, String message) {
+        this.line = line;
+        this.status = status;
+        this.message = message;
+    }
+}
@@ -0,0 +1,65 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
+import org.glassfish.jersey.media.multipart.FormDataParam;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Service to apply files of deposits, withdrawals and transfers in bulk.
+ */
+@Path(TransfolutPaths.IMPORT_URI)
+public class ImportService {
+    // Media type of the report, one JSON object per line
+    static final String NDJSON = "application/x-ndjson";
+
+    @Inject
+    private BulkImporter bulkImporter;
+
+    /**
+     * Applies the operations of an uploaded CSV or NDJSON file, streaming back the result of every line.
+     * The format is taken from the format parameter, or else from the extension of the file name.
+     *
+     * curl -F "file=@operations.csv" http://localhost:8080/transfolut/import
+     */
+    @POST
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(NDJSON)
+    public Response importOperations(@FormDataParam("file") InputStream file,
+                                     @FormDataParam("file") FormDataContentDisposition fileDisposition,
+                                     @QueryParam("format") String format) {
+        if(file == null) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.IMPORT_FILE_MISSING);
+        }
+
+        ImportFormat importFormat = ImportFormat.of(format, fileDisposition != null ? fileDisposition.getFileName() : null);
+        if(importFormat == null) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_IMPORT_FORMAT, format));
+        }
+
+        StreamingOutput report = output -> {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(file, StandardCharsets.UTF_8));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            bulkImporter.importLines(lines, importFormat, writer);
+        };
+        return Response.ok(report, NDJSON).build();
+    }
+}
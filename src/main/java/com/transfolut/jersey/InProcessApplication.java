@@ -0,0 +1,75 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Application never started by a container, to which requests are applied in process on the calling thread.
+ * Requests go through the same routing, JSON mapping, resources and ledger code as requests sent to a server.
+ */
+final class InProcessApplication {
+
+    private static final URI BASE_URI = URI.create(TransfolutPaths.BASE_URI + "/");
+
+    private final ApplicationHandler application;
+
+    /**
+     * @param resourceConfig of the application, which is shut down by {@link #close()}
+     */
+    InProcessApplication(ResourceConfig resourceConfig) {
+        this.application = new ApplicationHandler(resourceConfig);
+    }
+
+    /**
+     * Applies a request to the application on the calling thread.
+     * @param json entity of the request, or null if it has none
+     * @param expectedStatus status the request should be answered with
+     * @return the response body
+     */
+    String request(String method, String path, String json, int expectedStatus) {
+        ContainerRequest request = new ContainerRequest(BASE_URI, BASE_URI.resolve(path.substring(1)), method, null,
+                new MapPropertiesDelegate());
+        request.getHeaders().putSingle(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        if(json != null) {
+            request.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            request.setEntityStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            ContainerResponse response = application.apply(request, body).get();
+            String entity = new String(body.toByteArray(), StandardCharsets.UTF_8);
+            if(response.getStatus() != expectedStatus) {
+                throw new IllegalStateException(String.format("Request %s %s failed with status %s: %s",
+                        method, path, response.getStatus(), entity));
+            }
+            return entity;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stops the services of the application, as no container does.
+     */
+    void close() {
+        ServiceLocator serviceLocator = application.getServiceLocator();
+        serviceLocator.getService(TenantRegistry.class).close();
+        serviceLocator.shutdown();
+    }
+}
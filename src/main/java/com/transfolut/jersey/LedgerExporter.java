@@ -0,0 +1,229 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.LedgerListener;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports all accounts of a {@link BankService}, with their histories and balances, as a stream of records.
+ * The account numbers are listed once in order and split into ranges of as many accounts, which are read in parallel,
+ * each into a small bounded queue of chunks, while the stream is written range after range in account number order.
+ * A range which gets ahead of the stream waits for it once its queue is full, so beyond the listing of the account
+ * numbers an export runs in constant memory whatever the number of accounts.
+ */
+class LedgerExporter {
+
+    private static final int DEFAULT_RANGES = 64;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_RANGE = 4;
+    // Marks the end of the chunks of a range
+    private static final byte[] END_OF_RANGE = new byte[0];
+
+    private final BankService bankService;
+    private final int ranges = Integer.getInteger(TransfolutProperties.EXPORT_RANGES, DEFAULT_RANGES);
+    private final ExecutorService readers = Executors.newFixedThreadPool(
+            Integer.getInteger(TransfolutProperties.EXPORT_THREADS, Runtime.getRuntime().availableProcessors()),
+            reader -> {
+                Thread thread = new Thread(reader, "transfolut-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    LedgerExporter(BankService bankService) {
+        this.bankService = bankService;
+    }
+
+    /**
+     * Writes all accounts to a stream.
+     * @param format of the records
+     * @param output to write the records to, which is not closed
+     */
+    void export(ExportFormat format, OutputStream output) throws IOException {
+        output.write(format.header().getBytes(StandardCharsets.UTF_8));
+
+        long[] accountNumbers = bankService.getSortedAccountNumbers();
+        List<BlockingQueue<byte[]>> chunks = new ArrayList<>(ranges);
+        List<Future<?>> rangeReaders = new ArrayList<>(ranges);
+        for(int range = 0; range < ranges; range++) {
+            int fromIndex = (int) ((long) accountNumbers.length * range / ranges);
+            int toIndex = (int) ((long) accountNumbers.length * (range + 1) / ranges);
+            BlockingQueue<byte[]> rangeChunks = new ArrayBlockingQueue<>(CHUNKS_PER_RANGE);
+            chunks.add(rangeChunks);
+            rangeReaders.add(readers.submit(() -> readRange(accountNumbers, fromIndex, toIndex, format, rangeChunks)));
+        }
+
+        try {
+            for(int range = 0; range < ranges; range++) {
+                byte[] chunk;
+                while((chunk = chunks.get(range).take()) != END_OF_RANGE) {
+                    output.write(chunk);
+                }
+                rangeReaders.get(range).get();
+                output.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Stops the readers of the remaining ranges if the stream failed, e.g. because the client disconnected
+            rangeReaders.forEach(rangeReader -> rangeReader.cancel(true));
+        }
+    }
+
+    /**
+     * Stops the readers, exports still running fail.
+     */
+    void close() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * Helper method run by a reader to write the records of a range into chunks.
+     * The end of the range is always marked, so that the stream never waits for a reader which failed.
+     */
+    private void readRange(long[] accountNumbers, int fromIndex, int toIndex, ExportFormat format,
+                           BlockingQueue<byte[]> chunks) {
+        RangeWriter rangeWriter = new RangeWriter(format, chunks);
+        try {
+            bankService.replayAccounts(accountNumbers, fromIndex, toIndex, rangeWriter);
+            rangeWriter.finish();
+        } finally {
+            try {
+                chunks.put(END_OF_RANGE);
+            } catch (InterruptedException e) {
+                // The export has been cancelled, nobody waits for the range anymore
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Listener writing the replayed histories of a range as records, followed by the balances of every account
+     * as they were left by its last transaction of each currency.
+     */
+    private static final class RangeWriter implements LedgerListener {
+        private final ExportFormat format;
+        private final BlockingQueue<byte[]> chunks;
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_SIZE);
+        private final Writer writer = new OutputStreamWriter(chunk, StandardCharsets.UTF_8);
+        private final Map<CurrencyUnit, ExportRecord> balances = new LinkedHashMap<>();
+        private CurrencyUnit primaryCurrency;
+
+        private RangeWriter(ExportFormat format, BlockingQueue<byte[]> chunks) {
+            this.format = format;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+            writeBalances();
+            this.primaryCurrency = primaryCurrency;
+            ExportRecord account = new ExportRecord();
+            account.record = ExportRecord.ACCOUNT;
+            account.acct = bankAcctNumber;
+            account.currency = primaryCurrency.getCode();
+            account.timestamp = timestamp;
+            write(account);
+            balances.put(primaryCurrency, balanceRecord(bankAcctNumber, Money.zero(primaryCurrency), timestamp));
+        }
+
+        @Override
+        public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter, long timestamp,
+                                       long sequence) {
+            ExportRecord record = new ExportRecord();
+            record.record = ExportRecord.TRANSACTION;
+            record.acct = bankAcctNumber;
+            record.currency = transaction.getCurrencyUnit().getCode();
+            record.amount = transaction.getAmount().toPlainString();
+            record.balance = balanceAfter.toPlainString();
+            record.timestamp = timestamp;
+            write(record);
+            balances.put(transaction.getCurrencyUnit(), balanceRecord(bankAcctNumber,
+                    Money.of(transaction.getCurrencyUnit(), balanceAfter), timestamp));
+        }
+
+        /**
+         * Writes the balances of the last account and hands over the last chunk.
+         */
+        void finish() {
+            writeBalances();
+            handOver();
+        }
+
+        /**
+         * Helper method to write the balances of the current account, leaving out the zero balances
+         * of other currencies than the primary one just like the account itself.
+         */
+        private void writeBalances() {
+            balances.forEach((currency, balance) -> {
+                if(currency.equals(primaryCurrency) || new BigDecimal(balance.balance).signum() != 0) {
+                    write(balance);
+                }
+            });
+            balances.clear();
+        }
+
+        private void write(ExportRecord record) {
+            try {
+                writer.write(format.format(record));
+                if(chunk.size() >= CHUNK_SIZE) {
+                    handOver();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Helper method to hand the current chunk over to the stream, waiting for room in the queue.
+         */
+        private void handOver() {
+            try {
+                writer.flush();
+                if(chunk.size() > 0) {
+                    chunks.put(chunk.toByteArray());
+                    chunk.reset();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static ExportRecord balanceRecord(long bankAcctNumber, Money balance, long timestamp) {
+            ExportRecord record = new ExportRecord();
+            record.record = ExportRecord.BALANCE;
+            record.acct = bankAcctNumber;
+            record.currency = balance.getCurrencyUnit().getCode();
+            record.balance = balance.getAmount().toPlainString();
+            record.timestamp = timestamp;
+            return record;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Service to expose the operational metrics of the bank.
+ */
+@Path(TransfolutPaths.METRICS_URI)
+public class MetricsService {
+
+    @Inject
+    private BankService bankService;
+    @Inject
+    private BalanceEventHub eventHub;
+    @Inject
+    private BulkImporter bulkImporter;
+    @Inject
+    private ClusterNode clusterNode;
+    @Inject
+    private FirstRequestTimer firstRequestTimer;
+
+    /**
+     * Fetches all metrics
+     *
+     * curl http://localhost:8080/transfolut/metrics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        Map<String, Long> metrics = bankService.getMetrics();
+        metrics.putAll(eventHub.getMetrics());
+        metrics.putAll(bulkImporter.getMetrics());
+        metrics.putAll(clusterNode.getMetrics());
+        metrics.putAll(firstRequestTimer.getMetrics());
+        return Response.ok(metrics, MediaType.APPLICATION_JSON).build();
+    }
+}
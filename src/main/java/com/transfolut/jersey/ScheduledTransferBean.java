@@ -0,0 +1,34 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON bean for scheduling a transfer, and for returning the state of a scheduled transfer
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+class ScheduledTransferBean {
+    @JsonProperty
+    String fromAcct;
+    @JsonProperty
+    String toAcct;
+    @JsonProperty
+    String currency;
+    @JsonProperty
+    String amount;
+    // Time of the first execution in milliseconds since the epoch
+    @JsonProperty
+    String executeAt;
+    // Time between two executions of a standing transfer in milliseconds, absent for a transfer executed once
+    @JsonProperty
+    String intervalMillis;
+    // State of the scheduled transfer, only returned
+    @JsonProperty
+    Long id;
+    @JsonProperty
+    Long executions;
+    @JsonProperty
+    Long failures;
+    @JsonProperty
+    String lastError;
+}
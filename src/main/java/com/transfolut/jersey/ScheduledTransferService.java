@@ -0,0 +1,149 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.ScheduledTransfer;
+import com.transfolut.cluster.ClusterNode;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.apache.commons.lang3.StringUtils.isNumeric;
+
+/**
+ * Service to schedule transfers executed at a future time, once or at a fixed interval.
+ * Scheduled transfers are held by the node owning the sending account, and their ids are only unique within a node.
+ */
+@Path(TransfolutPaths.SCHEDULED_TRANSFERS_URI)
+public class ScheduledTransferService {
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+    @Context
+    private UriInfo uriInfo;
+    @HeaderParam(TransfolutPaths.FORWARDED_BY_HEADER)
+    private String forwardedBy;
+
+    /**
+     * Schedules a transfer
+     * curl -d '{"fromAcct": "125", "toAcct": "124", "currency":"USD", "amount": "500", "executeAt": "1767225600000", "intervalMillis": "604800000"}' -H "Content-Type: application/json" -X POST http://localhost:8080/transfolut/scheduled-transfers
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response scheduleTransfer(ScheduledTransferBean transferParams) {
+        if(!BankServiceValidator.getInstance().isAccountNumberValid(transferParams.fromAcct) ||
+                !BankServiceValidator.getInstance().isAccountNumberValid(transferParams.toAcct)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(TransfolutMessages.INVALID_ACCOUNT_NUMBER);
+        }
+
+        if(!BankServiceValidator.getInstance().isAmountValid(transferParams.amount)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_AMOUNT, transferParams.amount));
+        }
+
+        if(!BankServiceValidator.getInstance().isCurrencyValid(transferParams.currency)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_CURRENCY, transferParams.currency));
+        }
+
+        if(!BankServiceValidator.getInstance().isTimestampValid(transferParams.executeAt)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_TIMESTAMP, transferParams.executeAt));
+        }
+
+        if(transferParams.intervalMillis != null && !isNumeric(transferParams.intervalMillis)) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.INVALID_INTERVAL, transferParams.intervalMillis));
+        }
+
+        if(clusterNode.isRemote(Integer.parseInt(transferParams.fromAcct), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(transferParams.fromAcct), uriInfo, Entity.json(transferParams));
+        }
+
+        if(!clusterNode.isLocal(Integer.parseInt(transferParams.toAcct))) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.SCHEDULE_ACCOUNT_NOT_LOCAL, transferParams.toAcct,
+                            clusterNode.getOwner(Integer.parseInt(transferParams.toAcct))));
+        }
+
+        try {
+            Money amount = Money.of(CurrencyUnit.of(transferParams.currency), new BigDecimal(transferParams.amount));
+            ScheduledTransfer scheduledTransfer = bankService.scheduleTransfer(Integer.parseInt(transferParams.fromAcct),
+                    Integer.parseInt(transferParams.toAcct), amount, Long.parseLong(transferParams.executeAt),
+                    transferParams.intervalMillis != null ? Long.parseLong(transferParams.intervalMillis) : 0);
+            return Response.ok(toBean(scheduledTransfer), MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches the state of a scheduled transfer
+     *
+     * curl http://localhost:8080/transfolut/scheduled-transfers/1
+     */
+    @GET
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getScheduledTransfer(@PathParam("id") String id) {
+        Optional<ScheduledTransfer> scheduledTransfer = isNumeric(id)
+                ? bankService.getScheduledTransfer(Long.parseLong(id)) : Optional.empty();
+        if(!scheduledTransfer.isPresent()) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.SCHEDULED_TRANSFER_NOT_FOUND, id));
+        }
+        return Response.ok(toBean(scheduledTransfer.get()), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Cancels a scheduled transfer
+     *
+     * curl -X DELETE http://localhost:8080/transfolut/scheduled-transfers/1
+     */
+    @DELETE
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response cancelScheduledTransfer(@PathParam("id") String id) {
+        if(!isNumeric(id) || !bankService.cancelScheduledTransfer(Long.parseLong(id))) {
+            return BankServiceValidator.getInstance().getBadRequestResponse(
+                    String.format(TransfolutMessages.SCHEDULED_TRANSFER_NOT_FOUND, id));
+        }
+        return Response.ok(String.format(TransfolutMessages.SCHEDULED_TRANSFER_CANCELLED, id),
+                MediaType.APPLICATION_JSON).build();
+    }
+
+    private static ScheduledTransferBean toBean(ScheduledTransfer scheduledTransfer) {
+        ScheduledTransferBean bean = new ScheduledTransferBean();
+        bean.id = scheduledTransfer.getId();
+        bean.fromAcct = String.valueOf(scheduledTransfer.getFromAcctNumber());
+        bean.toAcct = String.valueOf(scheduledTransfer.getToAcctNumber());
+        bean.currency = scheduledTransfer.getAmount().getCurrencyUnit().getCode();
+        bean.amount = scheduledTransfer.getAmount().getAmount().toPlainString();
+        bean.executeAt = String.valueOf(scheduledTransfer.getNextExecution());
+        bean.intervalMillis = scheduledTransfer.getIntervalMillis() > 0
+                ? String.valueOf(scheduledTransfer.getIntervalMillis()) : null;
+        bean.executions = scheduledTransfer.getExecutions();
+        bean.failures = scheduledTransfer.getFailures();
+        bean.lastError = scheduledTransfer.getLastError();
+        return bean;
+    }
+}
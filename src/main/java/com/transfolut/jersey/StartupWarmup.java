@@ -0,0 +1,50 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
+
+/**
+ * Synthetic warmup of the deposit, withdraw and transfer paths, run before a server starts listening
+ * so that its first requests do not pay for class loading and interpretation.
+ * Requests are applied in process to a throwaway application with its own bank service, so they go through
+ * the same routing, JSON mapping and ledger code as real requests without leaving any trace in the node.
+ */
+final class StartupWarmup {
+
+    private static final int OK = Response.Status.OK.getStatusCode();
+
+    private final InProcessApplication application;
+
+    /**
+     * @param resourceConfig of a throwaway application, which is shut down once the warmup is over
+     */
+    StartupWarmup(ResourceConfig resourceConfig) {
+        this.application = new InProcessApplication(resourceConfig);
+    }
+
+    /**
+     * Runs the warmup and shuts the throwaway application down.
+     * @param iterations number of deposits, withdrawals, transfers and account fetches to apply
+     */
+    void run(int iterations) {
+        try {
+            String fromAcct = application.request(HttpMethod.POST, TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}", OK);
+            String toAcct = application.request(HttpMethod.POST, TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}", OK);
+            String deposit = "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"2\"}";
+            String withdrawal = "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}";
+            String transfer = "{\"fromAcct\":\"" + fromAcct + "\",\"toAcct\":\"" + toAcct
+                    + "\",\"currency\":\"GBP\",\"amount\":\"1\"}";
+            for(int i = 0; i < iterations; i++) {
+                application.request(HttpMethod.POST, TransfolutPaths.DEPOSIT_URI, deposit, OK);
+                application.request(HttpMethod.POST, TransfolutPaths.WITHDRAW_URI, withdrawal, OK);
+                application.request(HttpMethod.POST, TransfolutPaths.TRANSFER_URI, transfer, OK);
+                application.request(HttpMethod.GET, TransfolutPaths.ACCOUNTS_URI + "/" + toAcct, null, OK);
+            }
+        } finally {
+            application.close();
+        }
+    }
+}
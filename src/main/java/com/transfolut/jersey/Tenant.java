@@ -0,0 +1,93 @@
+package com.transfolut.jersey;
+
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bank hosted by a node, with its own accounts, its own threads sending events, importing and exporting,
+ * and its own limit of requests in flight, so that a busy tenant cannot hold up the requests of the others.
+ */
+final class Tenant {
+
+    private final String name;
+    private final BankService bankService;
+    private final ClusterNode clusterNode;
+    private final BalanceEventHub eventHub;
+    private final BulkImporter bulkImporter;
+    private final LedgerExporter ledgerExporter;
+    // Permits of the requests in flight, or null if the tenant has no limit
+    private final Semaphore requests;
+
+    /**
+     * @param name of the tenant, or null for the default tenant
+     * @param maxConcurrentRequests maximum number of requests in flight, 0 for no limit
+     */
+    Tenant(String name, BankService bankService, ClusterNode clusterNode, int maxConcurrentRequests) {
+        this.name = name;
+        this.bankService = bankService;
+        this.clusterNode = clusterNode;
+        this.eventHub = new BalanceEventHub(bankService);
+        this.bulkImporter = new BulkImporter(bankService, clusterNode);
+        this.ledgerExporter = new LedgerExporter(bankService);
+        this.requests = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests) : null;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    BankService getBankService() {
+        return bankService;
+    }
+
+    ClusterNode getClusterNode() {
+        return clusterNode;
+    }
+
+    BalanceEventHub getEventHub() {
+        return eventHub;
+    }
+
+    BulkImporter getBulkImporter() {
+        return bulkImporter;
+    }
+
+    LedgerExporter getLedgerExporter() {
+        return ledgerExporter;
+    }
+
+    /**
+     * @return true if the tenant limits its requests in flight
+     */
+    boolean isLimited() {
+        return requests != null;
+    }
+
+    /**
+     * Admits a request without waiting.
+     * @return false if the tenant already has as many requests in flight as it may
+     */
+    boolean tryEnter() {
+        return requests == null || requests.tryAcquire();
+    }
+
+    /**
+     * Ends a request admitted by {@link #tryEnter()}.
+     */
+    void exit() {
+        if(requests != null) {
+            requests.release();
+        }
+    }
+
+    /**
+     * Stops the threads of the tenant.
+     */
+    void close() {
+        eventHub.close();
+        bulkImporter.close();
+        ledgerExporter.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.transfolut.jersey;
+
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import org.glassfish.hk2.api.Factory;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
+import org.glassfish.jersey.server.ContainerRequest;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Binds the services injected into the resources to the tenant of the current request,
+ * as selected by the {@link TenantFilter}.
+ */
+class TenantBinder extends AbstractBinder {
+
+    private final TenantRegistry tenants;
+
+    TenantBinder(TenantRegistry tenants) {
+        this.tenants = tenants;
+    }
+
+    @Override
+    protected void configure() {
+        bind(tenants).to(TenantRegistry.class);
+        bindFactory(BankServiceFactory.class).to(BankService.class).in(RequestScoped.class);
+        bindFactory(ClusterNodeFactory.class).to(ClusterNode.class).in(RequestScoped.class);
+        bindFactory(EventHubFactory.class).to(BalanceEventHub.class).in(RequestScoped.class);
+        bindFactory(BulkImporterFactory.class).to(BulkImporter.class).in(RequestScoped.class);
+        bindFactory(LedgerExporterFactory.class).to(LedgerExporter.class).in(RequestScoped.class);
+    }
+
+    /**
+     * Provides a service of the tenant of the current request.
+     */
+    abstract static class TenantServiceFactory<T> implements Factory<T> {
+        @Inject
+        private Provider<ContainerRequest> request;
+        @Inject
+        private TenantRegistry tenants;
+
+        @Override
+        public T provide() {
+            Tenant tenant = (Tenant) request.get().getProperty(TenantFilter.TENANT_PROPERTY);
+            return get(tenant != null ? tenant : tenants.getDefault());
+        }
+
+        @Override
+        public void dispose(T service) {
+            // Services live as long as their tenant
+        }
+
+        abstract T get(Tenant tenant);
+    }
+
+    static final class BankServiceFactory extends TenantServiceFactory<BankService> {
+        @Override
+        BankService get(Tenant tenant) {
+            return tenant.getBankService();
+        }
+    }
+
+    static final class ClusterNodeFactory extends TenantServiceFactory<ClusterNode> {
+        @Override
+        ClusterNode get(Tenant tenant) {
+            return tenant.getClusterNode();
+        }
+    }
+
+    static final class EventHubFactory extends TenantServiceFactory<BalanceEventHub> {
+        @Override
+        BalanceEventHub get(Tenant tenant) {
+            return tenant.getEventHub();
+        }
+    }
+
+    static final class BulkImporterFactory extends TenantServiceFactory<BulkImporter> {
+        @Override
+        BulkImporter get(Tenant tenant) {
+            return tenant.getBulkImporter();
+        }
+    }
+
+    static final class LedgerExporterFactory extends TenantServiceFactory<LedgerExporter> {
+        @Override
+        LedgerExporter get(Tenant tenant) {
+            return tenant.getLedgerExporter();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+
+/**
+ * Selects the tenant of every request, named either by the tenant header or by a /tenants/{tenant} path prefix,
+ * which is stripped before the request is matched to a resource. Requests naming no tenant go to the default tenant.
+ * A request is only admitted if its tenant has room for another request in flight, and leaves room again
+ * once it is finished, whichever way it ends.
+ */
+@PreMatching
+class TenantFilter implements ContainerRequestFilter, ApplicationEventListener {
+
+    // Request property holding the tenant of the request
+    static final String TENANT_PROPERTY = TenantFilter.class.getName() + ".tenant";
+    // Request property holding the tenant which admitted the request and must be left
+    private static final String ADMITTED_PROPERTY = TenantFilter.class.getName() + ".admitted";
+    private static final String TENANTS_PREFIX = TransfolutPaths.TENANTS_URI.substring(1) + "/";
+
+    private final TenantRegistry tenants;
+    private final RequestEventListener exitListener = event -> {
+        if(event.getType() == RequestEvent.Type.FINISHED) {
+            Tenant admitted = (Tenant) event.getContainerRequest().getProperty(ADMITTED_PROPERTY);
+            if(admitted != null) {
+                admitted.exit();
+            }
+        }
+    };
+
+    TenantFilter(TenantRegistry tenants) {
+        this.tenants = tenants;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String name = requestContext.getHeaderString(TransfolutPaths.TENANT_HEADER);
+        UriInfo uriInfo = requestContext.getUriInfo();
+        String path = uriInfo.getPath(false);
+        if(path.startsWith(TENANTS_PREFIX)) {
+            int end = path.indexOf('/', TENANTS_PREFIX.length());
+            name = end < 0 ? path.substring(TENANTS_PREFIX.length()) : path.substring(TENANTS_PREFIX.length(), end);
+            String rawQuery = requestContext.getUriInfo().getRequestUri().getRawQuery();
+            requestContext.setRequestUri(uriInfo.getBaseUri(), URI.create(uriInfo.getBaseUri()
+                    + (end < 0 ? "" : path.substring(end + 1)) + (rawQuery == null ? "" : "?" + rawQuery)));
+        }
+
+        Tenant tenant = name == null ? tenants.getDefault() : tenants.get(name);
+        if(tenant == null) {
+            requestContext.abortWith(Response.status(Response.Status.NOT_FOUND)
+                    .entity(String.format(TransfolutMessages.TENANT_NOT_FOUND, name))
+                    .build());
+            return;
+        }
+        if(!tenant.tryEnter()) {
+            requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(String.format(TransfolutMessages.TENANT_BUSY, name))
+                    .build());
+            return;
+        }
+        requestContext.setProperty(TENANT_PROPERTY, tenant);
+        if(tenant.isLimited()) {
+            requestContext.setProperty(ADMITTED_PROPERTY, tenant);
+        }
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    /**
+     * @return the listener leaving the tenants of finished requests, or null if no tenant limits its requests
+     */
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return tenants.isLimited() ? exitListener : null;
+    }
+}
@@ -0,0 +1,85 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tenants hosted by a node: the default tenant serving the requests which name none,
+ * and the tenants configured with the transfolut.tenants system property, each with a {@link BankService} of its own.
+ */
+final class TenantRegistry {
+
+    private static final Pattern TENANT_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Tenant defaultTenant;
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+    /**
+     * @param bankService of the default tenant
+     * @param clusterNode the default tenant belongs to, whose partition all other tenants share
+     * @throws IllegalArgumentException if a configured tenant name is invalid
+     */
+    TenantRegistry(BankService bankService, ClusterNode clusterNode) {
+        this.defaultTenant = new Tenant(null, bankService, clusterNode, maxConcurrentRequests(null));
+        String names = System.getProperty(TransfolutProperties.TENANTS, "");
+        for(String name : names.split(",")) {
+            name = name.trim();
+            if(name.isEmpty()) {
+                continue;
+            }
+            if(!TENANT_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Tenant names must be letters, digits, - or _, but was " + name);
+            }
+            tenants.put(name, new Tenant(name, new BankService(clusterNode::isLocal), clusterNode.forTenant(name),
+                    maxConcurrentRequests(name)));
+        }
+    }
+
+    Tenant getDefault() {
+        return defaultTenant;
+    }
+
+    /**
+     * @return the tenant of that name, or null if the node does not host it
+     */
+    Tenant get(String name) {
+        return tenants.get(name);
+    }
+
+    /**
+     * @return the tenants other than the default one
+     */
+    Collection<Tenant> getTenants() {
+        return Collections.unmodifiableCollection(tenants.values());
+    }
+
+    /**
+     * @return true if any tenant limits its requests in flight
+     */
+    boolean isLimited() {
+        return defaultTenant.isLimited() || tenants.values().stream().anyMatch(Tenant::isLimited);
+    }
+
+    /**
+     * Stops the threads of all tenants, and closes the banks of the tenants other than the default one,
+     * which are owned by the registry.
+     */
+    void close() {
+        defaultTenant.close();
+        tenants.values().forEach(Tenant::close);
+        tenants.values().forEach(tenant -> tenant.getBankService().close());
+    }
+
+    private static int maxConcurrentRequests(String name) {
+        int limit = Integer.getInteger(TransfolutProperties.TENANT_MAX_CONCURRENT_REQUESTS, 0);
+        return name == null ? limit : Integer.getInteger(
+                String.format(TransfolutProperties.TENANT_MAX_CONCURRENT_REQUESTS_OVERRIDE, name), limit);
+    }
+}
@@ -0,0 +1,39 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * JSON bean for returning a slow trace with the timing of its stages
+ */
+class TraceBean {
+    @JsonProperty
+    String id;
+    @JsonProperty
+    String method;
+    @JsonProperty
+    String path;
+    @JsonProperty
+    int status;
+    // Time the request started at in milliseconds since the epoch
+    @JsonProperty
+    long startTime;
+    @JsonProperty
+    long durationMicros;
+    // Stages in the order they started, each nested in the closest earlier stage of a lower depth
+    @JsonProperty
+    List<SpanBean> spans;
+
+    static class SpanBean {
+        @JsonProperty
+        String stage;
+        @JsonProperty
+        int depth;
+        // Time the stage started at in microseconds since the start of the request
+        @JsonProperty
+        long startMicros;
+        @JsonProperty
+        long durationMicros;
+    }
+}
@@ -0,0 +1,184 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.Trace;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces a sample of the requests through every stage they go through, from reading their entity to writing
+ * their response, and keeps the most recent traces of slow requests in memory.
+ * A request carrying a trace id is always traced under that id, as the node which sent it has sampled it already,
+ * and every traced request is answered with its trace id. The trace is bound to the request thread while the
+ * resource method runs, so that the bank service and the accounts time their own stages on it.
+ */
+class TraceFilter implements ApplicationEventListener, ContainerResponseFilter, ReaderInterceptor, WriterInterceptor {
+
+    // Request property holding the trace of a traced request
+    static final String TRACE_PROPERTY = TraceFilter.class.getName() + ".trace";
+    private static final double DEFAULT_SAMPLE_RATE = 0.01;
+    private static final long DEFAULT_SLOW_MILLIS = 100;
+    private static final int DEFAULT_CAPACITY = 100;
+    // Longest trace id accepted from a client, longer ones are replaced
+    private static final int MAX_TRACE_ID_LENGTH = 64;
+
+    private final double sampleRate = Double.parseDouble(System.getProperty(TransfolutProperties.TRACING_SAMPLE_RATE,
+            String.valueOf(DEFAULT_SAMPLE_RATE)));
+    private final long slowNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong(TransfolutProperties.TRACING_SLOW_MILLIS, DEFAULT_SLOW_MILLIS));
+    private final int capacity = Integer.getInteger(TransfolutProperties.TRACING_CAPACITY, DEFAULT_CAPACITY);
+    // Most recent slow traces, newest first
+    private final Deque<TraceBean> slowTraces = new ArrayDeque<>();
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    /**
+     * Samples a request as it starts, leaving requests which are not sampled without any listener.
+     */
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        ContainerRequest request = requestEvent.getContainerRequest();
+        String id = request.getHeaderString(TransfolutPaths.TRACE_HEADER);
+        if(id == null || id.isEmpty() || id.length() > MAX_TRACE_ID_LENGTH) {
+            if(sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                return null;
+            }
+            id = String.format("%016x", ThreadLocalRandom.current().nextLong());
+        }
+        Trace trace = Trace.begin(id);
+        request.setProperty(TRACE_PROPERTY, trace);
+        return new TraceListener(trace, request.getMethod(), request.getRequestUri().getPath());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Trace trace = (Trace) requestContext.getProperty(TRACE_PROPERTY);
+        if(trace != null) {
+            responseContext.getHeaders().putSingle(TransfolutPaths.TRACE_HEADER, trace.getId());
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        Trace.Span span = Trace.span("json.read");
+        try {
+            return context.proceed();
+        } finally {
+            span.close();
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Trace trace = (Trace) context.getProperty(TRACE_PROPERTY);
+        if(trace == null) {
+            context.proceed();
+            return;
+        }
+        Trace.Span span = trace.open("json.write");
+        try {
+            context.proceed();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * @return the most recent slow traces, newest first
+     */
+    synchronized List<TraceBean> getSlowTraces() {
+        return new ArrayList<>(slowTraces);
+    }
+
+    /**
+     * Helper method to keep the trace of a finished request if it was slow, forgetting the oldest one kept if needed.
+     */
+    private void finish(Trace trace, String method, String path, int status) {
+        trace.end();
+        if(trace.getDurationNanos() < slowNanos || capacity <= 0) {
+            return;
+        }
+        TraceBean slowTrace = new TraceBean();
+        slowTrace.id = trace.getId();
+        slowTrace.method = method;
+        slowTrace.path = path;
+        slowTrace.status = status;
+        slowTrace.startTime = trace.getStartTime();
+        slowTrace.durationMicros = TimeUnit.NANOSECONDS.toMicros(trace.getDurationNanos());
+        slowTrace.spans = new ArrayList<>();
+        for(Trace.Span span : trace.getSpans()) {
+            TraceBean.SpanBean spanBean = new TraceBean.SpanBean();
+            spanBean.stage = span.getStage();
+            spanBean.depth = span.getDepth();
+            spanBean.startMicros = TimeUnit.NANOSECONDS.toMicros(span.getStartNanos());
+            spanBean.durationMicros = TimeUnit.NANOSECONDS.toMicros(span.getDurationNanos());
+            slowTrace.spans.add(spanBean);
+        }
+        synchronized (this) {
+            if(slowTraces.size() >= capacity) {
+                slowTraces.removeLast();
+            }
+            slowTraces.addFirst(slowTrace);
+        }
+    }
+
+    /**
+     * Times the resource method of a traced request, and finishes its trace once the response has been written.
+     * The trace is unbound from the request thread as soon as the resource method returns, so that it never leaks
+     * into the next request of the thread, whichever thread the response is written by.
+     */
+    private final class TraceListener implements RequestEventListener {
+        private final Trace trace;
+        private final String method;
+        private final String path;
+        private Trace.Span resourceSpan;
+
+        private TraceListener(Trace trace, String method, String path) {
+            this.trace = trace;
+            this.method = method;
+            this.path = path;
+        }
+
+        @Override
+        public void onEvent(RequestEvent event) {
+            switch(event.getType()) {
+                case RESOURCE_METHOD_START:
+                    resourceSpan = trace.open("resource");
+                    break;
+                case RESOURCE_METHOD_FINISHED:
+                    if(resourceSpan != null) {
+                        resourceSpan.close();
+                    }
+                    trace.unbind();
+                    break;
+                case FINISHED:
+                    finish(trace, method, path,
+                            event.getContainerResponse() != null ? event.getContainerResponse().getStatus() : 500);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
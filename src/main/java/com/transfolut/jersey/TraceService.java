@@ -0,0 +1,31 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Service to expose the most recent traces of slow requests, as sampled by the {@link TraceFilter}.
+ */
+@Path(TransfolutPaths.TRACES_URI)
+public class TraceService {
+
+    @Inject
+    private TraceFilter traceFilter;
+
+    /**
+     * Fetches the most recent slow traces, newest first
+     *
+     * curl http://localhost:8080/transfolut/traces
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSlowTraces() {
+        return Response.ok(traceFilter.getSlowTraces(), MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -16,4 +16,7 @@ class TransferBean {
     String currency;
     @JsonProperty
     String amount;
+    // Currency to credit the receiving account in, the transfer currency if absent
+    @JsonProperty
+    String toCurrency;
 }
\ No newline at end of file
@@ -1,15 +1,37 @@
 package com.transfolut.jersey;
 
 import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.AuditTrail;
 import com.transfolut.bank.BankService;
+import com.transfolut.bank.JournalFollower;
+import com.transfolut.bank.ReplicationJournal;
+import com.transfolut.cluster.ClusterNode;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpHandlerRegistration;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.ServerConfiguration;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.AbstractContainerLifecycleListener;
+import org.glassfish.jersey.server.spi.Container;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
 
+import javax.ws.rs.ProcessingException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Main App class of our Transfolut Bank Transfer Service.
@@ -18,21 +40,96 @@ import java.net.URI;
  */
 public class TransfolutApp {
 
+    private static final int DEFAULT_AUDIT_CAPACITY = 64 * 1024;
+    private static final long DEFAULT_AUDIT_MAX_FILE_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_REPLICATION_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_REPLICATION_CAPACITY = 64 * 1024;
+
+    // Resources of the application, registered explicitly so that startup does not scan the classpath
+    static final Set<Class<?>> RESOURCES = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            TransfolutLanding.class,
+            AccountService.class,
+            DepositService.class,
+            WithdrawService.class,
+            BankTransferService.class,
+            ClusterCreditService.class,
+            FxRateService.class,
+            ScheduledTransferService.class,
+            HoldService.class,
+            EventService.class,
+            ImportService.class,
+            ExportService.class,
+            MetricsService.class,
+            TraceService.class)));
+
     public static String getGreeting() {
+        return getGreeting(TransfolutPaths.BASE_URI);
+    }
+
+    static String getGreeting(String baseUri) {
         return String.format(" Welcome to the Transfolut Application! Listening at "
-                + "%s\nHit enter to stop it...", TransfolutPaths.BASE_URI);
+                + "%s\nHit enter to stop it...", baseUri);
     }
 
     /**
      * Main method that starts the Grizzly server.
+     * The server joins a cluster if one is configured with the transfolut.cluster.* system properties,
+     * and publishes or follows a replication journal if one is configured with the transfolut.replication.* ones.
+     * The primary writes an audit trail if one is configured with the transfolut.audit.* system properties.
      * @param args
      * @throws IOException
      */
     public static void main(String[] args) throws IOException {
-        System.out.println(new TransfolutApp().getGreeting());
-        final HttpServer server = startServer();
+        ClusterNode clusterNode = ClusterNode.fromProperties(TransfolutPaths.BASE_URI);
+        String primary = System.getProperty(TransfolutProperties.REPLICATION_PRIMARY);
+        if(primary != null) {
+            String[] primaryAddress = primary.split(":");
+            JournalFollower follower = new JournalFollower(BankService.getInstance(), primaryAddress[0],
+                    Integer.parseInt(primaryAddress[1]));
+            follower.start();
+            System.out.println(getGreeting(clusterNode.getSelf()));
+            final HttpServer server = startFollower(BankService.getInstance(), follower, clusterNode.getSelf());
+            System.in.read();
+            server.shutdownNow();
+            follower.close();
+            BankService.getInstance().close();
+            return;
+        }
+
+        BankService bankService = clusterNode.isClustered()
+                ? new BankService(clusterNode::isLocal) : BankService.getInstance();
+        ReplicationJournal journal = null;
+        if(Integer.getInteger(TransfolutProperties.REPLICATION_PORT) != null) {
+            String journalDirectory = System.getProperty(TransfolutProperties.REPLICATION_DIR);
+            journal = new ReplicationJournal(bankService, journalDirectory != null ? Paths.get(journalDirectory)
+                    : Files.createTempDirectory("transfolut-journal"), Integer.getInteger(TransfolutProperties.REPLICATION_PORT),
+                    Integer.getInteger(TransfolutProperties.REPLICATION_CAPACITY, DEFAULT_REPLICATION_CAPACITY),
+                    Long.getLong(TransfolutProperties.REPLICATION_SEGMENT_BYTES, DEFAULT_REPLICATION_SEGMENT_BYTES));
+            journal.start();
+        }
+        AuditTrail auditTrail = null;
+        String auditDirectory = System.getProperty(TransfolutProperties.AUDIT_DIR);
+        if(auditDirectory != null) {
+            auditTrail = new AuditTrail(bankService, Paths.get(auditDirectory),
+                    Integer.getInteger(TransfolutProperties.AUDIT_CAPACITY, DEFAULT_AUDIT_CAPACITY),
+                    System.getProperty(TransfolutProperties.AUDIT_POLICY),
+                    Long.getLong(TransfolutProperties.AUDIT_MAX_FILE_BYTES, DEFAULT_AUDIT_MAX_FILE_BYTES));
+            auditTrail.start();
+        }
+        final HttpServer server = startServer(bankService, clusterNode);
+        System.out.println(getGreeting(clusterNode.getSelf()));
+        System.out.println(String.format(" Started %s ms after the JVM started",
+                ManagementFactory.getRuntimeMXBean().getUptime()));
         System.in.read();
         server.shutdownNow();
+        clusterNode.close();
+        if(journal != null) {
+            journal.close();
+        }
+        if(auditTrail != null) {
+            auditTrail.close();
+        }
+        bankService.close();
     }
 
     /**
@@ -41,12 +138,101 @@ public class TransfolutApp {
      * @return Grizzly HTTP server.
      */
     public static HttpServer startServer() {
-        // create a resource config that scans for JAX-RS resources and providers
-        final ResourceConfig rc = new ResourceConfig().packages("com.transfolut.jersey");
+        return startServer(BankService.getInstance(), ClusterNode.standalone(TransfolutPaths.BASE_URI));
+    }
+
+    /**
+     * Starts Grizzly HTTP server for one node of a cluster, listening at the base URI of the node.
+     * Several nodes can run in the same JVM, each with its own {@link BankService}.
+     * If a warmup is configured with the transfolut.warmup.iterations system property,
+     * it runs before the server starts listening. If the transfolut.fastPath system property is true,
+     * plain deposits, withdrawals and transfers are served by a {@link FastPathHandler} in front of Jersey.
+     * @param bankService holding the accounts of this node
+     * @param clusterNode deciding which accounts belong to this node
+     * @return Grizzly HTTP server.
+     */
+    public static HttpServer startServer(BankService bankService, ClusterNode clusterNode) {
+        int warmupIterations = Integer.getInteger(TransfolutProperties.WARMUP_ITERATIONS, 0);
+        if(warmupIterations > 0) {
+            BankService warmupBank = new BankService(bankAcctNumber -> true);
+            // The warmup debits the same account over and over, which configured velocity limits would reject
+            warmupBank.setVelocityLimits(null);
+            new StartupWarmup(createResourceConfig(warmupBank, ClusterNode.standalone(TransfolutPaths.BASE_URI)))
+                    .run(warmupIterations);
+            warmupBank.close();
+        }
+        TenantRegistry tenants = new TenantRegistry(bankService, clusterNode);
+        final ResourceConfig rc = createResourceConfig(tenants);
+        if(!Boolean.getBoolean(TransfolutProperties.FAST_PATH)) {
+            // create and start a new instance of grizzly http server
+            // exposing the Jersey application at the base URI of the node
+            return GrizzlyHttpServerFactory.createHttpServer(URI.create(clusterNode.getSelf()), rc);
+        }
+
+        final HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(clusterNode.getSelf()), rc, false);
+        ServerConfiguration configuration = server.getServerConfiguration();
+        Map<HttpHandler, HttpHandlerRegistration[]> handlers = new LinkedHashMap<>(configuration.getHttpHandlersWithMapping());
+        for(Map.Entry<HttpHandler, HttpHandlerRegistration[]> handler : handlers.entrySet()) {
+            configuration.removeHttpHandler(handler.getKey());
+            configuration.addHttpHandler(new FastPathHandler(handler.getKey(), tenants.getDefault()), handler.getValue());
+        }
+        try {
+            server.start();
+        } catch (IOException e) {
+            server.shutdownNow();
+            throw new ProcessingException("Failed to start the server", e);
+        }
+        return server;
+    }
 
+    /**
+     * Starts Grizzly HTTP server for a read-only follower of a primary.
+     * @param bankService the follower applies the journal of the primary to
+     * @param follower tailing the journal of the primary
+     * @param baseUri to listen at
+     * @return Grizzly HTTP server.
+     */
+    public static HttpServer startFollower(BankService bankService, JournalFollower follower, String baseUri) {
+        final ResourceConfig rc = createResourceConfig(bankService, ClusterNode.standalone(baseUri))
+                .register(new FollowerFilter(follower));
+        return GrizzlyHttpServerFactory.createHttpServer(URI.create(baseUri), rc);
+    }
 
-        // create and start a new instance of grizzly http server
-        // exposing the Jersey application at BASE_URI
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create(TransfolutPaths.BASE_URI), rc);
+    /**
+     * Helper method to create a resource config registering the JAX-RS resources and providers,
+     * injecting them with the services of the tenant of every request and with the traces and startup time of the server.
+     * The event hubs only listen to their bank service while the server runs,
+     * and the threads of the event hubs, the bulk importers and the ledger exporters are stopped along with it.
+     */
+    static ResourceConfig createResourceConfig(BankService bankService, ClusterNode clusterNode) {
+        return createResourceConfig(new TenantRegistry(bankService, clusterNode));
+    }
+
+    /**
+     * Helper method to create a resource config serving the given tenants.
+     */
+    private static ResourceConfig createResourceConfig(TenantRegistry tenants) {
+        TraceFilter traceFilter = new TraceFilter();
+        FirstRequestTimer firstRequestTimer = new FirstRequestTimer();
+        return new ResourceConfig().registerClasses(RESOURCES)
+                .register(MultiPartFeature.class)
+                .register(traceFilter)
+                .register(firstRequestTimer)
+                .register(new TenantFilter(tenants))
+                .register(new CompressionFilter())
+                .register(new TenantBinder(tenants))
+                .register(new AbstractBinder() {
+                    @Override
+                    protected void configure() {
+                        bind(traceFilter).to(TraceFilter.class);
+                        bind(firstRequestTimer).to(FirstRequestTimer.class);
+                    }
+                })
+                .register(new AbstractContainerLifecycleListener() {
+                    @Override
+                    public void onShutdown(Container container) {
+                        tenants.close();
+                    }
+                });
     }
 }
@@ -3,16 +3,23 @@ package com.transfolut.jersey;
 import com.transfolut.TransfolutMessages;
 import com.transfolut.TransfolutPaths;
 import com.transfolut.bank.BankService;
+import com.transfolut.bank.VelocityLimitException;
+import com.transfolut.cluster.ClusterNode;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.IllegalCurrencyException;
 import org.joda.money.Money;
 
+import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.math.BigDecimal;
 
 /**
@@ -20,6 +27,15 @@ import java.math.BigDecimal;
  */
 @Path(TransfolutPaths.WITHDRAW_URI)
 public class WithdrawService {
+    @Inject
+    private BankService bankService;
+    @Inject
+    private ClusterNode clusterNode;
+    @Context
+    private UriInfo uriInfo;
+    @HeaderParam(TransfolutPaths.FORWARDED_BY_HEADER)
+    private String forwardedBy;
+
     /**
      * Creates a new account given a primary currency
      * curl -d '{"acct": "125", "currency":"USD", "amount": "500"}' -H "Content-Type: application/json" -X POST http://localhost:8080/transfolut/withdraw
@@ -43,13 +59,19 @@ public class WithdrawService {
                     String.format(TransfolutMessages.INVALID_CURRENCY, deposit.currency));
         }
 
+        if(clusterNode.isRemote(Integer.parseInt(deposit.acct), forwardedBy)) {
+            return clusterNode.forward(Integer.parseInt(deposit.acct), uriInfo, Entity.json(deposit));
+        }
+
         try {
             CurrencyUnit currency = CurrencyUnit.of(deposit.currency);
             Money depositAmount = Money.of(currency, new BigDecimal(deposit.amount));
-            BankService.getInstance().withdraw(Integer.parseInt(deposit.acct), depositAmount);
+            bankService.withdraw(Integer.parseInt(deposit.acct), depositAmount);
             return Response.ok(
                     String.format(TransfolutMessages.WITHDRAW_SUCCESS, depositAmount.toString(), deposit.acct),
                     MediaType.APPLICATION_JSON).build();
+        } catch (VelocityLimitException e) {
+            return BankServiceValidator.getInstance().getVelocityLimitResponse(e.getMessage());
         } catch (IllegalArgumentException e) {
             return BankServiceValidator.getInstance().getBadRequestResponse(e.getMessage());
         }
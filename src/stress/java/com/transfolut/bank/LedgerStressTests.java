@@ -0,0 +1,261 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * {@link StressTest}s racing deposits, withdrawals and transfers on shared accounts, asserting that
+ * balances never go negative and that money is neither created nor lost.
+ */
+final class LedgerStressTests {
+
+    private static final CurrencyUnit PRIMARY_CURRENCY = CurrencyUnit.GBP;
+    private static final Money ONE = Money.of(PRIMARY_CURRENCY, 1);
+    private static final Money ONE_EUR = Money.of(CurrencyUnit.EUR, 1);
+
+    private LedgerStressTests() {
+        // Exists only to defeat instantiation.
+    }
+
+    private static Set<String> outcomes(String... outcomes) {
+        return new HashSet<>(Arrays.asList(outcomes));
+    }
+
+    /**
+     * Helper method to attempt an operation which may be refused.
+     * @return true if the operation succeeded
+     */
+    private static boolean attempt(Runnable operation) {
+        try {
+            operation.run();
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String balances(BankAccount account) {
+        List<String> balances = account.getBalances();
+        Collections.sort(balances);
+        return balances.toString();
+    }
+
+    /**
+     * Two withdrawals of the full balance: exactly one of them may succeed.
+     */
+    static class RacingWithdrawals implements StressTest<RacingWithdrawals.State> {
+        static class State {
+            final BankAccount account = new BankAccount(11111111L, PRIMARY_CURRENCY);
+            volatile boolean first;
+            volatile boolean second;
+
+            State() {
+                account.deposit(ONE);
+            }
+        }
+
+        @Override
+        public State newState() {
+            return new State();
+        }
+
+        @Override
+        public List<Consumer<State>> getActors() {
+            return Arrays.asList(
+                    state -> state.first = attempt(() -> state.account.withdraw(ONE)),
+                    state -> state.second = attempt(() -> state.account.withdraw(ONE)));
+        }
+
+        @Override
+        public String observe(State state) {
+            return String.format("first=%s second=%s balances=%s", state.first, state.second, balances(state.account));
+        }
+
+        @Override
+        public Set<String> getAcceptableOutcomes() {
+            return outcomes("first=true second=false balances=[GBP 0.00]",
+                    "first=false second=true balances=[GBP 0.00]");
+        }
+    }
+
+    /**
+     * A withdrawal bringing a secondary currency down to zero, which cleans up its balance,
+     * races a deposit in the same currency: the deposit must never be lost.
+     */
+    static class DepositRacingZeroBalanceCleanUp implements StressTest<DepositRacingZeroBalanceCleanUp.State> {
+        static class State {
+            final BankAccount account = new BankAccount(11111111L, PRIMARY_CURRENCY);
+            volatile boolean withdrawn;
+
+            State() {
+                account.deposit(ONE_EUR);
+            }
+        }
+
+        @Override
+        public State newState() {
+            return new State();
+        }
+
+        @Override
+        public List<Consumer<State>> getActors() {
+            return Arrays.asList(
+                    state -> state.withdrawn = attempt(() -> state.account.withdraw(ONE_EUR)),
+                    state -> state.account.deposit(ONE_EUR));
+        }
+
+        @Override
+        public String observe(State state) {
+            return String.format("withdrawn=%s balances=%s", state.withdrawn, balances(state.account));
+        }
+
+        @Override
+        public Set<String> getAcceptableOutcomes() {
+            return outcomes("withdrawn=true balances=[EUR 1.00, GBP 0.00]");
+        }
+    }
+
+    /**
+     * Two accounts transferring their full balance to each other at the same time.
+     */
+    static class OpposingTransfers implements StressTest<OpposingTransfers.State> {
+        static class State {
+            final BankService bankService = new BankService(0, null);
+            final long first = bankService.createAccount(PRIMARY_CURRENCY.getCode());
+            final long second = bankService.createAccount(PRIMARY_CURRENCY.getCode());
+            volatile boolean firstToSecond;
+            volatile boolean secondToFirst;
+
+            State() {
+                bankService.deposit(first, ONE);
+                bankService.deposit(second, ONE);
+            }
+        }
+
+        @Override
+        public State newState() {
+            return new State();
+        }
+
+        @Override
+        public List<Consumer<State>> getActors() {
+            return Arrays.asList(
+                    state -> state.firstToSecond = attempt(() -> state.bankService.transfer(state.first, state.second, ONE)),
+                    state -> state.secondToFirst = attempt(() -> state.bankService.transfer(state.second, state.first, ONE)));
+        }
+
+        @Override
+        public String observe(State state) {
+            return String.format("transfers=%s,%s first=%s second=%s", state.firstToSecond, state.secondToFirst,
+                    balances(state.bankService.getAccount(state.first).get()),
+                    balances(state.bankService.getAccount(state.second).get()));
+        }
+
+        @Override
+        public Set<String> getAcceptableOutcomes() {
+            return outcomes("transfers=true,true first=[GBP 1.00] second=[GBP 1.00]");
+        }
+    }
+
+    /**
+     * A transfer and a withdrawal competing for the full balance of the same account.
+     */
+    static class TransferRacingWithdrawal implements StressTest<TransferRacingWithdrawal.State> {
+        static class State {
+            final BankService bankService = new BankService(0, null);
+            final long from = bankService.createAccount(PRIMARY_CURRENCY.getCode());
+            final long to = bankService.createAccount(PRIMARY_CURRENCY.getCode());
+            volatile boolean transferred;
+            volatile boolean withdrawn;
+
+            State() {
+                bankService.deposit(from, ONE);
+            }
+        }
+
+        @Override
+        public State newState() {
+            return new State();
+        }
+
+        @Override
+        public List<Consumer<State>> getActors() {
+            return Arrays.asList(
+                    state -> state.transferred = attempt(() -> state.bankService.transfer(state.from, state.to, ONE)),
+                    state -> state.withdrawn = attempt(() -> state.bankService.withdraw(state.from, ONE)));
+        }
+
+        @Override
+        public String observe(State state) {
+            return String.format("transferred=%s withdrawn=%s from=%s to=%s", state.transferred, state.withdrawn,
+                    balances(state.bankService.getAccount(state.from).get()),
+                    balances(state.bankService.getAccount(state.to).get()));
+        }
+
+        @Override
+        public Set<String> getAcceptableOutcomes() {
+            return outcomes("transferred=true withdrawn=false from=[GBP 0.00] to=[GBP 1.00]",
+                    "transferred=false withdrawn=true from=[GBP 0.00] to=[GBP 0.00]");
+        }
+    }
+
+    /**
+     * Opposing transfers on a paged {@link BankService} whose working set only fits the two accounts,
+     * while a third actor faults a cold account in and forces one of them out of memory.
+     */
+    static class PagedTransfers implements StressTest<PagedTransfers.State> {
+        private static final BankService PAGED_BANK_SERVICE = new BankService(2, () -> {
+            try {
+                return Files.createTempDirectory("transfolut-stress");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        private static final long COLD_ACCOUNT = PAGED_BANK_SERVICE.createAccount(PRIMARY_CURRENCY.getCode());
+
+        static class State {
+            final long first = PAGED_BANK_SERVICE.createAccount(PRIMARY_CURRENCY.getCode());
+            final long second = PAGED_BANK_SERVICE.createAccount(PRIMARY_CURRENCY.getCode());
+
+            State() {
+                PAGED_BANK_SERVICE.deposit(first, ONE);
+                PAGED_BANK_SERVICE.deposit(second, ONE);
+            }
+        }
+
+        @Override
+        public State newState() {
+            return new State();
+        }
+
+        @Override
+        public List<Consumer<State>> getActors() {
+            return Arrays.asList(
+                    state -> attempt(() -> PAGED_BANK_SERVICE.transfer(state.first, state.second, ONE)),
+                    state -> attempt(() -> PAGED_BANK_SERVICE.transfer(state.second, state.first, ONE)),
+                    state -> PAGED_BANK_SERVICE.getAccount(COLD_ACCOUNT));
+        }
+
+        @Override
+        public String observe(State state) {
+            Money total = Money.parse(PAGED_BANK_SERVICE.getAccount(state.first).get().getBalances().get(0))
+                    .plus(Money.parse(PAGED_BANK_SERVICE.getAccount(state.second).get().getBalances().get(0)));
+            return "total=" + total;
+        }
+
+        @Override
+        public Set<String> getAcceptableOutcomes() {
+            return outcomes("total=GBP 2.00");
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.transfolut.bank;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs the {@link StressTest}s of the ledger and fails if any forbidden outcome has been observed.
+ * Every actor has its own long lived thread, and all actors are released on a batch of fresh states at once,
+ * so that they keep racing on the same states. A test which does not finish in time, e.g. because its actors
+ * are stuck in a livelock or a deadlock, fails with the stack traces of its actors.
+ * Run it with ./gradlew stressTest -Dtransfolut.stress.iterations=100000
+ */
+public class StressRunner {
+
+    static final String ITERATIONS = "transfolut.stress.iterations";
+    static final String BATCH_SIZE = "transfolut.stress.batchSize";
+    static final String TIMEOUT = "transfolut.stress.timeoutSeconds";
+
+    public static void main(String[] args) throws Exception {
+        int iterations = Integer.getInteger(ITERATIONS, 20000);
+        int batchSize = Integer.getInteger(BATCH_SIZE, 100);
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger(TIMEOUT, 120));
+        List<StressTest<?>> tests = Arrays.asList(
+                new LedgerStressTests.RacingWithdrawals(),
+                new LedgerStressTests.DepositRacingZeroBalanceCleanUp(),
+                new LedgerStressTests.OpposingTransfers(),
+                new LedgerStressTests.TransferRacingWithdrawal(),
+                new LedgerStressTests.PagedTransfers());
+
+        boolean passed = true;
+        for(StressTest<?> test : tests) {
+            passed &= run(test, iterations, batchSize, timeoutNanos);
+        }
+        // Actors of a test which timed out are still stuck and would keep the JVM alive
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Races the actors of a test and prints how often each outcome has been observed.
+     * @param timeoutNanos time the test may take before it is reported as stuck
+     * @return true if only acceptable outcomes have been observed within the timeout
+     */
+    static <S> boolean run(StressTest<S> test, int iterations, int batchSize, long timeoutNanos)
+            throws InterruptedException, BrokenBarrierException {
+        List<Consumer<S>> actors = test.getActors();
+        Object[] states = new Object[batchSize];
+        CyclicBarrier barrier = new CyclicBarrier(actors.size() + 1);
+        Map<String, Integer> outcomes = new TreeMap<>();
+
+        Thread[] actorThreads = new Thread[actors.size()];
+        for(int i = 0; i < actors.size(); i++) {
+            Consumer<S> actor = actors.get(i);
+            actorThreads[i] = new Thread(() -> {
+                try {
+                    while(true) {
+                        barrier.await();
+                        if(states[0] == null) {
+                            return;
+                        }
+                        for(Object state : states) {
+                            @SuppressWarnings("unchecked")
+                            S typedState = (S) state;
+                            actor.accept(typedState);
+                        }
+                        barrier.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            actorThreads[i].setDaemon(true);
+            actorThreads[i].start();
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        int done = 0;
+        try {
+            for(; done < iterations; done += batchSize) {
+                for(int i = 0; i < batchSize; i++) {
+                    states[i] = test.newState();
+                }
+                barrier.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                barrier.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                for(Object state : states) {
+                    @SuppressWarnings("unchecked")
+                    S typedState = (S) state;
+                    outcomes.merge(test.observe(typedState), 1, Integer::sum);
+                }
+            }
+        } catch (TimeoutException e) {
+            System.out.println(String.format("[FAILED] %s timed out after %d of %d iterations in %d seconds",
+                    test.getClass().getSimpleName(), done, iterations, TimeUnit.NANOSECONDS.toSeconds(timeoutNanos)));
+            for(Thread actorThread : actorThreads) {
+                System.out.println("  " + actorThread.getName() + " " + actorThread.getState());
+                for(StackTraceElement element : actorThread.getStackTrace()) {
+                    System.out.println("      at " + element);
+                }
+            }
+            return false;
+        }
+        Arrays.fill(states, null);
+        barrier.await();
+        for(Thread actorThread : actorThreads) {
+            actorThread.join();
+        }
+
+        boolean passed = test.getAcceptableOutcomes().containsAll(outcomes.keySet());
+        System.out.println(String.format("[%s] %s", passed ? "OK" : "FAILED", test.getClass().getSimpleName()));
+        outcomes.forEach((outcome, count) -> System.out.println(String.format("  %10d  %-10s %s", count,
+                test.getAcceptableOutcomes().contains(outcome) ? "ACCEPTABLE" : "FORBIDDEN", outcome)));
+        return passed;
+    }
+}
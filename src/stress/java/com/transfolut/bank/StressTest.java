@@ -0,0 +1,33 @@
+package com.transfolut.bank;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Concurrency test in the style of jcstress: a fresh state is raced on by several actors,
+ * and the outcome observed once all of them are done must be one of the acceptable outcomes.
+ * @param <S> state shared by the actors, which also records what each actor observed
+ */
+interface StressTest<S> {
+
+    /**
+     * @return a new state for one race of the actors
+     */
+    S newState();
+
+    /**
+     * @return the actors, each of them run on its own thread against the same state
+     */
+    List<Consumer<S>> getActors();
+
+    /**
+     * @return the outcome of a state once all actors are done with it
+     */
+    String observe(S state);
+
+    /**
+     * @return the outcomes which do not break any invariant of the ledger
+     */
+    Set<String> getAcceptableOutcomes();
+}
@@ -0,0 +1,87 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Compares the memory footprint and full collection pause of accounts held by a {@link BankService} against
+ * accounts held by a {@link CompactAccountStore}. Every account gets a deposit in its primary currency.
+ * The bank service run is kept smaller, as its accounts would not fit a modest heap at the compact store scale,
+ * and its footprint per account is extrapolated to the compact store account count.
+ * Not run as part of the build, start it with the test runtime classpath and a heap of a few GB:
+ * java -Xmx2g -cp ... com.transfolut.bank.AccountFootprintBenchmark [compact accounts] [bank service accounts]
+ */
+public class AccountFootprintBenchmark {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+
+    public static void main(String[] args) throws IOException {
+        int compactAccounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int bankServiceAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        long baseline = usedHeap();
+        BankService bankService = new BankService(0, () -> null);
+        long start = System.nanoTime();
+        for(int i = 0; i < bankServiceAccounts; i++) {
+            bankService.deposit(bankService.createAccount(CurrencyUnit.GBP.getCode()), DEPOSIT);
+        }
+        report("bank service", bankServiceAccounts, compactAccounts, System.nanoTime() - start,
+                usedHeap() - baseline, 0, fullCollectionMillis());
+        bankService.clearAccounts();
+        bankService = null;
+
+        Path directory = Files.createTempDirectory("transfolut-compact");
+        baseline = usedHeap();
+        CompactAccountStore store = new CompactAccountStore(directory, compactAccounts);
+        start = System.nanoTime();
+        for(int i = 0; i < compactAccounts; i++) {
+            long bankAcctNumber = BankService.MINIMUM_ACCOUNT_NUMBER + i;
+            store.createAccount(bankAcctNumber, CurrencyUnit.GBP);
+            store.deposit(bankAcctNumber, DEPOSIT);
+        }
+        report("compact store", compactAccounts, compactAccounts, System.nanoTime() - start,
+                usedHeap() - baseline, store.getMappedBytes(), fullCollectionMillis());
+        System.out.println(String.format("compact store index %,d MB of the heap", store.getIndexBytes() >> 20));
+        store.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void report(String name, int accounts, int scaledAccounts, long nanos, long heapBytes,
+                               long offHeapBytes, long collectionMillis) {
+        double bytesPerAccount = (double) (heapBytes + offHeapBytes) / accounts;
+        System.out.println(String.format("%-13s %,11d accounts in %,6d ms: heap %,6d MB, off heap %,6d MB, "
+                        + "%,5.0f bytes/account (%,7.0f MB at %,d accounts), full collection %,5d ms",
+                name, accounts, nanos / 1_000_000, heapBytes >> 20, offHeapBytes >> 20, bytesPerAccount,
+                bytesPerAccount * scaledAccounts / (1 << 20), scaledAccounts, collectionMillis));
+    }
+
+    /**
+     * @return the heap used once garbage has been collected
+     */
+    private static long usedHeap() {
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the duration of a full collection, which traces every live object on the heap
+     */
+    private static long fullCollectionMillis() {
+        long start = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,96 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+/**
+ * Compares the throughput of account lookups in a {@link ConcurrentHashMap} of boxed account numbers, probed twice
+ * as {@link BankService#getAccount(long)} used to, against a {@link ConcurrentLongMap}, and through
+ * {@link BankService#getAccount(long)} itself. Lookups hit random accounts among a million, so that most miss the caches.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.bank.AccountLookupBenchmark [accounts] [seconds] [threads]
+ */
+public class AccountLookupBenchmark {
+
+    // Number of account numbers looked up, drawn before the measurement
+    private static final int LOOKUPS = 1 << 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        BankService bankService = new BankService(0, () -> null);
+        Map<Long, BankAccount> boxedAccounts = new ConcurrentHashMap<>();
+        ConcurrentLongMap<BankAccount> longAccounts = new ConcurrentLongMap<>();
+        long[] accountNumbers = new long[accounts];
+        for(int i = 0; i < accounts; i++) {
+            accountNumbers[i] = bankService.createAccount(CurrencyUnit.GBP.getCode());
+            BankAccount account = bankService.getAccount(accountNumbers[i]).get();
+            boxedAccounts.put(accountNumbers[i], account);
+            longAccounts.putIfAbsent(accountNumbers[i], account);
+        }
+        long[] lookups = new long[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = accountNumbers[ThreadLocalRandom.current().nextInt(accounts)];
+        }
+
+        for(int round = 0; round < 2; round++) {
+            report(round, "boxed map twice", run(seconds, threads, lookups, acct -> boxedAccounts.containsKey(acct)
+                    && boxedAccounts.get(acct) != null));
+            report(round, "boxed map", run(seconds, threads, lookups, acct -> boxedAccounts.get(acct) != null));
+            report(round, "long map", run(seconds, threads, lookups, acct -> longAccounts.get(acct) != null));
+            report(round, "bank service", run(seconds, threads, lookups, acct -> {
+                Optional<BankAccount> account = bankService.getAccount(acct);
+                return account.isPresent();
+            }));
+        }
+    }
+
+    private static void report(int round, String name, double lookupsPerSecond) {
+        System.out.println(String.format("%s %-16s %,13.0f lookups/s", round == 0 ? "warmup" : "measure", name,
+                lookupsPerSecond));
+    }
+
+    /**
+     * Runs lookups on several threads for the given duration.
+     * @param lookup looks up an account, returning whether it was found
+     * @return the number of lookups per second of all threads together
+     */
+    private static double run(int seconds, int threads, long[] lookups, LongPredicate lookup)
+            throws InterruptedException {
+        long[] counts = new long[threads];
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for(int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                int next = worker * (LOOKUPS / threads);
+                long count = 0;
+                do {
+                    for(int i = 0; i < 1000; i++) {
+                        if(!lookup.test(lookups[next])) {
+                            throw new IllegalStateException("Account not found " + lookups[next]);
+                        }
+                        next = (next + 1) & (LOOKUPS - 1);
+                    }
+                    count += 1000;
+                } while(System.nanoTime() < deadline);
+                counts[worker] = count;
+            });
+            workers[t].start();
+        }
+        long total = 0;
+        for(int t = 0; t < threads; t++) {
+            workers[t].join();
+            total += counts[t];
+        }
+        return (double) total / seconds;
+    }
+}
@@ -0,0 +1,116 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.joda.time.LocalDateTime;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Compares the throughput of compare-and-set withdrawals in {@link BankAccount} against the previous
+ * lock based implementation, with all threads hammering the same account.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.bank.BankAccountContentionBenchmark [threads] [seconds]
+ */
+public class BankAccountContentionBenchmark {
+
+    private static final CurrencyUnit CURRENCY = CurrencyUnit.GBP;
+    private static final Money AMOUNT = Money.of(CURRENCY, 1);
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        for(int round = 0; round < 2; round++) {
+            BankAccount casAccount = new BankAccount(11111111L, CURRENCY);
+            casAccount.deposit(AMOUNT.multipliedBy(threads));
+            report(round, "compare-and-set", run(threads, seconds, casAccount::deposit, casAccount::withdraw));
+
+            LockingAccount lockingAccount = new LockingAccount(CURRENCY);
+            lockingAccount.deposit(AMOUNT.multipliedBy(threads));
+            report(round, "reentrant lock", run(threads, seconds, lockingAccount::deposit, lockingAccount::withdraw));
+        }
+    }
+
+    private static void report(int round, String name, long operations) {
+        System.out.println(String.format("%s %-16s %,d ops", round == 0 ? "warmup" : "measure", name, operations));
+    }
+
+    /**
+     * Alternates withdrawals and deposits on every thread for the given duration.
+     * @return the number of completed operations
+     */
+    private static long run(int threads, int seconds, Consumer<Money> deposit, Consumer<Money> withdraw)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] workers = new Thread[threads];
+        for(int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while(System.nanoTime() < deadline) {
+                    withdraw.accept(AMOUNT);
+                    deposit.accept(AMOUNT);
+                    operations.add(2);
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum();
+    }
+
+    /**
+     * Reference copy of the lock based withdrawal path that {@link BankAccount} used to implement.
+     */
+    private static class LockingAccount {
+        private final CurrencyUnit primaryCurrency;
+        private final Map<CurrencyUnit, BigDecimal> balances = new ConcurrentHashMap<>();
+        private final Queue<String> history = new ConcurrentLinkedQueue<>();
+        private final ReentrantLock balanceReadLock = new ReentrantLock();
+
+        LockingAccount(CurrencyUnit primaryCurrency) {
+            this.primaryCurrency = primaryCurrency;
+            balances.put(primaryCurrency, BigDecimal.ZERO);
+        }
+
+        void deposit(Money deposit) {
+            balances.compute(deposit.getCurrencyUnit(), (currency, money) ->
+                    (money == null) ? deposit.getAmount() : money.add(deposit.getAmount()));
+            history.add(String.format(TransfolutMessages.HISTORY_TRANSACTION, new LocalDateTime(System.currentTimeMillis()), deposit));
+            balances.entrySet().removeIf(balance -> balance.getValue().compareTo(BigDecimal.ZERO) == 0
+                    && !balance.getKey().equals(primaryCurrency));
+        }
+
+        void withdraw(Money withdrawal) {
+            balanceReadLock.lock();
+            try {
+                if(!balances.containsKey(withdrawal.getCurrencyUnit()) ||
+                        balances.get(withdrawal.getCurrencyUnit()).compareTo(withdrawal.getAmount()) < 0) {
+                    throw new IllegalArgumentException(String.format(TransfolutMessages.INSUFFICIENT_BALANCE, withdrawal));
+                }
+                deposit(withdrawal.negated());
+            } finally {
+                balanceReadLock.unlock();
+            }
+        }
+    }
+}
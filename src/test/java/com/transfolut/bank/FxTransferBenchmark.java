@@ -0,0 +1,99 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of same currency transfers against transfers converted through the {@link FxRates} table,
+ * and against converted transfers racing a thread which keeps reloading the whole table.
+ * The reloads never block transfers, which only read the table reference once per transfer.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.bank.FxTransferBenchmark [seconds]
+ */
+public class FxTransferBenchmark {
+
+    private static final Money AMOUNT = Money.of(CurrencyUnit.GBP, 1);
+    private static final Money FUNDS = Money.of(CurrencyUnit.GBP, 1_000_000_000L);
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+
+        for(int round = 0; round < 2; round++) {
+            report(round, "same currency", run(seconds, false, false));
+            report(round, "converted", run(seconds, true, false));
+            report(round, "converted+reload", run(seconds, true, true));
+        }
+    }
+
+    private static void report(int round, String name, double nanosPerTransfer) {
+        System.out.println(String.format("%s %-18s %,.0f ns/transfer", round == 0 ? "warmup" : "measure", name,
+                nanosPerTransfer));
+    }
+
+    /**
+     * Runs transfers between two fresh accounts on the calling thread for the given duration,
+     * so that every variant starts with the same history sizes and a collected heap.
+     * @param converted whether transfers are credited in another currency
+     * @param reload whether the rate table is reloaded every millisecond meanwhile,
+     *               far more often than any rate feed without starving the transferring thread
+     * @return the mean latency of a transfer in nanoseconds
+     */
+    private static double run(int seconds, boolean converted, boolean reload) throws InterruptedException {
+        BankService bankService = new BankService(0, () -> null);
+        bankService.loadFxRates(rates(BigDecimal.ONE));
+        long fromAcct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        long toAcct = bankService.createAccount(CurrencyUnit.EUR.getCode());
+        bankService.deposit(fromAcct, FUNDS);
+        CurrencyUnit creditCurrency = converted ? CurrencyUnit.EUR : CurrencyUnit.GBP;
+        Thread reloader = new Thread(() -> {
+            long reloads = 0;
+            try {
+                while(true) {
+                    bankService.loadFxRates(rates(BigDecimal.valueOf(1 + (++reloads % 100) / 1000.0)));
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                // Measurement finished
+            }
+        });
+        System.gc();
+        if(reload) {
+            reloader.start();
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        long transfers = 0;
+        long now;
+        do {
+            for(int i = 0; i < 1000; i++) {
+                bankService.transfer(fromAcct, toAcct, AMOUNT, creditCurrency);
+            }
+            transfers += 1000;
+            now = System.nanoTime();
+        } while(now < deadline);
+
+        reloader.interrupt();
+        if(reload) {
+            reloader.join();
+        }
+        return (double) (now - start) / transfers;
+    }
+
+    /**
+     * @return a table quoting about a hundred currencies, so that lookups are not flattered by a tiny table
+     */
+    private static FxRates rates(BigDecimal euroRate) {
+        Map<CurrencyUnit, BigDecimal> rates = new HashMap<>();
+        CurrencyUnit.registeredCurrencies().stream().limit(100)
+                .forEach(currency -> rates.put(currency, BigDecimal.valueOf(1.5)));
+        rates.put(CurrencyUnit.GBP, BigDecimal.ONE);
+        rates.put(CurrencyUnit.EUR, euroRate);
+        return new FxRates(CurrencyUnit.USD, rates);
+    }
+}
@@ -0,0 +1,52 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.util.Map;
+
+/**
+ * Places millions of outstanding holds expiring over a few seconds, and reports the cost of placing a hold
+ * and how late the holds are released. Holds wait in the timing wheel of the bank service, so releasing them
+ * never scans the outstanding holds.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.bank.HoldExpiryBenchmark [holds] [seconds]
+ */
+public class HoldExpiryBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final Money AMOUNT = Money.of(CurrencyUnit.GBP, 1);
+
+    public static void main(String[] args) throws InterruptedException {
+        int holds = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        BankService bankService = new BankService(0, () -> null);
+        long[] accounts = new long[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = bankService.createAccount(CurrencyUnit.GBP.getCode());
+            bankService.deposit(accounts[i], AMOUNT.multipliedBy(holds));
+        }
+
+        long start = System.currentTimeMillis();
+        long firstExpiry = start + seconds * 1000L;
+        long placeStart = System.nanoTime();
+        for(int i = 0; i < holds; i++) {
+            // Expiries are spread over one second, starting once all holds are outstanding
+            bankService.placeHold(accounts[i % ACCOUNTS], AMOUNT, firstExpiry + i % 1000);
+        }
+        long placeNanos = System.nanoTime() - placeStart;
+        Map<String, Long> placed = bankService.getMetrics();
+        System.out.println(String.format("placed %,d holds at %,.0f ns/hold, %,d outstanding when the first expires in %,d ms",
+                holds, (double) placeNanos / holds, placed.get("holds.pending"), firstExpiry - System.currentTimeMillis()));
+
+        while(bankService.getMetrics().get("holds.pending") > 0) {
+            Thread.sleep(10);
+        }
+        long drained = System.currentTimeMillis();
+        Map<String, Long> metrics = bankService.getMetrics();
+        System.out.println(String.format("expired %,d holds, last one released %,d ms after its expiry, "
+                        + "mean lag %.1f ms, maximum lag %,d ms", metrics.get("holds.expired"), drained - (firstExpiry + 999),
+                (double) metrics.get("timer.lagMillis.total") / metrics.get("timer.dispatched"),
+                metrics.get("timer.lagMillis.max")));
+    }
+}
@@ -0,0 +1,177 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.hamcrest.core.IsCollectionContaining.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the paging of accounts by {@link AccountWorkingSet}.
+ */
+public class TestAccountWorkingSet {
+
+    private static final int WORKING_SET_SIZE = 3;
+    private static final CurrencyUnit CURRENCY = CurrencyUnit.GBP;
+    private static final Money DEPOSIT = Money.of(CURRENCY, 100);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private BankService bankService;
+
+    @Before
+    public void setup() {
+        bankService = new BankService(WORKING_SET_SIZE, () -> folder.getRoot().toPath());
+    }
+
+    /**
+     * Tests that cold accounts are paged out and faulted back in with their balances and history.
+     */
+    @Test
+    public void testPageOutAndFaultIn() {
+        List<Long> accountNumbers = IntStream.range(0, 10)
+                .mapToObj(i -> bankService.createAccount(CURRENCY.getCurrencyCode()))
+                .collect(Collectors.toList());
+        accountNumbers.forEach(accountNumber -> bankService.deposit(accountNumber, DEPOSIT));
+        bankService.deposit(accountNumbers.get(0), Money.of(CurrencyUnit.EUR, 5));
+        bankService.placeHold(accountNumbers.get(1), Money.of(CURRENCY, 30));
+        accountNumbers.forEach(accountNumber -> bankService.getAccount(accountNumber));
+
+        assertTrue("Only the working set should be held in memory",
+                bankService.getMetrics().get("accounts.resident") <= WORKING_SET_SIZE);
+        assertTrue("Cold accounts should have been evicted", bankService.getMetrics().get("accounts.evictions") > 0);
+        assertThat("All accounts should still be listed", bankService.getBankAccounts(),
+                containsInAnyOrder(accountNumbers.toArray()));
+
+        BankAccount firstAccount = bankService.getAccount(accountNumbers.get(0)).get();
+        assertThat("Balances should survive paging", firstAccount.getBalances(),
+                containsInAnyOrder(DEPOSIT.toString(), Money.of(CurrencyUnit.EUR, 5).toString()));
+        assertThat("History should survive paging", firstAccount.getHistory(),
+                hasItem(containsString("Transaction of " + DEPOSIT)));
+        assertThat("Holds should survive paging", bankService.getAccount(accountNumbers.get(1)).get().getAvailableBalances(),
+                containsInAnyOrder(DEPOSIT.minus(30).toString()));
+        assertTrue("Faulting accounts back in should count as misses", bankService.getMetrics().get("accounts.misses") > 0);
+    }
+
+    /**
+     * Tests that transfers keep money consistent while their accounts are paged in and out.
+     */
+    @Test
+    public void testTransfersWhilePaging() throws InterruptedException {
+        List<Long> accountNumbers = IntStream.range(0, 8)
+                .mapToObj(i -> bankService.createAccount(CURRENCY.getCurrencyCode()))
+                .collect(Collectors.toList());
+        accountNumbers.forEach(accountNumber -> bankService.deposit(accountNumber, DEPOSIT));
+        Money increment = Money.of(CURRENCY, 1);
+
+        List<Thread> workers = IntStream.range(0, 4)
+                .mapToObj(thread -> new Thread(() -> IntStream.range(0, 200).forEach(i -> {
+                    long from = accountNumbers.get((thread + i) % accountNumbers.size());
+                    long to = accountNumbers.get((thread + i + 1) % accountNumbers.size());
+                    try {
+                        bankService.transfer(from, to, increment);
+                    } catch (IllegalArgumentException e) {
+                        // Insufficient balance is expected at times
+                    }
+                })))
+                .collect(Collectors.toList());
+        workers.forEach(Thread::start);
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        Money total = accountNumbers.stream()
+                .map(accountNumber -> Money.parse(bankService.getAccount(accountNumber).get().getBalances().get(0)))
+                .reduce(Money.zero(CURRENCY), Money::plus);
+        assertEquals("No money should have been created or lost", DEPOSIT.multipliedBy(accountNumbers.size()), total);
+    }
+
+    /**
+     * Tests that accounts created, faulted in and evicted by concurrent threads are never lost between the clock
+     * and the map, which used to leave acquiring threads spinning forever.
+     */
+    @Test(timeout = 60000)
+    public void testConcurrentFaultInAndCreation() throws InterruptedException {
+        List<Long> accountNumbers = IntStream.range(0, 6)
+                .mapToObj(i -> bankService.createAccount(CURRENCY.getCurrencyCode()))
+                .collect(Collectors.toList());
+        accountNumbers.forEach(accountNumber -> bankService.deposit(accountNumber, DEPOSIT));
+        Money increment = Money.of(CURRENCY, 1);
+
+        List<Thread> workers = IntStream.range(0, 4)
+                .mapToObj(thread -> new Thread(() -> IntStream.range(0, 500).forEach(i -> {
+                    if(i % 10 == thread) {
+                        bankService.createAccount(CURRENCY.getCurrencyCode());
+                    }
+                    long from = accountNumbers.get((thread * 7 + i) % accountNumbers.size());
+                    long to = accountNumbers.get((thread * 7 + i * 3 + 1) % accountNumbers.size());
+                    try {
+                        bankService.transfer(from, to, increment);
+                    } catch (IllegalArgumentException e) {
+                        // Insufficient balance or a transfer to the same account is expected at times
+                    }
+                })))
+                .collect(Collectors.toList());
+        workers.forEach(Thread::start);
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals("Every created account should be listed once", 6 + 4 * 50, bankService.getBankAccounts().size());
+        Money total = accountNumbers.stream()
+                .map(accountNumber -> Money.parse(bankService.getAccount(accountNumber).get().getBalances().get(0)))
+                .reduce(Money.zero(CURRENCY), Money::plus);
+        assertEquals("No money should have been created or lost", DEPOSIT.multipliedBy(accountNumbers.size()), total);
+        assertTrue("Only the working set should be held in memory",
+                bankService.getMetrics().get("accounts.resident") <= WORKING_SET_SIZE);
+    }
+
+    /**
+     * Tests that accounts are replayed in account number order, including paged out accounts,
+     * without faulting them back in.
+     */
+    @Test
+    public void testReplayAccounts() {
+        List<Long> accountNumbers = IntStream.range(0, 10)
+                .mapToObj(i -> bankService.createAccount(CURRENCY.getCurrencyCode()))
+                .sorted()
+                .collect(Collectors.toList());
+        accountNumbers.forEach(accountNumber -> bankService.deposit(accountNumber, DEPOSIT));
+        long misses = bankService.getMetrics().get("accounts.misses");
+
+        List<Long> createdAccounts = new ArrayList<>();
+        List<Money> transactions = new ArrayList<>();
+        bankService.replayAccounts(BankService.MINIMUM_ACCOUNT_NUMBER, BankService.MAXIMUM_ACCT_NUMBER + 1,
+                new LedgerListener() {
+                    @Override
+                    public void accountCreated(long bankAcctNumber, CurrencyUnit primaryCurrency, long timestamp) {
+                        createdAccounts.add(bankAcctNumber);
+                    }
+
+                    @Override
+                    public void transactionApplied(long bankAcctNumber, Money transaction, BigDecimal balanceAfter,
+                                                   long timestamp, long sequence) {
+                        transactions.add(transaction);
+                    }
+                });
+
+        assertEquals("All accounts should be replayed in order", accountNumbers, createdAccounts);
+        assertEquals("All transactions should be replayed", accountNumbers.size(), transactions.size());
+        assertEquals("Replaying should not fault accounts in", misses,
+                (long) bankService.getMetrics().get("accounts.misses"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link AuditTrail}.
+ */
+public class TestAuditTrail {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the changes applied by concurrent threads are all written, across several rolled over files.
+     */
+    @Test
+    public void testConcurrentChanges() throws Exception {
+        BankService bankService = new BankService(0, () -> null);
+        Path directory = folder.getRoot().toPath();
+        AuditTrail auditTrail = new AuditTrail(bankService, directory, 1024, "block", 16 * 1024);
+        auditTrail.start();
+        int threads = 4;
+        int deposits = 2000;
+        List<Thread> depositors = new ArrayList<>();
+        for(int i = 0; i < threads; i++) {
+            long acct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+            depositors.add(new Thread(() -> {
+                for(int deposit = 0; deposit < deposits; deposit++) {
+                    bankService.deposit(acct, DEPOSIT);
+                }
+            }));
+        }
+        depositors.forEach(Thread::start);
+        for(Thread depositor : depositors) {
+            depositor.join();
+        }
+        auditTrail.close();
+
+        List<String> lines = readTrail(directory);
+        assertEquals("Every account creation should be written", threads,
+                lines.stream().filter(line -> line.contains(",created,")).count());
+        assertEquals("Every deposit should be written", threads * deposits,
+                lines.stream().filter(line -> line.contains(",transaction,")).count());
+        Map<String, Long> metrics = auditTrail.getMetrics();
+        assertEquals("Every change should be reported written", Long.valueOf(threads + threads * deposits),
+                metrics.get("audit.written"));
+        assertTrue("The trail should have rolled over", metrics.get("audit.file") > 0);
+
+        // A new trail starts after the files already written
+        AuditTrail nextTrail = new AuditTrail(bankService, directory, 1024, "block", 16 * 1024);
+        assertEquals("The next trail should follow the last file", metrics.get("audit.file"),
+                nextTrail.getMetrics().get("audit.file"));
+    }
+
+    /**
+     * Tests that with the drop policy, changes published while the queue is full are dropped and counted in the trail.
+     */
+    @Test
+    public void testDropPolicy() throws IOException {
+        BankService bankService = new BankService(0, () -> null);
+        Path directory = folder.getRoot().toPath();
+        AuditTrail auditTrail = new AuditTrail(bankService, directory, 2, "drop", 1024 * 1024);
+        long acct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        for(int deposit = 0; deposit < 4; deposit++) {
+            bankService.deposit(acct, DEPOSIT);
+        }
+        assertEquals("Changes beyond the capacity should be dropped", Long.valueOf(3),
+                auditTrail.getMetrics().get("audit.dropped"));
+
+        auditTrail.start();
+        auditTrail.close();
+        List<String> lines = readTrail(directory);
+        assertEquals("Queued changes and dropped changes should be written", 4, lines.size());
+        assertTrue("The account creation should be written", lines.get(1).endsWith(",created," + acct + ",GBP,,,"));
+        assertTrue("The first deposit should be written", lines.get(2).contains(",transaction," + acct + ",GBP,1.00,1.00,"));
+        assertTrue("Dropped changes should be counted", lines.get(3).endsWith(",dropped,,,3,,"));
+    }
+
+    /**
+     * Tests that with the block policy, changes wait for the writer to make room in the queue.
+     */
+    @Test
+    public void testBlockPolicy() throws Exception {
+        BankService bankService = new BankService(0, () -> null);
+        Path directory = folder.getRoot().toPath();
+        AuditTrail auditTrail = new AuditTrail(bankService, directory, 2, "block", 1024 * 1024);
+        long acct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        Thread depositor = new Thread(() -> {
+            for(int deposit = 0; deposit < 10; deposit++) {
+                bankService.deposit(acct, DEPOSIT);
+            }
+        });
+        depositor.start();
+        while(auditTrail.getMetrics().get("audit.blocked") == 0) {
+            Thread.sleep(1);
+        }
+        assertTrue("The depositor should wait for the writer", depositor.isAlive());
+
+        auditTrail.start();
+        depositor.join();
+        auditTrail.close();
+        assertEquals("No change should be dropped", Long.valueOf(0), auditTrail.getMetrics().get("audit.dropped"));
+        assertEquals("Every change should be written", 12, readTrail(directory).size());
+    }
+
+    /**
+     * Helper method to read the lines of all files of a trail in order.
+     */
+    private static List<String> readTrail(Path directory) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : files.sorted().collect(Collectors.toList())) {
+                lines.addAll(Files.readAllLines(file));
+            }
+        }
+        return lines;
+    }
+}
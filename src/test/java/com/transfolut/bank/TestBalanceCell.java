@@ -0,0 +1,94 @@
+package com.transfolut.bank;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link BalanceCell}.
+ */
+public class TestBalanceCell {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("100.00");
+    private final AtomicLong sequencer = new AtomicLong();
+
+    /**
+     * Tests that credits and debits update the balance.
+     */
+    @Test
+    public void testCreditAndDebit() {
+        BalanceCell cell = newCell(BigDecimal.ZERO);
+
+        assertEquals("Credit should return the new balance", AMOUNT, cell.credit(AMOUNT).getAmount());
+        assertEquals("Debit should return the new balance", new BigDecimal("60.00"),
+                cell.debit(new BigDecimal("40.00")).getAmount());
+        assertEquals("Balance should have been updated", new BigDecimal("60.00"), cell.get());
+    }
+
+    /**
+     * Tests that a debit larger than the balance is refused and leaves the balance untouched.
+     */
+    @Test
+    public void testInsufficientDebit() {
+        BalanceCell cell = newCell(AMOUNT);
+
+        assertNull("Debit should have been refused", cell.debit(AMOUNT.add(BigDecimal.ONE)));
+        assertEquals("Balance should be untouched", AMOUNT, cell.get());
+    }
+
+    /**
+     * Tests that only zero balances can be retired and that retired cells refuse further updates.
+     */
+    @Test
+    public void testRetireIfZero() {
+        BalanceCell cell = newCell(AMOUNT);
+        assertFalse("Non zero balance should not be retired", cell.retireIfZero());
+
+        cell.debit(AMOUNT);
+        assertTrue("Zero balance should be retired", cell.retireIfZero());
+        assertNull("Retired cell holds no balance", cell.get());
+        assertNull("Retired cell should refuse credits", cell.credit(AMOUNT));
+        assertNull("Retired cell should refuse debits", cell.debit(BigDecimal.ZERO));
+    }
+
+    /**
+     * Tests that successive snapshots are ordered the way they were applied.
+     */
+    @Test
+    public void testSnapshotsOrdered() {
+        BalanceCell cell = newCell(BigDecimal.ZERO);
+        BalanceSnapshot first = cell.credit(AMOUNT);
+        BalanceSnapshot second = cell.debit(AMOUNT);
+
+        assertTrue("Later snapshot should sort after the earlier one", second.compareTo(first) > 0);
+        assertFalse("Later snapshot should not go back in time", second.getTimestamp() < first.getTimestamp());
+    }
+
+    /**
+     * Tests that held amounts cannot be debited or held again, and that a capture debits part of a hold and gives back the rest.
+     */
+    @Test
+    public void testHoldAndCapture() {
+        BalanceCell cell = newCell(AMOUNT);
+
+        assertTrue("Available amount should be held", cell.hold(new BigDecimal("60.00")));
+        assertFalse("Held amount should not be held again", cell.hold(new BigDecimal("50.00")));
+        assertNull("Held amount should not be debited", cell.debit(new BigDecimal("50.00")));
+        assertEquals("Held amount should stay in the balance", AMOUNT, cell.get());
+
+        BalanceSnapshot captured = cell.capture(new BigDecimal("60.00"), new BigDecimal("45.00"));
+        assertEquals("Captured amount should be debited", new BigDecimal("55.00"), captured.getAmount());
+        assertEquals("Rest of the hold should be given back", new BigDecimal("55.00"), captured.getAvailable());
+        assertTrue("Later snapshot should sort after the initial one", captured.getSequence() > 1);
+    }
+
+    private BalanceCell newCell(BigDecimal amount) {
+        return new BalanceCell(new BalanceSnapshot(amount, System.currentTimeMillis(), sequencer.incrementAndGet()), sequencer);
+    }
+}
@@ -6,7 +6,13 @@ import org.joda.money.Money;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
 import static org.hamcrest.collection.IsMapContaining.hasEntry;
 import static org.hamcrest.core.Is.is;
@@ -130,4 +136,105 @@ public class TestBankAccount {
     public void testWithdrawNewCurrency() {
         bankAccount.withdraw(DEPOSIT);
     }
+
+    /**
+     * Tests that concurrent withdrawals and deposits of a secondary currency never overdraw the balance
+     * or lose a deposit to the clean up of a zero balance, and that its zero balance is cleaned up at the end.
+     */
+    @Test
+    public void testConcurrentWithdrawals() throws InterruptedException {
+        int threads = 8;
+        int repeats = 500;
+        Money increment = Money.of(DEPOSIT.getCurrencyUnit(), 1);
+        bankAccount.deposit(increment.multipliedBy(threads * repeats / 4));
+        AtomicInteger successfulWithdrawals = new AtomicInteger();
+
+        // Odd threads deposit while even threads withdraw, so that the balance keeps hitting zero
+        List<Thread> workers = IntStream.range(0, threads)
+                .mapToObj(thread -> new Thread(() -> IntStream.range(0, repeats).forEach(repeat -> {
+                    if(thread % 2 == 1) {
+                        bankAccount.deposit(increment);
+                        return;
+                    }
+                    try {
+                        bankAccount.withdraw(increment);
+                        successfulWithdrawals.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        // Expected whenever the balance runs out
+                    }
+                })))
+                .collect(Collectors.toList());
+        workers.forEach(Thread::start);
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        int deposited = threads * repeats / 4 + threads / 2 * repeats;
+        Money remaining = increment.multipliedBy(deposited - successfulWithdrawals.get());
+        assertThat("Every deposit not withdrawn should remain", bankAccount.getBalances(), remaining.isZero()
+                ? containsInAnyOrder(INITIAL_BALANCE.toString())
+                : containsInAnyOrder(INITIAL_BALANCE.toString(), remaining.toString()));
+        if(!remaining.isZero()) {
+            bankAccount.withdraw(remaining);
+        }
+        assertThat("Only the primary currency balance should remain", bankAccount.getBalances(),
+                containsInAnyOrder(INITIAL_BALANCE.toString()));
+    }
+
+    /**
+     * Tests that balances can be looked up as they were at a past point in time,
+     * including currencies that have since been cleaned up.
+     */
+    @Test
+    public void testBalancesAt() throws InterruptedException {
+        Thread.sleep(2);
+        bankAccount.deposit(DEPOSIT);
+        Thread.sleep(2);
+        long afterDeposit = System.currentTimeMillis();
+        Thread.sleep(2);
+        bankAccount.withdraw(DEPOSIT);
+
+        assertThat("Both balances should have existed after the deposit", bankAccount.getBalancesAt(afterDeposit),
+                containsInAnyOrder(INITIAL_BALANCE.toString(), DEPOSIT.toString()));
+        assertThat("Only the primary currency balance should exist now", bankAccount.getBalancesAt(System.currentTimeMillis()),
+                containsInAnyOrder(INITIAL_BALANCE.toString()));
+        assertTrue("No balances should exist before the account was created", bankAccount.getBalancesAt(0L).isEmpty());
+    }
+
+    /**
+     * Tests that history entries record the balance left behind by each transaction.
+     */
+    @Test
+    public void testHistoryBalanceAfter() {
+        Money withdrawal = Money.of(INITIAL_CURRENCY, 400);
+        bankAccount.withdraw(withdrawal);
+
+        assertThat("History should record the balance after each transaction", bankAccount.getHistory(),
+                hasItem(containsString("Transaction of " + withdrawal.negated().toString()
+                        + ", balance " + INITIAL_BALANCE.minus(withdrawal).toString())));
+    }
+
+    /**
+     * Test that the version grows with every change to the account, but not with rejected operations.
+     */
+    @Test
+    public void testVersion() {
+        long version = bankAccount.getVersion();
+        bankAccount.deposit(DEPOSIT);
+        assertTrue("Deposit should bump the version", bankAccount.getVersion() > version);
+
+        version = bankAccount.getVersion();
+        try {
+            bankAccount.withdraw(INITIAL_BALANCE.multipliedBy(2));
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals("Rejected withdrawal should not bump the version", version, bankAccount.getVersion());
+
+        bankAccount.hold(INITIAL_BALANCE);
+        assertTrue("Hold should bump the version", bankAccount.getVersion() > version);
+        version = bankAccount.getVersion();
+        bankAccount.release(INITIAL_BALANCE);
+        assertTrue("Release should bump the version", bankAccount.getVersion() > version);
+    }
 }
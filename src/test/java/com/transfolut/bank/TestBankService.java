@@ -1,5 +1,6 @@
 package com.transfolut.bank;
 
+import com.transfolut.TransfolutMessages;
 import com.transfolut.bank.BankAccount;
 import com.transfolut.bank.BankService;
 import org.joda.money.CurrencyUnit;
@@ -9,6 +10,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
@@ -168,4 +172,129 @@ public class TestBankService {
 
         bankService.transfer(bankAccount.getBankAccountNumber(), newAccountNumber * 2, DEPOSIT);
     }
+
+    /**
+     * Tests that a transfer credited in another currency is converted with the loaded exchange rates.
+     */
+    @Test
+    public void testCrossCurrencyTransfer() {
+        long toAcctNumber = bankService.createAccount(CurrencyUnit.EUR.getCurrencyCode());
+        bankService.deposit(bankAccount.getBankAccountNumber(), DEPOSIT);
+        bankService.loadFxRates(new FxRates(CurrencyUnit.USD, rates("GBP", "0.8", "EUR", "0.9")));
+        try {
+            Money credit = bankService.transfer(bankAccount.getBankAccountNumber(), toAcctNumber,
+                    Money.of(PRIMARY_CURRENCY, 100), CurrencyUnit.EUR);
+
+            assertEquals("Amount should be converted through the cross rate", Money.of(CurrencyUnit.EUR, 112.5), credit);
+            assertThat("Amount should be debited in the transfer currency", bankAccount.getBalances(),
+                    containsInAnyOrder(DEPOSIT.minus(100).toString()));
+            assertThat("Amount should be credited in the converted currency",
+                    bankService.getAccount(toAcctNumber).get().getBalances(), containsInAnyOrder(credit.toString()));
+        } finally {
+            bankService.loadFxRates(FxRates.EMPTY);
+        }
+    }
+
+    /**
+     * Tests that a transfer into a currency without exchange rate is rejected before anything is debited.
+     */
+    @Test
+    public void testCrossCurrencyTransferWithoutRate() {
+        long toAcctNumber = bankService.createAccount(CurrencyUnit.EUR.getCurrencyCode());
+        bankService.deposit(bankAccount.getBankAccountNumber(), DEPOSIT);
+        bankService.loadFxRates(new FxRates(CurrencyUnit.USD, rates("GBP", "0.8")));
+        try {
+            bankService.transfer(bankAccount.getBankAccountNumber(), toAcctNumber, DEPOSIT, CurrencyUnit.EUR);
+            fail("Transfer without exchange rate should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Missing rate should be reported",
+                    String.format(TransfolutMessages.FX_RATE_NOT_FOUND, "GBP", "EUR"), e.getMessage());
+            assertThat("Nothing should be debited", bankAccount.getBalances(), containsInAnyOrder(DEPOSIT.toString()));
+        } finally {
+            bankService.loadFxRates(FxRates.EMPTY);
+        }
+    }
+
+    /**
+     * Tests that a hold reserves part of the balance without moving it, and that a release gives it back.
+     */
+    @Test
+    public void testHoldAndRelease() {
+        bankService.deposit(bankAccount.getBankAccountNumber(), DEPOSIT);
+        Hold hold = bankService.placeHold(bankAccount.getBankAccountNumber(), Money.of(PRIMARY_CURRENCY, 600));
+
+        assertThat("Held amount should stay in the balance", bankAccount.getBalances(), containsInAnyOrder(DEPOSIT.toString()));
+        assertThat("Held amount should not be available", bankAccount.getAvailableBalances(),
+                containsInAnyOrder(DEPOSIT.minus(600).toString()));
+        try {
+            bankService.withdraw(bankAccount.getBankAccountNumber(), Money.of(PRIMARY_CURRENCY, 500));
+            fail("Withdrawal of a held amount should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Insufficient balance should be reported",
+                    String.format(TransfolutMessages.INSUFFICIENT_BALANCE, Money.of(PRIMARY_CURRENCY, 500)), e.getMessage());
+        }
+
+        assertTrue("Hold should be released", bankService.releaseHold(hold.getId()));
+        assertFalse("Released hold should be forgotten", bankService.getHold(hold.getId()).isPresent());
+        assertFalse("Hold should only be released once", bankService.releaseHold(hold.getId()));
+        assertThat("Released amount should be available again", bankAccount.getAvailableBalances(),
+                containsInAnyOrder(DEPOSIT.toString()));
+    }
+
+    /**
+     * Tests that capturing part of a hold withdraws it and gives back the rest.
+     */
+    @Test
+    public void testCaptureHold() {
+        bankService.deposit(bankAccount.getBankAccountNumber(), DEPOSIT);
+        Hold hold = bankService.placeHold(bankAccount.getBankAccountNumber(), Money.of(PRIMARY_CURRENCY, 600));
+        try {
+            bankService.captureHold(hold.getId(), Money.of(PRIMARY_CURRENCY, 700));
+            fail("Capture beyond the held amount should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid capture should be reported", String.format(TransfolutMessages.INVALID_CAPTURE_AMOUNT,
+                    Money.of(PRIMARY_CURRENCY, 700), hold.getAmount()), e.getMessage());
+        }
+
+        assertEquals("Captured amount should be returned", Money.of(PRIMARY_CURRENCY, 450),
+                bankService.captureHold(hold.getId(), Money.of(PRIMARY_CURRENCY, 450)));
+        assertThat("Captured amount should be withdrawn", bankAccount.getBalances(),
+                containsInAnyOrder(DEPOSIT.minus(450).toString()));
+        assertThat("Rest of the hold should be available again", bankAccount.getAvailableBalances(),
+                containsInAnyOrder(DEPOSIT.minus(450).toString()));
+        assertFalse("Captured hold should be forgotten", bankService.getHold(hold.getId()).isPresent());
+    }
+
+    /**
+     * Tests that a hold which is neither captured nor released is released at its expiry time.
+     */
+    @Test
+    public void testHoldExpiry() throws InterruptedException {
+        bankService.deposit(bankAccount.getBankAccountNumber(), DEPOSIT);
+        Hold hold = bankService.placeHold(bankAccount.getBankAccountNumber(), DEPOSIT, System.currentTimeMillis() + 50);
+        assertThat("Held amount should not be available", bankAccount.getAvailableBalances(),
+                containsInAnyOrder(Money.zero(PRIMARY_CURRENCY).toString()));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!bankAccount.getAvailableBalances().contains(DEPOSIT.toString())) {
+            assertTrue("Hold should expire", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertFalse("Expired hold should be forgotten", bankService.getHold(hold.getId()).isPresent());
+        try {
+            bankService.captureHold(hold.getId(), null);
+            fail("Expired hold should not be captured");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Missing hold should be reported",
+                    String.format(TransfolutMessages.HOLD_NOT_FOUND, hold.getId()), e.getMessage());
+        }
+    }
+
+    private static Map<CurrencyUnit, BigDecimal> rates(String... currenciesAndRates) {
+        Map<CurrencyUnit, BigDecimal> rates = new HashMap<>();
+        for(int i = 0; i < currenciesAndRates.length; i += 2) {
+            rates.put(CurrencyUnit.of(currenciesAndRates[i]), new BigDecimal(currenciesAndRates[i + 1]));
+        }
+        return rates;
+    }
 }
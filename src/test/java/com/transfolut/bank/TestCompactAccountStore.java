@@ -0,0 +1,209 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link CompactAccountStore}.
+ */
+public class TestCompactAccountStore {
+
+    private static final long ACCT_NUMBER = 12345678L;
+    private static final long OTHER_ACCT_NUMBER = 87654321L;
+    // Small chunks, so that the tests map several of them
+    private static final int RECORDS_PER_CHUNK = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private CompactAccountStore store;
+
+    @Before
+    public void setup() {
+        store = new CompactAccountStore(folder.getRoot().toPath(), 16, RECORDS_PER_CHUNK);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    /**
+     * Test that accounts created after a clear reuse the records file without any balance of the cleared accounts.
+     */
+    @Test
+    public void testClearReusesRecords() {
+        store.createAccount(ACCT_NUMBER, CurrencyUnit.GBP);
+        store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 100));
+        store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.EUR, 5));
+        long mappedBytes = store.getMappedBytes();
+
+        store.clear();
+        assertFalse("Cleared account should be gone", store.contains(ACCT_NUMBER));
+        assertTrue("Account should be created after the clear", store.createAccount(OTHER_ACCT_NUMBER, CurrencyUnit.USD));
+        assertEquals("New account should only have its primary balance", Collections.singletonList("USD 0.00"),
+                store.getBalances(OTHER_ACCT_NUMBER));
+        assertEquals("Mapped chunks should be reused", mappedBytes, store.getMappedBytes());
+    }
+
+    /**
+     * Test that balances follow the rules of a bank account, the primary balance staying at zero.
+     */
+    @Test
+    public void testBalances() {
+        assertTrue("Account should be created", store.createAccount(ACCT_NUMBER, CurrencyUnit.GBP));
+        assertFalse("Account should not be created twice", store.createAccount(ACCT_NUMBER, CurrencyUnit.EUR));
+        assertEquals("Primary balance should start at zero", Collections.singletonList("GBP 0.00"),
+                store.getBalances(ACCT_NUMBER));
+
+        store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 100));
+        store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.EUR, 20.5));
+        assertEquals("Deposits should be added to their currency", Arrays.asList("GBP 100.00", "EUR 20.50"),
+                store.getBalances(ACCT_NUMBER));
+
+        store.withdraw(ACCT_NUMBER, Money.of(CurrencyUnit.EUR, 20.5));
+        store.withdraw(ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 100));
+        assertEquals("Only the primary balance should stay at zero", Collections.singletonList("GBP 0.00"),
+                store.getBalances(ACCT_NUMBER));
+
+        checkRejected(() -> store.withdraw(ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 1)),
+                String.format(TransfolutMessages.INSUFFICIENT_BALANCE, "GBP 1.00"));
+        checkRejected(() -> store.deposit(OTHER_ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 1)),
+                String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, OTHER_ACCT_NUMBER));
+    }
+
+    /**
+     * Test that a record holds a bounded number of currencies, and that a rejected transfer changes nothing.
+     */
+    @Test
+    public void testTooManyCurrencies() {
+        store.createAccount(ACCT_NUMBER, CurrencyUnit.GBP);
+        store.createAccount(OTHER_ACCT_NUMBER, CurrencyUnit.CHF);
+        store.deposit(OTHER_ACCT_NUMBER, Money.of(CurrencyUnit.CHF, 10));
+        List<CurrencyUnit> currencies = Arrays.asList(CurrencyUnit.EUR, CurrencyUnit.USD, CurrencyUnit.JPY);
+        currencies.forEach(currency -> store.deposit(ACCT_NUMBER, Money.of(currency, BigDecimal.ONE)));
+
+        String tooMany = String.format(TransfolutMessages.TOO_MANY_CURRENCIES, ACCT_NUMBER,
+                CompactAccountStore.MAX_CURRENCIES);
+        checkRejected(() -> store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.CHF, 1)), tooMany);
+        checkRejected(() -> store.transfer(OTHER_ACCT_NUMBER, ACCT_NUMBER, Money.of(CurrencyUnit.CHF, 1)), tooMany);
+        assertEquals("Rejected transfer should not debit the sending account", Collections.singletonList("CHF 10.00"),
+                store.getBalances(OTHER_ACCT_NUMBER));
+
+        store.withdraw(ACCT_NUMBER, Money.of(CurrencyUnit.USD, 1));
+        store.transfer(OTHER_ACCT_NUMBER, ACCT_NUMBER, Money.of(CurrencyUnit.CHF, 1));
+        assertEquals("Freed balance should be reused", Arrays.asList("GBP 0.00", "EUR 1.00", "CHF 1.00", "JPY 1"),
+                store.getBalances(ACCT_NUMBER));
+    }
+
+    /**
+     * Test that amounts which are not positive are rejected, and that a transfer which would overflow the receiving
+     * balance is rejected before the sending account is debited.
+     */
+    @Test
+    public void testInvalidAmounts() {
+        store.createAccount(ACCT_NUMBER, CurrencyUnit.GBP);
+        store.createAccount(OTHER_ACCT_NUMBER, CurrencyUnit.GBP);
+        store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 10));
+        Money negative = Money.of(CurrencyUnit.GBP, -1);
+        String invalid = String.format(TransfolutMessages.INVALID_AMOUNT, negative.getAmount());
+        checkRejected(() -> store.deposit(ACCT_NUMBER, negative), invalid);
+        checkRejected(() -> store.withdraw(ACCT_NUMBER, negative), invalid);
+        checkRejected(() -> store.transfer(ACCT_NUMBER, OTHER_ACCT_NUMBER, negative), invalid);
+        checkRejected(() -> store.deposit(ACCT_NUMBER, Money.zero(CurrencyUnit.GBP)),
+                String.format(TransfolutMessages.INVALID_AMOUNT, Money.zero(CurrencyUnit.GBP).getAmount()));
+
+        Money largest = Money.ofMinor(CurrencyUnit.GBP, Long.MAX_VALUE);
+        store.deposit(OTHER_ACCT_NUMBER, largest);
+        checkRejected(() -> store.transfer(ACCT_NUMBER, OTHER_ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 1)),
+                String.format(TransfolutMessages.BALANCE_TOO_LARGE, OTHER_ACCT_NUMBER, "GBP 1.00"));
+        assertEquals("Rejected transfer should not debit the sending account", Collections.singletonList("GBP 10.00"),
+                store.getBalances(ACCT_NUMBER));
+        assertEquals("Rejected transfer should not credit the receiving account",
+                Collections.singletonList(largest.toString()), store.getBalances(OTHER_ACCT_NUMBER));
+    }
+
+    /**
+     * Test that accounts spread over many chunks and a grown index are all found again.
+     */
+    @Test
+    public void testGrowth() {
+        int accounts = RECORDS_PER_CHUNK * 25;
+        for(int i = 0; i < accounts; i++) {
+            store.createAccount(BankService.MINIMUM_ACCOUNT_NUMBER + i * 7, CurrencyUnit.GBP);
+            store.deposit(BankService.MINIMUM_ACCOUNT_NUMBER + i * 7, Money.ofMinor(CurrencyUnit.GBP, i + 1));
+        }
+        assertEquals("All accounts should be stored", accounts, store.size());
+        assertEquals("Records should be mapped chunk by chunk",
+                (long) accounts * CompactAccountStore.RECORD_SIZE, store.getMappedBytes());
+        for(int i = 0; i < accounts; i++) {
+            assertEquals("Every account should keep its own balance",
+                    Collections.singletonList(Money.ofMinor(CurrencyUnit.GBP, i + 1).toString()),
+                    store.getBalances(BankService.MINIMUM_ACCOUNT_NUMBER + i * 7));
+        }
+        assertFalse("Unknown accounts should not be found", store.contains(BankService.MINIMUM_ACCOUNT_NUMBER + 1));
+    }
+
+    /**
+     * Test that concurrent transfers in both directions neither lose money nor deadlock.
+     */
+    @Test
+    public void testConcurrentTransfers() throws Exception {
+        store.createAccount(ACCT_NUMBER, CurrencyUnit.GBP);
+        store.createAccount(OTHER_ACCT_NUMBER, CurrencyUnit.GBP);
+        store.deposit(ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 1000));
+        store.deposit(OTHER_ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 1000));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for(int worker = 0; worker < 4; worker++) {
+            boolean forward = worker % 2 == 0;
+            workers.add(executor.submit(() -> {
+                for(int i = 0; i < 10000; i++) {
+                    try {
+                        store.transfer(forward ? ACCT_NUMBER : OTHER_ACCT_NUMBER,
+                                forward ? OTHER_ACCT_NUMBER : ACCT_NUMBER, Money.of(CurrencyUnit.GBP, 1));
+                    } catch (IllegalArgumentException e) {
+                        // Insufficient balance while the other direction catches up
+                    }
+                }
+            }));
+        }
+        for(Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        long total = Money.parse(store.getBalances(ACCT_NUMBER).get(0)).getAmountMinorLong()
+                + Money.parse(store.getBalances(OTHER_ACCT_NUMBER).get(0)).getAmountMinorLong();
+        assertEquals("Transfers should neither create nor lose money", 200000, total);
+    }
+
+    private static void checkRejected(Runnable operation, String message) {
+        try {
+            operation.run();
+            fail("Operation should have been rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Incorrect rejection message", message, e.getMessage());
+        }
+    }
+}
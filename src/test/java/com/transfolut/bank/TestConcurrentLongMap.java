@@ -0,0 +1,99 @@
+package com.transfolut.bank;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ConcurrentLongMap}.
+ */
+public class TestConcurrentLongMap {
+
+    /**
+     * Test that random puts and removes, which grow and rebuild the tables many times, match a plain map.
+     */
+    @Test
+    public void testAgainstHashMap() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for(int i = 0; i < 200_000; i++) {
+            long key = BankService.MINIMUM_ACCOUNT_NUMBER + random.nextInt(50_000);
+            if(random.nextInt(3) == 0) {
+                String value = map.get(key);
+                assertEquals("Removal should only succeed for the current value", expected.remove(key) != null,
+                        value != null && map.remove(key, value));
+            } else {
+                String value = String.valueOf(i);
+                assertEquals("Existing value should be kept", expected.putIfAbsent(key, value),
+                        map.putIfAbsent(key, value));
+            }
+        }
+        assertEquals("Sizes should match", expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals("Values should match", value, map.get(key)));
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals("Keys should match", expected.keySet().stream().mapToLong(Long::longValue).sorted().boxed()
+                .collect(Collectors.toList()), Arrays.stream(keys).boxed()
+                .collect(Collectors.toList()));
+
+        assertFalse("Stale value should not be removed", map.remove(keys[0], "stale"));
+        map.clear();
+        assertEquals("Map should be empty", 0, map.size());
+        assertNull("Cleared keys should not be found", map.get(keys[0]));
+    }
+
+    /**
+     * Test that concurrent computations of the same keys compute every value once,
+     * while lookups keep finding the keys added before the map started growing.
+     */
+    @Test
+    public void testConcurrentComputeIfAbsent() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        int initialKeys = 1000;
+        for(long key = 1; key <= initialKeys; key++) {
+            map.putIfAbsent(key, key);
+        }
+        AtomicInteger computations = new AtomicInteger();
+        int keys = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for(int worker = 0; worker < 4; worker++) {
+            workers.add(executor.submit(() -> {
+                for(long key = initialKeys + 1; key <= initialKeys + keys; key++) {
+                    assertEquals("Computed value should be returned", Long.valueOf(key),
+                            map.computeIfAbsent(key, newKey -> {
+                                computations.incrementAndGet();
+                                return newKey;
+                            }));
+                    long existing = 1 + key % initialKeys;
+                    assertEquals("Existing keys should be found while the map grows", Long.valueOf(existing),
+                            map.get(existing));
+                }
+            }));
+        }
+        for(Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        assertEquals("Every value should be computed once", keys, computations.get());
+        assertEquals("All keys should be added", initialKeys + keys, map.size());
+        assertTrue("Null computations should not add a key", map.computeIfAbsent(-1, key -> null) == null
+                && map.get(-1) == null);
+    }
+}
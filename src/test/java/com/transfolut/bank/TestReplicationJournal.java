@@ -0,0 +1,242 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ReplicationJournal} and {@link JournalFollower}.
+ */
+public class TestReplicationJournal {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private static final Money FOREIGN_DEPOSIT = Money.of(CurrencyUnit.EUR, 5);
+    private static final Money TRANSFER = Money.of(CurrencyUnit.GBP, 30);
+    private static final int CAPACITY = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private BankService primary;
+    private Path directory;
+    private ReplicationJournal journal;
+    private JournalFollower follower;
+
+    @Before
+    public void setUp() throws IOException {
+        primary = new BankService(bankAcctNumber -> true);
+        directory = folder.newFolder().toPath();
+        journal = new ReplicationJournal(primary, directory, 0, CAPACITY, Long.MAX_VALUE);
+        journal.start();
+    }
+
+    @After
+    public void tearDown() {
+        if(follower != null) {
+            follower.close();
+        }
+        journal.close();
+    }
+
+    /**
+     * Test that a follower ends up with the same balances, history and past balances as the primary.
+     */
+    @Test
+    public void testFollowerReplicatesPrimary() throws InterruptedException {
+        BankService replica = startFollower();
+        long[] accounts = applyOperations();
+        awaitReplication(7);
+
+        for(long account : accounts) {
+            BankAccount primaryAccount = primary.getAccount(account).get();
+            BankAccount replicatedAccount = replica.getAccount(account).get();
+            assertEquals("Balances should be replicated", sorted(primaryAccount.getBalances()),
+                    sorted(replicatedAccount.getBalances()));
+            assertEquals("History should be replicated", primaryAccount.getHistory(), replicatedAccount.getHistory());
+            long now = System.currentTimeMillis();
+            assertEquals("Past balances should be replicated", sorted(primaryAccount.getBalancesAt(now)),
+                    sorted(replicatedAccount.getBalancesAt(now)));
+        }
+        assertEquals("Follower should be caught up", 0, follower.getLagRecords());
+    }
+
+    /**
+     * Test that a follower started after the primary replays the journal from its start.
+     */
+    @Test
+    public void testLateFollowerReplaysJournal() throws InterruptedException {
+        long[] accounts = applyOperations();
+        BankService replica = startFollower();
+        awaitReplication(7);
+        assertEquals("All accounts should be replicated", sorted(primary.getBankAccounts()),
+                sorted(replica.getBankAccounts()));
+        assertEquals("Balances should be replicated", primary.getAccount(accounts[1]).get().getBalances(),
+                replica.getAccount(accounts[1]).get().getBalances());
+    }
+
+    /**
+     * Test that the replication is reported in the metrics of both sides.
+     */
+    @Test
+    public void testReplicationMetrics() throws InterruptedException {
+        BankService replica = startFollower();
+        applyOperations();
+        awaitReplication(7);
+        assertEquals("Journal should count its records", Long.valueOf(7), primary.getMetrics().get("journal.records"));
+        assertEquals("Journal should count its followers", Long.valueOf(1), primary.getMetrics().get("journal.followers"));
+        assertEquals("Follower should count applied records", Long.valueOf(7),
+                replica.getMetrics().get("replication.applied"));
+        assertEquals("Follower should be connected", Long.valueOf(1), replica.getMetrics().get("replication.connected"));
+    }
+
+    /**
+     * Test that the journal rolls over and snapshots the accounts, deleting the segments preceding the snapshot,
+     * and that a follower started afterwards replicates the primary from the snapshot.
+     */
+    @Test
+    public void testLateFollowerStartsFromSnapshot() throws InterruptedException, IOException {
+        journal.close();
+        Files.createFile(directory.resolve("journal-0000000000000001.log"));
+        journal = new ReplicationJournal(primary, directory, 0, CAPACITY, 512);
+        journal.start();
+        assertFalse("Journal of a previous run should be deleted",
+                Files.exists(directory.resolve("journal-0000000000000001.log")));
+
+        List<long[]> accounts = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            accounts.add(applyOperations());
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while((primary.getMetrics().get("journal.records") < 140 || primary.getMetrics().get("journal.snapshots") == 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("Journal should have been snapshotted", primary.getMetrics().get("journal.snapshots") > 0);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue("Segments preceding the snapshot should be deleted",
+                    files.filter(file -> file.getFileName().toString().startsWith("journal-")).count() < 10);
+        }
+
+        BankService replica = startFollower();
+        awaitReplication(140);
+        for(long[] pair : accounts) {
+            for(long account : pair) {
+                BankAccount primaryAccount = primary.getAccount(account).get();
+                BankAccount replicatedAccount = replica.getAccount(account).get();
+                assertEquals("Balances should be replicated", sorted(primaryAccount.getBalances()),
+                        sorted(replicatedAccount.getBalances()));
+                assertEquals("History should be replicated once", primaryAccount.getHistory(),
+                        replicatedAccount.getHistory());
+            }
+        }
+    }
+
+    /**
+     * Test that changes wait for room while the queue of the journal is full, and go through once it is written.
+     */
+    @Test
+    public void testFullQueueHoldsBackChanges() throws InterruptedException {
+        journal.close();
+        journal = new ReplicationJournal(primary, directory, 0, 4, Long.MAX_VALUE);
+        Thread changes = new Thread(this::applyOperations);
+        changes.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while(primary.getMetrics().get("journal.blocked") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Changes should wait for room", Long.valueOf(1), primary.getMetrics().get("journal.blocked"));
+        assertEquals("Queue should be full", Long.valueOf(4), primary.getMetrics().get("journal.pending"));
+        assertEquals("Writer should not be running yet", Long.valueOf(0), primary.getMetrics().get("journal.writer.running"));
+
+        journal.start();
+        changes.join(10000);
+        assertFalse("Changes should go through once written", changes.isAlive());
+        startFollower();
+        awaitReplication(7);
+        assertEquals("Writer should be running", Long.valueOf(1), primary.getMetrics().get("journal.writer.running"));
+    }
+
+    /**
+     * Test that the writer keeps the records it fails to write and writes them once the journal can be written again.
+     */
+    @Test
+    public void testWriterRecoversFromFailure() throws InterruptedException, IOException {
+        journal.close();
+        journal = new ReplicationJournal(primary, directory, 0, CAPACITY, 512);
+        journal.start();
+        // Rolling over to a new segment fails while the directory is missing
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+        for(int i = 0; i < 20; i++) {
+            applyOperations();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while(primary.getMetrics().get("journal.writer.failing") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Writer should report its failure", Long.valueOf(1), primary.getMetrics().get("journal.writer.failing"));
+        assertTrue("Writer should count its failures", primary.getMetrics().get("journal.writer.failures") > 0);
+        assertTrue("Records should wait to be written", primary.getMetrics().get("journal.records") < 140);
+
+        Files.createDirectories(directory);
+        deadline = System.currentTimeMillis() + 10000;
+        while(primary.getMetrics().get("journal.records") < 140 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Every record should be written", Long.valueOf(140), primary.getMetrics().get("journal.records"));
+        assertEquals("Writer should have recovered", Long.valueOf(0), primary.getMetrics().get("journal.writer.failing"));
+        assertEquals("Writer should be running", Long.valueOf(1), primary.getMetrics().get("journal.writer.running"));
+    }
+
+    private BankService startFollower() {
+        BankService replica = new BankService(bankAcctNumber -> true);
+        follower = new JournalFollower(replica, "localhost", journal.getPort());
+        follower.start();
+        return replica;
+    }
+
+    /**
+     * Helper method applying seven changes to two accounts of the primary.
+     */
+    private long[] applyOperations() {
+        long from = primary.createAccount("GBP");
+        long to = primary.createAccount("GBP");
+        primary.deposit(from, DEPOSIT);
+        primary.deposit(from, FOREIGN_DEPOSIT);
+        primary.withdraw(from, FOREIGN_DEPOSIT);
+        primary.transfer(from, to, TRANSFER);
+        return new long[]{from, to};
+    }
+
+    private void awaitReplication(long records) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(follower.getAppliedRecords() < records && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("Follower should have applied the journal", follower.getAppliedRecords() >= records);
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(List<T> list) {
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,190 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link TieredHistory} and the {@link HistorySegmentStore} it spills to.
+ */
+public class TestTieredHistory {
+
+    private static final int RETENTION = 10;
+    private static final CurrencyUnit CURRENCY = CurrencyUnit.GBP;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private HistorySegmentStore store;
+
+    @Before
+    public void setup() {
+        // Small segments so that the tests roll over several segment files
+        store = new HistorySegmentStore(folder.getRoot().toPath(), 512);
+    }
+
+    /**
+     * Tests that old entries are spilled while the full history stays readable in order.
+     */
+    @Test
+    public void testSpilledHistoryReadBack() {
+        BankAccount bankAccount = new BankAccount(12345678L, CURRENCY, new TieredHistory(store, RETENTION));
+        IntStream.rangeClosed(1, 100).forEach(amount -> bankAccount.deposit(Money.of(CURRENCY, amount)));
+
+        List<String> history = bankAccount.getHistory();
+        assertEquals("Creation and all deposits should be in the history", 101, history.size());
+        assertThat("Oldest entry should come first", history.get(0), containsString("Bank account created."));
+        IntStream.rangeClosed(1, 100).forEach(amount -> assertThat("Deposits should be in order", history.get(amount),
+                containsString("Transaction of " + Money.of(CURRENCY, amount))));
+        File[] segments = folder.getRoot().listFiles();
+        assertTrue("Spilled entries should have rolled over several segments", segments != null && segments.length > 1);
+    }
+
+    /**
+     * Tests that the heap only holds a bounded number of entries.
+     */
+    @Test
+    public void testInHeapRetention() {
+        TieredHistory history = new TieredHistory(store, RETENTION);
+        IntStream.range(0, 1000).forEach(i -> history.add(HistoryEntry.accountCreated(i)));
+
+        assertTrue("At most twice the retention should be kept on the heap", history.getInHeapSize() < 2 * RETENTION);
+        assertEquals("All entries should be readable", IntStream.range(0, 1000).boxed().collect(Collectors.toList()),
+                history.getEntries().stream().map(entry -> (int) entry.getTimestamp()).collect(Collectors.toList()));
+    }
+
+    /**
+     * Tests that the latest transaction of every currency at a point in time is found in spilled and in heap entries,
+     * by timestamp and then by sequence.
+     */
+    @Test
+    public void testLatestTransactionsAt() {
+        TieredHistory history = new TieredHistory(store, RETENTION);
+        history.add(HistoryEntry.accountCreated(0));
+        IntStream.rangeClosed(1, 100).forEach(i -> history.add(HistoryEntry.transaction(Money.of(CURRENCY, 1),
+                new BalanceSnapshot(new BigDecimal(i), (i + 1) / 2, i))));
+        history.add(HistoryEntry.transaction(Money.of(CurrencyUnit.EUR, 5), new BalanceSnapshot(new BigDecimal(5), 20, 101)));
+
+        assertTrue("Entries should have been spilled", history.getInHeapSize() < 2 * RETENTION);
+        assertTrue("No transaction should exist before the first one", history.getLatestTransactionsAt(0).isEmpty());
+        Map<CurrencyUnit, HistoryEntry> latest = history.getLatestTransactionsAt(30);
+        assertEquals("Latest spilled balance should be found", Money.of(CURRENCY, 60), latest.get(CURRENCY).getBalanceAfter());
+        assertEquals("Latest balance of every currency should be found", Money.of(CurrencyUnit.EUR, 5),
+                latest.get(CurrencyUnit.EUR).getBalanceAfter());
+        assertEquals("Latest balance should be found in the heap", Money.of(CURRENCY, 100),
+                history.getLatestTransactionsAt(Long.MAX_VALUE).get(CURRENCY).getBalanceAfter());
+    }
+
+    /**
+     * Tests that the latest transaction at every point in time is found when transactions are replicated out of order,
+     * both across spilled blocks and within the heap.
+     */
+    @Test
+    public void testLatestTransactionsAtOutOfOrder() {
+        TieredHistory history = new TieredHistory(store, RETENTION);
+        Random random = new Random(42);
+        List<HistoryEntry> entries = IntStream.range(0, 500).mapToObj(i -> HistoryEntry.transaction(Money.of(CURRENCY, 1),
+                new BalanceSnapshot(new BigDecimal(i), i + random.nextInt(30), i))).collect(Collectors.toList());
+        entries.forEach(history::add);
+
+        for(long timestamp = 0; timestamp < 540; timestamp++) {
+            long at = timestamp;
+            Money expected = entries.stream().filter(entry -> entry.getTimestamp() <= at)
+                    .reduce((current, candidate) -> candidate.isLaterThan(current) ? candidate : current)
+                    .map(HistoryEntry::getBalanceAfter).orElse(null);
+            HistoryEntry latest = history.getLatestTransactionsAt(timestamp).get(CURRENCY);
+            assertEquals("Latest balance should be found at " + timestamp, expected,
+                    latest == null ? null : latest.getBalanceAfter());
+        }
+    }
+
+    /**
+     * Tests that blocks are read back whether their segment is still written to or sealed,
+     * and that a temporary store deletes its segments once closed.
+     */
+    @Test
+    public void testTemporaryStoreDeletedOnClose() throws IOException {
+        Path directory = folder.newFolder("temporary").toPath();
+        HistorySegmentStore temporaryStore = new HistorySegmentStore(directory, 512, true);
+        List<Long> addresses = IntStream.range(0, 50)
+                .mapToObj(i -> temporaryStore.append(Collections.singletonList(HistoryEntry.accountCreated(i))))
+                .collect(Collectors.toList());
+        IntStream.range(0, 50).forEach(i -> assertEquals("Every block should be read back", i,
+                temporaryStore.read(addresses.get(i)).get(0).getTimestamp()));
+
+        temporaryStore.close();
+        assertFalse("Temporary segments should be deleted", Files.exists(directory));
+    }
+
+    /**
+     * Tests that blocks keep being read back from their mapped window while other blocks are spilled to the same
+     * window, including windows completed between the moment a read looked at them and the moment it mapped them.
+     */
+    @Test(timeout = 60000)
+    public void testReadWhileSpilling() throws Exception {
+        HistorySegmentStore windowedStore = new HistorySegmentStore(folder.newFolder("windowed").toPath(), 1024 * 1024,
+                false, 256);
+        int blocks = 50000;
+        long[] addresses = new long[blocks];
+        AtomicInteger spilled = new AtomicInteger();
+        Thread spiller = new Thread(() -> IntStream.range(0, blocks).forEach(i -> {
+            addresses[i] = windowedStore.append(Collections.singletonList(HistoryEntry.accountCreated(i)));
+            spilled.incrementAndGet();
+        }));
+        AtomicReference<Throwable> readFailure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while(spilled.get() < blocks) {
+                    int written = spilled.get();
+                    for(int i = Math.max(0, written - 10); i < written; i++) {
+                        assertEquals("Every block should be read back", i, windowedStore.read(addresses[i]).get(0).getTimestamp());
+                    }
+                }
+            } catch (Throwable e) {
+                readFailure.set(e);
+            }
+        });
+        spiller.start();
+        reader.start();
+        spiller.join();
+        reader.join();
+
+        assertEquals("Reads racing with the spill should succeed", null, readFailure.get());
+        IntStream.range(0, blocks).forEach(i -> assertEquals("Every block should be read back once spilled", i,
+                windowedStore.read(addresses[i]).get(0).getTimestamp()));
+        windowedStore.close();
+    }
+
+    /**
+     * Tests that a history without retention is kept on the heap in full.
+     */
+    @Test
+    public void testInHeapOnly() {
+        TieredHistory history = TieredHistory.inHeap();
+        IntStream.range(0, 100).forEach(i -> history.add(HistoryEntry.accountCreated(i)));
+
+        assertEquals("All entries should be kept on the heap", 100, history.getInHeapSize());
+    }
+}
@@ -0,0 +1,86 @@
+package com.transfolut.bank;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link TimingWheel}.
+ */
+public class TestTimingWheel {
+
+    private static final long TICK = 10;
+
+    /**
+     * Tests that timeouts expire at the end of the tick they are due in and never before their deadline.
+     */
+    @Test
+    public void testExpiry() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("second", 25);
+        wheel.schedule("first", 10);
+
+        assertTrue("Nothing should be due yet", wheel.advanceTo(9).isEmpty());
+        assertEquals("First timeout should expire", "first", wheel.advanceTo(29).get(0).getPayload());
+        assertEquals("Second timeout should expire at the end of its tick", "second",
+                wheel.advanceTo(30).get(0).getPayload());
+        assertEquals("Wheel should be empty", 0, wheel.size());
+    }
+
+    /**
+     * Tests that timeouts far beyond the lowest level are cascaded down and expire on time.
+     */
+    @Test
+    public void testCascade() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for(int i = 0; i < 10000; i++) {
+            long deadline = 1 + (long) (random.nextDouble() * TICK * 256 * 256 * 300);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        Set<Long> expired = new HashSet<>();
+        long now = 0;
+        while(wheel.size() > 0) {
+            now += 1 + random.nextInt((int) TICK * 5000);
+            for(TimingWheel.Timeout<Long> timeout : wheel.advanceTo(now)) {
+                assertTrue("Timeout should not expire before its deadline", timeout.getDeadlineMillis() <= now);
+                assertTrue("Timeout should expire in the advance following its deadline",
+                        timeout.getDeadlineMillis() > now - TICK * 5000 - TICK);
+                assertTrue("Timeout should expire once", expired.add(timeout.getPayload()));
+            }
+        }
+        assertEquals("All timeouts should expire", new HashSet<>(deadlines), expired);
+    }
+
+    /**
+     * Tests that cancelled timeouts never expire.
+     */
+    @Test
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 100);
+        wheel.schedule("kept", 100);
+        TimingWheel.Timeout<String> far = wheel.schedule("far", 10_000_000);
+
+        assertTrue("Pending timeout should be cancelled", wheel.cancel(cancelled));
+        assertTrue("Pending far timeout should be cancelled", wheel.cancel(far));
+        assertFalse("Timeout should only be cancelled once", wheel.cancel(cancelled));
+        List<String> expired = wheel.advanceTo(20_000_000).stream()
+                .map(TimingWheel.Timeout::getPayload)
+                .collect(Collectors.toList());
+        assertEquals("Only the kept timeout should expire", 1, expired.size());
+        assertEquals("Only the kept timeout should expire", "kept", expired.get(0));
+    }
+}
@@ -0,0 +1,123 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the transfers scheduled through {@link BankService} and run by {@link TransferScheduler}.
+ */
+public class TestTransferScheduler {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private static final Money AMOUNT = Money.of(CurrencyUnit.GBP, 10);
+    private BankService bankService;
+    private long fromAcct;
+    private long toAcct;
+
+    @Before
+    public void setup() {
+        bankService = new BankService(0, () -> null);
+        fromAcct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        toAcct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        bankService.deposit(fromAcct, DEPOSIT);
+    }
+
+    /**
+     * Tests that a transfer scheduled once is executed at its time and then forgotten.
+     */
+    @Test
+    public void testScheduleOnce() throws InterruptedException {
+        ScheduledTransfer scheduledTransfer = bankService.scheduleTransfer(fromAcct, toAcct, AMOUNT,
+                System.currentTimeMillis() + 50, 0);
+
+        awaitTrue("Transfer should be executed", () -> !bankService.getScheduledTransfer(scheduledTransfer.getId()).isPresent());
+        assertEquals("Transfer should be executed once", 1, scheduledTransfer.getExecutions());
+        assertThat("Amount should be transferred", bankService.getAccount(toAcct).get().getBalances(),
+                containsInAnyOrder(AMOUNT.toString()));
+        assertTrue("Scheduling lag should be measured", bankService.getMetrics().get("timer.dispatched") >= 1);
+    }
+
+    /**
+     * Tests that a standing transfer keeps being executed, recording rejected executions, until it is cancelled.
+     */
+    @Test
+    public void testStandingTransfer() throws InterruptedException {
+        ScheduledTransfer scheduledTransfer = bankService.scheduleTransfer(fromAcct, toAcct, AMOUNT.multipliedBy(4),
+                System.currentTimeMillis(), 20);
+
+        awaitTrue("Transfer should be rejected once the balance is exhausted", () -> scheduledTransfer.getFailures() > 0);
+        assertEquals("Transfer should be executed while the balance lasts", 2, scheduledTransfer.getExecutions());
+        assertTrue("Rejection should be recorded", scheduledTransfer.getLastError().startsWith("Insufficient balance"));
+        assertTrue("Transfer should be cancelled", bankService.cancelScheduledTransfer(scheduledTransfer.getId()));
+        long failures = scheduledTransfer.getFailures();
+        Thread.sleep(100);
+        assertEquals("Cancelled transfer should not be executed anymore", failures, scheduledTransfer.getFailures());
+        assertFalse("Cancelled transfer should be forgotten",
+                bankService.getScheduledTransfer(scheduledTransfer.getId()).isPresent());
+    }
+
+    /**
+     * Tests that scheduled transfers are saved to an attached store and scheduled again from it.
+     */
+    @Test
+    public void testStore() throws InterruptedException {
+        InMemoryStore store = new InMemoryStore();
+        bankService.setScheduledTransferStore(store);
+        long nextWeek = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(7);
+        ScheduledTransfer standing = bankService.scheduleTransfer(fromAcct, toAcct, AMOUNT, nextWeek, TimeUnit.DAYS.toMillis(7));
+        ScheduledTransfer once = bankService.scheduleTransfer(fromAcct, toAcct, AMOUNT, nextWeek, 0);
+        assertTrue("Cancelled transfer should be cancelled", bankService.cancelScheduledTransfer(once.getId()));
+        assertEquals("Only the pending transfer should be stored", 1, store.transfers.size());
+
+        BankService restarted = new BankService(0, () -> null);
+        restarted.setScheduledTransferStore(store);
+        assertTrue("Stored transfer should be scheduled again",
+                restarted.getScheduledTransfer(standing.getId()).isPresent());
+        long restartedAcct = restarted.createAccount(CurrencyUnit.GBP.getCode());
+        ScheduledTransfer next = restarted.scheduleTransfer(restartedAcct,
+                restarted.createAccount(CurrencyUnit.GBP.getCode()), AMOUNT, nextWeek, 0);
+        assertTrue("New ids should follow the restored ones", next.getId() > standing.getId());
+    }
+
+    private static void awaitTrue(String message, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean()) {
+            assertTrue(message, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static class InMemoryStore implements ScheduledTransferStore {
+        private final Map<Long, ScheduledTransfer> transfers = new ConcurrentHashMap<>();
+
+        @Override
+        public void save(ScheduledTransfer scheduledTransfer) {
+            transfers.put(scheduledTransfer.getId(), scheduledTransfer);
+        }
+
+        @Override
+        public void delete(long id) {
+            transfers.remove(id);
+        }
+
+        @Override
+        public List<ScheduledTransfer> loadAll() {
+            return new ArrayList<>(transfers.values());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.transfolut.bank;
+
+import com.transfolut.TransfolutMessages;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link VelocityLimits}.
+ */
+public class TestVelocityLimits {
+
+    private static final long WINDOW_MILLIS = 3200;
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    /**
+     * Tests that the amount and the number of debits are limited per account and currency over a sliding window.
+     */
+    @Test
+    public void testLimits() {
+        VelocityLimits limits = new VelocityLimits(WINDOW_MILLIS, "GBP:100:0, EUR:0:2", clock::get);
+        limits.count(1, Money.of(CurrencyUnit.GBP, 60));
+        clock.addAndGet(WINDOW_MILLIS / 2);
+        limits.count(1, Money.of(CurrencyUnit.GBP, 40));
+        checkRejected(limits, 1, Money.of(CurrencyUnit.GBP, 1), String.format(TransfolutMessages.VELOCITY_AMOUNT_EXCEEDED,
+                "GBP 1.00", 1, "GBP 100.00", WINDOW_MILLIS));
+        // Other accounts and currencies have limits of their own, and unlimited currencies are not counted
+        limits.count(2, Money.of(CurrencyUnit.GBP, 100));
+        limits.count(1, Money.of(CurrencyUnit.EUR, 1000));
+        limits.count(1, Money.of(CurrencyUnit.EUR, 1000));
+        checkRejected(limits, 1, Money.of(CurrencyUnit.EUR, 1), String.format(TransfolutMessages.VELOCITY_COUNT_EXCEEDED,
+                "EUR 1.00", 1, 2, WINDOW_MILLIS));
+        assertNull("Unlimited currencies should not be counted", limits.count(1, Money.of(CurrencyUnit.USD, 1000)));
+
+        // The first debit leaves the window, the rejected ones were never counted
+        clock.addAndGet(WINDOW_MILLIS / 2);
+        limits.count(1, Money.of(CurrencyUnit.GBP, 60));
+        checkRejected(limits, 1, Money.of(CurrencyUnit.GBP, 1), String.format(TransfolutMessages.VELOCITY_AMOUNT_EXCEEDED,
+                "GBP 1.00", 1, "GBP 100.00", WINDOW_MILLIS));
+        assertEquals("Rejected debits should be counted", Long.valueOf(3), limits.getMetrics().get("velocity.rejected"));
+    }
+
+    /**
+     * Tests that debits failing for another reason than their velocity are not counted.
+     */
+    @Test
+    public void testFailedDebitsNotCounted() {
+        BankService bankService = new BankService(0, () -> Paths.get("unused"));
+        bankService.setVelocityLimits(new VelocityLimits(WINDOW_MILLIS, "GBP:100:1", clock::get));
+        long fromAcct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        long toAcct = bankService.createAccount(CurrencyUnit.GBP.getCode());
+        bankService.deposit(fromAcct, Money.of(CurrencyUnit.GBP, 50));
+        try {
+            bankService.withdraw(fromAcct, Money.of(CurrencyUnit.GBP, 80));
+            fail("Withdrawal should fail for an insufficient balance");
+        } catch (VelocityLimitException e) {
+            fail("Withdrawal should not exceed the velocity limits");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        bankService.transfer(fromAcct, toAcct, Money.of(CurrencyUnit.GBP, 50));
+        try {
+            bankService.withdraw(toAcct, Money.of(CurrencyUnit.GBP, 10));
+            bankService.withdraw(fromAcct, Money.of(CurrencyUnit.GBP, 0));
+            fail("Second debit should exceed the velocity limits");
+        } catch (VelocityLimitException e) {
+            assertEquals("Incorrect message", String.format(TransfolutMessages.VELOCITY_COUNT_EXCEEDED,
+                    "GBP 0.00", fromAcct, 1, WINDOW_MILLIS), e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that malformed limits are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        new VelocityLimits(WINDOW_MILLIS, "GBP:100");
+    }
+
+    private static void checkRejected(VelocityLimits limits, long acctNumber, Money amount, String message) {
+        try {
+            limits.count(acctNumber, amount);
+            fail("Debit should exceed the velocity limits");
+        } catch (VelocityLimitException e) {
+            assertEquals("Incorrect message", message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.transfolut.bank;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of withdrawals without velocity limits against withdrawals checked inline against limits,
+ * which neither limit is ever reached by so that every withdrawal pays for a full check.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.bank.VelocityCheckBenchmark [seconds]
+ */
+public class VelocityCheckBenchmark {
+
+    private static final Money AMOUNT = Money.of(CurrencyUnit.GBP, 1);
+    private static final Money FUNDS = Money.of(CurrencyUnit.GBP, 1_000_000_000L);
+    private static final int ACCOUNTS = 1000;
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+
+        for(int round = 0; round < 2; round++) {
+            double unlimited = run(seconds, null);
+            double limited = run(seconds, new VelocityLimits(TimeUnit.HOURS.toMillis(1),
+                    "GBP:1000000000:1000000000,EUR:1000:10"));
+            System.out.println(String.format("%s unlimited %,.0f ns/withdrawal, limited %,.0f ns/withdrawal, check %,.0f ns",
+                    round == 0 ? "warmup" : "measure", unlimited, limited, limited - unlimited));
+        }
+    }
+
+    /**
+     * Runs withdrawals from a thousand fresh accounts in turn on the calling thread for the given duration.
+     * @param limits checked by the withdrawals, null for none
+     * @return the mean latency of a withdrawal in nanoseconds
+     */
+    private static double run(int seconds, VelocityLimits limits) {
+        BankService bankService = new BankService(0, () -> null);
+        bankService.setVelocityLimits(limits);
+        long[] accounts = new long[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = bankService.createAccount(CurrencyUnit.GBP.getCode());
+            bankService.deposit(accounts[i], FUNDS);
+        }
+        System.gc();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        long withdrawals = 0;
+        long now;
+        do {
+            for(long account : accounts) {
+                bankService.withdraw(account, AMOUNT);
+            }
+            withdrawals += ACCOUNTS;
+            now = System.nanoTime();
+        } while(now < deadline);
+        return (double) (now - start) / withdrawals;
+    }
+}
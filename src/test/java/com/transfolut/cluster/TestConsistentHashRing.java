@@ -0,0 +1,80 @@
+package com.transfolut.cluster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test class for {@link ConsistentHashRing}.
+ */
+public class TestConsistentHashRing {
+
+    private static final List<String> NODES = Arrays.asList("http://localhost:8081/transfolut",
+            "http://localhost:8082/transfolut", "http://localhost:8083/transfolut");
+    private static final int ACCOUNTS = 30000;
+
+    /**
+     * Test that rings built from the same nodes agree on every owner.
+     */
+    @Test
+    public void testOwnerIsDeterministic() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        ConsistentHashRing otherRing = new ConsistentHashRing(NODES, 128);
+        for(long account = 10000000L; account < 10000000L + ACCOUNTS; account++) {
+            assertEquals("Owners should be the same on every node", ring.getOwner(account), otherRing.getOwner(account));
+        }
+    }
+
+    /**
+     * Test that sequential account numbers are spread evenly over the nodes.
+     */
+    @Test
+    public void testAccountsAreBalanced() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        Map<String, Integer> accountsPerNode = new HashMap<>();
+        for(long account = 10000000L; account < 10000000L + ACCOUNTS; account++) {
+            accountsPerNode.merge(ring.getOwner(account), 1, Integer::sum);
+        }
+        for(String node : NODES) {
+            assertThat("Every node should own about a third of the accounts", accountsPerNode.get(node),
+                    greaterThan(ACCOUNTS / 4));
+        }
+    }
+
+    /**
+     * Test that adding a node only moves accounts to the new node, and only about its share of them.
+     */
+    @Test
+    public void testAddingNodeOnlyMovesAccountsToIt() {
+        String newNode = "http://localhost:8084/transfolut";
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        ConsistentHashRing grownRing = new ConsistentHashRing(Arrays.asList(NODES.get(0), NODES.get(1), NODES.get(2),
+                newNode), 128);
+        int moved = 0;
+        for(long account = 10000000L; account < 10000000L + ACCOUNTS; account++) {
+            String owner = ring.getOwner(account);
+            String newOwner = grownRing.getOwner(account);
+            if(!owner.equals(newOwner)) {
+                assertEquals("Accounts should only move to the new node", newNode, newOwner);
+                moved++;
+            }
+        }
+        assertThat("About a quarter of the accounts should move", moved, lessThan(ACCOUNTS / 3));
+    }
+
+    /**
+     * Test that a ring needs nodes.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRing() {
+        new ConsistentHashRing(Arrays.asList(), 128);
+    }
+}
@@ -0,0 +1,131 @@
+package com.transfolut.jersey;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares deposits, withdrawals and transfers served by Jersey with the same operations served by the
+ * {@link FastPathHandler}, on two servers of the same JVM with a bank service each. Clients keep their connections
+ * alive and send the three operations in turn, and every round reports the throughput, the mean latency and the
+ * CPU time of the JVM per operation, clients included, of each server in turn.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.jersey.FastPathBenchmark [client threads] [seconds per round] [rounds]
+ */
+public class FastPathBenchmark {
+
+    private static final String JERSEY_URI = "http://localhost:8080/transfolut/";
+    private static final String FAST_PATH_URI = "http://localhost:8081/transfolut/";
+    private static final Money INITIAL_DEPOSIT = Money.of(CurrencyUnit.GBP, 1_000_000_000L);
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        BankService jerseyBank = new BankService(bankAcctNumber -> true);
+        HttpServer jerseyServer = TransfolutApp.startServer(jerseyBank, ClusterNode.standalone(JERSEY_URI));
+        BankService fastPathBank = new BankService(bankAcctNumber -> true);
+        System.setProperty(TransfolutProperties.FAST_PATH, "true");
+        HttpServer fastPathServer = TransfolutApp.startServer(fastPathBank, ClusterNode.standalone(FAST_PATH_URI));
+        System.clearProperty(TransfolutProperties.FAST_PATH);
+        try {
+            // The first round warms both paths up and is not reported
+            for(int round = 0; round <= rounds; round++) {
+                run(round, "jersey", JERSEY_URI, jerseyBank, threads, seconds);
+                run(round, "fast path", FAST_PATH_URI, fastPathBank, threads, seconds);
+            }
+        } finally {
+            jerseyServer.shutdownNow();
+            fastPathServer.shutdownNow();
+        }
+    }
+
+    private static void run(int round, String name, String baseUri, BankService bankService, int threads, int seconds)
+            throws InterruptedException {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        LongAdder operations = new LongAdder();
+        LongAdder latencyNanos = new LongAdder();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> clients = new ArrayList<>();
+        for(int i = 0; i < threads; i++) {
+            String fromAcct = String.valueOf(setupAccount(bankService));
+            String toAcct = String.valueOf(setupAccount(bankService));
+            String deposit = "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"2\"}";
+            String withdrawal = "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}";
+            String transfer = "{\"fromAcct\":\"" + fromAcct + "\",\"toAcct\":\"" + toAcct
+                    + "\",\"currency\":\"GBP\",\"amount\":\"1\"}";
+            clients.add(new Thread(() -> {
+                try {
+                    while(System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        post(baseUri, TransfolutPaths.DEPOSIT_URI, deposit);
+                        post(baseUri, TransfolutPaths.WITHDRAW_URI, withdrawal);
+                        post(baseUri, TransfolutPaths.TRANSFER_URI, transfer);
+                        latencyNanos.add(System.nanoTime() - start);
+                        operations.add(3);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        long cpuStart = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        clients.forEach(Thread::start);
+        for(Thread client : clients) {
+            client.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long cpuNanos = os.getProcessCpuTime() - cpuStart;
+        if(round > 0) {
+            System.out.println(String.format("round %d %-9s %,9.0f operations/s %,8.1f us/operation %,8.1f us CPU/operation",
+                    round, name, operations.sum() / elapsedSeconds, latencyNanos.sum() / 1e3 / operations.sum(),
+                    cpuNanos / 1e3 / operations.sum()));
+        }
+    }
+
+    private static long setupAccount(BankService bankService) {
+        long acctNumber = bankService.createAccount(INITIAL_DEPOSIT.getCurrencyUnit().getCurrencyCode());
+        bankService.deposit(acctNumber, INITIAL_DEPOSIT);
+        return acctNumber;
+    }
+
+    /**
+     * Helper method to post an entity, reading the whole response so that the connection is kept alive.
+     */
+    private static void post(String baseUri, String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUri + path.substring(1)).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IllegalStateException("POST " + path + " failed with status " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[256];
+            while(in.read(buffer) > 0) {
+                // The message is not needed
+            }
+        }
+    }
+}
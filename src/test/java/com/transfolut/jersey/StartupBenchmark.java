@@ -0,0 +1,138 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the startup of a server process as its clients see it: the time from launching the JVM until the first
+ * answered request, and the mean latency of the first deposits, withdrawals and transfers sent to it.
+ * Compares a plain start, a start with the synthetic warmup and, if a class data sharing archive is given,
+ * a start with the warmup and the archive.
+ * Not run as part of the build, start it with the test runtime classpath:
+ * java -cp ... com.transfolut.jersey.StartupBenchmark [runs] [warmup iterations] [archive]
+ */
+public class StartupBenchmark {
+
+    private static final int FIRST_OPERATIONS = 300;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int warmupIterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        String archive = args.length > 2 ? args[2] : null;
+
+        for(int run = 0; run < runs; run++) {
+            report("plain", launch());
+            report("warmup", launch("-D" + TransfolutProperties.WARMUP_ITERATIONS + "=" + warmupIterations));
+            if(archive != null) {
+                report("warmup+cds", launch("-XX:SharedArchiveFile=" + archive,
+                        "-D" + TransfolutProperties.WARMUP_ITERATIONS + "=" + warmupIterations));
+            }
+        }
+    }
+
+    private static void report(String name, double[] result) {
+        System.out.println(String.format("%-11s first request after %,6.0f ms, first %s operations %,8.0f us/operation",
+                name, result[0], FIRST_OPERATIONS, result[1]));
+    }
+
+    /**
+     * Launches a server process, waits for its first answer and sends it its first operations.
+     * @param jvmArgs of the server process
+     * @return the milliseconds from launch to the first answer and the mean microseconds of the first operations
+     */
+    private static double[] launch(String... jvmArgs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(jvmArgs));
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), TransfolutApp.class.getName()));
+        long launch = System.nanoTime();
+        Process server = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Thread output = new Thread(() -> discard(server.getInputStream()));
+        output.start();
+        try {
+            while(request("GET", TransfolutPaths.ACCOUNTS_URI, null) == null) {
+                Thread.sleep(1);
+            }
+            double firstRequestMillis = (System.nanoTime() - launch) / 1e6;
+
+            String fromAcct = request("POST", TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}");
+            String toAcct = request("POST", TransfolutPaths.ACCOUNTS_URI, "{\"currency\":\"GBP\"}");
+            long start = System.nanoTime();
+            for(int i = 0; i < FIRST_OPERATIONS; i += 3) {
+                request("POST", TransfolutPaths.DEPOSIT_URI,
+                        "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"2\"}");
+                request("POST", TransfolutPaths.WITHDRAW_URI,
+                        "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}");
+                request("POST", TransfolutPaths.TRANSFER_URI, "{\"fromAcct\":\"" + fromAcct + "\",\"toAcct\":\""
+                        + toAcct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}");
+            }
+            double operationMicros = (System.nanoTime() - start) / 1e3 / FIRST_OPERATIONS;
+            return new double[] {firstRequestMillis, operationMicros};
+        } finally {
+            // The server stops once its standard input is closed
+            server.getOutputStream().close();
+            if(!server.waitFor(10, TimeUnit.SECONDS)) {
+                server.destroyForcibly().waitFor();
+            }
+            output.join();
+        }
+    }
+
+    /**
+     * @return the response body, or null if the server is not listening yet
+     */
+    private static String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) new URL(TransfolutPaths.BASE_URI + path).openConnection();
+            connection.setRequestMethod(method);
+            if(body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IllegalStateException(method + " " + path + " failed with status " + connection.getResponseCode());
+            }
+        } catch (ConnectException e) {
+            return null;
+        }
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = in.read(buffer)) > 0) {
+                response.write(buffer, 0, read);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void discard(InputStream serverOutput) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(serverOutput, StandardCharsets.UTF_8))) {
+            while(reader.readLine() != null) {
+                // The server reports its own startup times, which are not needed here
+            }
+        } catch (IOException e) {
+            // The server has stopped
+        }
+    }
+}
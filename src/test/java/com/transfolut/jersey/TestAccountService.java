@@ -14,6 +14,8 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -22,6 +24,8 @@ import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
 import static com.transfolut.jersey.BankUtils.getCurrencyBean;
 import static com.transfolut.jersey.BankUtils.setupTestAccount;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -73,6 +77,29 @@ public class TestAccountService {
         assertTrue("History should contain deposit", responseMsg.contains("Transaction"));
     }
 
+    /**
+     * Test for getting the balances of a single account at a point in time
+     */
+    @Test
+    public void testGetBalancesAt() {
+        long initialAcctNumber = setupTestAccount(DEPOSIT);
+        Response response = target.path(String.format("%s/%s/balances", TransfolutPaths.ACCOUNTS_URI, initialAcctNumber))
+                .queryParam("at", System.currentTimeMillis()).request().get();
+        checkResponseStatusAndMessage(response, String.format("[\"%s\"]", DEPOSIT.toString()), Status.OK.getStatusCode());
+    }
+
+    /**
+     * Test for getting the balances of a single account at a non numeric point in time
+     */
+    @Test
+    public void testGetBalancesAtInvalidTimestamp() {
+        long initialAcctNumber = setupTestAccount(DEPOSIT);
+        Response response = target.path(String.format("%s/%s/balances", TransfolutPaths.ACCOUNTS_URI, initialAcctNumber))
+                .queryParam("at", "BLA").request().get();
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_TIMESTAMP, "BLA"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
     /**
      * Test for getting empty account list.
      */
@@ -139,4 +166,34 @@ public class TestAccountService {
         assertEquals("Status should have been OK", Status.OK.getStatusCode(), response.getStatus());
         assertTrue("A bank account number should have been returned", responseMsg.length() > 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that balances and history are answered 304 while the account is unchanged, and sent again once it changes.
+     */
+    @Test
+    public void testConditionalGet() {
+        long acctNumber = setupTestAccount(DEPOSIT);
+        String balancesPath = String.format("%s/%s", TransfolutPaths.ACCOUNTS_URI, acctNumber);
+        String historyPath = balancesPath + "/history";
+
+        Response balances = target.path(balancesPath).request().get();
+        EntityTag tag = balances.getEntityTag();
+        assertNotNull("Balances should be tagged", tag);
+        Response history = target.path(historyPath).request().get();
+        assertEquals("History should be tagged with the version of the account", tag, history.getEntityTag());
+
+        Response unchanged = target.path(balancesPath).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        assertEquals("Unchanged balances should not be sent again", Status.NOT_MODIFIED.getStatusCode(),
+                unchanged.getStatus());
+        unchanged = target.path(historyPath).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        assertEquals("Unchanged history should not be sent again", Status.NOT_MODIFIED.getStatusCode(),
+                unchanged.getStatus());
+
+        BankService.getInstance().deposit(acctNumber, DEPOSIT);
+        Response changed = target.path(balancesPath).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        assertEquals("Changed balances should be sent", Status.OK.getStatusCode(), changed.getStatus());
+        assertEquals("Changed balances should be current", String.format("[\"%s\"]", DEPOSIT.multipliedBy(2)),
+                changed.readEntity(String.class));
+        assertNotEquals("Changed balances should be tagged with a new version", tag, changed.getEntityTag());
+    }
+}
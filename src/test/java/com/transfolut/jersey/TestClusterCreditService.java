@@ -0,0 +1,271 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.cluster.ClusterNode;
+import com.transfolut.cluster.ConsistentHashRing;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.transfolut.jersey.BankUtils.*;
+import static org.hamcrest.core.IsCollectionContaining.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ClusterCreditService} and the forwarding of requests between the nodes of a cluster,
+ * running three nodes on localhost.
+ */
+public class TestClusterCreditService {
+
+    private static final List<String> NODES = Arrays.asList("http://localhost:8181/transfolut",
+            "http://localhost:8182/transfolut", "http://localhost:8183/transfolut");
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 1000);
+    private static final Money TRANSFER = Money.of(CurrencyUnit.GBP, 400);
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<ClusterNode> clusterNodes = new ArrayList<>();
+    private final List<BankService> bankServices = new ArrayList<>();
+    private final List<WebTarget> targets = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        Client c = ClientBuilder.newClient();
+        for(String node : NODES) {
+            ClusterNode clusterNode = new ClusterNode(node, ring);
+            BankService bankService = new BankService(clusterNode::isLocal);
+            clusterNodes.add(clusterNode);
+            bankServices.add(bankService);
+            servers.add(TransfolutApp.startServer(bankService, clusterNode));
+            targets.add(c.target(node));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        servers.forEach(HttpServer::shutdownNow);
+        clusterNodes.forEach(ClusterNode::close);
+    }
+
+    /**
+     * Test that accounts are created in the partition of the node they were created on.
+     */
+    @Test
+    public void testAccountsCreatedInLocalPartition() {
+        for(int node = 0; node < NODES.size(); node++) {
+            long acct = createAccount(node);
+            assertEquals("Account should belong to the node it was created on", NODES.get(node),
+                    clusterNodes.get(node).getOwner(acct));
+            assertTrue("Account should be held by the node it was created on",
+                    bankServices.get(node).getAccount(acct).isPresent());
+        }
+    }
+
+    /**
+     * Test that reads and deposits sent to any node reach the owner of the account.
+     */
+    @Test
+    public void testRequestsForwardedToOwner() {
+        long acct = createAccount(0);
+        Response response = targets.get(1).path(TransfolutPaths.DEPOSIT_URI).request()
+                .post(Entity.entity(getDepositBean(String.valueOf(acct), "GBP", "1000"), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response,
+                String.format(TransfolutMessages.DEPOSIT_SUCCESS, DEPOSIT.toString(), acct), Status.OK.getStatusCode());
+        assertThat("Balance should be readable through any node", getBalances(2, acct), hasItem(DEPOSIT.toString()));
+        assertThat("Balance should be held by the owner", bankServices.get(0).getAccount(acct).get().getBalances(),
+                hasItem(DEPOSIT.toString()));
+    }
+
+    /**
+     * Test a transfer between accounts owned by different nodes, sent to a third node.
+     */
+    @Test
+    public void testTransferAcrossPartitions() {
+        long fromAcct = createAccount(0);
+        long toAcct = createAccount(1);
+        bankServices.get(0).deposit(fromAcct, DEPOSIT);
+
+        Response response = targets.get(2).path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.entity(getTransferBean(String.valueOf(fromAcct), String.valueOf(toAcct), "GBP",
+                        TRANSFER.getAmount().toString()), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.TRANSFER_SUCCESS, TRANSFER.toString(),
+                fromAcct, toAcct), Status.OK.getStatusCode());
+        assertThat("Sending account should be debited", getBalances(1, fromAcct),
+                hasItem(DEPOSIT.minus(TRANSFER).toString()));
+        assertThat("Receiving account should be credited", getBalances(0, toAcct), hasItem(TRANSFER.toString()));
+    }
+
+    /**
+     * Test that a transfer to a non-existent account of another node is refunded.
+     */
+    @Test
+    public void testTransferToNonexistentRemoteAccountRefunded() {
+        long fromAcct = createAccount(0);
+        bankServices.get(0).deposit(fromAcct, DEPOSIT);
+        long toAcct = 10000000L;
+        while(clusterNodes.get(0).isLocal(toAcct)) {
+            toAcct++;
+        }
+
+        Response response = targets.get(0).path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.entity(getTransferBean(String.valueOf(fromAcct), String.valueOf(toAcct), "GBP",
+                        TRANSFER.getAmount().toString()), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, TransfolutMessages.TRANSFER_ACCOUNTS_NONEXISTENT,
+                Status.BAD_REQUEST.getStatusCode());
+        assertThat("Sending account should be refunded", getBalances(0, fromAcct), hasItem(DEPOSIT.toString()));
+    }
+
+    /**
+     * Test that a transfer to a node which is down is kept pending rather than refunded,
+     * and credited once the node is back.
+     */
+    @Test
+    public void testTransferToUnavailableNodeKeptPending() throws InterruptedException {
+        long fromAcct = createAccount(0);
+        long toAcct = createAccount(1);
+        bankServices.get(0).deposit(fromAcct, DEPOSIT);
+        servers.get(1).shutdownNow();
+
+        Response response = targets.get(0).path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.entity(getTransferBean(String.valueOf(fromAcct), String.valueOf(toAcct), "GBP",
+                        TRANSFER.getAmount().toString()), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.TRANSFER_CREDIT_PENDING,
+                TRANSFER.toString(), toAcct, fromAcct), Status.ACCEPTED.getStatusCode());
+        assertThat("Sending account should not be refunded", getBalances(0, fromAcct),
+                hasItem(DEPOSIT.minus(TRANSFER).toString()));
+        assertEquals("Credit should be pending", 1L,
+                (long) clusterNodes.get(0).getMetrics().get("cluster.redeliveries.pending"));
+
+        servers.set(1, TransfolutApp.startServer(bankServices.get(1), clusterNodes.get(1)));
+        for(int wait = 0; wait < 200 && clusterNodes.get(0).getMetrics().get("cluster.redeliveries.pending") > 0; wait++) {
+            Thread.sleep(50);
+        }
+        assertThat("Receiving account should be credited once the node is back", getBalances(1, toAcct),
+                hasItem(TRANSFER.toString()));
+        assertThat("Sending account should not be refunded", getBalances(0, fromAcct),
+                hasItem(DEPOSIT.minus(TRANSFER).toString()));
+    }
+
+    /**
+     * Test that a retried credit is only applied once.
+     */
+    @Test
+    public void testRetriedCreditAppliedOnce() {
+        long acct = createAccount(1);
+        CreditBean credit = new CreditBean();
+        credit.transferId = "transfer-1";
+        credit.acct = String.valueOf(acct);
+        credit.currency = "GBP";
+        credit.amount = TRANSFER.getAmount().toString();
+        for(int attempt = 0; attempt < 2; attempt++) {
+            Response response = targets.get(1).path(TransfolutPaths.CLUSTER_CREDIT_URI).request()
+                    .post(Entity.entity(credit, MediaType.APPLICATION_JSON));
+            assertEquals("Incorrect response status", Status.OK.getStatusCode(), response.getStatus());
+        }
+        assertThat("Credit should be applied once", getBalances(1, acct), hasItem(TRANSFER.toString()));
+    }
+
+    /**
+     * Test that a transfer still pending when the sending node is stopped is refunded after a last attempt.
+     */
+    @Test
+    public void testPendingTransferRefundedOnClose() {
+        long fromAcct = createAccount(0);
+        long toAcct = createAccount(1);
+        bankServices.get(0).deposit(fromAcct, DEPOSIT);
+        servers.get(1).shutdownNow();
+
+        Response response = targets.get(0).path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.entity(getTransferBean(String.valueOf(fromAcct), String.valueOf(toAcct), "GBP",
+                        TRANSFER.getAmount().toString()), MediaType.APPLICATION_JSON));
+        assertEquals("Incorrect response status", Status.ACCEPTED.getStatusCode(), response.getStatus());
+
+        clusterNodes.get(0).close();
+        assertEquals("No credit should be pending", 0L,
+                (long) clusterNodes.get(0).getMetrics().get("cluster.redeliveries.pending"));
+        assertEquals("Credit should be abandoned", 1L,
+                (long) clusterNodes.get(0).getMetrics().get("cluster.redeliveries.abandoned"));
+        assertThat("Sending account should be refunded", bankServices.get(0).getAccount(fromAcct).get().getBalances(),
+                hasItem(DEPOSIT.toString()));
+    }
+
+    /**
+     * Test that a credit arriving past its deadline is rejected, unless it has been credited already.
+     */
+    @Test
+    public void testCreditPastDeadlineRejected() {
+        long acct = createAccount(1);
+        CreditBean credit = new CreditBean();
+        credit.transferId = "transfer-3";
+        credit.acct = String.valueOf(acct);
+        credit.currency = "GBP";
+        credit.amount = TRANSFER.getAmount().toString();
+        credit.deadline = System.currentTimeMillis() - 1;
+        Response response = targets.get(1).path(TransfolutPaths.CLUSTER_CREDIT_URI).request()
+                .post(Entity.entity(credit, MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.CREDIT_EXPIRED, credit.transferId),
+                Status.BAD_REQUEST.getStatusCode());
+
+        credit.transferId = "transfer-4";
+        credit.deadline = System.currentTimeMillis() + 60_000;
+        for(int attempt = 0; attempt < 2; attempt++) {
+            response = targets.get(1).path(TransfolutPaths.CLUSTER_CREDIT_URI).request()
+                    .post(Entity.entity(credit, MediaType.APPLICATION_JSON));
+            assertEquals("Incorrect response status", Status.OK.getStatusCode(), response.getStatus());
+            // A retry past the deadline is still acknowledged, as the credit has been applied already
+            credit.deadline = System.currentTimeMillis() - 1;
+        }
+        assertThat("Credit should be applied once", getBalances(1, acct), hasItem(TRANSFER.toString()));
+    }
+
+    /**
+     * Test that credits for accounts of another node are rejected rather than forwarded.
+     */
+    @Test
+    public void testCreditForRemoteAccountRejected() {
+        long acct = createAccount(0);
+        CreditBean credit = new CreditBean();
+        credit.transferId = "transfer-2";
+        credit.acct = String.valueOf(acct);
+        credit.currency = "GBP";
+        credit.amount = TRANSFER.getAmount().toString();
+        Response response = targets.get(1).path(TransfolutPaths.CLUSTER_CREDIT_URI).request()
+                .post(Entity.entity(credit, MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acct),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Helper method to create a GBP account through a node.
+     */
+    private long createAccount(int node) {
+        return targets.get(node).path(TransfolutPaths.ACCOUNTS_URI).request()
+                .post(Entity.entity(getCurrencyBean("GBP"), MediaType.APPLICATION_JSON), Long.class);
+    }
+
+    /**
+     * Helper method to fetch the balances of an account through a node.
+     */
+    private List<String> getBalances(int node, long acct) {
+        return targets.get(node).path(TransfolutPaths.ACCOUNTS_URI).path(String.valueOf(acct)).request()
+                .get(new GenericType<List<String>>() {});
+    }
+}
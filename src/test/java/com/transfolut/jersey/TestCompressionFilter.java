@@ -0,0 +1,170 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.transfolut.jersey.BankUtils.getDepositBean;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link CompressionFilter}.
+ */
+public class TestCompressionFilter {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    // Enough accounts for the list of account numbers to be well above the compression threshold
+    private static final int ACCOUNTS = 500;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that a large response is compressed with gzip, preferred over deflate.
+     */
+    @Test
+    public void testGzip() throws IOException {
+        List<Long> accounts = setupAccounts();
+
+        Response response = getAccounts("deflate, gzip");
+        assertEquals("Response should be compressed with gzip", "gzip",
+                response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("Response should vary with the accepted encodings", HttpHeaders.ACCEPT_ENCODING,
+                response.getHeaderString(HttpHeaders.VARY));
+        try (InputStream input = new GZIPInputStream(response.readEntity(InputStream.class))) {
+            assertEquals("All accounts should be listed", accounts, readAccounts(input));
+        }
+    }
+
+    /**
+     * Test that a large response is compressed with deflate for clients refusing gzip.
+     */
+    @Test
+    public void testDeflate() throws IOException {
+        List<Long> accounts = setupAccounts();
+
+        Response response = getAccounts("gzip;q=0, deflate;q=0.5");
+        assertEquals("Response should be compressed with deflate", "deflate",
+                response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        try (InputStream input = new InflaterInputStream(response.readEntity(InputStream.class))) {
+            assertEquals("All accounts should be listed", accounts, readAccounts(input));
+        }
+    }
+
+    /**
+     * Test that a large response is not compressed for clients which do not accept any encoding.
+     */
+    @Test
+    public void testNoAcceptedEncoding() throws IOException {
+        List<Long> accounts = setupAccounts();
+
+        Response response = getAccounts(null);
+        assertNull("Response should not be compressed", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        try (InputStream input = response.readEntity(InputStream.class)) {
+            assertEquals("All accounts should be listed", accounts, readAccounts(input));
+        }
+    }
+
+    /**
+     * Test that responses under the threshold are not compressed.
+     */
+    @Test
+    public void testSmallResponses() {
+        long acct = setupTestAccount(DEPOSIT);
+
+        Response deposit = target.path(TransfolutPaths.DEPOSIT_URI).request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                .post(Entity.entity(getDepositBean(String.valueOf(acct), "GBP", "10"), MediaType.APPLICATION_JSON));
+        assertEquals("Deposit should succeed", Status.OK.getStatusCode(), deposit.getStatus());
+        assertNull("Deposit should not be compressed", deposit.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("Deposit message should be sent as it is",
+                String.format(TransfolutMessages.DEPOSIT_SUCCESS, "GBP 10.00", acct), deposit.readEntity(String.class));
+
+        Response accounts = getAccounts("gzip");
+        assertEquals("Account list should be found", Status.OK.getStatusCode(), accounts.getStatus());
+        assertNull("Small account list should not be compressed",
+                accounts.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("Account list should be sent as it is", "[" + acct + "]", accounts.readEntity(String.class));
+    }
+
+    /**
+     * Test that the entity tag of a compressed response names its encoding, and is still matched when sent back.
+     */
+    @Test
+    public void testCompressedEntityTag() {
+        long acct = setupTestAccount(DEPOSIT);
+        for(int i = 0; i < 100; i++) {
+            BankService.getInstance().deposit(acct, DEPOSIT);
+        }
+        String historyPath = String.format("%s/%s/history", TransfolutPaths.ACCOUNTS_URI, acct);
+
+        Response history = target.path(historyPath).request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals("History should be compressed", "gzip", history.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        EntityTag tag = history.getEntityTag();
+        assertTrue("Entity tag should name the encoding", tag.getValue().endsWith("--gzip"));
+        Response unchanged = target.path(historyPath).request().header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        assertEquals("Unchanged history should not be sent again", Status.NOT_MODIFIED.getStatusCode(),
+                unchanged.getStatus());
+    }
+
+    private List<Long> setupAccounts() {
+        List<Long> accounts = new ArrayList<>();
+        for(int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(setupTestAccount(DEPOSIT));
+        }
+        accounts.sort(null);
+        return accounts;
+    }
+
+    private Response getAccounts(String acceptEncoding) {
+        Response response = target.path(TransfolutPaths.ACCOUNTS_URI).request()
+                .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding).get();
+        assertEquals("Accounts should be listed", Status.OK.getStatusCode(), response.getStatus());
+        return response;
+    }
+
+    private List<Long> readAccounts(InputStream input) throws IOException {
+        List<Long> accounts = mapper.readValue(input, new TypeReference<List<Long>>() {});
+        accounts.sort(null);
+        return accounts;
+    }
+}
@@ -0,0 +1,77 @@
+package com.transfolut.jersey;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link EventBuffer}.
+ */
+public class TestEventBuffer {
+
+    /**
+     * Test that a full buffer drops its oldest events and counts them.
+     */
+    @Test
+    public void testDropOldest() {
+        EventBuffer buffer = new EventBuffer(EventBuffer.Policy.DROP, 2);
+        buffer.add(event(1L, "GBP", 1));
+        buffer.add(event(1L, "GBP", 2));
+        buffer.add(event(1L, "GBP", 3));
+
+        List<BalanceEvent> events = buffer.drain();
+        assertEquals("Buffer should hold its capacity", 2, events.size());
+        assertEquals("Oldest event should be dropped", 2, events.get(0).sequence);
+        assertEquals("Newest event should be kept", 3, events.get(1).sequence);
+        assertEquals("Dropped events should be counted", 1, buffer.takeDropped());
+        assertEquals("Dropped events should be reset", 0, buffer.takeDropped());
+        assertTrue("Buffer should be drained", buffer.isEmpty());
+    }
+
+    /**
+     * Test that coalescing keeps the latest event of every balance, ordered by their latest update.
+     */
+    @Test
+    public void testCoalesce() {
+        EventBuffer buffer = new EventBuffer(EventBuffer.Policy.COALESCE, 10);
+        buffer.add(event(1L, "GBP", 1));
+        buffer.add(event(1L, "EUR", 2));
+        buffer.add(event(2L, "GBP", 3));
+        buffer.add(event(1L, "GBP", 4));
+
+        List<BalanceEvent> events = buffer.drain();
+        assertEquals("Events of the same balance should be coalesced", 3, events.size());
+        assertEquals("Untouched balances should keep their order", 2, events.get(0).sequence);
+        assertEquals("Untouched balances should keep their order", 3, events.get(1).sequence);
+        assertEquals("Latest event of a balance should be kept last", 4, events.get(2).sequence);
+        assertEquals("Coalesced events should be counted", 1, buffer.takeCoalesced());
+        assertEquals("Nothing should be dropped", 0, buffer.takeDropped());
+    }
+
+    /**
+     * Test that coalescing still drops the oldest balances once the buffer is full.
+     */
+    @Test
+    public void testCoalesceFull() {
+        EventBuffer buffer = new EventBuffer(EventBuffer.Policy.COALESCE, 2);
+        buffer.add(event(1L, "GBP", 1));
+        buffer.add(event(2L, "GBP", 2));
+        buffer.add(event(3L, "GBP", 3));
+
+        List<BalanceEvent> events = buffer.drain();
+        assertEquals("Buffer should hold its capacity", 2, events.size());
+        assertEquals("Oldest balance should be dropped", 2L, events.get(0).acct);
+        assertEquals("Dropped events should be counted", 1, buffer.takeDropped());
+    }
+
+    private static BalanceEvent event(long acct, String currency, long sequence) {
+        BalanceEvent event = new BalanceEvent();
+        event.acct = acct;
+        event.currency = currency;
+        event.sequence = sequence;
+        return event;
+    }
+}
@@ -0,0 +1,164 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.media.sse.EventInput;
+import org.glassfish.jersey.media.sse.InboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the server-sent events of {@link EventService} and {@link AccountService}.
+ */
+public class TestEventService {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private static final Money WITHDRAWAL = Money.of(CurrencyUnit.GBP, 40);
+    private static final Money FOREIGN_DEPOSIT = Money.of(CurrencyUnit.EUR, 5);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService reader = Executors.newSingleThreadExecutor();
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newBuilder().register(SseFeature.class).build().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        reader.shutdownNow();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that the transactions of an account are pushed to its subscribers as they are applied.
+     */
+    @Test
+    public void testAccountEvents() throws Exception {
+        long acct = setupTestAccount(DEPOSIT);
+        try (EventInput events = target.path(TransfolutPaths.ACCOUNTS_URI).path(acct + "/events").request()
+                .get(EventInput.class)) {
+            BankService.getInstance().withdraw(acct, WITHDRAWAL);
+            BankService.getInstance().deposit(acct, FOREIGN_DEPOSIT);
+
+            JsonNode withdrawal = readTransaction(events);
+            assertEquals("Event should be about the account", acct, withdrawal.get("acct").asLong());
+            assertEquals("Event should be a withdrawal", "withdrawal", withdrawal.get("type").asText());
+            assertEquals("Event should carry the amount", WITHDRAWAL.toString(), withdrawal.get("amount").asText());
+            assertEquals("Event should carry the balance", DEPOSIT.minus(WITHDRAWAL).toString(),
+                    withdrawal.get("balance").asText());
+            JsonNode deposit = readTransaction(events);
+            assertEquals("Event should be a deposit", "deposit", deposit.get("type").asText());
+            assertEquals("Event should carry the balance", FOREIGN_DEPOSIT.toString(), deposit.get("balance").asText());
+        }
+    }
+
+    /**
+     * Test that the stream of all accounts only pushes the transactions selected by its filters.
+     */
+    @Test
+    public void testFilteredEvents() throws Exception {
+        long acct = setupTestAccount(DEPOSIT);
+        try (EventInput events = target.path(TransfolutPaths.EVENTS_URI).queryParam("currency", "EUR")
+                .queryParam("type", "deposit").request().get(EventInput.class)) {
+            BankService.getInstance().deposit(acct, DEPOSIT);
+            BankService.getInstance().deposit(acct, FOREIGN_DEPOSIT);
+
+            JsonNode deposit = readTransaction(events);
+            assertEquals("Only EUR deposits should be pushed", FOREIGN_DEPOSIT.toString(), deposit.get("amount").asText());
+        }
+    }
+
+    /**
+     * Test that subscribers which disconnected are dropped by the heartbeats while their account stays idle.
+     */
+    @Test
+    public void testDisconnectedSubscribersDropped() throws Exception {
+        server.shutdownNow();
+        System.setProperty(TransfolutProperties.EVENTS_HEARTBEAT_SECONDS, "1");
+        try {
+            server = TransfolutApp.startServer();
+        } finally {
+            System.clearProperty(TransfolutProperties.EVENTS_HEARTBEAT_SECONDS);
+        }
+        long acct = setupTestAccount(DEPOSIT);
+        Client client = ClientBuilder.newBuilder().register(SseFeature.class).build();
+        EventInput events = client.target(TransfolutPaths.BASE_URI).path(TransfolutPaths.ACCOUNTS_URI)
+                .path(acct + "/events").request().get(EventInput.class);
+        assertTrue("Subscriber should be counted", getMetrics().contains("\"events.subscribers\":1"));
+        events.close();
+        client.close();
+
+        long deadline = System.currentTimeMillis() + 20000;
+        while(!getMetrics().contains("\"events.subscribers\":0") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue("Disconnected subscriber should be dropped", getMetrics().contains("\"events.subscribers\":0"));
+    }
+
+    /**
+     * Test for an invalid buffer policy.
+     */
+    @Test
+    public void testInvalidPolicy() {
+        long acct = setupTestAccount(DEPOSIT);
+        Response response = target.path(TransfolutPaths.ACCOUNTS_URI).path(acct + "/events")
+                .queryParam("policy", "block").request().get();
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_EVENT_POLICY, "block"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Test for subscribing to a non-existent account.
+     */
+    @Test
+    public void testNonexistentAccount() {
+        Response response = target.path(TransfolutPaths.ACCOUNTS_URI).path("11111111/events").request().get();
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, "11111111"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    private String getMetrics() {
+        return target.path(TransfolutPaths.METRICS_URI).request().get(String.class);
+    }
+
+    /**
+     * Helper method to read the next transaction event, failing the test if none arrives in time.
+     */
+    private JsonNode readTransaction(EventInput events) throws Exception {
+        InboundEvent event = reader.submit(events::read).get(10, TimeUnit.SECONDS);
+        assertEquals("Event should be a transaction", "transaction", event.getName());
+        try {
+            return mapper.readTree(event.readData(String.class));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
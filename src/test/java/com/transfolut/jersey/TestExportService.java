@@ -0,0 +1,121 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link ExportService}.
+ */
+public class TestExportService {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that every account is exported with its history and balances, in account number order.
+     */
+    @Test
+    public void testNdjsonExport() throws IOException {
+        long firstAcct = setupTestAccount(DEPOSIT);
+        long secondAcct = setupTestAccount(DEPOSIT);
+        BankService.getInstance().deposit(firstAcct, Money.of(CurrencyUnit.EUR, 5));
+        BankService.getInstance().withdraw(firstAcct, Money.of(CurrencyUnit.EUR, 5));
+        BankService.getInstance().transfer(secondAcct, firstAcct, Money.of(CurrencyUnit.GBP, 30));
+
+        Response response = target.path(TransfolutPaths.EXPORT_URI).request().get();
+        assertEquals("Export should succeed", Status.OK.getStatusCode(), response.getStatus());
+        List<ExportRecord> records = new ArrayList<>();
+        for(String line : response.readEntity(String.class).split("\n")) {
+            records.add(mapper.readValue(line, ExportRecord.class));
+        }
+
+        long lowAcct = Math.min(firstAcct, secondAcct);
+        assertEquals("Accounts should be exported in account number order", lowAcct, records.get(0).acct);
+        assertEquals("Every account, transaction and non zero balance should be exported", 10, records.size());
+        List<String> firstAcctRecords = records.stream()
+                .filter(record -> record.acct == firstAcct)
+                .map(record -> record.record + " " + record.currency + " " + record.amount + " " + record.balance)
+                .collect(Collectors.toList());
+        assertEquals("History and balances should be exported", Arrays.asList(
+                "account GBP null null",
+                "transaction GBP 100.00 100.00",
+                "transaction EUR 5.00 5.00",
+                "transaction EUR -5.00 0.00",
+                "transaction GBP 30.00 130.00",
+                "balance GBP null 130.00"), firstAcctRecords);
+    }
+
+    /**
+     * Test that a CSV export is compressed for clients accepting gzip.
+     */
+    @Test
+    public void testCompressedCsvExport() throws IOException {
+        long acct = setupTestAccount(DEPOSIT);
+
+        Response response = target.path(TransfolutPaths.EXPORT_URI).queryParam("format", "csv").request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals("Export should succeed", Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("Export should be compressed", "gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(response.readEntity(InputStream.class)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        assertEquals("Header and records should be exported", 4, lines.size());
+        assertEquals("Header should name the columns", "record,acct,currency,amount,balance,timestamp", lines.get(0));
+        assertEquals("Balance should be exported", "balance," + acct + ",GBP,,100.00",
+                lines.get(3).substring(0, lines.get(3).lastIndexOf(',')));
+    }
+
+    /**
+     * Test for an unknown export format.
+     */
+    @Test
+    public void testInvalidFormat() {
+        Response response = target.path(TransfolutPaths.EXPORT_URI).queryParam("format", "xml").request().get();
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_EXPORT_FORMAT, "xml"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+}
@@ -0,0 +1,148 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.VelocityLimits;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import static com.transfolut.jersey.BankUtils.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link FastPathHandler}.
+ */
+public class TestFastPathHandler {
+
+    public static final Money INITIAL_DEPOSIT = Money.of(CurrencyUnit.GBP, 1000);
+    private HttpServer server;
+    private WebTarget target;
+    private FastPathHandler fastPath;
+
+    @Before
+    public void setUp() {
+        System.setProperty(TransfolutProperties.FAST_PATH, "true");
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+        for(HttpHandler handler : server.getServerConfiguration().getHttpHandlersWithMapping().keySet()) {
+            fastPath = (FastPathHandler) handler;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(TransfolutProperties.FAST_PATH);
+        BankService.getInstance().setVelocityLimits(null);
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that plain deposits, withdrawals and transfers are served by the fast path with the responses of the resources.
+     */
+    @Test
+    public void testServedByFastPath() {
+        String fromAcct = String.valueOf(setupTestAccount(INITIAL_DEPOSIT));
+        String toAcct = String.valueOf(setupTestAccount(INITIAL_DEPOSIT));
+
+        Response response = post(TransfolutPaths.DEPOSIT_URI, "{\"acct\":\"" + fromAcct + "\",\"currency\":\"GBP\",\"amount\":\"12.5\"}");
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.DEPOSIT_SUCCESS, "GBP 12.50", fromAcct),
+                Status.OK.getStatusCode());
+        assertEquals("Content type should be JSON", MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+
+        response = post(TransfolutPaths.WITHDRAW_URI, " { \"amount\" : \"2.5\", \"acct\" : \"" + fromAcct + "\", \"currency\" : \"GBP\" } ");
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.WITHDRAW_SUCCESS, "GBP 2.50", fromAcct),
+                Status.OK.getStatusCode());
+
+        // Beans sent by the client carry null for their unset fields
+        response = target.path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.json(getTransferBean(fromAcct, toAcct, "GBP", "10")));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.TRANSFER_SUCCESS, "GBP 10.00", fromAcct, toAcct),
+                Status.OK.getStatusCode());
+
+        checkBankAccountBalance(fromAcct, Money.parse("GBP 1000.00"));
+        checkBankAccountBalance(toAcct, Money.parse("GBP 1010.00"));
+        assertEquals("All requests should be served by the fast path", 3, fastPath.getServed());
+        assertEquals("No request should be handed to Jersey", 0, fastPath.getHandedOver());
+    }
+
+    /**
+     * Test that debits rejected by the bank service are answered by the fast path as the resources answer them.
+     */
+    @Test
+    public void testRejectedByBankService() {
+        String acct = String.valueOf(setupTestAccount(INITIAL_DEPOSIT));
+        Response response = post(TransfolutPaths.WITHDRAW_URI, "{\"acct\":\"" + acct + "\",\"currency\":\"GBP\",\"amount\":\"5000\"}");
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INSUFFICIENT_BALANCE, "GBP 5000.00"),
+                Status.BAD_REQUEST.getStatusCode());
+
+        BankService.getInstance().setVelocityLimits(new VelocityLimits(60000, "GBP:0:1"));
+        response = post(TransfolutPaths.WITHDRAW_URI, "{\"acct\":\"" + acct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}");
+        assertEquals("First withdrawal should succeed", Status.OK.getStatusCode(), response.getStatus());
+        response = post(TransfolutPaths.WITHDRAW_URI, "{\"acct\":\"" + acct + "\",\"currency\":\"GBP\",\"amount\":\"1\"}");
+        checkResponseStatusAndMessage(response,
+                String.format(TransfolutMessages.VELOCITY_COUNT_EXCEEDED, "GBP 1.00", acct, 1, 60000), 429);
+        assertEquals("All requests should be served by the fast path", 3, fastPath.getServed());
+    }
+
+    /**
+     * Test that invalid, unusual or traced requests are handed to Jersey, which answers them as it always did.
+     */
+    @Test
+    public void testHandedOverToJersey() {
+        String acct = String.valueOf(setupTestAccount(INITIAL_DEPOSIT));
+        Response response = post(TransfolutPaths.DEPOSIT_URI, "{\"acct\":\"" + acct + "\",\"currency\":\"BLA\",\"amount\":\"5\"}");
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_CURRENCY, "BLA"),
+                Status.BAD_REQUEST.getStatusCode());
+
+        // Jackson reads numbers into the string fields, so the entity read by the fast path must be read again
+        response = post(TransfolutPaths.DEPOSIT_URI, "{\"acct\":" + acct + ",\"currency\":\"GBP\",\"amount\":5}");
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.DEPOSIT_SUCCESS, "GBP 5.00", acct),
+                Status.OK.getStatusCode());
+
+        response = target.path(TransfolutPaths.DEPOSIT_URI).request()
+                .header(TransfolutPaths.TRACE_HEADER, "trace-1")
+                .post(Entity.json("{\"acct\":\"" + acct + "\",\"currency\":\"GBP\",\"amount\":\"5\"}"));
+        assertEquals("Deposit should succeed", Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("Trace id should be returned", "trace-1", response.getHeaderString(TransfolutPaths.TRACE_HEADER));
+
+        checkBankAccountBalance(acct, Money.parse("GBP 1010.00"));
+        assertEquals("No request should be served by the fast path", 0, fastPath.getServed());
+        assertEquals("All requests should be handed to Jersey", 3, fastPath.getHandedOver());
+    }
+
+    /**
+     * Test the content negotiation left to Jersey.
+     */
+    @Test
+    public void testNegotiation() {
+        assertTrue(FastPathHandler.isJson("application/json"));
+        assertTrue(FastPathHandler.isJson("Application/JSON; charset=UTF-8"));
+        assertFalse(FastPathHandler.isJson("application/json; charset=ISO-8859-1"));
+        assertFalse(FastPathHandler.isJson("text/plain"));
+        assertTrue(FastPathHandler.acceptsJson(null));
+        assertTrue(FastPathHandler.acceptsJson("text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2"));
+        assertFalse(FastPathHandler.acceptsJson("text/plain"));
+        assertFalse(FastPathHandler.acceptsJson("application/json;q=0"));
+    }
+
+    private Response post(String path, String json) {
+        return target.path(path).request().post(Entity.entity(json, MediaType.APPLICATION_JSON));
+    }
+}
@@ -0,0 +1,102 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.JournalFollower;
+import com.transfolut.bank.ReplicationJournal;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.IOException;
+import java.util.List;
+
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.getDepositBean;
+import static org.hamcrest.core.IsCollectionContaining.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link FollowerFilter}, running a follower server of an in-process primary.
+ */
+public class TestFollowerFilter {
+
+    private static final String FOLLOWER_URI = "http://localhost:8190/transfolut";
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private BankService primary;
+    private ReplicationJournal journal;
+    private JournalFollower follower;
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() throws IOException {
+        primary = new BankService(bankAcctNumber -> true);
+        journal = new ReplicationJournal(primary, folder.newFolder().toPath(), 0, 1024, Long.MAX_VALUE);
+        journal.start();
+        BankService replica = new BankService(bankAcctNumber -> true);
+        follower = new JournalFollower(replica, "localhost", journal.getPort());
+        follower.start();
+        server = TransfolutApp.startFollower(replica, follower, FOLLOWER_URI);
+        target = ClientBuilder.newClient().target(FOLLOWER_URI);
+    }
+
+    @After
+    public void tearDown() {
+        server.shutdownNow();
+        follower.close();
+        journal.close();
+    }
+
+    /**
+     * Test that a follower serves the accounts of the primary with its replication lag.
+     */
+    @Test
+    public void testFollowerServesReads() throws InterruptedException {
+        long acct = primary.createAccount("GBP");
+        primary.deposit(acct, DEPOSIT);
+        long deadline = System.currentTimeMillis() + 10000;
+        while(follower.getAppliedRecords() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Response response = target.path(TransfolutPaths.ACCOUNTS_URI).path(String.valueOf(acct)).request().get();
+        assertEquals("Incorrect response status", Status.OK.getStatusCode(), response.getStatus());
+        assertNotNull("Replication lag should be reported", response.getHeaderString(TransfolutPaths.REPLICATION_LAG_HEADER));
+        assertTrue("Replication lag should be a number of milliseconds",
+                Long.parseLong(response.getHeaderString(TransfolutPaths.REPLICATION_LAG_HEADER)) >= 0);
+        assertThat("Balance should be replicated", response.readEntity(new GenericType<List<String>>() {}),
+                hasItem(DEPOSIT.toString()));
+    }
+
+    /**
+     * Test that a follower rejects changes.
+     */
+    @Test
+    public void testFollowerRejectsWrites() {
+        long acct = primary.createAccount("GBP");
+        Response response = target.path(TransfolutPaths.DEPOSIT_URI).request()
+                .post(Entity.entity(getDepositBean(String.valueOf(acct), "GBP", "100"), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, TransfolutMessages.FOLLOWER_READ_ONLY,
+                Status.METHOD_NOT_ALLOWED.getStatusCode());
+    }
+}
@@ -0,0 +1,110 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import com.transfolut.bank.FxRates;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static com.transfolut.jersey.BankUtils.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link FxRateService} and cross-currency transfers.
+ */
+public class TestFxRateService {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 1000);
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        BankService.getInstance().loadFxRates(new FxRates(CurrencyUnit.USD, Collections.emptyMap()));
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that loaded rates are returned and used by transfers credited in another currency.
+     */
+    @Test
+    public void testCrossCurrencyTransfer() {
+        Response loadResponse = loadRates(getRatesBean("USD", "GBP", "0.8", "EUR", "0.9"));
+        checkResponseStatusAndMessage(loadResponse, String.format(TransfolutMessages.FX_RATES_LOADED, 3, "USD"),
+                Status.OK.getStatusCode());
+        FxRatesBean rates = target.path(TransfolutPaths.FX_RATES_URI).request().get(FxRatesBean.class);
+        assertEquals("Loaded rates should be returned", "0.9", rates.rates.get("EUR"));
+
+        String fromAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        String toAcct = String.valueOf(BankService.getInstance().createAccount("EUR"));
+        TransferBean bean = getTransferBean(fromAcct, toAcct, "GBP", "100");
+        bean.toCurrency = "EUR";
+        Response response = target.path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.entity(bean, MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.FX_TRANSFER_SUCCESS, "GBP 100.00",
+                "EUR 112.50", fromAcct, toAcct), Status.OK.getStatusCode());
+        checkBankAccountBalance(fromAcct, DEPOSIT.minus(100));
+        checkBankAccountBalance(toAcct, Money.of(CurrencyUnit.EUR, 112.5));
+    }
+
+    /**
+     * Test for a transfer into a currency without exchange rate.
+     */
+    @Test
+    public void testTransferWithoutRate() {
+        String fromAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        String toAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        TransferBean bean = getTransferBean(fromAcct, toAcct, "GBP", "100");
+        bean.toCurrency = "JPY";
+        Response response = target.path(TransfolutPaths.TRANSFER_URI).request()
+                .post(Entity.entity(bean, MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.FX_RATE_NOT_FOUND, "GBP", "JPY"),
+                Status.BAD_REQUEST.getStatusCode());
+        checkBankAccountBalance(fromAcct, DEPOSIT);
+    }
+
+    /**
+     * Test for a negative exchange rate.
+     */
+    @Test
+    public void testInvalidRate() {
+        Response response = loadRates(getRatesBean("USD", "GBP", "-0.8"));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_FX_RATE, "-0.8", "GBP"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    private Response loadRates(FxRatesBean bean) {
+        return target.path(TransfolutPaths.FX_RATES_URI).request().put(Entity.entity(bean, MediaType.APPLICATION_JSON));
+    }
+
+    private static FxRatesBean getRatesBean(String base, String... currenciesAndRates) {
+        FxRatesBean bean = new FxRatesBean();
+        bean.base = base;
+        bean.rates = new HashMap<>();
+        for(int i = 0; i < currenciesAndRates.length; i += 2) {
+            bean.rates.put(currenciesAndRates[i], currenciesAndRates[i + 1]);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,114 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.util.List;
+
+import static com.transfolut.jersey.BankUtils.checkBankAccountBalance;
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test class for {@link HoldService}.
+ */
+public class TestHoldService {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that a hold is placed, lowers the available balance and is captured in part.
+     */
+    @Test
+    public void testPlaceAndCaptureHold() {
+        String acct = String.valueOf(setupTestAccount(DEPOSIT));
+        Response placeResponse = placeHold(getHoldBean(acct, "GBP", "60"));
+        assertEquals("Hold should be placed", Status.OK.getStatusCode(), placeResponse.getStatus());
+        HoldBean hold = placeResponse.readEntity(HoldBean.class);
+        String path = TransfolutPaths.HOLDS_URI + "/" + hold.id;
+
+        assertEquals("Hold should be returned", "60.00", target.path(path).request().get(HoldBean.class).amount);
+        List<String> available = target.path(TransfolutPaths.ACCOUNTS_URI + "/" + acct + "/available").request()
+                .get(new GenericType<List<String>>() {});
+        assertThat("Held amount should not be available", available, containsInAnyOrder(DEPOSIT.minus(60).toString()));
+
+        Response captureResponse = target.path(path + "/capture").request()
+                .post(Entity.entity(getHoldBean(null, "GBP", "45"), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(captureResponse, String.format(TransfolutMessages.HOLD_CAPTURED,
+                Money.of(CurrencyUnit.GBP, 45), hold.id), Status.OK.getStatusCode());
+        checkBankAccountBalance(acct, DEPOSIT.minus(45));
+        checkResponseStatusAndMessage(target.path(path).request().delete(),
+                String.format(TransfolutMessages.HOLD_NOT_FOUND, hold.id), Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Test that a released hold gives back its amount.
+     */
+    @Test
+    public void testReleaseHold() {
+        String acct = String.valueOf(setupTestAccount(DEPOSIT));
+        HoldBean hold = placeHold(getHoldBean(acct, "GBP", "100")).readEntity(HoldBean.class);
+
+        checkResponseStatusAndMessage(placeHold(getHoldBean(acct, "GBP", "1")),
+                String.format(TransfolutMessages.INSUFFICIENT_BALANCE, Money.of(CurrencyUnit.GBP, 1)),
+                Status.BAD_REQUEST.getStatusCode());
+        checkResponseStatusAndMessage(target.path(TransfolutPaths.HOLDS_URI + "/" + hold.id).request().delete(),
+                String.format(TransfolutMessages.HOLD_RELEASED, hold.id), Status.OK.getStatusCode());
+        assertEquals("Released amount should be held again", Status.OK.getStatusCode(),
+                placeHold(getHoldBean(acct, "GBP", "100")).getStatus());
+    }
+
+    /**
+     * Test for capturing a hold which does not exist.
+     */
+    @Test
+    public void testCaptureUnknownHold() {
+        Response response = target.path(TransfolutPaths.HOLDS_URI + "/42/capture").request()
+                .post(Entity.entity(new HoldBean(), MediaType.APPLICATION_JSON));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.HOLD_NOT_FOUND, 42),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    private Response placeHold(HoldBean holdParams) {
+        return target.path(TransfolutPaths.HOLDS_URI).request().post(Entity.entity(holdParams, MediaType.APPLICATION_JSON));
+    }
+
+    private static HoldBean getHoldBean(String acct, String currency, String amount) {
+        HoldBean holdParams = new HoldBean();
+        holdParams.acct = acct;
+        holdParams.currency = currency;
+        holdParams.amount = amount;
+        return holdParams;
+    }
+}
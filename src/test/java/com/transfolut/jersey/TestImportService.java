@@ -0,0 +1,151 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.media.multipart.FormDataMultiPart;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.media.multipart.file.StreamDataBodyPart;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.transfolut.jersey.BankUtils.checkBankAccountBalance;
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link ImportService}.
+ */
+public class TestImportService {
+
+    private static final Money INITIAL_DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newBuilder().register(MultiPartFeature.class).build().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that every line of a CSV file is applied in file order and reported.
+     */
+    @Test
+    public void testCsvImport() throws IOException {
+        long firstAcct = setupTestAccount(INITIAL_DEPOSIT);
+        long secondAcct = setupTestAccount(INITIAL_DEPOSIT);
+        long thirdAcct = setupTestAccount(INITIAL_DEPOSIT);
+        String file = "operation,acct,currency,amount\n"
+                + "transfer," + firstAcct + "," + secondAcct + ",GBP,60\n"
+                + "withdraw," + secondAcct + ",GBP,150\n"
+                + "\n"
+                + "deposit," + thirdAcct + ",GBP,abc\n"
+                + "withdraw," + firstAcct + ",GBP,50\n"
+                + "refund," + thirdAcct + ",GBP,1\n"
+                + "deposit," + thirdAcct + "\n";
+
+        List<ImportResult> results = importFile(file, "operations.csv");
+        assertEquals("Every operation line should be reported", 6, results.size());
+        checkResult(results.get(0), 2, ImportResult.APPLIED, String.format(TransfolutMessages.TRANSFER_SUCCESS,
+                "GBP 60.00", firstAcct, secondAcct));
+        // The withdrawal only succeeds if it is applied after the transfer crediting its account
+        checkResult(results.get(1), 3, ImportResult.APPLIED, String.format(TransfolutMessages.WITHDRAW_SUCCESS,
+                "GBP 150.00", secondAcct));
+        checkResult(results.get(2), 5, ImportResult.REJECTED, String.format(TransfolutMessages.INVALID_AMOUNT, "abc"));
+        checkResult(results.get(3), 6, ImportResult.REJECTED, String.format(TransfolutMessages.INSUFFICIENT_BALANCE,
+                "GBP 50.00"));
+        checkResult(results.get(4), 7, ImportResult.REJECTED, String.format(TransfolutMessages.INVALID_IMPORT_OPERATION,
+                "refund"));
+        checkResult(results.get(5), 8, ImportResult.REJECTED, String.format(TransfolutMessages.INVALID_IMPORT_LINE,
+                "deposit," + thirdAcct));
+        checkBankAccountBalance(String.valueOf(firstAcct), Money.of(CurrencyUnit.GBP, 40));
+        checkBankAccountBalance(String.valueOf(secondAcct), Money.of(CurrencyUnit.GBP, 10));
+        checkBankAccountBalance(String.valueOf(thirdAcct), INITIAL_DEPOSIT);
+    }
+
+    /**
+     * Test that a NDJSON file spanning several batches is applied in full and reported in file order.
+     */
+    @Test
+    public void testNdjsonImport() throws IOException {
+        long firstAcct = setupTestAccount(INITIAL_DEPOSIT);
+        long secondAcct = setupTestAccount(INITIAL_DEPOSIT);
+        StringBuilder file = new StringBuilder();
+        int lines = 2500;
+        for(int i = 0; i < lines; i++) {
+            long acct = i % 2 == 0 ? firstAcct : secondAcct;
+            file.append("{\"operation\":\"deposit\",\"acct\":\"").append(acct)
+                    .append("\",\"currency\":\"GBP\",\"amount\":\"1\"}\n");
+        }
+
+        List<ImportResult> results = importFile(file.toString(), "operations.ndjson");
+        assertEquals("Every line should be reported", lines, results.size());
+        for(int i = 0; i < lines; i++) {
+            assertEquals("Lines should be reported in file order", i + 1, results.get(i).line);
+            assertEquals("Every line should be applied", ImportResult.APPLIED, results.get(i).status);
+        }
+        checkBankAccountBalance(String.valueOf(firstAcct), INITIAL_DEPOSIT.plus(lines / 2));
+        checkBankAccountBalance(String.valueOf(secondAcct), INITIAL_DEPOSIT.plus(lines / 2));
+    }
+
+    /**
+     * Test for a file whose format is unknown.
+     */
+    @Test
+    public void testInvalidFormat() {
+        Response response = post("deposit,1,GBP,1\n", "operations.txt");
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_IMPORT_FORMAT, (Object) null),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Helper method to import a file and parse its report.
+     */
+    private List<ImportResult> importFile(String file, String fileName) throws IOException {
+        Response response = post(file, fileName);
+        assertEquals("Import should be accepted", Status.OK.getStatusCode(), response.getStatus());
+        List<ImportResult> results = new ArrayList<>();
+        for(String line : response.readEntity(String.class).split("\n")) {
+            results.add(mapper.readValue(line, ImportResult.class));
+        }
+        return results;
+    }
+
+    private Response post(String file, String fileName) {
+        FormDataMultiPart multiPart = new FormDataMultiPart();
+        multiPart.bodyPart(new StreamDataBodyPart("file",
+                new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)), fileName));
+        return target.path(TransfolutPaths.IMPORT_URI).request().post(Entity.entity(multiPart, multiPart.getMediaType()));
+    }
+
+    private static void checkResult(ImportResult result, long line, String status, String message) {
+        assertEquals("Incorrect line", line, result.line);
+        assertEquals("Incorrect status", status, result.status);
+        assertEquals("Incorrect message", message, result.message);
+    }
+}
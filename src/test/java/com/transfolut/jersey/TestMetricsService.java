@@ -0,0 +1,64 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the {@link MetricsService} REST endpoints.
+ */
+public class TestMetricsService {
+
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        Client c = ClientBuilder.newClient();
+        target = c.target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test for getting the metrics of the account registry.
+     */
+    @Test
+    public void testGetMetrics() {
+        setupTestAccount(Money.of(CurrencyUnit.GBP, 1000));
+        Response response = target.path(TransfolutPaths.METRICS_URI).request().get();
+        String responseMsg = response.readEntity(String.class);
+        assertEquals("Status should have been OK", Status.OK.getStatusCode(), response.getStatus());
+        assertTrue("Resident accounts should have been returned", responseMsg.contains("\"accounts.resident\":1"));
+    }
+
+    /**
+     * Test that the time of the first response is reported once it has been sent.
+     */
+    @Test
+    public void testGetFirstResponseTime() {
+        target.path(TransfolutPaths.METRICS_URI).request().get().close();
+        String responseMsg = target.path(TransfolutPaths.METRICS_URI).request().get(String.class);
+        assertTrue("First response time should have been returned", responseMsg.contains("\"server.firstResponse.millis\":"));
+    }
+}
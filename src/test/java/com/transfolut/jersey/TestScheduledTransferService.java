@@ -0,0 +1,117 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import static com.transfolut.jersey.BankUtils.checkBankAccountBalance;
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ScheduledTransferService}.
+ */
+public class TestScheduledTransferService {
+
+    private static final Money DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that a standing transfer is executed at its interval until it is cancelled.
+     */
+    @Test
+    public void testStandingTransfer() throws InterruptedException {
+        String fromAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        String toAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        ScheduledTransferBean scheduled = schedule(getScheduledTransferBean(fromAcct, toAcct, "10",
+                String.valueOf(System.currentTimeMillis()), "20")).readEntity(ScheduledTransferBean.class);
+        String path = TransfolutPaths.SCHEDULED_TRANSFERS_URI + "/" + scheduled.id;
+
+        long deadline = System.currentTimeMillis() + 5000;
+        ScheduledTransferBean state;
+        do {
+            assertTrue("Transfer should be executed at its interval", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            state = target.path(path).request().get(ScheduledTransferBean.class);
+        } while(state.executions < 3);
+        assertEquals("Interval should be returned", "20", state.intervalMillis);
+
+        checkResponseStatusAndMessage(target.path(path).request().delete(),
+                String.format(TransfolutMessages.SCHEDULED_TRANSFER_CANCELLED, scheduled.id), Status.OK.getStatusCode());
+        Money balance = Money.parse(BankService.getInstance().getAccount(Long.parseLong(toAcct)).get()
+                .getBalances().get(0));
+        Thread.sleep(100);
+        checkBankAccountBalance(toAcct, balance);
+        checkResponseStatusAndMessage(target.path(path).request().get(),
+                String.format(TransfolutMessages.SCHEDULED_TRANSFER_NOT_FOUND, scheduled.id),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Test for an interval which is not a number.
+     */
+    @Test
+    public void testInvalidInterval() {
+        String fromAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        String toAcct = String.valueOf(setupTestAccount(DEPOSIT));
+        Response response = schedule(getScheduledTransferBean(fromAcct, toAcct, "10",
+                String.valueOf(System.currentTimeMillis()), "-1"));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.INVALID_INTERVAL, "-1"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Test for cancelling a transfer which was never scheduled.
+     */
+    @Test
+    public void testCancelUnknownTransfer() {
+        Response response = target.path(TransfolutPaths.SCHEDULED_TRANSFERS_URI + "/42").request().delete();
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.SCHEDULED_TRANSFER_NOT_FOUND, "42"),
+                Status.BAD_REQUEST.getStatusCode());
+    }
+
+    private Response schedule(ScheduledTransferBean transferParams) {
+        return target.path(TransfolutPaths.SCHEDULED_TRANSFERS_URI).request()
+                .post(Entity.entity(transferParams, MediaType.APPLICATION_JSON));
+    }
+
+    private static ScheduledTransferBean getScheduledTransferBean(String fromAcct, String toAcct, String amount,
+                                                                  String executeAt, String intervalMillis) {
+        ScheduledTransferBean transferParams = new ScheduledTransferBean();
+        transferParams.fromAcct = fromAcct;
+        transferParams.toAcct = toAcct;
+        transferParams.currency = CurrencyUnit.GBP.getCode();
+        transferParams.amount = amount;
+        transferParams.executeAt = executeAt;
+        transferParams.intervalMillis = intervalMillis;
+        return transferParams;
+    }
+}
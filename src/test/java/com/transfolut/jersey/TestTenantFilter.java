@@ -0,0 +1,152 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutMessages;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static com.transfolut.jersey.BankUtils.checkResponseStatusAndMessage;
+import static com.transfolut.jersey.BankUtils.getCurrencyBean;
+import static com.transfolut.jersey.BankUtils.getDepositBean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the selection of tenants by {@link TenantFilter}.
+ */
+public class TestTenantFilter {
+
+    private static final String LIMITED_TENANT_PROPERTY =
+            String.format(TransfolutProperties.TENANT_MAX_CONCURRENT_REQUESTS_OVERRIDE, "globex");
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        System.setProperty(TransfolutProperties.TENANTS, "acme, globex");
+        System.setProperty(LIMITED_TENANT_PROPERTY, "1");
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(TransfolutProperties.TENANTS);
+        System.clearProperty(LIMITED_TENANT_PROPERTY);
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that the accounts of a tenant, selected by header or by path, are not visible to other tenants.
+     */
+    @Test
+    public void testIsolation() {
+        Response created = target.path(TransfolutPaths.ACCOUNTS_URI).request()
+                .header(TransfolutPaths.TENANT_HEADER, "acme")
+                .post(Entity.entity(getCurrencyBean("GBP"), MediaType.APPLICATION_JSON));
+        String acctNumber = created.readEntity(String.class);
+        Response deposit = target.path(TransfolutPaths.TENANTS_URI + "/acme" + TransfolutPaths.DEPOSIT_URI).request()
+                .post(Entity.entity(getDepositBean(acctNumber, "GBP", "25"), MediaType.APPLICATION_JSON));
+        assertEquals("Deposit should succeed in the tenant", Status.OK.getStatusCode(), deposit.getStatus());
+
+        Response balances = target.path(TransfolutPaths.TENANTS_URI + "/acme" + TransfolutPaths.ACCOUNTS_URI)
+                .path(acctNumber).request().get();
+        checkResponseStatusAndMessage(balances, "[\"GBP 25.00\"]", Status.OK.getStatusCode());
+        String notFound = String.format(TransfolutMessages.ACCOUNT_NOT_FOUND, acctNumber);
+        checkResponseStatusAndMessage(target.path(TransfolutPaths.ACCOUNTS_URI).path(acctNumber).request().get(),
+                notFound, Status.BAD_REQUEST.getStatusCode());
+        checkResponseStatusAndMessage(target.path(TransfolutPaths.ACCOUNTS_URI).path(acctNumber).request()
+                .header(TransfolutPaths.TENANT_HEADER, "globex").get(), notFound, Status.BAD_REQUEST.getStatusCode());
+        assertFalse("Default tenant should not list the account",
+                BankService.getInstance().getBankAccounts().contains(Long.parseLong(acctNumber)));
+    }
+
+    /**
+     * Test for a tenant the node does not host.
+     */
+    @Test
+    public void testUnknownTenant() {
+        Response response = target.path(TransfolutPaths.TENANTS_URI + "/initech" + TransfolutPaths.ACCOUNTS_URI)
+                .request().get();
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.TENANT_NOT_FOUND, "initech"),
+                Status.NOT_FOUND.getStatusCode());
+    }
+
+    /**
+     * Test that a tenant with as many requests in flight as it may turns further requests away,
+     * while other tenants are still served, and serves requests again once its request finished.
+     */
+    @Test
+    public void testRequestLimit() throws Exception {
+        String body = "{\"acct\":\"12345678\",\"currency\":\"GBP\",\"amount\":\"1\"}";
+        URI baseUri = URI.create(TransfolutPaths.BASE_URI);
+        try (Socket slowClient = new Socket(baseUri.getHost(), baseUri.getPort())) {
+            // The request stays in flight while its body is incomplete
+            OutputStream out = slowClient.getOutputStream();
+            out.write(("POST " + baseUri.getPath() + TransfolutPaths.DEPOSIT_URI + " HTTP/1.1\r\n"
+                    + "Host: " + baseUri.getAuthority() + "\r\n"
+                    + TransfolutPaths.TENANT_HEADER + ": globex\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + body.length() + "\r\n\r\n"
+                    + body.substring(0, 10)).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            assertEquals("Limited tenant should turn requests away", Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                    awaitStatus("globex", Status.SERVICE_UNAVAILABLE.getStatusCode()));
+            assertEquals("Other tenants should still be served", Status.OK.getStatusCode(),
+                    getAccounts("acme").getStatus());
+
+            out.write(body.substring(10).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = slowClient.getInputStream();
+            byte[] statusLine = new byte[12];
+            int read = 0;
+            while(read < statusLine.length) {
+                read += in.read(statusLine, read, statusLine.length - read);
+            }
+            assertTrue("Slow request should be answered", new String(statusLine, StandardCharsets.US_ASCII)
+                    .endsWith(String.valueOf(Status.BAD_REQUEST.getStatusCode())));
+        }
+        assertEquals("Limited tenant should serve requests again", Status.OK.getStatusCode(),
+                awaitStatus("globex", Status.OK.getStatusCode()));
+    }
+
+    private Response getAccounts(String tenant) {
+        return target.path(TransfolutPaths.ACCOUNTS_URI).request().header(TransfolutPaths.TENANT_HEADER, tenant).get();
+    }
+
+    /**
+     * Helper method to list the accounts of a tenant until the expected status is returned or a few seconds passed.
+     * @return the last status
+     */
+    private int awaitStatus(String tenant, int expectedStatus) throws InterruptedException {
+        int status = 0;
+        for(int attempt = 0; attempt < 100 && status != expectedStatus; attempt++) {
+            Response response = getAccounts(tenant);
+            status = response.getStatus();
+            response.close();
+            if(status != expectedStatus) {
+                Thread.sleep(50);
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,111 @@
+package com.transfolut.jersey;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.transfolut.jersey.BankUtils.getTransferBean;
+import static com.transfolut.jersey.BankUtils.setupTestAccount;
+import static org.hamcrest.core.IsCollectionContaining.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link TraceService}.
+ */
+public class TestTraceService {
+
+    private static final Money INITIAL_DEPOSIT = Money.of(CurrencyUnit.GBP, 100);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private WebTarget target;
+
+    @Before
+    public void setUp() {
+        // Only requests carrying a trace id are traced, and all of them are kept
+        System.setProperty(TransfolutProperties.TRACING_SAMPLE_RATE, "0");
+        System.setProperty(TransfolutProperties.TRACING_SLOW_MILLIS, "0");
+        server = TransfolutApp.startServer();
+        target = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(TransfolutProperties.TRACING_SAMPLE_RATE);
+        System.clearProperty(TransfolutProperties.TRACING_SLOW_MILLIS);
+        BankService.getInstance().clearAccounts();
+        server.shutdownNow();
+    }
+
+    /**
+     * Test that a traced transfer is timed through every layer and answered with its trace id.
+     */
+    @Test
+    public void testTracedTransfer() throws IOException, InterruptedException {
+        long fromAcct = setupTestAccount(INITIAL_DEPOSIT);
+        long toAcct = setupTestAccount(INITIAL_DEPOSIT);
+        Response response = target.path(TransfolutPaths.TRANSFER_URI).request()
+                .header(TransfolutPaths.TRACE_HEADER, "trace-1")
+                .post(Entity.json(getTransferBean(String.valueOf(fromAcct), String.valueOf(toAcct), "GBP", "10")));
+        assertEquals("Transfer should succeed", Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("Trace id should be returned", "trace-1", response.getHeaderString(TransfolutPaths.TRACE_HEADER));
+
+        // Traces are kept once the response has been sent, which the client may see first
+        List<TraceBean> traces = getSlowTraces();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(traces.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            traces = getSlowTraces();
+        }
+        assertEquals("Only the traced request should be kept", 1, traces.size());
+        TraceBean trace = traces.get(0);
+        assertEquals("Incorrect trace id", "trace-1", trace.id);
+        assertEquals("Incorrect method", "POST", trace.method);
+        assertTrue("Incorrect path", trace.path.endsWith(TransfolutPaths.TRANSFER_URI));
+        assertEquals("Incorrect status", Status.OK.getStatusCode(), trace.status);
+        List<String> stages = trace.spans.stream().map(span -> span.stage).collect(Collectors.toList());
+        assertThat("Every layer should time its stages", stages, hasItems("json.read", "resource", "validate",
+                "bank.transfer", "bank.lookup", "transfer.debit", "transfer.credit", "account.balance",
+                "account.record", "json.write"));
+        TraceBean.SpanBean resource = trace.spans.get(stages.indexOf("resource"));
+        TraceBean.SpanBean debit = trace.spans.get(stages.indexOf("transfer.debit"));
+        assertTrue("Stages should be nested", debit.depth > resource.depth);
+        assertTrue("Stages should fit in the request", resource.startMicros + resource.durationMicros
+                <= trace.durationMicros);
+    }
+
+    /**
+     * Test that requests which are not sampled are neither traced nor answered with a trace id.
+     */
+    @Test
+    public void testUntracedRequest() throws IOException {
+        Response response = target.path(TransfolutPaths.ACCOUNTS_URI).request().get();
+        assertEquals("Request should succeed", Status.OK.getStatusCode(), response.getStatus());
+        assertNull("No trace id should be returned", response.getHeaderString(TransfolutPaths.TRACE_HEADER));
+        assertEquals("No trace should be kept", 0, getSlowTraces().size());
+    }
+
+    private List<TraceBean> getSlowTraces() throws IOException {
+        String traces = target.path(TransfolutPaths.TRACES_URI).request().get(String.class);
+        return Arrays.asList(mapper.readValue(traces, TraceBean[].class));
+    }
+}
@@ -0,0 +1,65 @@
+package com.transfolut.jersey;
+
+import com.transfolut.TransfolutPaths;
+import com.transfolut.TransfolutProperties;
+import com.transfolut.bank.BankService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Test;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.transfolut.jersey.BankUtils.checkBankAccountBalance;
+import static com.transfolut.jersey.BankUtils.getDepositBean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the startup of {@link TransfolutApp}.
+ */
+public class TestTransfolutApp {
+
+    /**
+     * Test that every resource of the package is registered, as resources are not found by scanning the classpath.
+     */
+    @Test
+    public void testAllResourcesRegistered() {
+        Set<Class<?>> scannedResources = new ResourceConfig().packages("com.transfolut.jersey").getClasses().stream()
+                .filter(resource -> resource.isAnnotationPresent(Path.class))
+                .collect(Collectors.toSet());
+        assertEquals("Every resource should be registered", scannedResources, TransfolutApp.RESOURCES);
+    }
+
+    /**
+     * Test that the warmup runs before the server starts, without leaving any account behind,
+     * and is not held up by the velocity limits configured for the bank.
+     */
+    @Test
+    public void testWarmup() {
+        System.setProperty(TransfolutProperties.WARMUP_ITERATIONS, "100");
+        System.setProperty(TransfolutProperties.VELOCITY_LIMITS, "GBP:0:10");
+        HttpServer server = TransfolutApp.startServer();
+        try {
+            assertTrue("Warmup should not create accounts in the bank", BankService.getInstance().getBankAccounts().isEmpty());
+            String acct = String.valueOf(BankService.getInstance().createAccount(CurrencyUnit.GBP.getCode()));
+            Response response = ClientBuilder.newClient().target(TransfolutPaths.BASE_URI).path(TransfolutPaths.DEPOSIT_URI)
+                    .request().post(Entity.entity(getDepositBean(acct, "GBP", "100"), MediaType.APPLICATION_JSON));
+            assertEquals("Server should answer once warmed up", Status.OK.getStatusCode(), response.getStatus());
+            checkBankAccountBalance(acct, Money.of(CurrencyUnit.GBP, 100));
+        } finally {
+            System.clearProperty(TransfolutProperties.WARMUP_ITERATIONS);
+            System.clearProperty(TransfolutProperties.VELOCITY_LIMITS);
+            BankService.getInstance().clearAccounts();
+            server.shutdownNow();
+        }
+    }
+}
@@ -4,6 +4,7 @@ package com.transfolut.jersey;
 import com.transfolut.TransfolutMessages;
 import com.transfolut.TransfolutPaths;
 import com.transfolut.bank.BankService;
+import com.transfolut.bank.VelocityLimits;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
@@ -40,6 +41,7 @@ public class TestWithdrawService {
 
     @After
     public void tearDown() {
+        BankService.getInstance().setVelocityLimits(null);
         BankService.getInstance().clearAccounts();
         server.shutdownNow();
     }
@@ -137,4 +139,23 @@ public class TestWithdrawService {
                 String.format(TransfolutMessages.INSUFFICIENT_BALANCE, withdraw.toString()), Status.BAD_REQUEST.getStatusCode());
         checkBankAccountBalance(bean.acct, INITIAL_DEPOSIT);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that a withdrawal exceeding the velocity limits of its account is rejected with its own status.
+     */
+    @Test
+    public void testVelocityLimitExceeded() {
+        BankService.getInstance().setVelocityLimits(new VelocityLimits(60000, "GBP:500:0"));
+        long acct = setupTestAccount(INITIAL_DEPOSIT);
+        DepositBean bean = getDepositBean(String.valueOf(acct), DEPOSIT.getCurrencyUnit().getCurrencyCode(),
+                DEPOSIT.getAmount().toString());
+        Response response = target.path(TransfolutPaths.WITHDRAW_URI).request().post(Entity.json(bean));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.WITHDRAW_SUCCESS, DEPOSIT.toString(),
+                acct), Status.OK.getStatusCode());
+
+        response = target.path(TransfolutPaths.WITHDRAW_URI).request().post(Entity.json(bean));
+        checkResponseStatusAndMessage(response, String.format(TransfolutMessages.VELOCITY_AMOUNT_EXCEEDED,
+                DEPOSIT.toString(), acct, "GBP 500.00", 60000), 429);
+        checkBankAccountBalance(String.valueOf(acct), INITIAL_DEPOSIT.minus(DEPOSIT));
+    }
+}